@@ -0,0 +1,186 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Entry points for the benchmarks in the bench package. The compiler lives in the default package,
+ * which JMH benchmark classes cannot use, so bench.Frontend calls these through method handles.
+ * Only JDK types cross that boundary.
+ */
+public final class BenchmarkSupport {
+
+    private BenchmarkSupport() {
+    }
+
+    /**
+     * Loads one of the bundled programs and repeats it until it is at least a given size.
+     *
+     * @param program the name of a program in src/main/resources
+     * @param size the minimum size in bytes, or 0 for the program as it is
+     * @return the source text
+     * @throws IOException if the program cannot be read
+     */
+    public static String source(String program, int size) throws IOException {
+        String text;
+        try (InputStream in = BenchmarkSupport.class.getClassLoader().getResourceAsStream(program)) {
+            if (in == null) {
+                throw new IOException("Program not found: " + program);
+            }
+            text = new String(in.readAllBytes(), StandardCharsets.ISO_8859_1) + "\n";
+        }
+        StringBuilder sb = new StringBuilder(Math.max(size, text.length()) + text.length());
+        do {
+            sb.append(text);
+        } while (sb.length() < size);
+        return sb.toString();
+    }
+
+    /**
+     * Lexes a source with getToken() until End_of_input.
+     *
+     * @return the number of tokens
+     */
+    public static int lex(String source, boolean tableDriven) {
+        Lexer lexer = new Lexer(source);
+        lexer.setTableDriven(tableDriven);
+        int tokens = 1;
+        while (lexer.getToken().tokentype != TokenType.End_of_input) {
+            tokens++;
+        }
+        return tokens;
+    }
+
+    /**
+     * Lexes a source into a packed token buffer, so that parsing can be measured on its own.
+     *
+     * @return the TokenBuffer
+     */
+    public static Object tokenize(String source) {
+        return new Lexer(source).tokenize(new TokenBuffer());
+    }
+
+    /**
+     * Parses a token buffer produced by tokenize.
+     *
+     * @return the number of AST nodes
+     */
+    public static int parse(Object tokens) {
+        return countNodes(new Parser(((TokenBuffer) tokens).cursor()).parse());
+    }
+
+    /**
+     * Lexes and parses a source.
+     *
+     * @return the root of the AST
+     */
+    public static Object tree(String source) {
+        return new Parser(new Lexer(source)).parse();
+    }
+
+    /**
+     * Serializes an AST produced by tree with printAST.
+     *
+     * @return the length of the serialized AST
+     */
+    public static int printAST(Object tree) {
+        Parser parser = new Parser(TokenSource.of(List.of()));
+        return parser.printAST((Parser.Node) tree, new StringBuilder()).length();
+    }
+
+    /**
+     * Serializes an AST produced by tree with AstWriter, which does not echo to the console.
+     *
+     * @return the length of the serialized AST
+     */
+    public static int writeAST(Object tree) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        new AstWriter(sb).write((Parser.Node) tree);
+        return sb.length();
+    }
+
+    /**
+     * Copies an AST produced by tree into an AstArena.
+     *
+     * @return the arena
+     */
+    public static Object arena(Object tree) {
+        return AstArena.of((Parser.Node) tree);
+    }
+
+    /**
+     * Serializes an arena produced by arena in the .par format.
+     *
+     * @return the length of the serialized AST
+     */
+    public static int printArena(Object arena) {
+        return ((AstArena) arena).printAST(new StringBuilder()).length();
+    }
+
+    /**
+     * Runs the LoopOptimizer over an AST produced by tree, rewriting it in place.
+     *
+     * @return the root of the optimized AST
+     */
+    public static Object optimizeLoops(Object tree) {
+        return new LoopOptimizer().optimize((Parser.Node) tree);
+    }
+
+    /**
+     * Prepares an AST produced by tree for the Interpreter, so that running it can be measured on its own.
+     *
+     * @return the Interpreter
+     */
+    public static Object interpreter(Object tree) {
+        return new Interpreter((Parser.Node) tree);
+    }
+
+    /**
+     * Runs an Interpreter produced by interpreter, discarding what it prints.
+     *
+     * @return the sum of the final values of the variables
+     */
+    public static int interpret(Object interpreter) throws IOException {
+        int sum = 0;
+        for (int value : ((Interpreter) interpreter).run(Writer.nullWriter())) {
+            sum += value;
+        }
+        return sum;
+    }
+
+    /**
+     * Runs the whole front end, from source text to AST.
+     *
+     * @return the number of AST nodes
+     */
+    public static int compile(String source) {
+        return countNodes(new Parser(new Lexer(source)).parse());
+    }
+
+    /**
+     * Counts the nodes of an AST without recursing, since Sequence chains get very deep.
+     *
+     * @return the number of nodes
+     */
+    public static int countNodes(Object tree) {
+        int count = 0;
+        Deque<Parser.Node> stack = new ArrayDeque<>();
+        if (tree != null) {
+            stack.push((Parser.Node) tree);
+        }
+        while (!stack.isEmpty()) {
+            Parser.Node node = stack.pop();
+            count++;
+            if (node.left != null) {
+                stack.push(node.left);
+            }
+            if (node.right != null) {
+                stack.push(node.right);
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,165 @@
+package bench;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+/**
+ * Calls into the compiler for the benchmarks. JMH does not accept benchmark classes in the default
+ * package, and named packages cannot refer to the default one, so each entry point of
+ * BenchmarkSupport is bound once to a static final method handle, which the JIT inlines.
+ */
+final class Frontend {
+    private static final MethodHandle SOURCE;
+    private static final MethodHandle LEX;
+    private static final MethodHandle TOKENIZE;
+    private static final MethodHandle PARSE;
+    private static final MethodHandle TREE;
+    private static final MethodHandle PRINT_AST;
+    private static final MethodHandle COMPILE;
+    private static final MethodHandle COUNT_NODES;
+    private static final MethodHandle WRITE_AST;
+    private static final MethodHandle ARENA;
+    private static final MethodHandle PRINT_ARENA;
+    private static final MethodHandle OPTIMIZE_LOOPS;
+    private static final MethodHandle INTERPRETER;
+    private static final MethodHandle INTERPRET;
+
+    static {
+        try {
+            Class<?> support = Class.forName("BenchmarkSupport");
+            MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            SOURCE = lookup.findStatic(support, "source", MethodType.methodType(String.class, String.class, int.class));
+            LEX = lookup.findStatic(support, "lex", MethodType.methodType(int.class, String.class, boolean.class));
+            TOKENIZE = lookup.findStatic(support, "tokenize", MethodType.methodType(Object.class, String.class));
+            PARSE = lookup.findStatic(support, "parse", MethodType.methodType(int.class, Object.class));
+            TREE = lookup.findStatic(support, "tree", MethodType.methodType(Object.class, String.class));
+            PRINT_AST = lookup.findStatic(support, "printAST", MethodType.methodType(int.class, Object.class));
+            COMPILE = lookup.findStatic(support, "compile", MethodType.methodType(int.class, String.class));
+            COUNT_NODES = lookup.findStatic(support, "countNodes", MethodType.methodType(int.class, Object.class));
+            WRITE_AST = lookup.findStatic(support, "writeAST", MethodType.methodType(int.class, Object.class));
+            ARENA = lookup.findStatic(support, "arena", MethodType.methodType(Object.class, Object.class));
+            PRINT_ARENA = lookup.findStatic(support, "printArena", MethodType.methodType(int.class, Object.class));
+            OPTIMIZE_LOOPS = lookup.findStatic(support, "optimizeLoops", MethodType.methodType(Object.class, Object.class));
+            INTERPRETER = lookup.findStatic(support, "interpreter", MethodType.methodType(Object.class, Object.class));
+            INTERPRET = lookup.findStatic(support, "interpret", MethodType.methodType(int.class, Object.class));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private Frontend() {
+    }
+
+    static String source(String program, int size) {
+        try {
+            return (String) SOURCE.invokeExact(program, size);
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+
+    static int lex(String source, boolean tableDriven) {
+        try {
+            return (int) LEX.invokeExact(source, tableDriven);
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+
+    static Object tokenize(String source) {
+        try {
+            return (Object) TOKENIZE.invokeExact(source);
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+
+    static int parse(Object tokens) {
+        try {
+            return (int) PARSE.invokeExact(tokens);
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+
+    static Object tree(String source) {
+        try {
+            return (Object) TREE.invokeExact(source);
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+
+    static int printAST(Object tree) {
+        try {
+            return (int) PRINT_AST.invokeExact(tree);
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+
+    static int compile(String source) {
+        try {
+            return (int) COMPILE.invokeExact(source);
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+
+    static int countNodes(Object tree) {
+        try {
+            return (int) COUNT_NODES.invokeExact(tree);
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+
+    static int writeAST(Object tree) {
+        try {
+            return (int) WRITE_AST.invokeExact(tree);
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+
+    static Object arena(Object tree) {
+        try {
+            return (Object) ARENA.invokeExact(tree);
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+
+    static int printArena(Object arena) {
+        try {
+            return (int) PRINT_ARENA.invokeExact(arena);
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+
+    static Object optimizeLoops(Object tree) {
+        try {
+            return (Object) OPTIMIZE_LOOPS.invokeExact(tree);
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+
+    static Object interpreter(Object tree) {
+        try {
+            return (Object) INTERPRETER.invokeExact(tree);
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+
+    static int interpret(Object interpreter) {
+        try {
+            return (int) INTERPRET.invokeExact(interpreter);
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+}
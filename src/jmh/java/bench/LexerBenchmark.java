@@ -0,0 +1,57 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Lexer.getToken() throughput over the bundled programs and scaled copies of them. The tokens
+ * counter reports tokens per second next to whole-file operations per second.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LexerBenchmark {
+    @Param({"prime.c", "fizzbuzz.c", "99bottles.c"})
+    public String program;
+
+    /** Minimum source size in bytes; 0 is the program as it is. */
+    @Param({"0", "1024", "1048576", "104857600"})
+    public int size;
+
+    @Param({"false", "true"})
+    public boolean tableDriven;
+
+    private String source;
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Counters {
+        public long tokens;
+    }
+
+    @Setup
+    public void setup() {
+        source = Frontend.source(program, size);
+    }
+
+    @Benchmark
+    public int getToken(Counters counters) {
+        int tokens = Frontend.lex(source, tableDriven);
+        counters.tokens += tokens;
+        return tokens;
+    }
+}
@@ -0,0 +1,52 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Interpreter throughput on prime.c as parsed, and after the LoopOptimizer has turned its divisibility
+ * test into a remainder. The other bundled programs have nothing for it to change. Up to the limit
+ * of 100 that prime.c is written with, its inner loop runs too few times for the difference to show,
+ * so it is also measured with the limit raised.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LoopBenchmark {
+    /** The number prime.c counts primes up to. */
+    @Param({"100", "20000"})
+    public int limit;
+
+    private Object interpreted;
+    private Object optimized;
+
+    @Setup
+    public void setup() {
+        String source = Frontend.source("prime.c", 0).replace("limit = 100;", "limit = " + limit + ";");
+        interpreted = Frontend.interpreter(Frontend.tree(source));
+        optimized = Frontend.interpreter(Frontend.optimizeLoops(Frontend.tree(source)));
+    }
+
+    @Benchmark
+    public int interpreted() {
+        return Frontend.interpret(interpreted);
+    }
+
+    @Benchmark
+    public int optimized() {
+        return Frontend.interpret(optimized);
+    }
+}
@@ -0,0 +1,63 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Parser.parse() throughput on a pre-lexed token buffer, and the whole source-to-AST pipeline.
+ * The nodes counter reports AST nodes per second.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParserBenchmark {
+    @Param({"prime.c", "fizzbuzz.c", "99bottles.c"})
+    public String program;
+
+    /** Minimum source size in bytes; 0 is the program as it is. */
+    @Param({"0", "1024", "1048576", "104857600"})
+    public int size;
+
+    private String source;
+    private Object tokens;
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Counters {
+        public long nodes;
+    }
+
+    @Setup
+    public void setup() {
+        source = Frontend.source(program, size);
+        tokens = Frontend.tokenize(source);
+    }
+
+    @Benchmark
+    public int parse(Counters counters) {
+        int nodes = Frontend.parse(tokens);
+        counters.nodes += nodes;
+        return nodes;
+    }
+
+    @Benchmark
+    public int pipeline(Counters counters) {
+        int nodes = Frontend.compile(source);
+        counters.nodes += nodes;
+        return nodes;
+    }
+}
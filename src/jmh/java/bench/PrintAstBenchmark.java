@@ -0,0 +1,81 @@
+package bench;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Parser.printAST serialization throughput. printAST echoes every node to System.out, which is
+ * replaced by a discarding stream for the run. writeAST serializes the same tree with AstWriter,
+ * which does not echo, and printArena from an AstArena.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PrintAstBenchmark {
+    @Param({"prime.c", "fizzbuzz.c", "99bottles.c"})
+    public String program;
+
+    /** Minimum source size in bytes; 0 is the program as it is. */
+    @Param({"0", "1024", "1048576"})
+    public int size;
+
+    private Object tree;
+    private Object arena;
+    private int nodes;
+    private PrintStream console;
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Counters {
+        public long nodes;
+    }
+
+    @Setup
+    public void setup() {
+        tree = Frontend.tree(Frontend.source(program, size));
+        nodes = Frontend.countNodes(tree);
+        arena = Frontend.arena(tree);
+        console = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+    }
+
+    @TearDown
+    public void tearDown() {
+        System.setOut(console);
+    }
+
+    @Benchmark
+    public int printAST(Counters counters) {
+        counters.nodes += nodes;
+        return Frontend.printAST(tree);
+    }
+
+    @Benchmark
+    public int writeAST(Counters counters) {
+        counters.nodes += nodes;
+        return Frontend.writeAST(tree);
+    }
+
+    @Benchmark
+    public int printArena(Counters counters) {
+        counters.nodes += nodes;
+        return Frontend.printArena(arena);
+    }
+}
@@ -0,0 +1,213 @@
+import java.util.Arrays;
+
+/**
+ * A compact AST: parallel int arrays for the type, left child, right child and value of each node,
+ * instead of one Parser.Node object per node. Integer literals are stored as their int value and
+ * identifiers and strings as indexes into a SymbolPool. Nodes are added children first, so a child
+ * always has a smaller index than its parent and the root is the last node.
+ */
+class AstArena {
+    static final int NONE = -1;
+    private static final Parser.NodeType[] TYPES = Parser.NodeType.values();
+
+    private int[] types;
+    private int[] lefts;
+    private int[] rights;
+    private int[] values;
+    private int size;
+    private final SymbolPool symbols;
+
+    AstArena() {
+        this(new SymbolPool());
+    }
+
+    /**
+     * Creates an empty arena that interns names into an existing pool, for example the pool of the
+     * TokenBuffer the tree was parsed from.
+     *
+     * @param symbols the pool to intern names into
+     */
+    AstArena(SymbolPool symbols) {
+        this.types = new int[256];
+        this.lefts = new int[256];
+        this.rights = new int[256];
+        this.values = new int[256];
+        this.size = 0;
+        this.symbols = symbols;
+    }
+
+    /**
+     * Appends a node.
+     *
+     * @param type the node type
+     * @param left the index of the left child, or NONE
+     * @param right the index of the right child, or NONE
+     * @param value the literal value of an Integer, the symbol index of an Identifier or String, otherwise 0
+     * @return the index of the new node
+     */
+    int add(Parser.NodeType type, int left, int right, int value) {
+        if (this.size == this.types.length) {
+            int capacity = Math.max(this.size * 2, 256);
+            this.types = Arrays.copyOf(this.types, capacity);
+            this.lefts = Arrays.copyOf(this.lefts, capacity);
+            this.rights = Arrays.copyOf(this.rights, capacity);
+            this.values = Arrays.copyOf(this.values, capacity);
+        }
+        this.types[this.size] = type.ordinal();
+        this.lefts[this.size] = left;
+        this.rights[this.size] = right;
+        this.values[this.size] = value;
+        return this.size++;
+    }
+
+    int size() { return this.size; }
+    Parser.NodeType type(int i) { return TYPES[this.types[i]]; }
+    int left(int i) { return this.lefts[i]; }
+    int right(int i) { return this.rights[i]; }
+    int value(int i) { return this.values[i]; }
+    String name(int i) { return this.symbols.get(this.values[i]); }
+    SymbolPool symbols() { return this.symbols; }
+
+    /**
+     * Returns the index of the root node, or NONE for an empty tree.
+     *
+     * @return the root index
+     */
+    int root() {
+        return this.size - 1;
+    }
+
+    /**
+     * Copies a linked tree into a new arena. The tree is walked with an explicit stack, so deep
+     * statement chains do not overflow the Java stack.
+     *
+     * @param tree the root node returned by Parser.parse(), or null
+     * @return the arena, whose root() is the copy of tree
+     */
+    static AstArena of(Parser.Node tree) {
+        AstArena arena = new AstArena();
+        if (tree == null) {
+            return arena;
+        }
+        // post-order: a node is pushed twice, and added on the second visit once its children are in
+        Parser.Node[] nodes = new Parser.Node[64];
+        boolean[] visited = new boolean[64];
+        int[] results = new int[64];
+        int depth = 0;
+        int done = 0;
+        nodes[depth] = tree;
+        visited[depth++] = false;
+        while (depth > 0) {
+            Parser.Node node = nodes[--depth];
+            if (node == null) {
+                results = push(results, done++, NONE);
+            } else if (visited[depth] || node.nt.isLeaf()) {
+                int right = node.nt.isLeaf() ? NONE : results[--done];
+                int left = node.nt.isLeaf() ? NONE : results[--done];
+                results = push(results, done++, arena.add(node.nt, left, right, arena.leafValue(node)));
+            } else {
+                if (depth + 3 > nodes.length) {
+                    nodes = Arrays.copyOf(nodes, nodes.length * 2);
+                    visited = Arrays.copyOf(visited, visited.length * 2);
+                }
+                visited[depth] = true;
+                nodes[depth++] = node;
+                visited[depth] = false;
+                nodes[depth++] = node.right;
+                visited[depth] = false;
+                nodes[depth++] = node.left;
+            }
+        }
+        arena.trim();
+        return arena;
+    }
+
+    /**
+     * Shrinks the arrays to the number of nodes, once no more nodes will be added.
+     */
+    void trim() {
+        this.types = Arrays.copyOf(this.types, this.size);
+        this.lefts = Arrays.copyOf(this.lefts, this.size);
+        this.rights = Arrays.copyOf(this.rights, this.size);
+        this.values = Arrays.copyOf(this.values, this.size);
+    }
+
+    private static int[] push(int[] stack, int i, int value) {
+        if (i == stack.length) {
+            stack = Arrays.copyOf(stack, stack.length * 2);
+        }
+        stack[i] = value;
+        return stack;
+    }
+
+    private int leafValue(Parser.Node node) {
+        switch (node.nt) {
+            case nd_Integer:
+                return CodeGenerator.integer(node.value);
+            case nd_Ident:
+            case nd_String:
+                return this.symbols.intern(node.value);
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * Rebuilds the linked tree, for passes that have not been written against the arena. Since
+     * children come before their parents, one pass in index order builds every node after its
+     * children.
+     *
+     * @return the root node, or null for an empty tree
+     */
+    Parser.Node toTree() {
+        Parser.Node[] nodes = new Parser.Node[this.size];
+        for (int i = 0; i < this.size; i++) {
+            Parser.NodeType nt = type(i);
+            String value = nt == Parser.NodeType.nd_Integer ? Integer.toString(value(i)) : nt.isLeaf() ? name(i) : "";
+            nodes[i] = new Parser.Node(nt,
+                    left(i) == NONE ? null : nodes[left(i)],
+                    right(i) == NONE ? null : nodes[right(i)], value);
+        }
+        return this.size == 0 ? null : nodes[root()];
+    }
+
+    /**
+     * Formats the tree in the same .par format as Parser.printAST, walking it with an explicit stack.
+     *
+     * @param sb the StringBuilder to append to
+     * @return sb
+     */
+    StringBuilder printAST(StringBuilder sb) {
+        int[] stack = new int[64];
+        int depth = 0;
+        stack[depth++] = root();
+        while (depth > 0) {
+            int i = stack[--depth];
+            if (i == NONE) {
+                sb.append(";\n");
+                continue;
+            }
+            Parser.NodeType nt = type(i);
+            sb.append(nt);
+            switch (nt) {
+                case nd_Integer:
+                    sb.append(' ').append(value(i)).append(" \n");
+                    break;
+                case nd_Ident:
+                    sb.append(' ').append(name(i)).append(" \n");
+                    break;
+                case nd_String:
+                    sb.append(" \"").append(name(i)).append("\" \n");
+                    break;
+                default:
+                    sb.append('\n');
+                    if (depth + 2 > stack.length) {
+                        stack = Arrays.copyOf(stack, stack.length * 2);
+                    }
+                    stack[depth++] = right(i);
+                    stack[depth++] = left(i);
+            }
+        }
+        return sb;
+    }
+}
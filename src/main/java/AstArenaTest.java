@@ -0,0 +1,59 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AstArenaTest {
+
+    /**
+     * Test to see if the arena prints every resource program exactly like its .par file
+     * @throws IOException
+     */
+    @Test
+    void printASTTest() throws IOException {
+        String[] programs = {"fizzbuzz", "99bottles", "count", "hello", "prime", "test1", "test2"};
+        for (String program : programs) {
+            String source = "src/main/resources/" + program + (program.equals("hello") ? ".t" : ".c");
+            AstArena arena = AstArena.of(new Parser(Lexer.fromFile(source)).parse());
+            String expected = Files.readString(Paths.get("src/main/resources/" + program + ".par"));
+            assertEquals(expected, arena.printAST(new StringBuilder()).toString(), program);
+        }
+    }
+
+    /**
+     * Test to see if literals are stored as ints, names are interned and children come before their parents
+     */
+    @Test
+    void layoutTest() {
+        AstArena arena = AstArena.of(new Parser(new Lexer("x = 12; y = x + x;")).parse());
+        assertEquals(ConstantFolder.countNodes(new Parser(new Lexer("x = 12; y = x + x;")).parse()), arena.size());
+        for (int i = 0; i < arena.size(); i++) {
+            assertTrue(arena.left(i) < i && arena.right(i) < i);
+            if (arena.type(i) == Parser.NodeType.nd_Integer) {
+                assertEquals(12, arena.value(i));
+            }
+        }
+        int add = arena.right(arena.right(arena.root()));
+        assertEquals(Parser.NodeType.nd_Add, arena.type(add));
+        assertEquals(arena.value(arena.left(add)), arena.value(arena.right(add)));
+        assertEquals("x", arena.name(arena.left(add)));
+    }
+
+    /**
+     * Test to see if a tree survives a round trip through the arena, including an empty tree
+     * @throws IOException
+     */
+    @Test
+    void toTreeTest() throws IOException {
+        Parser parser = new Parser(Lexer.fromFile("src/main/resources/99bottles.c"));
+        parser.setEcho(false);
+        Parser.Node tree = parser.parse();
+        String expected = parser.printAST(tree, new StringBuilder());
+        assertEquals(expected, parser.printAST(AstArena.of(tree).toTree(), new StringBuilder()));
+        assertNull(AstArena.of(null).toTree());
+        assertEquals(";\n", AstArena.of(null).printAST(new StringBuilder()).toString());
+    }
+}
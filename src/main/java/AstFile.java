@@ -0,0 +1,136 @@
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+
+/**
+ * A binary form of the .par AST. After the header comes the string table of identifiers and string
+ * literals and the number of entries, then one entry per node in the .par order: the NodeType
+ * ordinal plus one as a varint, or 0 for a missing child. A leaf is followed by the index of its text
+ * in the string table. Integer leaves keep their text too, rather than a value, so that literals such
+ * as 007, or ones too large for an int, come back exactly as the Parser produced them.
+ */
+class AstFile {
+    static final String MAGIC = "MCAS";
+    static final int VERSION = 3;
+    private static final Parser.NodeType[] TYPES = Parser.NodeType.values();
+
+    private AstFile() {
+    }
+
+    /**
+     * Writes a tree.
+     * @param tree the root node, or null for an empty program.
+     * @param out the stream; it is flushed but not closed.
+     * @throws IOException if writing fails.
+     */
+    static void write(Parser.Node tree, OutputStream out) throws IOException {
+        // the string table goes first, so the entries are encoded into memory while it fills up
+        SymbolPool symbols = new SymbolPool();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        BinaryFormat.Output entries = new BinaryFormat.Output(bytes);
+        int[] count = {0};
+        AstWalker.preorder(tree, node -> {
+            try {
+                count[0]++;
+                if (node == null) {
+                    entries.writeVarint(0);
+                    return;
+                }
+                entries.writeVarint(node.nt.ordinal() + 1);
+                if (node.nt.isLeaf()) {
+                    entries.writeVarint(symbols.intern(node.value));
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        entries.flush();
+        BinaryFormat.Output output = new BinaryFormat.Output(out);
+        output.writeHeader(MAGIC, VERSION);
+        output.writeStrings(symbols);
+        output.writeVarint(count[0]);
+        output.flush();
+        bytes.writeTo(out);
+        out.flush();
+    }
+
+    /**
+     * Reads a tree written by write, without recursion. The stream is read through a buffer, so it
+     * may be read past the end of the tree.
+     * @param in the stream, positioned at the header.
+     * @return the root node, or null for an empty program.
+     * @throws IOException if reading fails or the data is not an AST file of this version.
+     */
+    static Parser.Node read(InputStream in) throws IOException {
+        BinaryFormat.Input input = new BinaryFormat.Input(in);
+        input.readHeader(MAGIC, VERSION);
+        SymbolPool symbols = input.readStrings();
+        int count = input.readVarint();
+        // parents still waiting for children, and whether each already has its left one
+        ArrayList<Parser.Node> parents = new ArrayList<>();
+        ArrayList<Boolean> halfDone = new ArrayList<>();
+        Parser.Node root = null;
+        for (int i = 0; i < count; i++) {
+            Parser.Node node = readNode(input, symbols);
+            if (i == 0) {
+                root = node;
+            } else if (parents.isEmpty()) {
+                throw new IOException("Entry " + i + " is outside the tree");
+            } else {
+                int top = parents.size() - 1;
+                if (!halfDone.get(top)) {
+                    parents.get(top).left = node;
+                    halfDone.set(top, true);
+                } else {
+                    parents.get(top).right = node;
+                    parents.remove(top);
+                    halfDone.remove(top);
+                }
+            }
+            if (node != null && !node.nt.isLeaf()) {
+                parents.add(node);
+                halfDone.add(false);
+            }
+        }
+        if (!parents.isEmpty() || count == 0) {
+            throw new IOException("AST ends in the middle of a tree");
+        }
+        return root;
+    }
+
+    private static Parser.Node readNode(BinaryFormat.Input in, SymbolPool symbols) throws IOException {
+        int tag = in.readVarint();
+        if (tag == 0) {
+            return null;
+        }
+        if (tag > TYPES.length) {
+            throw new IOException("Bad node type " + (tag - 1));
+        }
+        Parser.NodeType nt = TYPES[tag - 1];
+        if (nt.isLeaf()) {
+            int index = in.readVarint();
+            if (index >= symbols.size()) {
+                throw new IOException("Bad string index " + index);
+            }
+            return Parser.Node.make_leaf(nt, symbols.get(index));
+        }
+        return Parser.Node.make_node(nt, null, null);
+    }
+
+    static void writeFile(Parser.Node tree, String file) throws IOException {
+        try (OutputStream out = new FileOutputStream(file)) {
+            write(tree, out);
+        }
+    }
+
+    static Parser.Node readFile(String file) throws IOException {
+        try (InputStream in = new FileInputStream(file)) {
+            return read(in);
+        }
+    }
+}
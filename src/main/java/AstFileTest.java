@@ -0,0 +1,57 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AstFileTest {
+
+    private static byte[] write(Parser.Node tree) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        AstFile.write(tree, out);
+        return out.toByteArray();
+    }
+
+    /**
+     * Test to see if every resource program survives a round trip and is smaller than its .par text
+     * @throws IOException
+     */
+    @Test
+    void roundTripTest() throws IOException {
+        String[] programs = {"fizzbuzz.c", "99bottles.c", "count.c", "hello.t", "loop.py", "prime.c", "test1.c", "test2.c"};
+        for (String program : programs) {
+            Parser parser = new Parser(Lexer.fromFile("src/main/resources/" + program));
+            parser.setEcho(false);
+            Parser.Node tree = parser.parse();
+            String expected = parser.printAST(tree, new StringBuilder());
+            byte[] bytes = write(tree);
+            assertEquals(expected, parser.printAST(AstFile.read(new ByteArrayInputStream(bytes)), new StringBuilder()), program);
+            assertTrue(bytes.length < expected.length(), program);
+        }
+    }
+
+    /**
+     * Test to see if an empty tree, unusual literals and truncated files are handled
+     * @throws IOException
+     */
+    @Test
+    void edgeTest() throws IOException {
+        assertNull(AstFile.read(new ByteArrayInputStream(write(null))));
+
+        Parser.Node negative = Parser.Node.make_node(Parser.NodeType.nd_Prti, Parser.Node.make_leaf(Parser.NodeType.nd_Integer, "-5"));
+        assertEquals("-5", AstFile.read(new ByteArrayInputStream(write(negative))).left.value);
+
+        // literals keep their text, even when it is not how the value would print or does not fit in an int
+        Parser.Node literals = new Parser(new Lexer("x = 007; y = 99999999999;")).parse();
+        Parser.Node read = AstFile.read(new ByteArrayInputStream(write(literals)));
+        assertEquals("007", read.left.right.right.value);
+        assertEquals("99999999999", read.right.right.value);
+
+        byte[] bytes = write(new Parser(new Lexer("x = 1 + 2;")).parse());
+        byte[] truncated = Arrays.copyOf(bytes, bytes.length - 1);
+        assertThrows(IOException.class, () -> AstFile.read(new ByteArrayInputStream(truncated)));
+    }
+}
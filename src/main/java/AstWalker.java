@@ -0,0 +1,67 @@
+import java.util.ArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Walks an AST with an explicit stack instead of recursion, so the depth of a tree, which for a
+ * left-leaning Sequence chain is the number of statements, never limits what can be traversed.
+ */
+class AstWalker {
+
+    private AstWalker() {
+    }
+
+    /**
+     * Visits every node before its children, left child first. This is the order of the .par format:
+     * the children of a leaf are not visited, and a missing child of any other node is visited as null.
+     * @param root the root of the tree, or null for an empty tree.
+     * @param visitor called once per node.
+     */
+    static void preorder(Parser.Node root, Consumer<Parser.Node> visitor) {
+        ArrayList<Parser.Node> stack = new ArrayList<>();
+        stack.add(root);
+        while (!stack.isEmpty()) {
+            Parser.Node node = stack.remove(stack.size() - 1);
+            visitor.accept(node);
+            if (node != null && !node.nt.isLeaf()) {
+                stack.add(node.right);
+                stack.add(node.left);
+            }
+        }
+    }
+
+    /**
+     * Visits every node after its children, left child first. Missing children are skipped.
+     * @param root the root of the tree, or null for an empty tree.
+     * @param visitor called once per node.
+     */
+    static void postorder(Parser.Node root, Consumer<Parser.Node> visitor) {
+        ArrayList<Parser.Node> stack = new ArrayList<>();
+        Parser.Node last = null;
+        Parser.Node node = root;
+        while (node != null || !stack.isEmpty()) {
+            if (node != null) {
+                stack.add(node);
+                node = node.left;
+                continue;
+            }
+            Parser.Node top = stack.get(stack.size() - 1);
+            if (top.right != null && top.right != last) {
+                node = top.right;
+            } else {
+                visitor.accept(top);
+                last = stack.remove(stack.size() - 1);
+            }
+        }
+    }
+
+    /**
+     * Counts the nodes of a tree.
+     * @param root the root of the tree, or null for an empty tree.
+     * @return the number of nodes.
+     */
+    static int count(Parser.Node root) {
+        int[] count = {0};
+        postorder(root, node -> count[0]++);
+        return count[0];
+    }
+}
@@ -0,0 +1,35 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AstWalkerTest {
+
+    private static Parser.Node parse(String source) {
+        return new Parser(new Lexer(source)).parse();
+    }
+
+    /**
+     * Test to see if preorder visits parents first and missing children as null
+     */
+    @Test
+    void preorderTest() {
+        List<String> visited = new ArrayList<>();
+        AstWalker.preorder(parse("x = 1 + 2;"), node -> visited.add(node == null ? ";" : node.nt.toString()));
+        assertEquals(List.of("Sequence", ";", "Assign", "Identifier", "Add", "Integer", "Integer"), visited);
+    }
+
+    /**
+     * Test to see if postorder visits children first and skips missing children
+     */
+    @Test
+    void postorderTest() {
+        List<String> visited = new ArrayList<>();
+        AstWalker.postorder(parse("x = 1 + 2;"), node -> visited.add(node.nt.toString()));
+        assertEquals(List.of("Identifier", "Integer", "Integer", "Add", "Assign", "Sequence"), visited);
+        assertEquals(6, AstWalker.count(parse("x = 1 + 2;")));
+        assertEquals(0, AstWalker.count(null));
+    }
+}
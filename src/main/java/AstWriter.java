@@ -0,0 +1,114 @@
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+
+/**
+ * Writes an AST in the .par text format to any Appendable, such as a buffered Writer or a
+ * StringBuilder, without building the whole text in memory first and without the per-node console
+ * printing of Parser.printAST. AstFile holds the binary form of the same tree.
+ */
+class AstWriter {
+    static final int BUFFER_SIZE = 1 << 16;
+
+    private final Appendable out;
+    private Appendable echo;
+
+    /**
+     * Creates a writer for the .par text format.
+     * @param out where the text goes; pass a buffered Writer when writing to a file or stream.
+     */
+    AstWriter(Appendable out) {
+        this.out = out;
+        this.echo = null;
+    }
+
+    /**
+     * Sets where a console copy of the tree goes, in the padded layout Parser.printAST prints to
+     * System.out. Echo is off unless this is called.
+     * @param echo the console to copy to, or null to turn echo off.
+     */
+    void setEcho(Appendable echo) {
+        this.echo = echo;
+    }
+
+    /**
+     * Writes a tree in the .par format.
+     * @param tree the root node, or null for an empty program.
+     * @throws IOException if writing fails.
+     */
+    void write(Parser.Node tree) throws IOException {
+        ArrayList<Parser.Node> stack = new ArrayList<>();
+        stack.add(tree);
+        while (!stack.isEmpty()) {
+            Parser.Node node = stack.remove(stack.size() - 1);
+            if (node == null) {
+                this.out.append(";\n");
+                if (this.echo != null) {
+                    this.echo.append(";\n");
+                }
+                continue;
+            }
+            String name = node.nt.toString();
+            this.out.append(name);
+            if (this.echo != null) {
+                this.echo.append(name);
+                for (int i = name.length(); i < 14; i++) {
+                    this.echo.append(' ');
+                }
+            }
+            if (node.nt.isLeaf()) {
+                leaf(this.out, node);
+                if (this.echo != null) {
+                    leaf(this.echo, node);
+                }
+            } else {
+                this.out.append('\n');
+                if (this.echo != null) {
+                    this.echo.append('\n');
+                }
+                stack.add(node.right);
+                stack.add(node.left);
+            }
+        }
+    }
+
+    private static void leaf(Appendable out, Parser.Node node) throws IOException {
+        out.append(' ');
+        if (node.nt == Parser.NodeType.nd_String) {
+            out.append('"').append(node.value).append('"');
+        } else {
+            out.append(node.value);
+        }
+        out.append(" \n");
+    }
+
+    /**
+     * Writes a tree in the .par format to an OutputStream through a 64 KB buffer, in UTF-8, the
+     * encoding sources are read in, so string literals come back out byte for byte.
+     * @param tree the root node, or null for an empty program.
+     * @param out the stream; it is flushed but not closed.
+     * @throws IOException if writing fails.
+     */
+    static void write(Parser.Node tree, OutputStream out) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), BUFFER_SIZE);
+        new AstWriter(writer).write(tree);
+        writer.flush();
+    }
+
+    /**
+     * Writes a tree to a .par file.
+     * @param tree the root node, or null for an empty program.
+     * @param file the path of the file.
+     * @throws IOException if writing fails.
+     */
+    static void writeFile(Parser.Node tree, String file) throws IOException {
+        try (OutputStream out = new FileOutputStream(file)) {
+            write(tree, out);
+        }
+    }
+}
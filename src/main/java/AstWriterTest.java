@@ -0,0 +1,44 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AstWriterTest {
+
+    /**
+     * Test to see if the streamed output is byte-identical to the solution files
+     * @throws IOException
+     */
+    @Test
+    void solutionFilesTest() throws IOException {
+        String[] programs = {"99bottles", "fizzbuzz", "prime"};
+        for (String program : programs) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            AstWriter.write(new Parser(Lexer.fromFile("src/main/resources/" + program + ".c")).parse(), out);
+            byte[] expected = Files.readAllBytes(Paths.get("SolutionFiles/" + program + ".par"));
+            assertArrayEquals(expected, out.toByteArray(), program);
+        }
+    }
+
+    /**
+     * Test to see if the console copy is only written when asked for, in the padded layout
+     * @throws IOException
+     */
+    @Test
+    void echoTest() throws IOException {
+        Parser.Node tree = new Parser(new Lexer("x = 1;")).parse();
+        StringBuilder text = new StringBuilder();
+        StringBuilder console = new StringBuilder();
+        AstWriter writer = new AstWriter(text);
+        writer.write(tree);
+        assertEquals("Sequence\n;\nAssign\nIdentifier x \nInteger 1 \n", text.toString());
+
+        writer.setEcho(console);
+        writer.write(tree);
+        assertEquals("Sequence      \n;\nAssign        \nIdentifier     x \nInteger        1 \n", console.toString());
+    }
+}
@@ -0,0 +1,307 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+/**
+ * Lexes and parses many source files in parallel. Every file gets its own Lexer and Parser, so no
+ * symbol table is shared between files, and results come back in the order the files were given.
+ */
+class BatchCompiler {
+    static final String[] SOURCE_EXTENSIONS = {".c", ".t", ".py"};
+
+    private final ExecutorService executor;
+    private final CompileCache cache;
+    private CompileStats stats;
+
+    /**
+     * The outcome of compiling one file: either the AST in .par format or every error found in it.
+     */
+    static class Result {
+        public final Path file;
+        public final String ast;
+        public final String error;
+        public final List<Diagnostic> diagnostics;
+
+        Result(Path file, String ast, List<Diagnostic> diagnostics) {
+            this.file = file;
+            this.ast = ast;
+            this.diagnostics = diagnostics;
+            if (diagnostics.isEmpty()) {
+                this.error = null;
+            } else {
+                StringBuilder sb = new StringBuilder();
+                for (Diagnostic diagnostic : diagnostics) {
+                    if (sb.length() > 0) {
+                        sb.append("\n");
+                    }
+                    sb.append(diagnostic);
+                }
+                this.error = sb.toString();
+            }
+        }
+
+        boolean ok() {
+            return this.error == null;
+        }
+    }
+
+    /**
+     * Creates a batch compiler that runs its files on the given executor.
+     * @param executor the executor to compile on, for example a ForkJoinPool or a virtual thread executor.
+     */
+    BatchCompiler(ExecutorService executor) {
+        this(executor, null);
+    }
+
+    /**
+     * Creates a batch compiler that looks its files up in a compile cache first.
+     * @param executor the executor to compile on.
+     * @param cache the cache, which may be shared with other workers, or null for none.
+     */
+    BatchCompiler(ExecutorService executor, CompileCache cache) {
+        this.executor = executor;
+        this.cache = cache;
+        this.stats = new CompileStats(false);
+    }
+
+    /**
+     * Sets where the phases of each file are measured. Nothing is measured unless this is called.
+     * @param stats the collector, shared by all worker threads.
+     */
+    void setStats(CompileStats stats) {
+        this.stats = stats;
+    }
+
+    /**
+     * Compiles a single file to its AST text, collecting all of its errors.
+     * @param file the source file.
+     * @return the result for the file.
+     */
+    static Result compileFile(Path file) {
+        return compileFile(file, null, new CompileStats(false));
+    }
+
+    /**
+     * Compiles a single file through a compile cache. A file with errors is not cached, so it is
+     * compiled again with recovery on to report all of them.
+     * @param file the source file.
+     * @param cache the cache, or null to always compile.
+     * @return the result for the file.
+     */
+    static Result compileFile(Path file, CompileCache cache) {
+        return compileFile(file, cache, new CompileStats(false));
+    }
+
+    /**
+     * Compiles a single file, measuring the parse phase, which includes lexing, and the printing of
+     * the tree.
+     * @param file the source file.
+     * @param cache the cache, or null to always compile.
+     * @param stats where the phases are measured.
+     * @return the result for the file.
+     */
+    static Result compileFile(Path file, CompileCache cache, CompileStats stats) {
+        String name = file.toString();
+        Parser.Node tree;
+        try (CompileStats.Span span = stats.start(name, CompileStats.Phase.PARSE)) {
+            span.bytesRead(Files.size(file));
+            if (cache != null) {
+                CompileCache.Entry entry = cache.compile(file);
+                tree = entry.tree;
+                span.tokens(entry.tokens.size());
+            } else {
+                int[] count = {0};
+                Parser parser = new Parser(CompileStats.counting(Lexer.fromFile(name), count));
+                parser.setEcho(false);
+                parser.setRecovery(true);
+                tree = parser.parse();
+                span.tokens(count[0]);
+                if (parser.hasErrors()) {
+                    return new Result(file, null, parser.getDiagnostics());
+                }
+            }
+            if (stats.enabled()) {
+                span.nodes(AstWalker.count(tree));
+            }
+        } catch (IOException e) {
+            return failure(file, "Exception: " + e.getMessage());
+        } catch (CompileException e) {
+            // a cached compile stops at the first error; compile again to report all of them
+            return cache != null ? compileFile(file) : new Result(file, null, List.of(Diagnostic.of(e)));
+        }
+        try (CompileStats.Span span = stats.start(name, CompileStats.Phase.PRINT)) {
+            StringBuilder ast = new StringBuilder();
+            new AstWriter(ast).write(tree);
+            span.bytesWritten(ast.length());
+            return new Result(file, ast.toString(), List.of());
+        } catch (IOException e) {
+            return failure(file, "Exception: " + e.getMessage());
+        }
+    }
+
+    private static Result failure(Path file, String message) {
+        return new Result(file, null, List.of(new Diagnostic(-1, -1, message)));
+    }
+
+    /**
+     * Compiles all files in parallel. A file that fails does not stop the others, and every error
+     * in a failing file is reported.
+     * @param files the files to compile.
+     * @return one result per file, in the same order as the files.
+     */
+    List<Result> compile(List<Path> files) {
+        List<Future<Result>> futures = new ArrayList<>();
+        for (Path file : files) {
+            futures.add(this.executor.submit(() -> compileFile(file, this.cache, this.stats)));
+        }
+        List<Result> results = new ArrayList<>();
+        for (int i = 0; i < files.size(); i++) {
+            try {
+                results.add(futures.get(i).get());
+            } catch (ExecutionException e) {
+                results.add(failure(files.get(i), "Exception: " + e.getCause()));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                results.add(failure(files.get(i), "Interrupted"));
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Expands the command line arguments into a list of source files. A directory stands for the
+     * source files directly inside it, sorted by name.
+     * @param args the files and directories.
+     * @return the source files.
+     */
+    static List<Path> collectFiles(List<String> args) throws IOException {
+        List<Path> files = new ArrayList<>();
+        for (String arg : args) {
+            Path path = Paths.get(arg);
+            if (Files.isDirectory(path)) {
+                try (Stream<Path> entries = Files.list(path)) {
+                    entries.filter(Files::isRegularFile)
+                            .filter(BatchCompiler::isSource)
+                            .sorted()
+                            .forEach(files::add);
+                }
+            } else {
+                files.add(path);
+            }
+        }
+        return files;
+    }
+
+    private static boolean isSource(Path file) {
+        String name = file.getFileName().toString();
+        for (String extension : SOURCE_EXTENSIONS) {
+            if (name.endsWith(extension)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the .par file written for a source file.
+     * @param file the source file.
+     * @param outputDir the directory to write to, or null for the source file's own directory.
+     * @return the output path.
+     */
+    static Path outputFile(Path file, Path outputDir) {
+        String name = file.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        String par = (dot > 0 ? name.substring(0, dot) : name) + ".par";
+        Path dir = outputDir != null ? outputDir : file.toAbsolutePath().getParent();
+        return dir.resolve(par);
+    }
+
+    /**
+     * Compiles the files and directories given on the command line and writes a .par file for each.
+     * Options: --threads N for a ForkJoinPool of N threads (default: one per processor),
+     * --virtual for one virtual thread per file, --out DIR to write the .par files to DIR,
+     * --cache DIR to reuse the results of earlier builds kept in DIR, which several builds may share,
+     * --cache-size MB to cap the cache (default 256), and --stats or --stats-json to print the time,
+     * counts and allocation of each phase and the slowest files.
+     * @param args command line arguments.
+     */
+    public static void main(String[] args) {
+        int threads = Runtime.getRuntime().availableProcessors();
+        boolean virtual = false;
+        Path outputDir = null;
+        Path cacheDir = null;
+        long cacheSize = CompileCache.DEFAULT_MAX_BYTES;
+        List<String> inputs = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--threads":
+                    threads = Integer.parseInt(args[++i]);
+                    break;
+                case "--virtual":
+                    virtual = true;
+                    break;
+                case "--out":
+                    outputDir = Paths.get(args[++i]);
+                    break;
+                case "--cache":
+                    cacheDir = Paths.get(args[++i]);
+                    break;
+                case "--cache-size":
+                    cacheSize = Long.parseLong(args[++i]) << 20;
+                    break;
+                case "--stats":
+                case "--stats-json":
+                    break;
+                default:
+                    inputs.add(args[i]);
+            }
+        }
+        if (inputs.isEmpty()) {
+            System.out.println("Usage: BatchCompiler [--threads N | --virtual] [--out DIR] [--cache DIR [--cache-size MB]] [--stats | --stats-json] FILE_OR_DIR...");
+            System.exit(1);
+        }
+
+        CompileStats stats = CompileStats.forArgs(args);
+        ExecutorService executor = virtual ? Executors.newVirtualThreadPerTaskExecutor() : new ForkJoinPool(threads);
+        int failed = 0;
+        try {
+            CompileCache cache = cacheDir != null ? new CompileCache(cacheDir, cacheSize) : null;
+            BatchCompiler compiler = new BatchCompiler(executor, cache);
+            compiler.setStats(stats);
+            List<Result> results = compiler.compile(collectFiles(inputs));
+            for (Result result : results) {
+                if (result.ok()) {
+                    try (CompileStats.Span span = stats.start(result.file.toString(), CompileStats.Phase.WRITE)) {
+                        Files.writeString(outputFile(result.file, outputDir), result.ast);
+                        span.bytesWritten(result.ast.length());
+                    }
+                    System.out.println(result.file + ": ok");
+                } else {
+                    failed++;
+                    for (Diagnostic diagnostic : result.diagnostics) {
+                        System.out.println(result.file + ": " + diagnostic);
+                    }
+                }
+            }
+            if (cache != null) {
+                System.out.println(cache);
+            }
+            stats.print();
+        } catch (IOException e) {
+            System.out.println("Exception: " + e.getMessage());
+            System.exit(1);
+        } finally {
+            executor.shutdown();
+        }
+        System.exit(failed == 0 ? 0 : 1);
+    }
+}
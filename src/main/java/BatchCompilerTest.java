@@ -0,0 +1,60 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BatchCompilerTest {
+
+    /**
+     * Test to see if files compiled in parallel match the expected output and come back in order
+     * @throws IOException
+     */
+    @Test
+    void compileTest() throws IOException {
+        String[] programs = {"99bottles", "fizzbuzz", "prime"};
+        List<Path> files = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            for (String program : programs) {
+                files.add(Paths.get("src/main/resources/" + program + ".c"));
+            }
+        }
+        ForkJoinPool pool = new ForkJoinPool(4);
+        List<BatchCompiler.Result> results = new BatchCompiler(pool).compile(files);
+        pool.shutdown();
+
+        assertEquals(files.size(), results.size());
+        for (int i = 0; i < files.size(); i++) {
+            BatchCompiler.Result result = results.get(i);
+            assertEquals(files.get(i), result.file);
+            assertTrue(result.ok(), String.valueOf(result.error));
+            String expected = Files.readString(Paths.get("SolutionFiles/" + programs[i % programs.length] + ".par"));
+            assertEquals(expected, result.ast);
+        }
+    }
+
+    /**
+     * Test to see if a file with an error is reported without stopping the rest of the batch
+     * @throws IOException
+     */
+    @Test
+    void errorTest() throws IOException {
+        Path bad = Files.createTempFile("bad", ".c");
+        Files.writeString(bad, "x = y;\n");
+        List<Path> files = List.of(bad, Paths.get("src/main/resources/prime.c"));
+        ForkJoinPool pool = new ForkJoinPool(2);
+        List<BatchCompiler.Result> results = new BatchCompiler(pool).compile(files);
+        pool.shutdown();
+        Files.delete(bad);
+
+        assertFalse(results.get(0).ok());
+        assertEquals("Identifier not found in symbol table. in line 1, pos 5", results.get(0).error);
+        assertTrue(results.get(1).ok());
+    }
+}
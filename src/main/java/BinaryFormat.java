@@ -0,0 +1,188 @@
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Helpers shared by the binary token and AST files. Every file starts with a four byte magic
+ * number and a format version, followed by a string table. Numbers are written as unsigned LEB128
+ * varints, so the small line numbers, positions and table indexes that make up most of a file take a
+ * single byte each. Strings are stored in UTF-8, the encoding sources are read in, after their length
+ * in bytes. Input and Output buffer the stream themselves, since a varint is read and written
+ * one byte at a time and the buffered streams of java.io lock on every call.
+ */
+class BinaryFormat {
+
+    private BinaryFormat() {
+    }
+
+    /**
+     * A buffered, unsynchronized writer of bytes and varints.
+     */
+    static class Output {
+        private final OutputStream out;
+        private final byte[] buffer;
+        private int size;
+
+        Output(OutputStream out) {
+            this.out = out;
+            this.buffer = new byte[AstWriter.BUFFER_SIZE];
+            this.size = 0;
+        }
+
+        void writeByte(int b) throws IOException {
+            if (this.size == this.buffer.length) {
+                flushBuffer();
+            }
+            this.buffer[this.size++] = (byte) b;
+        }
+
+        void writeVarint(int value) throws IOException {
+            if (this.size + 5 > this.buffer.length) {
+                flushBuffer();
+            }
+            while ((value & ~0x7F) != 0) {
+                this.buffer[this.size++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            this.buffer[this.size++] = (byte) value;
+        }
+
+        /**
+         * Writes a signed value so that numbers near zero, negative or not, stay short.
+         */
+        void writeSignedVarint(int value) throws IOException {
+            writeVarint((value << 1) ^ (value >> 31));
+        }
+
+        /**
+         * Writes the magic number and version that start a file.
+         */
+        void writeHeader(String magic, int version) throws IOException {
+            for (byte b : magic.getBytes(StandardCharsets.ISO_8859_1)) {
+                writeByte(b);
+            }
+            writeVarint(version);
+        }
+
+        /**
+         * Writes the entries of a SymbolPool in index order, so a reader interning them in the same
+         * order gets the same indexes back.
+         */
+        void writeStrings(SymbolPool symbols) throws IOException {
+            writeVarint(symbols.size());
+            for (int i = 0; i < symbols.size(); i++) {
+                byte[] symbol = symbols.get(i).getBytes(StandardCharsets.UTF_8);
+                writeVarint(symbol.length);
+                for (byte b : symbol) {
+                    writeByte(b);
+                }
+            }
+        }
+
+        private void flushBuffer() throws IOException {
+            this.out.write(this.buffer, 0, this.size);
+            this.size = 0;
+        }
+
+        /**
+         * Writes out the buffer and flushes the stream, without closing it.
+         */
+        void flush() throws IOException {
+            flushBuffer();
+            this.out.flush();
+        }
+    }
+
+    /**
+     * A buffered, unsynchronized reader of bytes and varints. It reads ahead, so the stream is left
+     * positioned anywhere past the last value read.
+     */
+    static class Input {
+        private final InputStream in;
+        private final byte[] buffer;
+        private int position;
+        private int limit;
+
+        Input(InputStream in) {
+            this.in = in;
+            this.buffer = new byte[AstWriter.BUFFER_SIZE];
+            this.position = 0;
+            this.limit = 0;
+        }
+
+        int readByte() throws IOException {
+            if (this.position == this.limit) {
+                fill();
+            }
+            return this.buffer[this.position++] & 0xFF;
+        }
+
+        int readVarint() throws IOException {
+            int value = 0;
+            for (int shift = 0; shift < 35; shift += 7) {
+                int b = readByte();
+                value |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IOException("Varint is too long");
+        }
+
+        int readSignedVarint() throws IOException {
+            int value = readVarint();
+            return (value >>> 1) ^ -(value & 1);
+        }
+
+        /**
+         * Reads and checks the start of a file.
+         * @param magic the magic number the file must start with.
+         * @param version the only version this reader understands.
+         * @throws IOException if the file is of another kind or version.
+         */
+        void readHeader(String magic, int version) throws IOException {
+            for (byte b : magic.getBytes(StandardCharsets.ISO_8859_1)) {
+                if (readByte() != (b & 0xFF)) {
+                    throw new IOException("Not a " + magic + " file");
+                }
+            }
+            int found = readVarint();
+            if (found != version) {
+                throw new IOException("Unsupported " + magic + " version " + found + ", expected " + version);
+            }
+        }
+
+        /**
+         * Reads a string table written by Output.writeStrings into a new SymbolPool.
+         */
+        SymbolPool readStrings() throws IOException {
+            SymbolPool symbols = new SymbolPool();
+            int count = readVarint();
+            byte[] bytes = new byte[64];
+            for (int i = 0; i < count; i++) {
+                int length = readVarint();
+                if (length > bytes.length) {
+                    bytes = new byte[Math.max(length, bytes.length * 2)];
+                }
+                for (int j = 0; j < length; j++) {
+                    bytes[j] = (byte) readByte();
+                }
+                if (symbols.intern(new String(bytes, 0, length, StandardCharsets.UTF_8)) != i) {
+                    throw new IOException("Duplicate string in string table at " + i);
+                }
+            }
+            return symbols;
+        }
+
+        private void fill() throws IOException {
+            int n = this.in.read(this.buffer);
+            if (n <= 0) {
+                throw new EOFException("Unexpected end of file");
+            }
+            this.position = 0;
+            this.limit = n;
+        }
+    }
+}
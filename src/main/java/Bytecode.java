@@ -0,0 +1,96 @@
+/**
+ * A program compiled by CodeGenerator: the instruction bytes, the string pool, and the names of the
+ * variables in data slot order.
+ */
+class Bytecode {
+    public final byte[] code;
+    public final String[] strings;
+    public final String[] variables;
+
+    Bytecode(byte[] code, String[] strings, String[] variables) {
+        this.code = code;
+        this.strings = strings;
+        this.variables = variables;
+    }
+
+    /**
+     * Reads the four byte little-endian operand that starts at an address.
+     *
+     * @param address the address of the operand
+     * @return the operand
+     */
+    int operand(int address) {
+        return (this.code[address] & 0xff)
+                | (this.code[address + 1] & 0xff) << 8
+                | (this.code[address + 2] & 0xff) << 16
+                | this.code[address + 3] << 24;
+    }
+
+    /**
+     * Formats the program as a readable assembly listing: a header with the data size and string
+     * count, the string pool, then one line per instruction. Jumps show their offset relative to the
+     * operand and the address they go to.
+     *
+     * @return the listing
+     */
+    String listing() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("Datasize: ").append(this.variables.length).append(" Strings: ").append(this.strings.length).append("\n");
+        for (String s : this.strings) {
+            sb.append('"').append(escape(s)).append("\"\n");
+        }
+        int pc = 0;
+        while (pc < this.code.length) {
+            Opcode op = Opcode.VALUES[this.code[pc]];
+            sb.append(String.format(op.hasOperand() ? "%5d %-6s" : "%5d %s", pc, op));
+            if (op.hasOperand()) {
+                int arg = operand(pc + 1);
+                switch (op) {
+                    case FETCH:
+                    case STORE:
+                        sb.append(" [").append(arg).append("]");
+                        break;
+                    case JMP:
+                    case JZ:
+                        sb.append(String.format(" (%d) %d", arg, pc + 1 + arg));
+                        break;
+                    default:
+                        sb.append(" ").append(arg);
+                }
+            }
+            sb.append("\n");
+            pc += op.size();
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Turns the escape sequences the Lexer leaves in string literals into the characters they stand for.
+     *
+     * @param literal the text between the quotes
+     * @return the string the program prints
+     */
+    static String unescape(String literal) {
+        if (literal.indexOf('\\') < 0) {
+            return literal;
+        }
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < literal.length(); i++) {
+            char c = literal.charAt(i);
+            if (c == '\\' && i + 1 < literal.length()) {
+                char next = literal.charAt(++i);
+                sb.append(next == 'n' ? '\n' : next);
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Writes newlines and backslashes back as escape sequences for the listing.
+     */
+    static String escape(String s) {
+        return s.replace("\\", "\\\\").replace("\n", "\\n");
+    }
+}
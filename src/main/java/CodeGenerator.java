@@ -0,0 +1,253 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Lowers the AST built by the Parser to stack machine bytecode. Variables get data slots and string
+ * literals get string pool entries in the order they first appear in the program.
+ */
+class CodeGenerator {
+    private byte[] code;
+    private int size;
+    private final Map<String, Integer> slots;
+    private final List<String> variables;
+    private final Map<String, Integer> stringIndexes;
+    private final List<String> strings;
+
+    CodeGenerator() {
+        this.code = new byte[256];
+        this.size = 0;
+        this.slots = new HashMap<>();
+        this.variables = new ArrayList<>();
+        this.stringIndexes = new HashMap<>();
+        this.strings = new ArrayList<>();
+    }
+
+    /**
+     * Compiles an AST.
+     * @param tree the root node returned by Parser.parse().
+     * @return the compiled program.
+     */
+    static Bytecode generate(Parser.Node tree) {
+        CodeGenerator generator = new CodeGenerator();
+        generator.gen(tree);
+        generator.emit(Opcode.HALT);
+        return generator.finish();
+    }
+
+    /**
+     * Packages the emitted code with the variable and string tables.
+     * @return the compiled program.
+     */
+    Bytecode finish() {
+        return new Bytecode(Arrays.copyOf(this.code, this.size),
+                this.strings.toArray(new String[0]), this.variables.toArray(new String[0]));
+    }
+
+    /**
+     * Emits the code for a node and everything below it.
+     * @param node the node to compile, or null for an empty statement.
+     */
+    void gen(Parser.Node node) {
+        if (node == null) {
+            return;
+        }
+        int hole;
+        switch (node.nt) {
+            case nd_Sequence:
+                // walk the left-leaning chain with a list instead of recursing once per statement
+                List<Parser.Node> statements = new ArrayList<>();
+                Parser.Node n = node;
+                while (n != null && n.nt == Parser.NodeType.nd_Sequence) {
+                    statements.add(n.right);
+                    n = n.left;
+                }
+                gen(n);
+                for (int i = statements.size() - 1; i >= 0; i--) {
+                    gen(statements.get(i));
+                }
+                break;
+            case nd_Ident:
+                emit(Opcode.FETCH, slot(node.value));
+                break;
+            case nd_Integer:
+                emit(Opcode.PUSH, integer(node.value));
+                break;
+            case nd_String:
+                emit(Opcode.PUSH, string(node.value));
+                break;
+            case nd_Assign:
+                gen(node.right);
+                emit(Opcode.STORE, slot(node.left.value));
+                break;
+            case nd_If:
+                gen(node.left);
+                hole = emitJump(Opcode.JZ);
+                gen(node.right.left);
+                if (node.right.right != null) {
+                    int end = emitJump(Opcode.JMP);
+                    patch(hole, this.size);
+                    gen(node.right.right);
+                    hole = end;
+                }
+                patch(hole, this.size);
+                break;
+            case nd_While:
+                int top = this.size;
+                gen(node.left);
+                hole = emitJump(Opcode.JZ);
+                gen(node.right);
+                patch(emitJump(Opcode.JMP), top);
+                patch(hole, this.size);
+                break;
+            case nd_Prtc:
+                gen(node.left);
+                emit(Opcode.PRTC);
+                break;
+            case nd_Prts:
+                gen(node.left);
+                emit(Opcode.PRTS);
+                break;
+            case nd_Prti:
+                gen(node.left);
+                emit(Opcode.PRTI);
+                break;
+            case nd_Negate:
+                gen(node.left);
+                emit(Opcode.NEG);
+                break;
+            case nd_Not:
+                gen(node.left);
+                emit(Opcode.NOT);
+                break;
+            default:
+                gen(node.left);
+                gen(node.right);
+                emit(binary(node.nt));
+        }
+    }
+
+    /**
+     * Maps a binary operator node to its instruction.
+     * @param nt the node type.
+     * @return the instruction.
+     */
+    static Opcode binary(Parser.NodeType nt) {
+        switch (nt) {
+            case nd_Mul: return Opcode.MUL;
+            case nd_Div: return Opcode.DIV;
+            case nd_Mod: return Opcode.MOD;
+            case nd_Add: return Opcode.ADD;
+            case nd_Sub: return Opcode.SUB;
+            case nd_Lss: return Opcode.LT;
+            case nd_Leq: return Opcode.LE;
+            case nd_Gtr: return Opcode.GT;
+            case nd_Geq: return Opcode.GE;
+            case nd_Eql: return Opcode.EQ;
+            case nd_Neq: return Opcode.NE;
+            case nd_And: return Opcode.AND;
+            case nd_Or: return Opcode.OR;
+            default:
+                Parser.error(-1, -1, "Cannot generate code for " + nt.name());
+                return null;
+        }
+    }
+
+    /**
+     * Returns the data slot of a variable, assigning the next free one on first use.
+     */
+    int slot(String name) {
+        Integer slot = this.slots.get(name);
+        if (slot == null) {
+            slot = this.variables.size();
+            this.slots.put(name, slot);
+            this.variables.add(name);
+        }
+        return slot;
+    }
+
+    /**
+     * Returns the string pool index of a literal, adding it on first use.
+     */
+    int string(String literal) {
+        Integer index = this.stringIndexes.get(literal);
+        if (index == null) {
+            index = this.strings.size();
+            this.stringIndexes.put(literal, index);
+            this.strings.add(Bytecode.unescape(literal));
+        }
+        return index;
+    }
+
+    static int integer(String value) {
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            Parser.error(-1, -1, "Integer literal out of range: " + value);
+            return 0;
+        }
+    }
+
+    void emit(Opcode op) {
+        ensure(1);
+        this.code[this.size++] = (byte) op.ordinal();
+    }
+
+    void emit(Opcode op, int operand) {
+        emit(op);
+        ensure(4);
+        put(this.size, operand);
+        this.size += 4;
+    }
+
+    /**
+     * Emits a jump whose target is not known yet.
+     * @return the address of the operand to patch.
+     */
+    int emitJump(Opcode op) {
+        emit(op, 0);
+        return this.size - 4;
+    }
+
+    /**
+     * Points the jump whose operand is at hole to a target address.
+     */
+    void patch(int hole, int target) {
+        put(hole, target - hole);
+    }
+
+    private void put(int address, int value) {
+        this.code[address] = (byte) value;
+        this.code[address + 1] = (byte) (value >> 8);
+        this.code[address + 2] = (byte) (value >> 16);
+        this.code[address + 3] = (byte) (value >> 24);
+    }
+
+    private void ensure(int bytes) {
+        if (this.size + bytes > this.code.length) {
+            this.code = Arrays.copyOf(this.code, Math.max(this.code.length * 2, this.size + bytes));
+        }
+    }
+
+    /**
+     * Compiles each source file given on the command line and prints its assembly listing.
+     * @param args the source files.
+     */
+    public static void main(String[] args) {
+        try {
+            for (String file : args) {
+                Parser p = new Parser(Lexer.fromFile(file));
+                System.out.print(generate(p.parse()).listing());
+            }
+        } catch (IOException e) {
+            System.out.println("Exception: " + e.getMessage());
+            System.exit(1);
+        } catch (CompileException e) {
+            System.out.println(e.getMessage());
+            System.exit(1);
+        }
+    }
+}
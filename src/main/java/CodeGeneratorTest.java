@@ -0,0 +1,57 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CodeGeneratorTest {
+
+    /**
+     * Test to see if the listing for count.c matches the expected assembly
+     * @throws IOException
+     */
+    @Test
+    void listingTest() throws IOException {
+        Parser parser = new Parser(Lexer.fromFile("src/main/resources/count.c"));
+        Bytecode code = CodeGenerator.generate(parser.parse());
+        String expected = "Datasize: 1 Strings: 2\n"
+                + "\"count is: \"\n"
+                + "\"\\n\"\n"
+                + "    0 push   1\n"
+                + "    5 store  [0]\n"
+                + "   10 fetch  [0]\n"
+                + "   15 push   10\n"
+                + "   20 lt\n"
+                + "   21 jz     (43) 65\n"
+                + "   26 push   0\n"
+                + "   31 prts\n"
+                + "   32 fetch  [0]\n"
+                + "   37 prti\n"
+                + "   38 push   1\n"
+                + "   43 prts\n"
+                + "   44 fetch  [0]\n"
+                + "   49 push   1\n"
+                + "   54 add\n"
+                + "   55 store  [0]\n"
+                + "   60 jmp    (-51) 10\n"
+                + "   65 halt\n";
+        assertEquals(expected, code.listing());
+        assertArrayEquals(new String[] {"count"}, code.variables);
+        assertArrayEquals(new String[] {"count is: ", "\n"}, code.strings);
+        assertEquals(66, code.code.length);
+    }
+
+    /**
+     * Test to see if an if with an else jumps over the else branch
+     */
+    @Test
+    void ifElseTest() {
+        Parser parser = new Parser(new Lexer("x = 1;\nif (x) y = 2; else y = 3;\n"));
+        Bytecode code = CodeGenerator.generate(parser.parse());
+        assertEquals(Opcode.JZ, Opcode.VALUES[code.code[15]]);
+        assertEquals(Opcode.JMP, Opcode.VALUES[code.code[30]]);
+        assertEquals(35 - 16, code.operand(16));
+        assertEquals(45 - 31, code.operand(31));
+        assertEquals(Opcode.HALT, Opcode.VALUES[code.code[45]]);
+    }
+}
@@ -0,0 +1,278 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An on-disk cache of compiled sources, so that a build compiling the same unchanged files again
+ * skips lexing and parsing. An entry is found by the SHA-256 hash of the compiler version and the
+ * source bytes and holds the token stream as a TokenFile and the tree as an AstFile. Only sources
+ * that compile without errors are stored.
+ *
+ * Several processes may share a directory. An entry is written to a temporary file and renamed into
+ * place, so a reader sees a whole entry or none, and an entry that disappears or cannot be read is a
+ * miss. Every hit touches the entry's modification time. The cache keeps an estimate of the size of
+ * the directory, from its last listing plus the entries it has stored since, and only when that goes
+ * over the size cap, or after RELIST_STORES stores, does it list the directory and delete the least
+ * recently used entries until it is within the cap, so storing an entry does not cost a listing of
+ * every other one. The estimate does not see what other processes store, so the regular listing is
+ * what bounds a shared directory: with N processes storing at once it can go over the cap by about
+ * N * RELIST_STORES entries before one of them lists it again.
+ */
+class CompileCache {
+    /**
+     * Part of every key. Raise it when the Lexer or Parser change the tokens or trees they produce,
+     * so that entries made by an older compiler are no longer found.
+     */
+    static final int COMPILER_VERSION = 1;
+    static final String MAGIC = "MCCE";
+    static final int VERSION = 1;
+    static final long DEFAULT_MAX_BYTES = 256L << 20;
+    static final String SUFFIX = ".mcc";
+    /** How many entries the cache stores before it lists the directory again, whatever its estimate. */
+    static final int RELIST_STORES = 32;
+
+    // a temporary file older than this was left behind by a worker that died while storing
+    private static final long STALE_MILLIS = 60 * 60 * 1000;
+
+    private final Path directory;
+    private final long maxBytes;
+    private final AtomicLong hits;
+    private final AtomicLong misses;
+    private final AtomicLong evictions;
+    // the size of the entries as last listed plus those stored since, or -1 before the first listing
+    private final AtomicLong estimate;
+    // the entries stored since the last listing
+    private final AtomicLong unlisted;
+
+    /**
+     * A cached compilation.
+     */
+    static class Entry {
+        public final TokenBuffer tokens;
+        public final Parser.Node tree;
+
+        Entry(TokenBuffer tokens, Parser.Node tree) {
+            this.tokens = tokens;
+            this.tree = tree;
+        }
+    }
+
+    /**
+     * Opens a cache directory, creating it if needed.
+     * @param directory the directory holding the entries.
+     * @param maxBytes the total size of the entries to keep.
+     * @throws IOException if the directory cannot be created.
+     */
+    CompileCache(Path directory, long maxBytes) throws IOException {
+        this.directory = Files.createDirectories(directory);
+        this.maxBytes = maxBytes;
+        this.hits = new AtomicLong();
+        this.misses = new AtomicLong();
+        this.evictions = new AtomicLong();
+        this.estimate = new AtomicLong(-1);
+        this.unlisted = new AtomicLong();
+    }
+
+    long hits() { return this.hits.get(); }
+    long misses() { return this.misses.get(); }
+    long evictions() { return this.evictions.get(); }
+
+    /**
+     * Returns the key of a source: the SHA-256 hash of the compiler and file format versions and the
+     * source bytes, in hexadecimal.
+     * @param source the bytes of the source file.
+     * @return the key.
+     */
+    static String key(byte[] source) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        String version = COMPILER_VERSION + "/" + TokenFile.VERSION + "/" + AstFile.VERSION + "/" + VERSION + "\n";
+        digest.update(version.getBytes(StandardCharsets.ISO_8859_1));
+        StringBuilder key = new StringBuilder();
+        for (byte b : digest.digest(source)) {
+            key.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return key.toString();
+    }
+
+    /**
+     * Looks a source up.
+     * @param source the bytes of the source file.
+     * @return the cached compilation, or null on a miss.
+     */
+    Entry get(byte[] source) {
+        Entry entry = read(key(source));
+        (entry != null ? this.hits : this.misses).incrementAndGet();
+        return entry;
+    }
+
+    /**
+     * Stores the compilation of a source.
+     * @param source the bytes of the source file.
+     * @param tokens the tokens of the source.
+     * @param tree the tree parsed from them.
+     * @throws IOException if the entry cannot be written.
+     */
+    void put(byte[] source, TokenBuffer tokens, Parser.Node tree) throws IOException {
+        ByteArrayOutputStream tokenBytes = new ByteArrayOutputStream();
+        TokenFile.write(tokens, tokenBytes);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(tokenBytes.size() * 2);
+        bytes.write(MAGIC.getBytes(StandardCharsets.ISO_8859_1));
+        bytes.write(ByteBuffer.allocate(8).putInt(VERSION).putInt(tokenBytes.size()).array());
+        tokenBytes.writeTo(bytes);
+        AstFile.write(tree, bytes);
+
+        String key = key(source);
+        Path temp = Files.createTempFile(this.directory, key, ".tmp");
+        try {
+            Files.write(temp, bytes.toByteArray());
+            try {
+                Files.move(temp, entryFile(key), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, entryFile(key), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        if (this.estimate.get() < 0 || this.estimate.addAndGet(bytes.size()) > this.maxBytes
+                || this.unlisted.incrementAndGet() >= RELIST_STORES) {
+            evict();
+        }
+    }
+
+    /**
+     * Compiles a source file, or loads it from the cache if the same source was compiled before.
+     * @param file the source file.
+     * @return the tokens and tree of the file.
+     * @throws IOException if the file cannot be read or the entry cannot be written.
+     * @throws CompileException if the source has an error.
+     */
+    Entry compile(Path file) throws IOException {
+        byte[] source = Files.readAllBytes(file);
+        Entry entry = get(source);
+        if (entry != null) {
+            return entry;
+        }
+        TokenBuffer tokens = new Lexer(new MappedSource(ByteBuffer.wrap(source))).tokenize(new TokenBuffer());
+        Parser parser = new Parser(tokens.cursor());
+        parser.setEcho(false);
+        entry = new Entry(tokens, parser.parse());
+        put(source, entry.tokens, entry.tree);
+        return entry;
+    }
+
+    private Path entryFile(String key) {
+        return this.directory.resolve(key + SUFFIX);
+    }
+
+    /**
+     * Reads an entry, marking it as recently used.
+     * @return the entry, or null if there is none or it cannot be read.
+     */
+    private Entry read(String key) {
+        Path file = entryFile(key);
+        byte[] bytes;
+        try {
+            bytes = Files.readAllBytes(file);
+        } catch (IOException e) {
+            // not stored yet, or just evicted by another worker
+            return null;
+        }
+        try {
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException e) {
+            // evicted since it was read; the bytes are still good
+        }
+        try {
+            ByteBuffer header = ByteBuffer.wrap(bytes);
+            byte[] magic = new byte[MAGIC.length()];
+            header.get(magic);
+            if (!MAGIC.equals(new String(magic, StandardCharsets.ISO_8859_1)) || header.getInt() != VERSION) {
+                throw new IOException("Not a " + MAGIC + " file of version " + VERSION);
+            }
+            int tokenLength = header.getInt();
+            int start = header.position();
+            TokenBuffer tokens = TokenFile.read(new ByteArrayInputStream(bytes, start, tokenLength));
+            int treeStart = start + tokenLength;
+            Parser.Node tree = AstFile.read(new ByteArrayInputStream(bytes, treeStart, bytes.length - treeStart));
+            return new Entry(tokens, tree);
+        } catch (IOException | RuntimeException e) {
+            // a damaged entry is dropped, and the caller compiles the source again
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException ignored) {
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Lists the directory and deletes the least recently used entries until the cache is within its
+     * size cap, and any temporary file a dead worker left behind. Files another worker deletes at the same time are
+     * skipped.
+     * @throws IOException if the directory cannot be listed.
+     */
+    void evict() throws IOException {
+        List<Path> files = new ArrayList<>();
+        HashMap<Path, BasicFileAttributes> attributes = new HashMap<>();
+        long total = 0;
+        long now = System.currentTimeMillis();
+        this.unlisted.set(0);
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(this.directory)) {
+            for (Path file : entries) {
+                String name = file.getFileName().toString();
+                try {
+                    BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+                    if (name.endsWith(SUFFIX)) {
+                        files.add(file);
+                        attributes.put(file, attrs);
+                        total += attrs.size();
+                    } else if (name.endsWith(".tmp") && now - attrs.lastModifiedTime().toMillis() > STALE_MILLIS) {
+                        Files.deleteIfExists(file);
+                    }
+                } catch (NoSuchFileException e) {
+                    // removed by another worker
+                }
+            }
+        }
+        if (total > this.maxBytes) {
+            files.sort(Comparator.comparing(file -> attributes.get(file).lastModifiedTime()));
+            for (int i = 0; i < files.size() && total > this.maxBytes; i++) {
+                if (Files.deleteIfExists(files.get(i))) {
+                    this.evictions.incrementAndGet();
+                }
+                total -= attributes.get(files.get(i)).size();
+            }
+        }
+        this.estimate.set(total);
+    }
+
+    /**
+     * Formats the counters for a report at the end of a build.
+     */
+    @Override
+    public String toString() {
+        return String.format("cache: %d hits, %d misses, %d evicted", hits(), misses(), evictions());
+    }
+}
@@ -0,0 +1,267 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompileCacheTest {
+
+    private static void deleteTree(Path dir) throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    private static List<Path> entries(Path dir) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(file -> file.toString().endsWith(CompileCache.SUFFIX)).toList();
+        }
+    }
+
+    /**
+     * Test to see if a second compile of the same source is a hit with the same tokens and tree
+     * @throws IOException
+     */
+    @Test
+    void hitTest() throws IOException {
+        Path dir = Files.createTempDirectory("cache");
+        try {
+            Path prime = Paths.get("src/main/resources/prime.c");
+            CompileCache cache = new CompileCache(dir, CompileCache.DEFAULT_MAX_BYTES);
+            CompileCache.Entry first = cache.compile(prime);
+            CompileCache.Entry second = new CompileCache(dir, CompileCache.DEFAULT_MAX_BYTES).compile(prime);
+            assertEquals(0, cache.hits());
+            assertEquals(1, cache.misses());
+
+            assertEquals(first.tokens.toString(), second.tokens.toString());
+            assertEquals(Files.readString(Paths.get("src/main/resources/prime.lex")), second.tokens.toString());
+            StringBuilder ast = new StringBuilder();
+            new AstWriter(ast).write(second.tree);
+            assertEquals(Files.readString(Paths.get("SolutionFiles/prime.par")), ast.toString());
+
+            cache.compile(prime);
+            assertEquals(1, cache.hits());
+            assertEquals(1, entries(dir).size());
+        } finally {
+            deleteTree(dir);
+        }
+    }
+
+    /**
+     * Test to see if a changed source gets its own entry
+     */
+    @Test
+    void keyTest() {
+        assertEquals(CompileCache.key("x = 1;\n".getBytes()), CompileCache.key("x = 1;\n".getBytes()));
+        assertNotEquals(CompileCache.key("x = 1;\n".getBytes()), CompileCache.key("x = 2;\n".getBytes()));
+        assertEquals(64, CompileCache.key(new byte[0]).length());
+    }
+
+    /**
+     * Test to see if the least recently used entries are evicted once the cache is over its cap
+     * @throws IOException
+     */
+    @Test
+    void evictionTest() throws IOException {
+        Path dir = Files.createTempDirectory("cache");
+        try {
+            CompileCache cache = new CompileCache(dir, 1 << 20);
+            List<byte[]> sources = new ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                byte[] source = ("x = " + i + ";\n").getBytes();
+                sources.add(source);
+                Parser parser = new Parser(new Lexer(new String(source)));
+                cache.put(source, new Lexer(new String(source)).tokenize(new TokenBuffer()), parser.parse());
+                Files.setLastModifiedTime(dir.resolve(CompileCache.key(source) + CompileCache.SUFFIX), FileTime.fromMillis(1000L * i));
+            }
+            long size = Files.size(entries(dir).get(0));
+
+            // reading the oldest entry makes it the most recently used
+            assertNotNull(cache.get(sources.get(0)));
+            CompileCache small = new CompileCache(dir, 2 * size);
+            small.evict();
+            assertEquals(1, small.evictions());
+            assertNotNull(small.get(sources.get(0)));
+            assertNull(small.get(sources.get(1)));
+            assertNotNull(small.get(sources.get(2)));
+        } finally {
+            deleteTree(dir);
+        }
+    }
+
+    /**
+     * Test to see if a damaged entry is a miss and is compiled again
+     * @throws IOException
+     */
+    @Test
+    void damagedEntryTest() throws IOException {
+        Path dir = Files.createTempDirectory("cache");
+        try {
+            Path prime = Paths.get("src/main/resources/prime.c");
+            CompileCache cache = new CompileCache(dir, CompileCache.DEFAULT_MAX_BYTES);
+            cache.compile(prime);
+            Path entry = entries(dir).get(0);
+            byte[] bytes = Files.readAllBytes(entry);
+            Files.write(entry, Arrays.copyOf(bytes, bytes.length / 2));
+
+            CompileCache.Entry again = cache.compile(prime);
+            assertEquals(2, cache.misses());
+            assertEquals(Files.readString(Paths.get("src/main/resources/prime.lex")), again.tokens.toString());
+            assertEquals(bytes.length, Files.size(entry));
+        } finally {
+            deleteTree(dir);
+        }
+    }
+
+    /**
+     * Test to see if batch workers sharing a cache directory all get correct results
+     * @throws IOException
+     */
+    @Test
+    void sharedDirectoryTest() throws IOException {
+        Path dir = Files.createTempDirectory("cache");
+        try {
+            String[] programs = {"99bottles", "fizzbuzz", "prime"};
+            List<Path> files = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                files.add(Paths.get("src/main/resources/" + programs[i % programs.length] + ".c"));
+            }
+            for (int round = 0; round < 2; round++) {
+                ForkJoinPool pool = new ForkJoinPool(4);
+                CompileCache first = new CompileCache(dir, CompileCache.DEFAULT_MAX_BYTES);
+                CompileCache second = new CompileCache(dir, CompileCache.DEFAULT_MAX_BYTES);
+                // two batches at once, as two CI workers would run
+                CompletableFuture<List<BatchCompiler.Result>> other =
+                        CompletableFuture.supplyAsync(() -> new BatchCompiler(pool, second).compile(files));
+                List<BatchCompiler.Result> a = new BatchCompiler(pool, first).compile(files);
+                List<BatchCompiler.Result> b = other.join();
+                pool.shutdown();
+                for (int i = 0; i < files.size(); i++) {
+                    String expected = Files.readString(Paths.get("SolutionFiles/" + programs[i % programs.length] + ".par"));
+                    assertEquals(expected, a.get(i).ast);
+                    assertEquals(expected, b.get(i).ast);
+                }
+                if (round == 1) {
+                    assertEquals(2 * files.size(), first.hits() + second.hits());
+                }
+            }
+            assertEquals(programs.length, entries(dir).size());
+        } finally {
+            deleteTree(dir);
+        }
+    }
+
+    /**
+     * Test to see if a file with errors is not cached and still reports every error
+     * @throws IOException
+     */
+    @Test
+    void errorTest() throws IOException {
+        Path dir = Files.createTempDirectory("cache");
+        Path bad = Files.createTempFile("bad", ".c");
+        try {
+            Files.writeString(bad, "x = y;\nz = ;\n");
+            CompileCache cache = new CompileCache(dir, CompileCache.DEFAULT_MAX_BYTES);
+            BatchCompiler.Result result = BatchCompiler.compileFile(bad, cache);
+            assertEquals(2, result.diagnostics.size());
+            assertTrue(entries(dir).isEmpty());
+        } finally {
+            Files.delete(bad);
+            deleteTree(dir);
+        }
+    }
+
+    /**
+     * Test to see if literals that are zero padded or too large for an int are stored, and come back as they were written
+     * @throws IOException
+     */
+    @Test
+    void literalTest() throws IOException {
+        Path dir = Files.createTempDirectory("cache");
+        try {
+            String text = "x = 007;\ny = 99999999999;\n";
+            byte[] source = text.getBytes();
+            Parser.Node tree = new Parser(new Lexer(text)).parse();
+            StringBuilder expected = new StringBuilder();
+            new AstWriter(expected).write(tree);
+
+            CompileCache cache = new CompileCache(dir, CompileCache.DEFAULT_MAX_BYTES);
+            cache.put(source, new Lexer(text).tokenize(new TokenBuffer()), tree);
+            CompileCache.Entry entry = cache.get(source);
+            assertNotNull(entry);
+            StringBuilder ast = new StringBuilder();
+            new AstWriter(ast).write(entry.tree);
+            assertEquals(expected.toString(), ast.toString());
+            assertEquals(1, cache.hits());
+            assertEquals(0, cache.misses());
+        } finally {
+            deleteTree(dir);
+        }
+    }
+
+    /**
+     * Test to see if entries stored one after another are evicted once their total goes over the cap
+     * @throws IOException
+     */
+    @Test
+    void estimateTest() throws IOException {
+        Path dir = Files.createTempDirectory("cache");
+        try {
+            byte[] first = "x = 0;\n".getBytes();
+            CompileCache probe = new CompileCache(dir, CompileCache.DEFAULT_MAX_BYTES);
+            probe.put(first, new Lexer("x = 0;\n").tokenize(new TokenBuffer()), new Parser(new Lexer("x = 0;\n")).parse());
+            long size = Files.size(entries(dir).get(0));
+
+            CompileCache cache = new CompileCache(dir, 3 * size);
+            for (int i = 1; i < 6; i++) {
+                String text = "x = " + i + ";\n";
+                cache.put(text.getBytes(), new Lexer(text).tokenize(new TokenBuffer()), new Parser(new Lexer(text)).parse());
+            }
+            assertEquals(3, entries(dir).size());
+            assertEquals(3, cache.evictions());
+        } finally {
+            deleteTree(dir);
+        }
+    }
+
+    /**
+     * Test to see if two caches storing into one directory at once keep it near the cap, though
+     * neither counts what the other stores
+     * @throws IOException
+     */
+    @Test
+    void sharedEstimateTest() throws IOException {
+        Path dir = Files.createTempDirectory("cache");
+        try {
+            CompileCache probe = new CompileCache(dir, CompileCache.DEFAULT_MAX_BYTES);
+            probe.put("x = 1000;\n".getBytes(), new Lexer("x = 1000;\n").tokenize(new TokenBuffer()), new Parser(new Lexer("x = 1000;\n")).parse());
+            long size = Files.size(entries(dir).get(0));
+
+            int cap = 4 * CompileCache.RELIST_STORES;
+            CompileCache[] caches = {new CompileCache(dir, cap * size), new CompileCache(dir, cap * size)};
+            int most = 0;
+            for (int i = 1; i <= 2 * cap; i++) {
+                String text = "x = " + (1000 + i) + ";\n";
+                caches[i % 2].put(text.getBytes(), new Lexer(text).tokenize(new TokenBuffer()), new Parser(new Lexer(text)).parse());
+                most = Math.max(most, entries(dir).size());
+            }
+            assertTrue(most <= cap + 2 * CompileCache.RELIST_STORES, "directory grew to " + most + " entries");
+            assertTrue(entries(dir).size() <= cap + 2 * CompileCache.RELIST_STORES);
+        } finally {
+            deleteTree(dir);
+        }
+    }
+}
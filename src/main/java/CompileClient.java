@@ -0,0 +1,145 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A thin client for CompileServer. It only reads source files, sends them over one connection and
+ * writes back what the server returns, so it starts quickly and leaves the compiling to a warm JVM.
+ */
+class CompileClient implements AutoCloseable {
+    private final SocketChannel channel;
+    private final DataInputStream in;
+    private final DataOutputStream out;
+
+    /**
+     * The answer to one request.
+     */
+    static class Response {
+        public final byte status;
+        public final String text;
+
+        Response(byte status, String text) {
+            this.status = status;
+            this.text = text;
+        }
+
+        boolean ok() {
+            return this.status == CompileServer.OK;
+        }
+    }
+
+    /**
+     * Connects to a server.
+     * @param socket the path of the server's socket file.
+     * @throws IOException if there is no server listening there.
+     */
+    CompileClient(Path socket) throws IOException {
+        this.channel = SocketChannel.open(StandardProtocolFamily.UNIX);
+        this.channel.connect(UnixDomainSocketAddress.of(socket));
+        this.in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(this.channel)));
+        this.out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(this.channel)));
+    }
+
+    /**
+     * Sends a request and waits for its answer.
+     * @param operation CompileServer.LEX, PARSE or SHUTDOWN.
+     * @param source the bytes of the source file.
+     * @return the server's answer.
+     * @throws IOException if the connection fails.
+     */
+    Response request(byte operation, byte[] source) throws IOException {
+        this.out.writeInt(source.length + 1);
+        this.out.write(operation);
+        this.out.write(source);
+        this.out.flush();
+        byte[] frame = CompileServer.readFrame(this.in);
+        if (frame.length == 0) {
+            throw new IOException("Empty response");
+        }
+        return new Response(frame[0], new String(frame, 1, frame.length - 1, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Asks the server to stop once the requests it is serving are answered.
+     * @throws IOException if the connection fails.
+     */
+    void shutdown() throws IOException {
+        request(CompileServer.SHUTDOWN, new byte[0]);
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.channel.close();
+    }
+
+    /**
+     * Compiles files through a running CompileServer, writing a .par file, or with --lex a .lex file,
+     * next to each source or into the directory given with --out. --shutdown stops the server.
+     * @param args the socket file, options and source files.
+     */
+    public static void main(String[] args) {
+        byte operation = CompileServer.PARSE;
+        boolean shutdown = false;
+        Path outputDir = null;
+        List<String> inputs = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--lex":
+                    operation = CompileServer.LEX;
+                    break;
+                case "--out":
+                    outputDir = Paths.get(args[++i]);
+                    break;
+                case "--shutdown":
+                    shutdown = true;
+                    break;
+                default:
+                    inputs.add(args[i]);
+            }
+        }
+        if (inputs.isEmpty()) {
+            System.out.println("Usage: CompileClient SOCKET [--lex] [--out DIR] [--shutdown] FILE_OR_DIR...");
+            System.exit(1);
+        }
+
+        int failed = 0;
+        try (CompileClient client = new CompileClient(Paths.get(inputs.get(0)))) {
+            for (Path file : BatchCompiler.collectFiles(inputs.subList(1, inputs.size()))) {
+                Response response = client.request(operation, Files.readAllBytes(file));
+                if (response.ok()) {
+                    Path output = BatchCompiler.outputFile(file, outputDir);
+                    if (operation == CompileServer.LEX) {
+                        String name = output.getFileName().toString();
+                        output = output.resolveSibling(name.substring(0, name.length() - 4) + ".lex");
+                    }
+                    Files.writeString(output, response.text, StandardCharsets.UTF_8);
+                    System.out.println(file + ": ok");
+                } else {
+                    failed++;
+                    for (String line : response.text.split("\n")) {
+                        System.out.println(file + ": " + line);
+                    }
+                }
+            }
+            if (shutdown) {
+                client.shutdown();
+            }
+        } catch (IOException e) {
+            System.out.println("Exception: " + e.getMessage());
+            System.exit(1);
+        }
+        System.exit(failed == 0 ? 0 : 1);
+    }
+}
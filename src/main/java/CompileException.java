@@ -0,0 +1,33 @@
+/**
+ * Thrown by the Lexer and Parser when the source cannot be compiled. The message is formatted the
+ * way the command line tools print it.
+ */
+class CompileException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    private final int line;
+    private final int pos;
+    private final String reason;
+
+    /**
+     * Creates an exception for an error at a source position.
+     *
+     * @param line the line number where the error occurred, or a value below 1 if unknown
+     * @param pos the position within the line where the error occurred, or a value below 1 if unknown
+     * @param msg the error message
+     */
+    CompileException(int line, int pos, String msg) {
+        super(line > 0 && pos > 0 ? String.format("%s in line %d, pos %d", msg, line, pos) : msg);
+        this.line = line;
+        this.pos = pos;
+        this.reason = msg;
+    }
+
+    int getLine() { return this.line; }
+    int getPos() { return this.pos; }
+
+    /**
+     * Returns the error message without the position, as it was passed to the constructor.
+     */
+    String getReason() { return this.reason; }
+}
@@ -0,0 +1,333 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A long-running compiler that takes requests over a Unix domain socket, so that compiling many
+ * small programs pays for JVM startup and JIT warmup once instead of once per program.
+ *
+ * Every message is a frame: a four byte big-endian length followed by that many bytes. A request
+ * frame starts with an operation byte followed by the source text, a response frame with a status
+ * byte followed by the result text, both in UTF-8. A client
+ * may send any number of requests on one connection. Each connection is served on its own virtual
+ * thread, and each request gets a new Lexer and Parser, so no symbol table is shared between
+ * requests.
+ */
+class CompileServer implements AutoCloseable {
+    static final byte LEX = 'L';
+    static final byte PARSE = 'P';
+    static final byte SHUTDOWN = 'Q';
+
+    static final byte OK = 0;
+    static final byte ERROR = 1;
+    static final byte FAILURE = 2;
+
+    static final int MAX_FRAME = 64 << 20;
+    /** How long close() waits for the requests being served to be answered. */
+    static final long DRAIN_SECONDS = 10;
+
+    private final Path socket;
+    private final ServerSocketChannel server;
+    private final ExecutorService connections;
+    private final Set<Connection> open;
+    private final AtomicLong requests;
+    private volatile boolean closed;
+    // held by close(); a lock rather than a synchronized method, which would pin the virtual thread
+    // calling it to its carrier while it waits for the connections' virtual threads
+    private final ReentrantLock closing;
+    private boolean drained;
+
+    /**
+     * A connection being served, which is busy from the moment a request starts to arrive until its
+     * response is written. close() only closes idle connections, whose thread is waiting for the
+     * next request.
+     */
+    private static final class Connection {
+        private final SocketChannel channel;
+        private boolean busy;
+
+        Connection(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        /**
+         * Marks a request as arrived.
+         * @return false if the connection was closed first.
+         */
+        synchronized boolean begin() {
+            this.busy = this.channel.isOpen();
+            return this.busy;
+        }
+
+        synchronized void end() {
+            this.busy = false;
+        }
+
+        synchronized void closeIfIdle() throws IOException {
+            if (!this.busy) {
+                this.channel.close();
+            }
+        }
+    }
+
+    /**
+     * Binds the server to a socket file, replacing a stale one left by a server that did not shut down.
+     * Requests are not served until run() is called.
+     * @param socket the path of the socket file.
+     * @throws IOException if the socket cannot be bound.
+     */
+    CompileServer(Path socket) throws IOException {
+        this.socket = socket;
+        Files.deleteIfExists(socket);
+        this.server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        this.server.bind(UnixDomainSocketAddress.of(socket));
+        this.connections = Executors.newVirtualThreadPerTaskExecutor();
+        this.open = ConcurrentHashMap.newKeySet();
+        this.requests = new AtomicLong();
+        this.closed = false;
+        this.closing = new ReentrantLock();
+        this.drained = false;
+    }
+
+    /**
+     * Returns the number of requests answered so far.
+     */
+    long requests() {
+        return this.requests.get();
+    }
+
+    /**
+     * Accepts connections until the server is closed or a client asks it to shut down, then closes
+     * it, which waits for the requests being served.
+     * @throws IOException if accepting fails for another reason.
+     */
+    void run() throws IOException {
+        while (!this.closed) {
+            SocketChannel client;
+            try {
+                client = this.server.accept();
+            } catch (ClosedChannelException e) {
+                break;
+            }
+            try {
+                this.connections.submit(() -> serve(client));
+            } catch (RejectedExecutionException e) {
+                // the server was closed after accept() returned; turn the client away
+                client.close();
+                break;
+            }
+        }
+        close();
+    }
+
+    /**
+     * Answers the requests of one connection until the client closes it or the server is closed.
+     */
+    private void serve(SocketChannel client) {
+        Connection connection = new Connection(client);
+        this.open.add(connection);
+        try (client) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(client)));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(client)));
+            // checked after joining open, so close() either sees this connection or it sees closed
+            while (!this.closed) {
+                int length;
+                try {
+                    length = in.readInt();
+                } catch (EOFException e) {
+                    return;
+                }
+                if (!connection.begin()) {
+                    return;
+                }
+                try {
+                    byte[] request = readFrame(in, length);
+                    if (request.length > 0 && request[0] == SHUTDOWN) {
+                        writeFrame(out, OK, "");
+                        stop();
+                        return;
+                    }
+                    byte[] response = handle(request);
+                    this.requests.incrementAndGet();
+                    writeFrame(out, response);
+                } finally {
+                    connection.end();
+                }
+            }
+        } catch (IOException e) {
+            // the client went away, or close() closed the connection while it was idle; nothing to answer
+        } finally {
+            this.open.remove(connection);
+        }
+    }
+
+    /**
+     * Compiles one request.
+     * @param request the operation byte followed by the source.
+     * @return the status byte followed by the .lex or .par text, or by the errors one per line.
+     */
+    static byte[] handle(byte[] request) {
+        if (request.length == 0) {
+            return response(FAILURE, "Empty request");
+        }
+        try {
+            CharSequence source = new MappedSource(ByteBuffer.wrap(request, 1, request.length - 1).slice());
+            switch (request[0]) {
+                case LEX:
+                    return response(OK, new Lexer(source).printTokens());
+                case PARSE:
+                    Parser parser = new Parser(new Lexer(source));
+                    parser.setEcho(false);
+                    parser.setRecovery(true);
+                    Parser.Node tree = parser.parse();
+                    if (parser.hasErrors()) {
+                        StringBuilder errors = new StringBuilder();
+                        for (Diagnostic diagnostic : parser.getDiagnostics()) {
+                            errors.append(diagnostic).append('\n');
+                        }
+                        return response(ERROR, errors.toString());
+                    }
+                    StringBuilder ast = new StringBuilder();
+                    new AstWriter(ast).write(tree);
+                    return response(OK, ast.toString());
+                default:
+                    return response(FAILURE, "Unknown operation " + request[0]);
+            }
+        } catch (CompileException e) {
+            return response(ERROR, e.getMessage() + "\n");
+        } catch (IOException | RuntimeException e) {
+            return response(FAILURE, "Exception: " + e);
+        }
+    }
+
+    private static byte[] response(byte status, String text) {
+        byte[] encoded = text.getBytes(StandardCharsets.UTF_8);
+        byte[] bytes = new byte[encoded.length + 1];
+        bytes[0] = status;
+        System.arraycopy(encoded, 0, bytes, 1, encoded.length);
+        return bytes;
+    }
+
+    /**
+     * Reads one frame.
+     * @throws EOFException if the stream ends before the frame starts.
+     * @throws IOException if reading fails or the frame is too large.
+     */
+    static byte[] readFrame(DataInputStream in) throws IOException {
+        return readFrame(in, in.readInt());
+    }
+
+    /**
+     * Reads the bytes of a frame whose length has been read.
+     * @throws IOException if reading fails or the frame is too large.
+     */
+    static byte[] readFrame(DataInputStream in, int length) throws IOException {
+        if (length < 0 || length > MAX_FRAME) {
+            throw new IOException("Bad frame length " + length);
+        }
+        byte[] frame = new byte[length];
+        in.readFully(frame);
+        return frame;
+    }
+
+    /**
+     * Writes one frame and flushes it.
+     */
+    static void writeFrame(DataOutputStream out, byte[] frame) throws IOException {
+        out.writeInt(frame.length);
+        out.write(frame);
+        out.flush();
+    }
+
+    /**
+     * Writes one frame made of a leading byte and a text and flushes it.
+     */
+    static void writeFrame(DataOutputStream out, byte first, String text) throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length + 1);
+        out.write(first);
+        out.write(bytes);
+        out.flush();
+    }
+
+    /**
+     * Stops accepting connections.
+     */
+    private void stop() throws IOException {
+        this.closed = true;
+        this.server.close();
+    }
+
+    /**
+     * Stops accepting connections, closes the idle ones and removes the socket file. Connections being
+     * served finish their current request first; after DRAIN_SECONDS they are interrupted. Calling
+     * it again, or while another thread is in it, waits until the server is closed.
+     */
+    @Override
+    public void close() throws IOException {
+        this.closing.lock();
+        try {
+            if (this.drained) {
+                return;
+            }
+            stop();
+            for (Connection connection : this.open) {
+                connection.closeIfIdle();
+            }
+            this.connections.shutdown();
+            try {
+                if (!this.connections.awaitTermination(DRAIN_SECONDS, TimeUnit.SECONDS)) {
+                    this.connections.shutdownNow();
+                }
+            } catch (InterruptedException e) {
+                this.connections.shutdownNow();
+                Thread.currentThread().interrupt();
+            }
+            Files.deleteIfExists(this.socket);
+            this.drained = true;
+        } finally {
+            this.closing.unlock();
+        }
+    }
+
+    /**
+     * Runs the server until a client sends a shutdown request.
+     * @param args the path of the socket file.
+     */
+    public static void main(String[] args) {
+        if (args.length != 1) {
+            System.out.println("Usage: CompileServer SOCKET");
+            System.exit(1);
+        }
+        try (CompileServer server = new CompileServer(Paths.get(args[0]))) {
+            System.out.println("Listening on " + args[0]);
+            server.run();
+            System.out.println(server.requests() + " requests served");
+        } catch (IOException e) {
+            System.out.println("Exception: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,201 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompileServerTest {
+
+    /**
+     * Starts a server on a new socket file, runs a test against it and shuts it down.
+     */
+    private interface ServerTest {
+        void run(Path socket) throws Exception;
+    }
+
+    private static void withServer(ServerTest test) throws Exception {
+        Path dir = Files.createTempDirectory("server");
+        Path socket = dir.resolve("compile.sock");
+        CompileServer server = new CompileServer(socket);
+        Thread thread = Thread.ofVirtual().start(() -> {
+            try {
+                server.run();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        try {
+            test.run(socket);
+        } finally {
+            server.close();
+            thread.join();
+            Files.deleteIfExists(socket);
+            Files.delete(dir);
+        }
+    }
+
+    /**
+     * Test to see if the server lexes and parses like Lexer.main and Parser.main
+     * @throws Exception
+     */
+    @Test
+    void compileTest() throws Exception {
+        withServer(socket -> {
+            byte[] prime = Files.readAllBytes(Paths.get("src/main/resources/prime.c"));
+            try (CompileClient client = new CompileClient(socket)) {
+                CompileClient.Response lex = client.request(CompileServer.LEX, prime);
+                assertTrue(lex.ok());
+                assertEquals(Files.readString(Paths.get("src/main/resources/prime.lex")), lex.text);
+                for (int i = 0; i < 3; i++) {
+                    CompileClient.Response parse = client.request(CompileServer.PARSE, prime);
+                    assertTrue(parse.ok());
+                    assertEquals(Files.readString(Paths.get("SolutionFiles/prime.par")), parse.text);
+                }
+                CompileClient.Response utf8 = client.request(CompileServer.PARSE, "print(\"caf\u00e9\");\n".getBytes(StandardCharsets.UTF_8));
+                assertTrue(utf8.ok());
+                assertTrue(utf8.text.contains("String \"caf\u00e9\""), utf8.text);
+            }
+        });
+    }
+
+    /**
+     * Test to see if every error in a source comes back and a bad request does not stop the server
+     * @throws Exception
+     */
+    @Test
+    void errorTest() throws Exception {
+        withServer(socket -> {
+            try (CompileClient client = new CompileClient(socket)) {
+                CompileClient.Response parse = client.request(CompileServer.PARSE, "x = y;\nz = ;\n".getBytes());
+                assertEquals(CompileServer.ERROR, parse.status);
+                assertEquals(2, parse.text.split("\n").length);
+                assertEquals("Identifier not found in symbol table. in line 1, pos 5", parse.text.split("\n")[0]);
+
+                CompileClient.Response lex = client.request(CompileServer.LEX, "x = @;\n".getBytes());
+                assertEquals(CompileServer.ERROR, lex.status);
+
+                assertEquals(CompileServer.FAILURE, client.request((byte) 'Z', new byte[0]).status);
+                assertTrue(client.request(CompileServer.PARSE, "x = 1;\n".getBytes()).ok());
+            }
+        });
+    }
+
+    /**
+     * Test to see if requests served at the same time do not see each other's variables
+     * @throws Exception
+     */
+    @Test
+    void isolationTest() throws Exception {
+        withServer(socket -> {
+            List<CompletableFuture<Void>> clients = new ArrayList<>();
+            for (int c = 0; c < 8; c++) {
+                boolean defines = c % 2 == 0;
+                clients.add(CompletableFuture.runAsync(() -> {
+                    try (CompileClient client = new CompileClient(socket)) {
+                        for (int i = 0; i < 50; i++) {
+                            String source = defines ? "shared = 1;\nprint(shared);\n" : "print(shared);\n";
+                            CompileClient.Response response = client.request(CompileServer.PARSE, source.getBytes());
+                            assertEquals(defines, response.ok(), response.text);
+                        }
+                    } catch (IOException e) {
+                        throw new RuntimeException(e);
+                    }
+                }));
+            }
+            for (CompletableFuture<Void> client : clients) {
+                client.join();
+            }
+        });
+    }
+
+    /**
+     * Test to see if a client can stop the server
+     * @throws Exception
+     */
+    @Test
+    void shutdownTest() throws Exception {
+        Path dir = Files.createTempDirectory("server");
+        Path socket = dir.resolve("compile.sock");
+        CompileServer server = new CompileServer(socket);
+        Thread thread = Thread.ofVirtual().start(() -> {
+            try {
+                server.run();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        try (CompileClient client = new CompileClient(socket)) {
+            assertTrue(client.request(CompileServer.PARSE, "x = 1;\n".getBytes()).ok());
+            client.shutdown();
+        }
+        thread.join(5000);
+        assertFalse(thread.isAlive());
+        assertEquals(1, server.requests());
+        assertFalse(Files.exists(socket));
+        Files.delete(dir);
+    }
+
+    /**
+     * Test to see if a request in flight on one connection is answered in full when another client
+     * shuts the server down, and an idle connection is closed
+     * @throws Exception
+     */
+    @Test
+    void drainTest() throws Exception {
+        Path dir = Files.createTempDirectory("server");
+        Path socket = dir.resolve("compile.sock");
+        CompileServer server = new CompileServer(socket);
+        Thread thread = Thread.ofVirtual().start(() -> {
+            try {
+                server.run();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        byte[] prime = Files.readAllBytes(Paths.get("src/main/resources/prime.c"));
+        try (CompileClient idle = new CompileClient(socket);
+             SocketChannel busy = SocketChannel.open(UnixDomainSocketAddress.of(socket))) {
+            assertTrue(idle.request(CompileServer.PARSE, "x = 1;\n".getBytes()).ok());
+
+            // send the first half of a request, so it is arriving when the shutdown comes
+            DataOutputStream out = new DataOutputStream(Channels.newOutputStream(busy));
+            out.writeInt(prime.length + 1);
+            out.write(CompileServer.PARSE);
+            out.write(prime, 0, prime.length / 2);
+            out.flush();
+            Thread.sleep(200);
+            try (CompileClient stopper = new CompileClient(socket)) {
+                stopper.shutdown();
+            }
+            thread.join(500);
+            assertTrue(thread.isAlive());
+            assertTrue(Files.exists(socket));
+
+            out.write(prime, prime.length / 2, prime.length - prime.length / 2);
+            out.flush();
+            byte[] response = CompileServer.readFrame(new DataInputStream(Channels.newInputStream(busy)));
+            assertEquals(CompileServer.OK, response[0]);
+            assertEquals(Files.readString(Paths.get("SolutionFiles/prime.par")),
+                    new String(response, 1, response.length - 1, StandardCharsets.UTF_8));
+
+            thread.join(5000);
+            assertFalse(thread.isAlive());
+            assertFalse(Files.exists(socket));
+            assertThrows(IOException.class, () -> idle.request(CompileServer.PARSE, "x = 1;\n".getBytes()));
+        }
+        assertEquals(2, server.requests());
+        Files.delete(dir);
+    }
+}
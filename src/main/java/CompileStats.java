@@ -0,0 +1,389 @@
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Measures the phases of compiling each file: wall time, the tokens and nodes produced, the bytes
+ * read and written, and the bytes allocated by the compiling thread. Every phase is also committed as
+ * a JFR event, so a flight recording of a batch shows them without a report. Phases may be measured
+ * from many threads at once. A disabled instance keeps no records and does not count allocations,
+ * but still begins and ends the events, which cost next to nothing unless a recording enables them,
+ * so callers can time their phases unconditionally.
+ */
+class CompileStats {
+
+    /**
+     * The phases of the pipeline. When the Parser pulls its tokens straight from the Lexer, lexing
+     * happens inside the parse phase.
+     */
+    enum Phase {
+        LEX("lex"), PARSE("parse"), FOLD("fold"), DCE("dce"), LOOPS("loops"), PRINT("print"), WRITE("write");
+
+        private final String name;
+
+        Phase(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public String toString() { return this.name; }
+    }
+
+    /**
+     * The JFR event committed for each phase.
+     */
+    @Name("minicompiler.Phase")
+    @Label("Compiler Phase")
+    @Category("Mini Compiler")
+    @Description("One phase of compiling one source file")
+    static class PhaseEvent extends Event {
+        @Label("File")
+        String file;
+        @Label("Phase")
+        String phase;
+        @Label("Tokens")
+        int tokens;
+        @Label("Nodes")
+        int nodes;
+        @Label("Bytes Read")
+        @DataAmount
+        long bytesRead;
+        @Label("Bytes Written")
+        @DataAmount
+        long bytesWritten;
+        @Label("Allocated")
+        @DataAmount
+        long allocated;
+    }
+
+    /**
+     * One measured phase of one file.
+     */
+    static class Record {
+        public final String file;
+        public final Phase phase;
+        public final long nanos;
+        public final int tokens;
+        public final int nodes;
+        public final long bytesRead;
+        public final long bytesWritten;
+        public final long allocated;
+
+        Record(String file, Phase phase, long nanos, int tokens, int nodes, long bytesRead, long bytesWritten, long allocated) {
+            this.file = file;
+            this.phase = phase;
+            this.nanos = nanos;
+            this.tokens = tokens;
+            this.nodes = nodes;
+            this.bytesRead = bytesRead;
+            this.bytesWritten = bytesWritten;
+            this.allocated = allocated;
+        }
+    }
+
+    /**
+     * A phase being measured. The counts are set while it runs and it is recorded when closed, so it
+     * fits a try-with-resources block around the phase.
+     */
+    class Span implements AutoCloseable {
+        private final String file;
+        private final Phase phase;
+        private final long start;
+        private final long allocatedAtStart;
+        private final PhaseEvent event;
+        private int tokens;
+        private int nodes;
+        private long bytesRead;
+        private long bytesWritten;
+
+        private Span(String file, Phase phase) {
+            this.file = file;
+            this.phase = phase;
+            this.event = new PhaseEvent();
+            this.event.begin();
+            this.allocatedAtStart = CompileStats.this.enabled ? allocatedBytes() : -1;
+            this.start = System.nanoTime();
+        }
+
+        Span tokens(int tokens) {
+            this.tokens = tokens;
+            return this;
+        }
+
+        Span nodes(int nodes) {
+            this.nodes = nodes;
+            return this;
+        }
+
+        Span bytesRead(long bytes) {
+            this.bytesRead = bytes;
+            return this;
+        }
+
+        Span bytesWritten(long bytes) {
+            this.bytesWritten = bytes;
+            return this;
+        }
+
+        @Override
+        public void close() {
+            long nanos = System.nanoTime() - this.start;
+            long allocated = this.allocatedAtStart < 0 ? -1 : allocatedBytes() - this.allocatedAtStart;
+            this.event.end();
+            if (this.event.shouldCommit()) {
+                this.event.file = this.file;
+                this.event.phase = this.phase.toString();
+                this.event.tokens = this.tokens;
+                this.event.nodes = this.nodes;
+                this.event.bytesRead = this.bytesRead;
+                this.event.bytesWritten = this.bytesWritten;
+                this.event.allocated = allocated;
+                this.event.commit();
+            }
+            if (CompileStats.this.enabled) {
+                add(new Record(this.file, this.phase, nanos, this.tokens, this.nodes, this.bytesRead, this.bytesWritten, allocated));
+            }
+        }
+    }
+
+    private static final com.sun.management.ThreadMXBean THREADS = threads();
+
+    private final List<Record> records;
+    private final boolean enabled;
+    private boolean json;
+
+    /**
+     * Creates a collector of phase measurements.
+     * @param enabled false for one that records nothing.
+     */
+    CompileStats(boolean enabled) {
+        this.records = new ArrayList<>();
+        this.enabled = enabled;
+        this.json = false;
+    }
+
+    /**
+     * Creates the collector asked for on a command line: enabled by --stats for a table or by
+     * --stats-json for JSON, and disabled otherwise.
+     * @param args command line arguments.
+     * @return the collector.
+     */
+    static CompileStats forArgs(String[] args) {
+        List<String> list = List.of(args);
+        CompileStats stats = new CompileStats(list.contains("--stats") || list.contains("--stats-json"));
+        stats.json = list.contains("--stats-json");
+        return stats;
+    }
+
+    /**
+     * Tells whether phases are recorded, so that callers can skip counting for a disabled instance.
+     */
+    boolean enabled() {
+        return this.enabled;
+    }
+
+    /**
+     * Prints the report, or the JSON if that was asked for, to System.out. Prints nothing when
+     * disabled.
+     */
+    void print() {
+        if (this.enabled) {
+            System.out.print(this.json ? toJson() + System.lineSeparator() : report(10));
+        }
+    }
+
+    private static com.sun.management.ThreadMXBean threads() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean threads && threads.isThreadAllocatedMemorySupported()) {
+            threads.setThreadAllocatedMemoryEnabled(true);
+            return threads;
+        }
+        return null;
+    }
+
+    /**
+     * Returns the bytes allocated so far by the current thread, or -1 if the JVM cannot tell.
+     */
+    static long allocatedBytes() {
+        return THREADS != null ? THREADS.getCurrentThreadAllocatedBytes() : -1;
+    }
+
+    /**
+     * Starts measuring a phase on the current thread.
+     * @param file the source file being compiled.
+     * @param phase the phase.
+     * @return the span to fill in and close when the phase ends.
+     */
+    Span start(String file, Phase phase) {
+        return new Span(file, phase);
+    }
+
+    synchronized void add(Record record) {
+        this.records.add(record);
+    }
+
+    /**
+     * Returns a copy of the records, in the order the phases ended.
+     */
+    synchronized List<Record> records() {
+        return new ArrayList<>(this.records);
+    }
+
+    /**
+     * The sum of the records of one phase.
+     */
+    private static class Total {
+        final Phase phase;
+        int files;
+        long nanos;
+        int tokens;
+        int nodes;
+        long bytesRead;
+        long bytesWritten;
+        long allocated;
+
+        Total(Phase phase) {
+            this.phase = phase;
+        }
+
+        void add(Record r) {
+            this.files++;
+            this.nanos += r.nanos;
+            this.tokens += r.tokens;
+            this.nodes += r.nodes;
+            this.bytesRead += r.bytesRead;
+            this.bytesWritten += r.bytesWritten;
+            this.allocated = this.allocated < 0 || r.allocated < 0 ? -1 : this.allocated + r.allocated;
+        }
+    }
+
+    /**
+     * Adds up the records of each phase, in Phase order, leaving out phases that never ran.
+     */
+    private static List<Total> totals(List<Record> records) {
+        Map<Phase, Total> totals = new LinkedHashMap<>();
+        for (Phase phase : Phase.values()) {
+            totals.put(phase, new Total(phase));
+        }
+        for (Record r : records) {
+            totals.get(r.phase).add(r);
+        }
+        List<Total> result = new ArrayList<>();
+        for (Total total : totals.values()) {
+            if (total.files > 0) {
+                result.add(total);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Adds up the time of every phase of each file, slowest file first.
+     */
+    private static List<Map.Entry<String, Long>> slowest(List<Record> records) {
+        Map<String, Long> files = new LinkedHashMap<>();
+        for (Record r : records) {
+            files.merge(r.file, r.nanos, Long::sum);
+        }
+        List<Map.Entry<String, Long>> sorted = new ArrayList<>(files.entrySet());
+        sorted.sort((a, b) -> Long.compare(b.getValue(), a.getValue()));
+        return sorted;
+    }
+
+    /**
+     * Formats a table of the phase totals and the slowest files.
+     * @param limit the number of slowest files to list.
+     * @return the report.
+     */
+    String report(int limit) {
+        List<Record> records = records();
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%-8s %6s %10s %10s %10s %12s %12s %12s%n",
+                "phase", "files", "time ms", "tokens", "nodes", "read KB", "written KB", "alloc KB"));
+        for (Total total : totals(records)) {
+            sb.append(String.format("%-8s %6d %10.2f %10d %10d %12.1f %12.1f %12s%n",
+                    total.phase, total.files, total.nanos / 1e6, total.tokens, total.nodes,
+                    total.bytesRead / 1024.0, total.bytesWritten / 1024.0,
+                    total.allocated < 0 ? "n/a" : String.format("%.1f", total.allocated / 1024.0)));
+        }
+        List<Map.Entry<String, Long>> slowest = slowest(records);
+        if (!slowest.isEmpty()) {
+            sb.append(String.format("slowest files:%n"));
+            for (Map.Entry<String, Long> file : slowest.subList(0, Math.min(limit, slowest.size()))) {
+                sb.append(String.format("%10.2f ms  %s%n", file.getValue() / 1e6, file.getKey()));
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Formats the phase totals and every record as JSON, for tools that track regressions.
+     * @return the JSON text.
+     */
+    String toJson() {
+        List<Record> records = records();
+        StringBuilder sb = new StringBuilder("{\"phases\":[");
+        String separator = "";
+        for (Total total : totals(records)) {
+            sb.append(separator).append("{\"phase\":\"").append(total.phase).append("\",\"files\":").append(total.files);
+            fields(sb, total.nanos, total.tokens, total.nodes, total.bytesRead, total.bytesWritten, total.allocated);
+            separator = ",";
+        }
+        sb.append("],\"records\":[");
+        separator = "";
+        for (Record r : records) {
+            sb.append(separator).append("{\"file\":\"");
+            escape(sb, r.file);
+            sb.append("\",\"phase\":\"").append(r.phase).append('"');
+            fields(sb, r.nanos, r.tokens, r.nodes, r.bytesRead, r.bytesWritten, r.allocated);
+            separator = ",";
+        }
+        return sb.append("]}").toString();
+    }
+
+    private static void fields(StringBuilder sb, long nanos, int tokens, int nodes, long bytesRead, long bytesWritten, long allocated) {
+        sb.append(",\"nanos\":").append(nanos)
+                .append(",\"tokens\":").append(tokens)
+                .append(",\"nodes\":").append(nodes)
+                .append(",\"bytesRead\":").append(bytesRead)
+                .append(",\"bytesWritten\":").append(bytesWritten)
+                .append(",\"allocatedBytes\":").append(allocated)
+                .append('}');
+    }
+
+    private static void escape(StringBuilder sb, String s) {
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < 0x20) {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+    }
+
+    /**
+     * Wraps a token source so that the tokens the Parser takes from it are counted.
+     * @param source the token source.
+     * @param count where the count is kept.
+     * @return the counting source.
+     */
+    static TokenSource counting(TokenSource source, int[] count) {
+        return () -> {
+            count[0]++;
+            return source.next();
+        };
+    }
+}
@@ -0,0 +1,114 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompileStatsTest {
+
+    private static CompileStats compilePrime(CompileStats stats) {
+        BatchCompiler.Result result = BatchCompiler.compileFile(Paths.get("src/main/resources/prime.c"), null, stats);
+        assertTrue(result.ok());
+        return stats;
+    }
+
+    /**
+     * Test to see if compiling a file records its phases with their counts
+     * @throws IOException
+     */
+    @Test
+    void recordTest() throws IOException {
+        List<CompileStats.Record> records = compilePrime(new CompileStats(true)).records();
+        assertEquals(2, records.size());
+        CompileStats.Record parse = records.get(0);
+        assertEquals(CompileStats.Phase.PARSE, parse.phase);
+        assertEquals("src/main/resources/prime.c", parse.file);
+        assertEquals(95, parse.tokens);
+        assertTrue(parse.nodes > 0);
+        assertEquals(Files.size(Paths.get("src/main/resources/prime.c")), parse.bytesRead);
+        assertTrue(parse.nanos > 0);
+        assertTrue(parse.allocated > 0 || parse.allocated == -1);
+        CompileStats.Record print = records.get(1);
+        assertEquals(CompileStats.Phase.PRINT, print.phase);
+        assertTrue(print.bytesWritten > 0);
+    }
+
+    /**
+     * Test to see if a disabled collector records nothing
+     */
+    @Test
+    void disabledTest() {
+        CompileStats stats = compilePrime(new CompileStats(false));
+        assertFalse(stats.enabled());
+        assertTrue(stats.records().isEmpty());
+        assertFalse(CompileStats.forArgs(new String[] {"--fold"}).enabled());
+        assertTrue(CompileStats.forArgs(new String[] {"--stats-json"}).enabled());
+    }
+
+    /**
+     * Test to see if the report and the JSON list every phase that ran
+     */
+    @Test
+    void reportTest() {
+        CompileStats stats = compilePrime(new CompileStats(true));
+        try (CompileStats.Span span = stats.start("a \"quoted\" name", CompileStats.Phase.WRITE)) {
+            span.bytesWritten(10);
+        }
+        String report = stats.report(1);
+        assertTrue(report.startsWith("phase"));
+        assertTrue(report.contains("\nparse "));
+        assertTrue(report.contains("\nprint "));
+        assertTrue(report.contains("\nwrite "));
+        assertTrue(report.contains("slowest files:"));
+
+        String json = stats.toJson();
+        assertTrue(json.startsWith("{\"phases\":[{\"phase\":\"parse\",\"files\":1,"));
+        assertTrue(json.contains("\"tokens\":95"));
+        assertTrue(json.contains("{\"file\":\"a \\\"quoted\\\" name\",\"phase\":\"write\""));
+        assertTrue(json.endsWith("]}"));
+    }
+
+    private static List<RecordedEvent> recordPhases(CompileStats stats) throws IOException {
+        Path file = Files.createTempFile("phases", ".jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable("minicompiler.Phase");
+            recording.start();
+            compilePrime(stats);
+            recording.stop();
+            recording.dump(file);
+            return RecordingFile.readAllEvents(file).stream()
+                    .filter(e -> e.getEventType().getName().equals("minicompiler.Phase"))
+                    .toList();
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    /**
+     * Test to see if each phase is committed as a JFR event, whether or not the collector is enabled
+     * @throws IOException
+     */
+    @Test
+    void jfrTest() throws IOException {
+        List<RecordedEvent> events = recordPhases(new CompileStats(true));
+        assertEquals(2, events.size());
+        assertEquals("parse", events.get(0).getString("phase"));
+        assertEquals(95, events.get(0).getInt("tokens"));
+
+        CompileStats disabled = new CompileStats(false);
+        events = recordPhases(disabled);
+        assertEquals(2, events.size());
+        assertEquals("parse", events.get(0).getString("phase"));
+        assertEquals(95, events.get(0).getInt("tokens"));
+        assertEquals(-1, events.get(0).getLong("allocated"));
+        assertTrue(disabled.records().isEmpty());
+    }
+}
@@ -0,0 +1,213 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Simplifies an AST before it is printed, compiled or run. Operators whose operands are all integer
+ * literals are replaced by their value, the identities x*1, x+0, x-0 and x*0 are removed, and If and
+ * While statements whose condition is constant are replaced by the branch that would run. The tree is
+ * rewritten in place.
+ */
+class ConstantFolder {
+    private int eliminated;
+
+    /**
+     * Folds a tree.
+     * @param tree the root node returned by Parser.parse().
+     * @return the root of the folded tree, which may be null if no statement is left.
+     */
+    Parser.Node fold(Parser.Node tree) {
+        int before = countNodes(tree);
+        Parser.Node result = statement(tree);
+        this.eliminated += before - countNodes(result);
+        return result;
+    }
+
+    /**
+     * Returns the number of nodes removed by all calls to fold() so far.
+     */
+    int eliminated() {
+        return this.eliminated;
+    }
+
+    /**
+     * Counts the nodes in a tree.
+     * @param tree the root node.
+     * @return the number of nodes.
+     */
+    static int countNodes(Parser.Node tree) {
+        return AstWalker.count(tree);
+    }
+
+    Parser.Node statement(Parser.Node node) {
+        if (node == null) {
+            return null;
+        }
+        switch (node.nt) {
+            case nd_Sequence:
+                // walk the left-leaning chain with a list instead of recursing once per statement
+                List<Parser.Node> chain = new ArrayList<>();
+                Parser.Node n = node;
+                while (n != null && n.nt == Parser.NodeType.nd_Sequence) {
+                    chain.add(n);
+                    n = n.left;
+                }
+                Parser.Node left = statement(n);
+                for (int i = chain.size() - 1; i >= 0; i--) {
+                    Parser.Node sequence = chain.get(i);
+                    sequence.right = statement(sequence.right);
+                    if (sequence.right == null) {
+                        // a statement that folded away leaves nothing to sequence
+                        continue;
+                    }
+                    sequence.left = left;
+                    left = sequence;
+                }
+                return left;
+            case nd_If:
+                node.left = expression(node.left);
+                node.right.left = statement(node.right.left);
+                node.right.right = statement(node.right.right);
+                Integer cond = constant(node.left);
+                if (cond != null) {
+                    return cond != 0 ? node.right.left : node.right.right;
+                }
+                return node;
+            case nd_While:
+                node.left = expression(node.left);
+                node.right = statement(node.right);
+                Integer loop = constant(node.left);
+                if (loop != null && loop == 0) {
+                    return null;
+                }
+                return node;
+            case nd_Assign:
+                node.right = expression(node.right);
+                return node;
+            case nd_Prtc:
+            case nd_Prti:
+            case nd_Prts:
+                node.left = expression(node.left);
+                return node;
+            default:
+                return node;
+        }
+    }
+
+    Parser.Node expression(Parser.Node node) {
+        switch (node.nt) {
+            case nd_Integer:
+            case nd_String:
+            case nd_Ident:
+                return node;
+            case nd_Negate:
+            case nd_Not:
+                node.left = expression(node.left);
+                Integer operand = constant(node.left);
+                if (operand == null) {
+                    return node;
+                }
+                return integer(node.nt == Parser.NodeType.nd_Negate ? -operand : operand == 0 ? 1 : 0);
+            default:
+                node.left = expression(node.left);
+                node.right = expression(node.right);
+                return binary(node, constant(node.left), constant(node.right));
+        }
+    }
+
+    /**
+     * Folds a binary operator whose operands have already been folded.
+     * @param node the operator node.
+     * @param l the value of the left operand, or null if it is not constant.
+     * @param r the value of the right operand, or null if it is not constant.
+     * @return the node to use in place of the operator.
+     */
+    private Parser.Node binary(Parser.Node node, Integer l, Integer r) {
+        if (l != null && r != null) {
+            switch (node.nt) {
+                case nd_Mul: return integer(l * r);
+                case nd_Div: return r == 0 ? node : integer(l / r);
+                case nd_Mod: return r == 0 ? node : integer(l % r);
+                case nd_Add: return integer(l + r);
+                case nd_Sub: return integer(l - r);
+                case nd_Lss: return integer(l < r ? 1 : 0);
+                case nd_Leq: return integer(l <= r ? 1 : 0);
+                case nd_Gtr: return integer(l > r ? 1 : 0);
+                case nd_Geq: return integer(l >= r ? 1 : 0);
+                case nd_Eql: return integer(l.intValue() == r.intValue() ? 1 : 0);
+                case nd_Neq: return integer(l.intValue() != r.intValue() ? 1 : 0);
+                case nd_And: return integer(l != 0 && r != 0 ? 1 : 0);
+                case nd_Or: return integer(l != 0 || r != 0 ? 1 : 0);
+                default: return node;
+            }
+        }
+        switch (node.nt) {
+            case nd_Mul:
+                if (isValue(r, 1)) {
+                    return node.left;
+                }
+                if (isValue(l, 1)) {
+                    return node.right;
+                }
+                // dropping the other operand must not hide a division by zero
+                if (isValue(r, 0) && cannotTrap(node.left) || isValue(l, 0) && cannotTrap(node.right)) {
+                    return integer(0);
+                }
+                return node;
+            case nd_Add:
+                if (isValue(r, 0)) {
+                    return node.left;
+                }
+                if (isValue(l, 0)) {
+                    return node.right;
+                }
+                return node;
+            case nd_Sub:
+                return isValue(r, 0) ? node.left : node;
+            case nd_Div:
+                return isValue(r, 1) ? node.left : node;
+            default:
+                return node;
+        }
+    }
+
+    private static boolean isValue(Integer constant, int value) {
+        return constant != null && constant == value;
+    }
+
+    /**
+     * Returns true if evaluating an expression can never fail, which is the case unless it divides by
+     * something that is not a non-zero constant.
+     */
+    static boolean cannotTrap(Parser.Node node) {
+        if (node == null) {
+            return true;
+        }
+        if (node.nt == Parser.NodeType.nd_Div || node.nt == Parser.NodeType.nd_Mod) {
+            Integer divisor = constant(node.right);
+            if (divisor == null || divisor == 0) {
+                return false;
+            }
+        }
+        return cannotTrap(node.left) && cannotTrap(node.right);
+    }
+
+    /**
+     * Returns the value of an integer literal node.
+     * @param node the node.
+     * @return the value, or null if the node is not an integer literal that fits in an int.
+     */
+    static Integer constant(Parser.Node node) {
+        if (node == null || node.nt != Parser.NodeType.nd_Integer) {
+            return null;
+        }
+        try {
+            return Integer.parseInt(node.value.trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static Parser.Node integer(int value) {
+        return Parser.Node.make_leaf(Parser.NodeType.nd_Integer, Integer.toString(value));
+    }
+}
@@ -0,0 +1,76 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConstantFolderTest {
+
+    private static String fold(String source, int eliminated) {
+        Parser parser = new Parser(new Lexer(source));
+        parser.setEcho(false);
+        ConstantFolder folder = new ConstantFolder();
+        Parser.Node tree = folder.fold(parser.parse());
+        assertEquals(eliminated, folder.eliminated());
+        return parser.printAST(tree, new StringBuilder());
+    }
+
+    /**
+     * Test to see if constant subtrees are replaced by their value
+     */
+    @Test
+    void foldTest() {
+        assertEquals("Sequence\n;\nAssign\nIdentifier x \nInteger 7 \n", fold("x = 1 + 2 * 3;", 4));
+        assertEquals("Sequence\n;\nAssign\nIdentifier x \nInteger 1 \n", fold("x = !0;", 1));
+        assertEquals("Sequence\n;\nAssign\nIdentifier x \nInteger 0 \n", fold("x = 10 / 3 * 3 != 10 && 0;", 8));
+    }
+
+    /**
+     * Test to see if identities are removed, but not when that would hide a division by zero
+     */
+    @Test
+    void identityTest() {
+        String defs = "y = 3; z = 0;\n";
+        String prefix = "Sequence\nSequence\nSequence\n;\nAssign\nIdentifier y \nInteger 3 \nAssign\nIdentifier z \nInteger 0 \n";
+        assertEquals(prefix + "Assign\nIdentifier x \nIdentifier y \n", fold(defs + "x = (y * 1 + 0) - 0;", 6));
+        assertEquals(prefix + "Assign\nIdentifier x \nInteger 0 \n", fold(defs + "x = y * 0;", 2));
+        assertTrue(fold(defs + "x = y / z * 0;", 0).contains("Multiply"));
+        assertTrue(fold(defs + "x = 1 / 0;", 0).contains("Divide"));
+        assertEquals(0, ConstantFolder.countNodes(null));
+    }
+
+    /**
+     * Test to see if If and While statements with a constant condition are removed
+     * @throws IOException
+     */
+    @Test
+    void branchTest() throws IOException {
+        String source = "if (1) print(\"a\"); else print(\"b\");\n"
+                + "if (2 < 1) x = 1;\n"
+                + "while (0) x = 2;\n"
+                + "print(\"c\\n\");";
+        Parser.Node tree = new ConstantFolder().fold(new Parser(new Lexer(source)).parse());
+        assertEquals(8, ConstantFolder.countNodes(tree));
+        StringWriter out = new StringWriter();
+        new VirtualMachine(CodeGenerator.generate(tree), out).run();
+        assertEquals("ac\n", out.toString());
+    }
+
+    /**
+     * Test to see if folding does not change what the resource programs print
+     * @throws IOException
+     */
+    @Test
+    void programTest() throws IOException {
+        String[] programs = {"prime.c", "fizzbuzz.c", "99bottles.c", "count.c"};
+        for (String program : programs) {
+            String file = "src/main/resources/" + program;
+            StringWriter expected = new StringWriter();
+            new Interpreter(new Parser(Lexer.fromFile(file)).parse()).run(expected);
+            StringWriter actual = new StringWriter();
+            new Interpreter(new ConstantFolder().fold(new Parser(Lexer.fromFile(file)).parse())).run(actual);
+            assertEquals(expected.toString(), actual.toString(), program);
+        }
+    }
+}
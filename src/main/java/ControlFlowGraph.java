@@ -0,0 +1,808 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A control-flow graph of basic blocks lowered from an AST, and its conversion to SSA form.
+ *
+ * Lowering turns every expression into instructions that each define a new value, and every read and
+ * write of a program variable into a get or a set. If and While become branches between blocks. And
+ * and Or evaluate both operands, as the Interpreter does, so expressions never branch.
+ *
+ * toSsa() removes the gets and sets. It follows Cytron et al.: dominators by the iterative algorithm of
+ * Cooper, Harvey and Kennedy, dominance frontiers, phis for each variable at the iterated dominance
+ * frontier of its sets, and renaming along the dominator tree. Only variables read in a block other
+ * than the one that sets them get phis (semi-pruned SSA). A variable read before any set on some path
+ * reads a const 0, the value the Interpreter starts every variable with.
+ *
+ * Every pass walks with explicit stacks and marks blocks with per-variable stamps instead of clearing
+ * sets, so that a program of a million statements builds in time proportional to its size plus the
+ * size of its dominance frontiers, which for the structured graphs lowered here stays small.
+ */
+class ControlFlowGraph {
+
+    /** The operations of the IR. */
+    enum Op {
+        CONST("const"), STRING("string"), GET("get"), SET("set"), PHI("phi"),
+        NEG("neg"), NOT("not"), MUL("mul"), DIV("div"), MOD("mod"), ADD("add"), SUB("sub"),
+        LT("lt"), LE("le"), GT("gt"), GE("ge"), EQ("eq"), NE("ne"), AND("and"), OR("or"),
+        PRINTS("prints"), PRINTI("printi"), PRINTC("printc"),
+        JUMP("jump"), BRANCH("branch"), RETURN("return");
+
+        private final String name;
+
+        Op(String name) {
+            this.name = name;
+        }
+
+        boolean isTerminator() {
+            return this == JUMP || this == BRANCH || this == RETURN;
+        }
+
+        @Override
+        public String toString() { return this.name; }
+    }
+
+    /**
+     * One instruction. An instruction that computes something defines the value numbered id; prints,
+     * sets and terminators have an id of -1.
+     */
+    static final class Instr {
+        final Op op;
+        final int id;
+        int[] args;
+        /** The variable of a get, set or phi, the value of a const, or the text of a string. */
+        final String text;
+
+        Instr(Op op, int id, int[] args, String text) {
+            this.op = op;
+            this.id = id;
+            this.args = args;
+            this.text = text;
+        }
+    }
+
+    /**
+     * A basic block: phis, then straight-line instructions, then one terminator. A branch goes to
+     * succs[0] when its argument is not zero and to succs[1] when it is. The arguments of each phi are
+     * in the order of preds.
+     */
+    static final class Block {
+        int index;
+        final List<Instr> phis;
+        final List<Instr> instrs;
+        final List<Block> preds;
+        final List<Block> succs;
+        Block idom;
+        final List<Block> children;
+        int order;
+        int pre;
+        int post;
+
+        Block(int index) {
+            this.index = index;
+            // lowered blocks have at most two edges each way, and millions of blocks may be built
+            this.phis = new ArrayList<>(0);
+            this.instrs = new ArrayList<>();
+            this.preds = new ArrayList<>(2);
+            this.succs = new ArrayList<>(2);
+            this.children = new ArrayList<>(2);
+        }
+
+        Instr terminator() {
+            return this.instrs.isEmpty() ? null : this.instrs.get(this.instrs.size() - 1);
+        }
+    }
+
+    private final List<Block> blocks;
+    private final Block entry;
+    private final List<String> variables;
+    private final Map<String, Integer> variableIndexes;
+    private int values;
+    private Block current;
+    private boolean ssa;
+    private List<Block> rpo;
+
+    /**
+     * Lowers an AST to a control-flow graph with gets and sets.
+     * @param tree the root node returned by Parser.parse().
+     */
+    ControlFlowGraph(Parser.Node tree) {
+        this.blocks = new ArrayList<>();
+        this.variables = new ArrayList<>();
+        this.variableIndexes = new HashMap<>();
+        this.entry = newBlock();
+        this.current = this.entry;
+        statement(tree);
+        emit(Op.RETURN, -1, new int[0], null);
+        this.current = null;
+    }
+
+    /**
+     * Lowers an AST and converts it to SSA form.
+     * @param tree the root node returned by Parser.parse().
+     * @return the graph in SSA form.
+     */
+    static ControlFlowGraph build(Parser.Node tree) {
+        ControlFlowGraph graph = new ControlFlowGraph(tree);
+        graph.toSsa();
+        return graph;
+    }
+
+    List<Block> blocks() {
+        return this.blocks;
+    }
+
+    Block entry() {
+        return this.entry;
+    }
+
+    /**
+     * Returns the names of the variables, in the order they first appear.
+     */
+    List<String> variables() {
+        return this.variables;
+    }
+
+    boolean isSsa() {
+        return this.ssa;
+    }
+
+    /**
+     * Returns the number of phis in the graph.
+     */
+    int phiCount() {
+        int count = 0;
+        for (Block block : this.blocks) {
+            count += block.phis.size();
+        }
+        return count;
+    }
+
+    private Block newBlock() {
+        Block block = new Block(this.blocks.size());
+        this.blocks.add(block);
+        return block;
+    }
+
+    private int emit(Op op, int id, int[] args, String text) {
+        this.current.instrs.add(new Instr(op, id, args, text));
+        return id;
+    }
+
+    private int value(Op op, String text, int... args) {
+        return emit(op, this.values++, args, text);
+    }
+
+    private static void link(Block from, Block to) {
+        from.succs.add(to);
+        to.preds.add(from);
+    }
+
+    private void jump(Block to) {
+        emit(Op.JUMP, -1, new int[0], null);
+        link(this.current, to);
+    }
+
+    private void branch(int cond, Block then, Block otherwise) {
+        emit(Op.BRANCH, -1, new int[] {cond}, null);
+        link(this.current, then);
+        link(this.current, otherwise);
+    }
+
+    /**
+     * Lowers a statement into the current block, leaving current at the block where control continues.
+     */
+    private void statement(Parser.Node node) {
+        if (node == null) {
+            return;
+        }
+        switch (node.nt) {
+            case nd_Sequence:
+                // walk the left-leaning chain with a list instead of recursing once per statement
+                List<Parser.Node> chain = new ArrayList<>();
+                Parser.Node n = node;
+                while (n != null && n.nt == Parser.NodeType.nd_Sequence) {
+                    chain.add(n.right);
+                    n = n.left;
+                }
+                statement(n);
+                for (int i = chain.size() - 1; i >= 0; i--) {
+                    statement(chain.get(i));
+                }
+                return;
+            case nd_Assign: {
+                int value = expression(node.right);
+                variable(node.left.value);
+                emit(Op.SET, -1, new int[] {value}, node.left.value);
+                return;
+            }
+            case nd_If: {
+                int cond = expression(node.left);
+                Block then = newBlock();
+                Block otherwise = node.right.right == null ? null : newBlock();
+                Block join = newBlock();
+                branch(cond, then, otherwise == null ? join : otherwise);
+                this.current = then;
+                statement(node.right.left);
+                jump(join);
+                if (otherwise != null) {
+                    this.current = otherwise;
+                    statement(node.right.right);
+                    jump(join);
+                }
+                this.current = join;
+                return;
+            }
+            case nd_While: {
+                Block header = newBlock();
+                jump(header);
+                this.current = header;
+                int cond = expression(node.left);
+                Block body = newBlock();
+                Block exit = newBlock();
+                branch(cond, body, exit);
+                this.current = body;
+                statement(node.right);
+                jump(header);
+                this.current = exit;
+                return;
+            }
+            case nd_Prts:
+                emit(Op.PRINTS, -1, new int[] {expression(node.left)}, null);
+                return;
+            case nd_Prti:
+                emit(Op.PRINTI, -1, new int[] {expression(node.left)}, null);
+                return;
+            case nd_Prtc:
+                emit(Op.PRINTC, -1, new int[] {expression(node.left)}, null);
+                return;
+            default:
+                Parser.error(-1, -1, "Cannot lower " + node.nt.name() + " as a statement");
+        }
+    }
+
+    private int expression(Parser.Node node) {
+        switch (node.nt) {
+            case nd_Integer:
+                return value(Op.CONST, Integer.toString(CodeGenerator.integer(node.value)));
+            case nd_String:
+                return value(Op.STRING, node.value);
+            case nd_Ident:
+                variable(node.value);
+                return value(Op.GET, node.value);
+            case nd_Negate:
+                return value(Op.NEG, null, expression(node.left));
+            case nd_Not:
+                return value(Op.NOT, null, expression(node.left));
+            default:
+                int l = expression(node.left);
+                int r = expression(node.right);
+                return value(binary(node.nt), null, l, r);
+        }
+    }
+
+    private static Op binary(Parser.NodeType nt) {
+        switch (nt) {
+            case nd_Mul: return Op.MUL;
+            case nd_Div: return Op.DIV;
+            case nd_Mod: return Op.MOD;
+            case nd_Add: return Op.ADD;
+            case nd_Sub: return Op.SUB;
+            case nd_Lss: return Op.LT;
+            case nd_Leq: return Op.LE;
+            case nd_Gtr: return Op.GT;
+            case nd_Geq: return Op.GE;
+            case nd_Eql: return Op.EQ;
+            case nd_Neq: return Op.NE;
+            case nd_And: return Op.AND;
+            case nd_Or: return Op.OR;
+            default:
+                Parser.error(-1, -1, "Cannot lower " + nt.name());
+                return null;
+        }
+    }
+
+    private int variable(String name) {
+        Integer index = this.variableIndexes.get(name);
+        if (index == null) {
+            index = this.variables.size();
+            this.variableIndexes.put(name, index);
+            this.variables.add(name);
+        }
+        return index;
+    }
+
+    /**
+     * Numbers the blocks reachable from the entry in reverse postorder.
+     */
+    private void order() {
+        boolean[] seen = new boolean[this.blocks.size()];
+        int[] next = new int[this.blocks.size()];
+        List<Block> post = new ArrayList<>();
+        // the depth of the search can be the number of blocks, so the stack is an array
+        Block[] stack = new Block[this.blocks.size()];
+        int top = 0;
+        stack[top++] = this.entry;
+        seen[this.entry.index] = true;
+        while (top > 0) {
+            Block block = stack[top - 1];
+            if (next[block.index] < block.succs.size()) {
+                Block succ = block.succs.get(next[block.index]++);
+                if (!seen[succ.index]) {
+                    seen[succ.index] = true;
+                    stack[top++] = succ;
+                }
+            } else {
+                post.add(block);
+                top--;
+            }
+        }
+        Collections.reverse(post);
+        this.rpo = post;
+        for (Block block : this.blocks) {
+            block.order = -1;
+        }
+        for (int i = 0; i < post.size(); i++) {
+            post.get(i).order = i;
+        }
+    }
+
+    /**
+     * Finds the immediate dominator of every reachable block with the iterative algorithm of Cooper,
+     * Harvey and Kennedy, and numbers the dominator tree so that dominates() is constant time.
+     */
+    private void dominators() {
+        order();
+        for (Block block : this.blocks) {
+            block.idom = null;
+            block.children.clear();
+        }
+        this.entry.idom = this.entry;
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int i = 1; i < this.rpo.size(); i++) {
+                Block block = this.rpo.get(i);
+                Block idom = null;
+                for (Block pred : block.preds) {
+                    if (pred.idom != null) {
+                        idom = idom == null ? pred : intersect(pred, idom);
+                    }
+                }
+                if (block.idom != idom) {
+                    block.idom = idom;
+                    changed = true;
+                }
+            }
+        }
+        for (int i = 1; i < this.rpo.size(); i++) {
+            Block block = this.rpo.get(i);
+            block.idom.children.add(block);
+        }
+        // number the tree in preorder and postorder
+        int counter = 0;
+        Block[] stack = new Block[this.blocks.size()];
+        int top = 0;
+        int[] next = new int[this.blocks.size()];
+        stack[top++] = this.entry;
+        this.entry.pre = counter++;
+        while (top > 0) {
+            Block block = stack[top - 1];
+            if (next[block.index] < block.children.size()) {
+                Block child = block.children.get(next[block.index]++);
+                child.pre = counter++;
+                stack[top++] = child;
+            } else {
+                block.post = counter++;
+                top--;
+            }
+        }
+    }
+
+    private static Block intersect(Block a, Block b) {
+        while (a != b) {
+            while (a.order > b.order) {
+                a = a.idom;
+            }
+            while (b.order > a.order) {
+                b = b.idom;
+            }
+        }
+        return a;
+    }
+
+    /**
+     * Tells whether block a dominates block b. Both must be reachable.
+     */
+    static boolean dominates(Block a, Block b) {
+        return a.pre <= b.pre && b.post <= a.post;
+    }
+
+    /**
+     * Returns the dominance frontier of every reachable block, indexed by block, by walking up from
+     * the predecessors of each join as Cooper, Harvey and Kennedy describe.
+     */
+    private List<List<Block>> frontiers() {
+        List<List<Block>> frontiers = new ArrayList<>(Collections.nCopies(this.blocks.size(), List.of()));
+        int[] stamp = new int[this.blocks.size()];
+        for (Block block : this.rpo) {
+            if (block.preds.size() < 2) {
+                continue;
+            }
+            for (Block pred : block.preds) {
+                Block runner = pred;
+                while (runner.order >= 0 && runner != block.idom) {
+                    // a block is added to a frontier at most once per join
+                    if (stamp[runner.index] != block.index + 1) {
+                        stamp[runner.index] = block.index + 1;
+                        if (frontiers.get(runner.index).isEmpty()) {
+                            frontiers.set(runner.index, new ArrayList<>(2));
+                        }
+                        frontiers.get(runner.index).add(block);
+                    }
+                    runner = runner.idom;
+                }
+            }
+        }
+        return frontiers;
+    }
+
+    /**
+     * Converts the graph to SSA form: places phis, renames every get to the value it reads and
+     * removes the gets and sets. Unreachable blocks are removed first.
+     */
+    void toSsa() {
+        if (this.ssa) {
+            return;
+        }
+        dominators();
+        removeUnreachable();
+        List<List<Block>> frontiers = frontiers();
+        placePhis(frontiers);
+        rename();
+        this.ssa = true;
+    }
+
+    private void removeUnreachable() {
+        if (this.rpo.size() == this.blocks.size()) {
+            return;
+        }
+        for (Block block : this.blocks) {
+            if (block.order < 0) {
+                for (Block succ : block.succs) {
+                    succ.preds.remove(block);
+                }
+            }
+        }
+        this.blocks.removeIf(block -> block.order < 0);
+        for (int i = 0; i < this.blocks.size(); i++) {
+            this.blocks.get(i).index = i;
+        }
+        dominators();
+    }
+
+    /**
+     * Places a phi for each variable that is read outside the block that sets it, at the iterated
+     * dominance frontier of the blocks that set it.
+     */
+    private void placePhis(List<List<Block>> frontiers) {
+        int count = this.variables.size();
+        boolean[] global = new boolean[count];
+        List<List<Block>> defsites = new ArrayList<>();
+        for (int v = 0; v < count; v++) {
+            defsites.add(new ArrayList<>());
+        }
+        int[] setIn = new int[count];
+        for (Block block : this.blocks) {
+            for (Instr instr : block.instrs) {
+                if (instr.op == Op.GET) {
+                    int v = this.variableIndexes.get(instr.text);
+                    if (setIn[v] != block.index + 1) {
+                        global[v] = true;
+                    }
+                } else if (instr.op == Op.SET) {
+                    int v = this.variableIndexes.get(instr.text);
+                    if (setIn[v] != block.index + 1) {
+                        setIn[v] = block.index + 1;
+                        defsites.get(v).add(block);
+                    }
+                }
+            }
+        }
+        int[] hasPhi = new int[this.blocks.size()];
+        int[] queued = new int[this.blocks.size()];
+        Deque<Block> work = new ArrayDeque<>();
+        for (int v = 0; v < count; v++) {
+            if (!global[v]) {
+                continue;
+            }
+            for (Block block : defsites.get(v)) {
+                queued[block.index] = v + 1;
+                work.add(block);
+            }
+            while (!work.isEmpty()) {
+                Block block = work.poll();
+                for (Block join : frontiers.get(block.index)) {
+                    if (hasPhi[join.index] != v + 1) {
+                        hasPhi[join.index] = v + 1;
+                        join.phis.add(new Instr(Op.PHI, this.values++, new int[join.preds.size()], this.variables.get(v)));
+                        if (queued[join.index] != v + 1) {
+                            queued[join.index] = v + 1;
+                            work.add(join);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Replaces every get by the value it reads, fills in the phi arguments and removes the gets and
+     * sets, walking the dominator tree with a stack of the values each variable currently holds.
+     */
+    private void rename() {
+        int count = this.variables.size();
+        List<Deque<Integer>> stacks = new ArrayList<>();
+        for (int v = 0; v < count; v++) {
+            stacks.add(new ArrayDeque<>());
+        }
+        int[] replace = new int[this.values];
+        Arrays.fill(replace, -1);
+        int[] zero = {-1};
+
+        // each frame is a block to enter, or with exit set the variables to pop when leaving it
+        Deque<Object[]> frames = new ArrayDeque<>();
+        frames.push(new Object[] {this.entry, null});
+        while (!frames.isEmpty()) {
+            Object[] frame = frames.pop();
+            if (frame[1] != null) {
+                for (int v : (int[]) frame[1]) {
+                    stacks.get(v).pop();
+                }
+                continue;
+            }
+            Block block = (Block) frame[0];
+            List<Integer> pushed = new ArrayList<>();
+            for (Instr phi : block.phis) {
+                int v = this.variableIndexes.get(phi.text);
+                stacks.get(v).push(phi.id);
+                pushed.add(v);
+            }
+            for (Instr instr : block.instrs.toArray(new Instr[0])) {
+                if (instr.op == Op.GET) {
+                    replace[instr.id] = top(stacks.get(this.variableIndexes.get(instr.text)), zero);
+                } else if (instr.op == Op.SET) {
+                    int v = this.variableIndexes.get(instr.text);
+                    int value = instr.args[0];
+                    stacks.get(v).push(replace[value] >= 0 ? replace[value] : value);
+                    pushed.add(v);
+                }
+            }
+            for (Block succ : block.succs) {
+                for (int j = 0; j < succ.preds.size(); j++) {
+                    if (succ.preds.get(j) == block) {
+                        for (Instr phi : succ.phis) {
+                            phi.args[j] = top(stacks.get(this.variableIndexes.get(phi.text)), zero);
+                        }
+                    }
+                }
+            }
+            int[] pop = new int[pushed.size()];
+            for (int i = 0; i < pop.length; i++) {
+                pop[i] = pushed.get(i);
+            }
+            frames.push(new Object[] {block, pop});
+            for (int i = block.children.size() - 1; i >= 0; i--) {
+                frames.push(new Object[] {block.children.get(i), null});
+            }
+        }
+
+        for (Block block : this.blocks) {
+            block.instrs.removeIf(instr -> instr.op == Op.GET || instr.op == Op.SET);
+            for (Instr instr : block.instrs) {
+                for (int i = 0; i < instr.args.length; i++) {
+                    int arg = instr.args[i];
+                    if (arg < replace.length && replace[arg] >= 0) {
+                        instr.args[i] = replace[arg];
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the value a variable holds, which is a const 0 in the entry block if it has not been set.
+     */
+    private int top(Deque<Integer> stack, int[] zero) {
+        if (!stack.isEmpty()) {
+            return stack.peek();
+        }
+        if (zero[0] < 0) {
+            zero[0] = this.values++;
+            this.entry.instrs.add(0, new Instr(Op.CONST, zero[0], new int[0], "0"));
+        }
+        return zero[0];
+    }
+
+    /**
+     * Checks the structure of the graph, and in SSA form that every value is defined once and
+     * before each of its uses.
+     * @return a description of each problem found, empty if there is none.
+     */
+    List<String> verify() {
+        List<String> problems = new ArrayList<>();
+        Map<Integer, Block> definedIn = new HashMap<>();
+        Map<Integer, Integer> position = new HashMap<>();
+        for (Block block : this.blocks) {
+            if (this.blocks.get(block.index) != block) {
+                problems.add("b" + block.index + ": wrong index");
+            }
+            Instr terminator = block.terminator();
+            if (terminator == null || !terminator.op.isTerminator()) {
+                problems.add("b" + block.index + ": no terminator");
+            } else {
+                int expected = terminator.op == Op.BRANCH ? 2 : terminator.op == Op.JUMP ? 1 : 0;
+                if (block.succs.size() != expected) {
+                    problems.add("b" + block.index + ": " + terminator.op + " with " + block.succs.size() + " successors");
+                }
+            }
+            for (int i = 0; i < block.instrs.size() - 1; i++) {
+                if (block.instrs.get(i).op.isTerminator()) {
+                    problems.add("b" + block.index + ": terminator before the end");
+                }
+            }
+            for (Block succ : block.succs) {
+                if (Collections.frequency(succ.preds, block) != Collections.frequency(block.succs, succ)) {
+                    problems.add("b" + block.index + " -> b" + succ.index + ": edge missing from preds");
+                }
+            }
+            for (Block pred : block.preds) {
+                if (!pred.succs.contains(block)) {
+                    problems.add("b" + pred.index + " -> b" + block.index + ": edge missing from succs");
+                }
+            }
+            List<Instr> all = new ArrayList<>(block.phis);
+            all.addAll(block.instrs);
+            for (int i = 0; i < all.size(); i++) {
+                Instr instr = all.get(i);
+                if (instr.id >= 0 && definedIn.put(instr.id, block) != null) {
+                    problems.add("v" + instr.id + ": defined more than once");
+                }
+                position.put(instr.id, i);
+                if (instr.op == Op.PHI) {
+                    if (!this.ssa) {
+                        problems.add("b" + block.index + ": phi before SSA conversion");
+                    }
+                    if (instr.args.length != block.preds.size()) {
+                        problems.add("v" + instr.id + ": " + instr.args.length + " arguments for " + block.preds.size() + " predecessors");
+                    }
+                } else if (this.ssa && (instr.op == Op.GET || instr.op == Op.SET)) {
+                    problems.add("b" + block.index + ": " + instr.op + " " + instr.text + " left in SSA form");
+                }
+            }
+        }
+        if (problems.isEmpty()) {
+            // the dominator tree is only sound for a well formed graph
+            dominators();
+            for (Block block : this.blocks) {
+                if (block.order < 0) {
+                    problems.add("b" + block.index + ": unreachable");
+                }
+            }
+        }
+        if (!problems.isEmpty()) {
+            return problems;
+        }
+        for (Block block : this.blocks) {
+            for (Instr phi : block.phis) {
+                for (int j = 0; j < phi.args.length; j++) {
+                    Block def = definedIn.get(phi.args[j]);
+                    if (def == null) {
+                        problems.add("v" + phi.id + ": argument v" + phi.args[j] + " is never defined");
+                    } else if (!dominates(def, block.preds.get(j))) {
+                        problems.add("v" + phi.id + ": argument v" + phi.args[j] + " does not dominate b" + block.preds.get(j).index);
+                    }
+                }
+            }
+            for (int i = 0; i < block.instrs.size(); i++) {
+                Instr instr = block.instrs.get(i);
+                for (int arg : instr.args) {
+                    Block def = definedIn.get(arg);
+                    if (def == null) {
+                        problems.add("b" + block.index + ": use of v" + arg + ", which is never defined");
+                    } else if (def == block ? position.get(arg) >= block.phis.size() + i : !dominates(def, block)) {
+                        problems.add("b" + block.index + ": use of v" + arg + " before its definition");
+                    }
+                }
+            }
+        }
+        return problems;
+    }
+
+    /**
+     * Formats the graph one instruction per line, each block headed by its predecessors and its
+     * immediate dominator.
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (Block block : this.blocks) {
+            sb.append('b').append(block.index).append(':');
+            if (!block.preds.isEmpty()) {
+                sb.append("  ; preds");
+                for (Block pred : block.preds) {
+                    sb.append(" b").append(pred.index);
+                }
+                if (block.idom != null && this.ssa) {
+                    sb.append(", idom b").append(block.idom.index);
+                }
+            }
+            sb.append('\n');
+            for (Instr phi : block.phis) {
+                sb.append("  v").append(phi.id).append(" = phi ").append(phi.text);
+                for (int j = 0; j < phi.args.length; j++) {
+                    sb.append(j == 0 ? " [" : ", ").append('b').append(block.preds.get(j).index).append(": v").append(phi.args[j]);
+                }
+                sb.append("]\n");
+            }
+            for (Instr instr : block.instrs) {
+                sb.append("  ");
+                if (instr.id >= 0) {
+                    sb.append('v').append(instr.id).append(" = ");
+                }
+                sb.append(instr.op);
+                switch (instr.op) {
+                    case CONST:
+                    case GET:
+                        sb.append(' ').append(instr.text);
+                        break;
+                    case STRING:
+                        sb.append(" \"").append(instr.text).append('"');
+                        break;
+                    case SET:
+                        sb.append(' ').append(instr.text).append(", v").append(instr.args[0]);
+                        break;
+                    case JUMP:
+                        sb.append(" b").append(block.succs.get(0).index);
+                        break;
+                    case BRANCH:
+                        sb.append(" v").append(instr.args[0]).append(", b").append(block.succs.get(0).index)
+                                .append(", b").append(block.succs.get(1).index);
+                        break;
+                    default:
+                        for (int i = 0; i < instr.args.length; i++) {
+                            sb.append(i == 0 ? " v" : ", v").append(instr.args[i]);
+                        }
+                }
+                sb.append('\n');
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Builds the SSA form of a tree, checks it and writes its dump to a file.
+     * @param tree the root node returned by Parser.parse().
+     * @param fileName the file to write.
+     * @throws IOException if the file cannot be written.
+     * @throws IllegalStateException if the verifier finds a problem.
+     */
+    static void writeFile(Parser.Node tree, String fileName) throws IOException {
+        ControlFlowGraph graph = build(tree);
+        List<String> problems = graph.verify();
+        if (!problems.isEmpty()) {
+            throw new IllegalStateException(String.join("\n", problems));
+        }
+        Files.writeString(Path.of(fileName), graph.toString(), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,197 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ControlFlowGraphTest {
+
+    private static ControlFlowGraph build(String source) {
+        Parser parser = new Parser(new Lexer(source));
+        parser.setEcho(false);
+        ControlFlowGraph graph = ControlFlowGraph.build(parser.parse());
+        assertEquals(List.of(), graph.verify());
+        return graph;
+    }
+
+    /**
+     * Runs a graph in SSA form, evaluating the phis of a block on the edge it is entered by.
+     */
+    private static String execute(ControlFlowGraph graph) {
+        StringBuilder out = new StringBuilder();
+        Map<Integer, Integer> values = new HashMap<>();
+        Map<String, Integer> strings = new HashMap<>();
+        List<String> pool = new ArrayList<>();
+        ControlFlowGraph.Block previous = null;
+        ControlFlowGraph.Block block = graph.entry();
+        while (block != null) {
+            int j = previous == null ? -1 : block.preds.indexOf(previous);
+            Map<Integer, Integer> incoming = new HashMap<>();
+            for (ControlFlowGraph.Instr phi : block.phis) {
+                incoming.put(phi.id, values.get(phi.args[j]));
+            }
+            values.putAll(incoming);
+            ControlFlowGraph.Block next = null;
+            for (ControlFlowGraph.Instr instr : block.instrs) {
+                int a = instr.args.length > 0 ? values.get(instr.args[0]) : 0;
+                int b = instr.args.length > 1 ? values.get(instr.args[1]) : 0;
+                int result = 0;
+                switch (instr.op) {
+                    case CONST: result = Integer.parseInt(instr.text); break;
+                    case STRING:
+                        result = strings.computeIfAbsent(instr.text, text -> {
+                            pool.add(Bytecode.unescape(text));
+                            return pool.size() - 1;
+                        });
+                        break;
+                    case NEG: result = -a; break;
+                    case NOT: result = a == 0 ? 1 : 0; break;
+                    case MUL: result = a * b; break;
+                    case DIV: result = a / b; break;
+                    case MOD: result = a % b; break;
+                    case ADD: result = a + b; break;
+                    case SUB: result = a - b; break;
+                    case LT: result = a < b ? 1 : 0; break;
+                    case LE: result = a <= b ? 1 : 0; break;
+                    case GT: result = a > b ? 1 : 0; break;
+                    case GE: result = a >= b ? 1 : 0; break;
+                    case EQ: result = a == b ? 1 : 0; break;
+                    case NE: result = a != b ? 1 : 0; break;
+                    case AND: result = a != 0 && b != 0 ? 1 : 0; break;
+                    case OR: result = a != 0 || b != 0 ? 1 : 0; break;
+                    case PRINTS: out.append(pool.get(a)); break;
+                    case PRINTI: out.append(a); break;
+                    case PRINTC: out.append((char) a); break;
+                    case JUMP: next = block.succs.get(0); break;
+                    case BRANCH: next = block.succs.get(a != 0 ? 0 : 1); break;
+                    default: break;
+                }
+                if (instr.id >= 0) {
+                    values.put(instr.id, result);
+                }
+            }
+            previous = block;
+            block = next;
+        }
+        return out.toString();
+    }
+
+    /**
+     * Test to see if straight-line code becomes one block with no gets, sets or phis
+     */
+    @Test
+    void straightLineTest() {
+        ControlFlowGraph graph = build("x = 1; x = x + 2; print(x);");
+        assertEquals("b0:\n"
+                + "  v0 = const 1\n"
+                + "  v2 = const 2\n"
+                + "  v3 = add v0, v2\n"
+                + "  printi v3\n"
+                + "  return\n", graph.toString());
+        assertEquals(0, graph.phiCount());
+    }
+
+    /**
+     * Test to see if an If with an else gets a phi at its join, and a variable set on one path only reads 0 on the other
+     */
+    @Test
+    void ifTest() {
+        ControlFlowGraph graph = build("a = 5; if (a > 3) b = 1; else b = 2; if (a) c = 7; d = b + c; print(d);");
+        assertEquals(2, graph.phiCount());
+        String dump = graph.toString();
+        assertTrue(dump.contains(" = phi b [b1: "), dump);
+        assertTrue(dump.startsWith("b0:\n  v"), dump);
+        assertTrue(dump.contains(" = const 0\n"), dump);
+        assertEquals("8", execute(graph));
+    }
+
+    /**
+     * Test to see if a loop gets phis at its header only for the variables it changes and reads
+     */
+    @Test
+    void loopTest() {
+        ControlFlowGraph graph = build("i = 0; s = 0; k = 9; while (i < 10) { s = s + i * k; i = i + 1; } print(s);");
+        assertEquals(2, graph.phiCount());
+        ControlFlowGraph.Block header = graph.blocks().get(1);
+        assertEquals(2, header.phis.size());
+        assertEquals(2, header.preds.size());
+        assertSame(graph.entry(), header.idom);
+        assertEquals("405", execute(graph));
+    }
+
+    /**
+     * Test to see if the dump of a small loop is exact
+     */
+    @Test
+    void dumpTest() {
+        ControlFlowGraph graph = build("i = 3; while (i) i = i - 1;");
+        assertEquals("b0:\n"
+                + "  v0 = const 3\n"
+                + "  jump b1\n"
+                + "b1:  ; preds b0 b2, idom b0\n"
+                + "  v5 = phi i [b0: v0, b2: v4]\n"
+                + "  branch v5, b2, b3\n"
+                + "b2:  ; preds b1, idom b1\n"
+                + "  v3 = const 1\n"
+                + "  v4 = sub v5, v3\n"
+                + "  jump b1\n"
+                + "b3:  ; preds b1, idom b1\n"
+                + "  return\n", graph.toString());
+    }
+
+    /**
+     * Test to see if the verifier finds a broken graph
+     */
+    @Test
+    void verifyTest() {
+        ControlFlowGraph graph = build("i = 3; while (i) i = i - 1;");
+        ControlFlowGraph.Block body = graph.blocks().get(2);
+        body.instrs.get(1).args[0] = 99;
+        assertEquals(List.of("b2: use of v99, which is never defined"), graph.verify());
+        body.instrs.get(1).args[0] = 5;
+        graph.blocks().get(1).phis.get(0).args = new int[] {0};
+        assertEquals(List.of("v5: 1 arguments for 2 predecessors"), graph.verify());
+
+        ControlFlowGraph lowered = new ControlFlowGraph(new Parser(new Lexer("i = 3; print(i);")).parse());
+        assertFalse(lowered.isSsa());
+        assertEquals(List.of(), lowered.verify());
+        assertTrue(lowered.toString().contains("set i, v0"));
+    }
+
+    /**
+     * Test to see if the programs in resources build, verify and run like the Interpreter
+     * @throws IOException
+     */
+    @Test
+    void resourcesTest() throws IOException {
+        String[] programs = {"prime.c", "fizzbuzz.c", "99bottles.c", "count.c", "hello.t", "loop.py", "test1.c"};
+        for (String program : programs) {
+            String file = "src/main/resources/" + program;
+            ControlFlowGraph graph = ControlFlowGraph.build(new Parser(Lexer.fromFile(file)).parse());
+            assertEquals(List.of(), graph.verify(), program);
+            StringWriter expected = new StringWriter();
+            new Interpreter(new Parser(Lexer.fromFile(file)).parse()).run(expected);
+            assertEquals(expected.toString(), execute(graph), program);
+        }
+    }
+
+    /**
+     * Test to see if a very long program with deep dominator chains builds without overflowing the stack
+     */
+    @Test
+    void largeTest() {
+        StringBuilder source = new StringBuilder("x = 0; y = 0;\n");
+        for (int i = 0; i < 20000; i++) {
+            source.append("if (x < ").append(i).append(") x = x + 1; else y = y + x;\n");
+        }
+        source.append("print(x, \" \", y);\n");
+        ControlFlowGraph graph = build(source.toString());
+        assertEquals(1 + 3 * 20000, graph.blocks().size());
+        assertEquals(2 * 20000, graph.phiCount());
+    }
+}
@@ -0,0 +1,412 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Removes statements that cannot affect what a program prints. Unreachable statements go first: the
+ * branch of an If whose condition is a constant that selects the other one, the body of a while (0)
+ * loop, and everything after a loop whose condition is a non-zero constant, which can never end.
+ * Then a reaching-definitions analysis links every use of a variable to the assignments whose value
+ * it may read, and an assignment is kept only if its value may reach a print, a condition, or another
+ * kept assignment. Assignments whose value may divide by zero are always kept, as are loops, which
+ * may never end. The tree is rewritten in place, and each removal is described in removed().
+ *
+ * Run the ConstantFolder first to turn conditions such as 1 < 0 into the constants this looks for.
+ */
+class DeadCodeEliminator {
+    private final List<String> removed;
+    private int eliminated;
+    private boolean fallsThrough;
+    private Map<Parser.Node, Set<Parser.Node>> reaching;
+    private List<Parser.Node> definitions;
+    private Set<Parser.Node> defined;
+    private List<Parser.Node> roots;
+
+    DeadCodeEliminator() {
+        this.removed = new ArrayList<>();
+    }
+
+    /**
+     * Removes the unreachable statements and dead stores of a tree.
+     * @param tree the root node returned by Parser.parse().
+     * @return the root of the remaining tree, which may be null if no statement is left.
+     */
+    Parser.Node eliminate(Parser.Node tree) {
+        int before = AstWalker.count(tree);
+        this.fallsThrough = true;
+        Parser.Node result = reachable(tree);
+        analyze(result);
+        result = sweep(result, live());
+        this.eliminated += before - AstWalker.count(result);
+        return result;
+    }
+
+    /**
+     * Returns the number of nodes removed by all calls to eliminate() so far.
+     */
+    int eliminated() {
+        return this.eliminated;
+    }
+
+    /**
+     * Returns a description of each statement removed so far, in the order they were removed.
+     */
+    List<String> removed() {
+        return this.removed;
+    }
+
+    /**
+     * Returns the def-use chains found by the last call to eliminate(), before dead stores were
+     * removed: each Assign node, in source order, with the Identifier nodes that may read its value.
+     */
+    Map<Parser.Node, List<Parser.Node>> defUse() {
+        Map<Parser.Node, List<Parser.Node>> chains = new LinkedHashMap<>();
+        for (Parser.Node definition : this.definitions) {
+            chains.put(definition, new ArrayList<>());
+        }
+        for (Map.Entry<Parser.Node, Set<Parser.Node>> use : this.reaching.entrySet()) {
+            for (Parser.Node definition : use.getValue()) {
+                chains.get(definition).add(use.getKey());
+            }
+        }
+        return chains;
+    }
+
+    /** What to do with one statement: the node to put in its place, or null to remove it. */
+    private interface Rewrite {
+        Parser.Node apply(Parser.Node statement);
+    }
+
+    /**
+     * Applies a rewrite to each statement of a Sequence chain, unlinking the statements it removes.
+     * Like ConstantFolder, the chain is walked with a list instead of recursing once per statement.
+     */
+    private static Parser.Node sequence(Parser.Node node, Rewrite rewrite) {
+        List<Parser.Node> chain = new ArrayList<>();
+        Parser.Node n = node;
+        while (n != null && n.nt == Parser.NodeType.nd_Sequence) {
+            chain.add(n);
+            n = n.left;
+        }
+        Parser.Node left = n == null ? null : rewrite.apply(n);
+        for (int i = chain.size() - 1; i >= 0; i--) {
+            Parser.Node sequence = chain.get(i);
+            sequence.right = sequence.right == null ? null : rewrite.apply(sequence.right);
+            if (sequence.right == null) {
+                continue;
+            }
+            sequence.left = left;
+            left = sequence;
+        }
+        return left;
+    }
+
+    /**
+     * Returns the statements of a Sequence chain in order, without changing it.
+     */
+    private static List<Parser.Node> statements(Parser.Node node) {
+        List<Parser.Node> statements = new ArrayList<>();
+        Parser.Node n = node;
+        while (n != null && n.nt == Parser.NodeType.nd_Sequence) {
+            if (n.right != null) {
+                statements.add(n.right);
+            }
+            n = n.left;
+        }
+        if (n != null) {
+            statements.add(n);
+        }
+        Collections.reverse(statements);
+        return statements;
+    }
+
+    /**
+     * Removes the statements that can never run. Sets fallsThrough to whether control can leave the
+     * statement at its end; it must be true on entry.
+     */
+    private Parser.Node reachable(Parser.Node node) {
+        if (node == null) {
+            return null;
+        }
+        switch (node.nt) {
+            case nd_Sequence:
+                return sequence(node, statement -> {
+                    if (!this.fallsThrough) {
+                        this.removed.add("unreachable: " + describe(statement));
+                        return null;
+                    }
+                    return reachable(statement);
+                });
+            case nd_If: {
+                Integer cond = ConstantFolder.constant(node.left);
+                if (cond != null) {
+                    Parser.Node dead = cond != 0 ? node.right.right : node.right.left;
+                    if (dead != null) {
+                        this.removed.add("unreachable: " + describe(dead) + " under " + describe(node));
+                    }
+                    return reachable(cond != 0 ? node.right.left : node.right.right);
+                }
+                node.right.left = reachable(node.right.left);
+                boolean thenFallsThrough = this.fallsThrough;
+                this.fallsThrough = true;
+                node.right.right = reachable(node.right.right);
+                this.fallsThrough |= thenFallsThrough;
+                return node;
+            }
+            case nd_While: {
+                Integer cond = ConstantFolder.constant(node.left);
+                if (cond != null && cond == 0) {
+                    this.removed.add("unreachable: " + describe(node));
+                    return null;
+                }
+                node.right = reachable(node.right);
+                // there is no break, so a loop on a non-zero constant never ends
+                this.fallsThrough = cond == null;
+                return node;
+            }
+            default:
+                return node;
+        }
+    }
+
+    /**
+     * Finds the definitions that reach every use of a variable.
+     */
+    private void analyze(Parser.Node tree) {
+        this.reaching = new LinkedHashMap<>();
+        this.definitions = new ArrayList<>();
+        this.defined = identitySet();
+        this.roots = new ArrayList<>();
+        flow(tree, new HashMap<>());
+    }
+
+    /**
+     * Passes the definitions reaching a statement through it.
+     * @param node the statement.
+     * @param in for each variable, the Assign nodes whose value it may hold; updated in place.
+     * @return the definitions reaching the end of the statement.
+     */
+    private Map<String, Set<Parser.Node>> flow(Parser.Node node, Map<String, Set<Parser.Node>> in) {
+        if (node == null) {
+            return in;
+        }
+        switch (node.nt) {
+            case nd_Sequence:
+                for (Parser.Node statement : statements(node)) {
+                    flow(statement, in);
+                }
+                return in;
+            case nd_Assign:
+                if (this.defined.add(node)) {
+                    this.definitions.add(node);
+                }
+                use(node.right, in, false);
+                Set<Parser.Node> defs = identitySet();
+                defs.add(node);
+                in.put(node.left.value, defs);
+                return in;
+            case nd_If: {
+                use(node.left, in, true);
+                Map<String, Set<Parser.Node>> then = flow(node.right.left, copy(in));
+                Map<String, Set<Parser.Node>> otherwise = flow(node.right.right, copy(in));
+                in.clear();
+                in.putAll(merge(then, otherwise));
+                return in;
+            }
+            case nd_While: {
+                // go round until the definitions reaching the header stop growing; the uses are
+                // recorded again each time, so the last round leaves the complete sets
+                Map<String, Set<Parser.Node>> head = copy(in);
+                while (true) {
+                    use(node.left, head, true);
+                    Map<String, Set<Parser.Node>> next = merge(head, flow(node.right, copy(head)));
+                    if (next.equals(head)) {
+                        break;
+                    }
+                    head = next;
+                }
+                in.clear();
+                in.putAll(head);
+                return in;
+            }
+            case nd_Prts:
+            case nd_Prti:
+            case nd_Prtc:
+                use(node.left, in, true);
+                return in;
+            default:
+                return in;
+        }
+    }
+
+    /**
+     * Records the definitions reaching each variable read by an expression.
+     * @param root true if the value is always needed, as it is by a print or a condition.
+     */
+    private void use(Parser.Node expression, Map<String, Set<Parser.Node>> in, boolean root) {
+        AstWalker.preorder(expression, node -> {
+            if (node != null && node.nt == Parser.NodeType.nd_Ident) {
+                Set<Parser.Node> defs = identitySet();
+                defs.addAll(in.getOrDefault(node.value, Collections.emptySet()));
+                if (this.reaching.put(node, defs) == null && root) {
+                    this.roots.add(node);
+                }
+            }
+        });
+    }
+
+    /**
+     * Marks the definitions whose value may be needed: those reaching a root use, those that may
+     * trap, and those reaching a use in a definition already marked.
+     */
+    private Set<Parser.Node> live() {
+        Set<Parser.Node> live = identitySet();
+        Deque<Parser.Node> work = new ArrayDeque<>(this.roots);
+        for (Parser.Node definition : this.definitions) {
+            if (!ConstantFolder.cannotTrap(definition.right)) {
+                live.add(definition);
+                uses(definition.right, work);
+            }
+        }
+        while (!work.isEmpty()) {
+            for (Parser.Node definition : this.reaching.get(work.pop())) {
+                if (live.add(definition)) {
+                    uses(definition.right, work);
+                }
+            }
+        }
+        return live;
+    }
+
+    private static void uses(Parser.Node expression, Deque<Parser.Node> work) {
+        AstWalker.preorder(expression, node -> {
+            if (node != null && node.nt == Parser.NodeType.nd_Ident) {
+                work.push(node);
+            }
+        });
+    }
+
+    /**
+     * Removes the assignments that are not live, and the If statements left with nothing to run.
+     */
+    private Parser.Node sweep(Parser.Node node, Set<Parser.Node> live) {
+        if (node == null) {
+            return null;
+        }
+        switch (node.nt) {
+            case nd_Sequence:
+                return sequence(node, statement -> sweep(statement, live));
+            case nd_Assign:
+                if (!live.contains(node)) {
+                    this.removed.add("dead store: " + describe(node));
+                    return null;
+                }
+                return node;
+            case nd_If:
+                node.right.left = sweep(node.right.left, live);
+                node.right.right = sweep(node.right.right, live);
+                if (node.right.left == null && node.right.right == null && ConstantFolder.cannotTrap(node.left)) {
+                    this.removed.add("empty: " + describe(node));
+                    return null;
+                }
+                return node;
+            case nd_While:
+                node.right = sweep(node.right, live);
+                return node;
+            default:
+                return node;
+        }
+    }
+
+    private static Set<Parser.Node> identitySet() {
+        return Collections.newSetFromMap(new IdentityHashMap<>());
+    }
+
+    private static Map<String, Set<Parser.Node>> copy(Map<String, Set<Parser.Node>> state) {
+        Map<String, Set<Parser.Node>> copy = new HashMap<>();
+        for (Map.Entry<String, Set<Parser.Node>> entry : state.entrySet()) {
+            Set<Parser.Node> defs = identitySet();
+            defs.addAll(entry.getValue());
+            copy.put(entry.getKey(), defs);
+        }
+        return copy;
+    }
+
+    private static Map<String, Set<Parser.Node>> merge(Map<String, Set<Parser.Node>> a, Map<String, Set<Parser.Node>> b) {
+        Map<String, Set<Parser.Node>> merged = copy(a);
+        for (Map.Entry<String, Set<Parser.Node>> entry : b.entrySet()) {
+            merged.computeIfAbsent(entry.getKey(), k -> identitySet()).addAll(entry.getValue());
+        }
+        return merged;
+    }
+
+    /**
+     * Describes a statement for the report, in the source language.
+     */
+    static String describe(Parser.Node node) {
+        if (node == null) {
+            return ";";
+        }
+        switch (node.nt) {
+            case nd_Sequence:
+                List<Parser.Node> statements = statements(node);
+                return statements.size() == 1 ? describe(statements.get(0)) : "{...}";
+            case nd_Assign:
+                return node.left.value + " = " + expression(node.right, false) + ";";
+            case nd_If:
+                return "if (" + expression(node.left, false) + ")";
+            case nd_While:
+                return "while (" + expression(node.left, false) + ")";
+            case nd_Prtc:
+                return "putc(" + expression(node.left, false) + ");";
+            default:
+                return "print(" + expression(node.left, false) + ");";
+        }
+    }
+
+    /**
+     * Describes an expression in the source language, in parentheses if nested in another one.
+     */
+    static String expression(Parser.Node node, boolean nested) {
+        switch (node.nt) {
+            case nd_String:
+                return '"' + node.value + '"';
+            case nd_Integer:
+            case nd_Ident:
+                return node.value;
+            case nd_Negate:
+                return "-" + expression(node.left, true);
+            case nd_Not:
+                return "!" + expression(node.left, true);
+            default:
+                String text = expression(node.left, true) + " " + operator(node.nt) + " " + expression(node.right, true);
+                return nested ? "(" + text + ")" : text;
+        }
+    }
+
+    private static String operator(Parser.NodeType nt) {
+        switch (nt) {
+            case nd_Mul: return "*";
+            case nd_Div: return "/";
+            case nd_Mod: return "%";
+            case nd_Add: return "+";
+            case nd_Sub: return "-";
+            case nd_Lss: return "<";
+            case nd_Leq: return "<=";
+            case nd_Gtr: return ">";
+            case nd_Geq: return ">=";
+            case nd_Eql: return "==";
+            case nd_Neq: return "!=";
+            case nd_And: return "&&";
+            case nd_Or: return "||";
+            default: return nt.toString();
+        }
+    }
+}
@@ -0,0 +1,116 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DeadCodeEliminatorTest {
+
+    private static String run(Parser.Node tree) throws IOException {
+        StringWriter out = new StringWriter();
+        new Interpreter(tree).run(out);
+        return out.toString();
+    }
+
+    private static Parser.Node parse(String source) {
+        Parser parser = new Parser(new Lexer(source));
+        parser.setEcho(false);
+        return parser.parse();
+    }
+
+    /**
+     * Test to see if stores that nothing reads are removed, including ones only read by other dead stores
+     * @throws IOException
+     */
+    @Test
+    void deadStoreTest() throws IOException {
+        String source = "a = 1; b = a + 1; c = 5; c = 6; print(c, \"\\n\");";
+        DeadCodeEliminator eliminator = new DeadCodeEliminator();
+        Parser.Node tree = eliminator.eliminate(parse(source));
+        assertEquals(List.of("dead store: a = 1;", "dead store: b = a + 1;", "dead store: c = 5;"), eliminator.removed());
+        assertEquals(14, eliminator.eliminated());
+        assertEquals("6\n", run(tree));
+        assertEquals(List.of("c"), new Interpreter(tree).variables());
+    }
+
+    /**
+     * Test to see if a store read on one path, or in a later iteration of a loop, is kept, and a loop counter nobody reads is not
+     * @throws IOException
+     */
+    @Test
+    void pathTest() throws IOException {
+        String source = "x = 1; i = 0; n = 0; unused = 0;\n"
+                + "while (i < 3) { if (i == 1) print(x); x = x + 10; i = i + 1; unused = unused + 1; }\n"
+                + "if (i) y = 1; else y = 2; print(y);";
+        DeadCodeEliminator eliminator = new DeadCodeEliminator();
+        Parser.Node tree = eliminator.eliminate(parse(source));
+        assertEquals(List.of("dead store: n = 0;", "dead store: unused = 0;", "dead store: unused = unused + 1;"), eliminator.removed());
+        assertEquals(run(parse(source)), run(tree));
+    }
+
+    /**
+     * Test to see if branches that can never run, and statements after an endless loop, are removed
+     * @throws IOException
+     */
+    @Test
+    void unreachableTest() throws IOException {
+        String source = "if (0) { print(\"a\"); } else print(\"b\");\n"
+                + "while (0) print(\"c\");\n"
+                + "if (1) print(\"d\");\n"
+                + "i = 0; while (1) { print(i); i = i + 1; if (i > 2) { x = 1 / 0; } }\n"
+                + "print(\"never\");";
+        DeadCodeEliminator eliminator = new DeadCodeEliminator();
+        Parser.Node tree = eliminator.eliminate(parse(source));
+        assertEquals(List.of("unreachable: print(\"a\"); under if (0)", "unreachable: while (0)", "unreachable: print(\"never\");"),
+                eliminator.removed());
+        StringWriter out = new StringWriter();
+        assertThrows(ArithmeticException.class, () -> new Interpreter(tree).run(out));
+        assertEquals("bd012", out.toString());
+    }
+
+    /**
+     * Test to see if a store that may divide by zero is kept, and an If left empty is removed only if its condition cannot trap
+     * @throws IOException
+     */
+    @Test
+    void trapTest() throws IOException {
+        String source = "z = 0; a = 1; if (a > 0) b = 2; if (a / z) c = 3; d = 7 / z;";
+        DeadCodeEliminator eliminator = new DeadCodeEliminator();
+        Parser.Node tree = eliminator.eliminate(parse(source));
+        assertEquals(List.of("dead store: b = 2;", "empty: if (a > 0)", "dead store: c = 3;"), eliminator.removed());
+        assertThrows(ArithmeticException.class, () -> run(tree));
+    }
+
+    /**
+     * Test to see if each use is linked to the definitions that may reach it
+     */
+    @Test
+    void defUseTest() {
+        DeadCodeEliminator eliminator = new DeadCodeEliminator();
+        eliminator.eliminate(parse("i = 0; while (i < 5) i = i + 1; print(i);"));
+        Map<Parser.Node, List<Parser.Node>> chains = eliminator.defUse();
+        assertEquals(2, chains.size());
+        for (Map.Entry<Parser.Node, List<Parser.Node>> chain : chains.entrySet()) {
+            assertEquals("i", chain.getKey().left.value);
+            // the condition, the right hand side of the increment and the print
+            assertEquals(3, chain.getValue().size());
+        }
+    }
+
+    /**
+     * Test to see if the programs in resources print the same after elimination
+     * @throws IOException
+     */
+    @Test
+    void resourcesTest() throws IOException {
+        String[] programs = {"prime.c", "fizzbuzz.c", "99bottles.c", "count.c", "hello.t", "loop.py", "test1.c"};
+        for (String program : programs) {
+            String file = "src/main/resources/" + program;
+            Parser.Node tree = new DeadCodeEliminator().eliminate(new Parser(Lexer.fromFile(file)).parse());
+            assertEquals(run(new Parser(Lexer.fromFile(file)).parse()), run(tree), program);
+        }
+    }
+}
@@ -0,0 +1,51 @@
+/**
+ * An error found while compiling, with the source position it was reported at.
+ */
+class Diagnostic {
+    public final int line;
+    public final int pos;
+    public final String message;
+
+    Diagnostic(int line, int pos, String message) {
+        this.line = line;
+        this.pos = pos;
+        this.message = message;
+    }
+
+    /**
+     * Creates a diagnostic from a thrown CompileException.
+     *
+     * @param e the exception
+     * @return the diagnostic
+     */
+    static Diagnostic of(CompileException e) {
+        return new Diagnostic(e.getLine(), e.getPos(), e.getMessage());
+    }
+
+    /**
+     * Returns the same diagnostic reported at another position, for an error in source text that
+     * has moved since it was found. A token quoted in the message in the .lex format, as a parse
+     * error quotes the token it found, is moved with it.
+     *
+     * @param line the new line number
+     * @param pos the new position in the line
+     * @return the moved diagnostic
+     */
+    Diagnostic moveTo(int line, int pos) {
+        String suffix = String.format(" in line %d, pos %d", this.line, this.pos);
+        if (this.line <= 0 || this.pos <= 0 || !this.message.endsWith(suffix)) {
+            return new Diagnostic(line, pos, this.message);
+        }
+        String reason = this.message.substring(0, this.message.length() - suffix.length())
+                .replace(String.format("%-5d %-5d ", this.line, this.pos), String.format("%-5d %-5d ", line, pos));
+        return new Diagnostic(line, pos, new CompileException(line, pos, reason).getMessage());
+    }
+
+    /**
+     * Returns the message as the command line tools print it, including the position if known.
+     */
+    @Override
+    public String toString() {
+        return this.message;
+    }
+}
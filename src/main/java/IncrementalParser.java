@@ -0,0 +1,739 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Keeps the tokens and top-level statements of a source up to date as the text is edited, for an
+ * editor that wants the tree and the errors after every keystroke without compiling the whole file
+ * again.
+ *
+ * After an edit the Lexer restarts at the last token that ends before the edited text, which is the
+ * nearest point where its state is known, and scans until it produces a token that starts at the same
+ * place, relative to the end of the edit, as a token of the old stream. From there on the old tokens
+ * are kept and only moved. The Parser then restarts at the last top-level statement that begins
+ * before the first rescanned token, since an earlier statement may have been waiting to see an else,
+ * and stops at the first statement boundary that falls on an old statement with the same symbol
+ * table. The result is the same tree and the same diagnostics as parsing the new text from scratch
+ * with recovery on.
+ *
+ * The text, the tokens and the statements are each kept in a gap buffer, an array with a hole at the
+ * last edit, so an edit moves only what lies between it and the edit before. Entries after the hole
+ * hold their offsets, lines and first token relative to a shift that an edit changes once, instead of
+ * being moved one by one. Each statement keeps the symbol table as it stands after it, in a
+ * PersistentMap that shares all but that statement's names with the table before it, so the Parser
+ * starts from the table of the statement it restarts after rather than from the definitions of every
+ * earlier statement. The Sequence chain of the tree and the list of statements with errors are
+ * patched in the same way, so reading the tree and the diagnostics after an edit costs nothing more
+ * for the rest of the file. Lexing and parsing, which dominate a full compile, only touch the edited
+ * region.
+ */
+class IncrementalParser {
+    private static final TokenType[] TYPES = TokenType.values();
+    private static final int ERROR = -1;
+
+    private final GapText text;
+    private final Tokens tokens;
+    private final Statements statements;
+    private final List<Statement> failing;
+    private List<Diagnostic> prelude;
+    private int relexed;
+    private int reparsed;
+
+    /**
+     * The source as a gap buffer: the characters before the gap start the array and those after it
+     * end it, so replacing text moves only the characters between the gap and the replaced range.
+     */
+    private static class GapText implements CharSequence {
+        private char[] chars;
+        private int gapStart;
+        private int gapEnd;
+
+        GapText(CharSequence source) {
+            this.chars = new char[source.length() + 256];
+            for (int i = 0; i < source.length(); i++) {
+                this.chars[i] = source.charAt(i);
+            }
+            this.gapStart = source.length();
+            this.gapEnd = this.chars.length;
+        }
+
+        @Override
+        public int length() {
+            return this.chars.length - (this.gapEnd - this.gapStart);
+        }
+
+        @Override
+        public char charAt(int index) {
+            return index < this.gapStart ? this.chars[index] : this.chars[index + this.gapEnd - this.gapStart];
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            char[] out = new char[end - start];
+            int head = Math.max(0, Math.min(end, this.gapStart) - start);
+            System.arraycopy(this.chars, start, out, 0, head);
+            System.arraycopy(this.chars, start + head + this.gapEnd - this.gapStart, out, head, out.length - head);
+            return new String(out);
+        }
+
+        @Override
+        public String toString() {
+            return subSequence(0, length()).toString();
+        }
+
+        void replace(int offset, int removed, String inserted) {
+            moveGap(offset);
+            this.gapEnd += removed;
+            if (this.gapEnd - this.gapStart < inserted.length()) {
+                int capacity = Math.max(this.chars.length * 2, length() + inserted.length());
+                char[] chars = new char[capacity];
+                int tail = this.chars.length - this.gapEnd;
+                System.arraycopy(this.chars, 0, chars, 0, this.gapStart);
+                System.arraycopy(this.chars, this.gapEnd, chars, capacity - tail, tail);
+                this.chars = chars;
+                this.gapEnd = capacity - tail;
+            }
+            inserted.getChars(0, inserted.length(), this.chars, this.gapStart);
+            this.gapStart += inserted.length();
+        }
+
+        private void moveGap(int offset) {
+            int gap = this.gapEnd - this.gapStart;
+            if (offset < this.gapStart) {
+                System.arraycopy(this.chars, offset, this.chars, offset + gap, this.gapStart - offset);
+            } else {
+                System.arraycopy(this.chars, this.gapEnd, this.chars, this.gapStart, offset - this.gapStart);
+            }
+            this.gapStart = offset;
+            this.gapEnd = offset + gap;
+        }
+    }
+
+    /**
+     * Tokens in parallel arrays, with the source range of each. A lexer error takes up an entry of
+     * its own, typed ERROR, whose value is the error message. The arrays have a gap where entries are
+     * inserted; entries after it hold their start, end and line relative to tailStart and tailLine,
+     * so the tokens after an edit move with two additions.
+     */
+    private static class Tokens {
+        int[] types = new int[256];
+        int[] starts = new int[256];
+        int[] ends = new int[256];
+        int[] lines = new int[256];
+        int[] positions = new int[256];
+        String[] values = new String[256];
+        int gapStart;
+        int gapEnd = 256;
+        int tailStart;
+        int tailLine;
+        int size;
+
+        int type(int i) {
+            return i < this.gapStart ? this.types[i] : this.types[i + this.gapEnd - this.gapStart];
+        }
+
+        int start(int i) {
+            return i < this.gapStart ? this.starts[i] : this.starts[i + this.gapEnd - this.gapStart] + this.tailStart;
+        }
+
+        int end(int i) {
+            return i < this.gapStart ? this.ends[i] : this.ends[i + this.gapEnd - this.gapStart] + this.tailStart;
+        }
+
+        int line(int i) {
+            return i < this.gapStart ? this.lines[i] : this.lines[i + this.gapEnd - this.gapStart] + this.tailLine;
+        }
+
+        int pos(int i) {
+            return i < this.gapStart ? this.positions[i] : this.positions[i + this.gapEnd - this.gapStart];
+        }
+
+        String value(int i) {
+            return i < this.gapStart ? this.values[i] : this.values[i + this.gapEnd - this.gapStart];
+        }
+
+        /**
+         * Inserts an entry at the gap.
+         */
+        void add(int type, int start, int end, int line, int pos, String value) {
+            ensureGap(1);
+            int at = this.gapStart++;
+            this.types[at] = type;
+            this.starts[at] = start;
+            this.ends[at] = end;
+            this.lines[at] = line;
+            this.positions[at] = pos;
+            this.values[at] = value;
+            this.size++;
+        }
+
+        /**
+         * Inserts the first entries of another table at the gap.
+         */
+        void addAll(Tokens other, int count) {
+            ensureGap(count);
+            for (int i = 0; i < count; i++) {
+                add(other.type(i), other.start(i), other.end(i), other.line(i), other.pos(i), other.value(i));
+            }
+        }
+
+        /**
+         * Removes entries from just after the gap.
+         */
+        void remove(int count) {
+            Arrays.fill(this.values, this.gapEnd, this.gapEnd + count, null);
+            this.gapEnd += count;
+            this.size -= count;
+        }
+
+        /**
+         * Moves the entries after the gap by a number of characters and lines. Those on the same line as
+         * the first of them also move by a number of positions in the line.
+         */
+        void shift(int delta, int lineDelta, int posDelta) {
+            this.tailStart += delta;
+            this.tailLine += lineDelta;
+            for (int p = this.gapEnd; p < this.types.length && this.lines[p] == this.lines[this.gapEnd]; p++) {
+                this.positions[p] += posDelta;
+            }
+        }
+
+        /**
+         * Moves the gap to just before the entry at a given index.
+         */
+        void moveGap(int index) {
+            int gap = this.gapEnd - this.gapStart;
+            if (index < this.gapStart) {
+                for (int i = this.gapStart - 1; i >= index; i--) {
+                    int p = i + gap;
+                    this.types[p] = this.types[i];
+                    this.starts[p] = this.starts[i] - this.tailStart;
+                    this.ends[p] = this.ends[i] - this.tailStart;
+                    this.lines[p] = this.lines[i] - this.tailLine;
+                    this.positions[p] = this.positions[i];
+                    this.values[p] = this.values[i];
+                }
+                Arrays.fill(this.values, index, Math.min(this.gapStart, index + gap), null);
+            } else {
+                for (int i = this.gapStart; i < index; i++) {
+                    int p = i + gap;
+                    this.types[i] = this.types[p];
+                    this.starts[i] = this.starts[p] + this.tailStart;
+                    this.ends[i] = this.ends[p] + this.tailStart;
+                    this.lines[i] = this.lines[p] + this.tailLine;
+                    this.positions[i] = this.positions[p];
+                    this.values[i] = this.values[p];
+                }
+                Arrays.fill(this.values, Math.max(index, this.gapEnd), index + gap, null);
+            }
+            this.gapStart = index;
+            this.gapEnd = index + gap;
+        }
+
+        private void ensureGap(int count) {
+            if (this.gapEnd - this.gapStart >= count) {
+                return;
+            }
+            int capacity = Math.max(this.types.length * 2, this.size + count);
+            this.types = grow(this.types, capacity);
+            this.starts = grow(this.starts, capacity);
+            this.ends = grow(this.ends, capacity);
+            this.lines = grow(this.lines, capacity);
+            this.positions = grow(this.positions, capacity);
+            int tail = this.values.length - this.gapEnd;
+            String[] values = new String[capacity];
+            System.arraycopy(this.values, 0, values, 0, this.gapStart);
+            System.arraycopy(this.values, this.gapEnd, values, capacity - tail, tail);
+            this.values = values;
+            this.gapEnd = capacity - tail;
+        }
+
+        private int[] grow(int[] array, int capacity) {
+            int[] grown = new int[capacity];
+            int tail = array.length - this.gapEnd;
+            System.arraycopy(array, 0, grown, 0, this.gapStart);
+            System.arraycopy(array, this.gapEnd, grown, capacity - tail, tail);
+            return grown;
+        }
+    }
+
+    /**
+     * A top-level statement: the index of its first token, its tree, the symbol table after it and
+     * the errors found in it. Each error keeps the index of the token it was reported at, relative to
+     * the first token, so it can follow the statement when the text before it changes. The statement
+     * also counts the statements with errors before it, and keeps the Sequence node that links it to
+     * the statements before it in the tree.
+     */
+    private static class Statement {
+        int first;
+        int failingBefore;
+        boolean relative;
+        Parser.Node sequence;
+        final Parser.Node node;
+        final PersistentMap<String, TokenType> symbols;
+        final Diagnostic[] diagnostics;
+        final int[] anchors;
+
+        Statement(int first, Parser.Node node, PersistentMap<String, TokenType> symbols, Diagnostic[] diagnostics, int[] anchors) {
+            this.first = first;
+            this.node = node;
+            this.symbols = symbols;
+            this.diagnostics = diagnostics;
+            this.anchors = anchors;
+        }
+    }
+
+    /**
+     * The statements in order, in an array with a gap where statements are inserted. A statement
+     * after the gap is marked relative and holds its first token and its count of statements with
+     * errors before it relative to tailFirst and tailFailing.
+     */
+    private static class Statements {
+        Statement[] items = new Statement[64];
+        int gapStart;
+        int gapEnd = 64;
+        int tailFirst;
+        int tailFailing;
+        int size;
+
+        Statement get(int i) {
+            return i < this.gapStart ? this.items[i] : this.items[i + this.gapEnd - this.gapStart];
+        }
+
+        int first(int i) {
+            return first(get(i));
+        }
+
+        int first(Statement statement) {
+            return statement.relative ? statement.first + this.tailFirst : statement.first;
+        }
+
+        int failingBefore(int i) {
+            Statement statement = get(i);
+            return statement.relative ? statement.failingBefore + this.tailFailing : statement.failingBefore;
+        }
+
+        /**
+         * Inserts a statement, whose first token and count are not relative to anything, at the gap.
+         */
+        void add(Statement statement) {
+            if (this.gapStart == this.gapEnd) {
+                int capacity = this.items.length * 2;
+                Statement[] items = new Statement[capacity];
+                int tail = this.items.length - this.gapEnd;
+                System.arraycopy(this.items, 0, items, 0, this.gapStart);
+                System.arraycopy(this.items, this.gapEnd, items, capacity - tail, tail);
+                this.items = items;
+                this.gapEnd = capacity - tail;
+            }
+            this.items[this.gapStart++] = statement;
+            this.size++;
+        }
+
+        /**
+         * Removes statements from just after the gap.
+         */
+        void remove(int count) {
+            Arrays.fill(this.items, this.gapEnd, this.gapEnd + count, null);
+            this.gapEnd += count;
+            this.size -= count;
+        }
+
+        /**
+         * Moves the gap to just before the statement at a given index.
+         */
+        void moveGap(int index) {
+            int gap = this.gapEnd - this.gapStart;
+            if (index < this.gapStart) {
+                for (int i = this.gapStart - 1; i >= index; i--) {
+                    Statement statement = this.items[i];
+                    statement.first -= this.tailFirst;
+                    statement.failingBefore -= this.tailFailing;
+                    statement.relative = true;
+                }
+                System.arraycopy(this.items, index, this.items, index + gap, this.gapStart - index);
+                Arrays.fill(this.items, index, Math.min(this.gapStart, index + gap), null);
+            } else {
+                for (int i = this.gapEnd; i < index + gap; i++) {
+                    Statement statement = this.items[i];
+                    statement.first += this.tailFirst;
+                    statement.failingBefore += this.tailFailing;
+                    statement.relative = false;
+                }
+                System.arraycopy(this.items, this.gapEnd, this.items, this.gapStart, index - this.gapStart);
+                Arrays.fill(this.items, Math.max(index, this.gapEnd), index + gap, null);
+            }
+            this.gapStart = index;
+            this.gapEnd = index + gap;
+        }
+    }
+
+    /**
+     * Hands the Parser the tokens of the table from a given index. A lexer error entry is thrown as
+     * the Lexer would have thrown it, and End_of_input repeats once reached.
+     */
+    private class Cursor implements TokenSource {
+        private int position;
+
+        Cursor(int position) {
+            this.position = position;
+        }
+
+        /**
+         * Returns the index of the token the Parser is looking at.
+         */
+        int current() {
+            return this.position - 1;
+        }
+
+        @Override
+        public Token next() {
+            Tokens t = IncrementalParser.this.tokens;
+            int i = Math.min(this.position, t.size - 1);
+            this.position = i + 1;
+            if (t.type(i) == ERROR) {
+                throw new CompileException(t.line(i), t.pos(i), t.value(i));
+            }
+            return new Token(TYPES[t.type(i)], t.value(i), t.line(i), t.pos(i));
+        }
+    }
+
+    /**
+     * Lexes and parses a whole source.
+     * @param source the source code.
+     */
+    IncrementalParser(CharSequence source) {
+        this.text = new GapText(source);
+        this.tokens = new Tokens();
+        this.statements = new Statements();
+        this.failing = new ArrayList<>();
+        this.prelude = new ArrayList<>();
+        Lexer lexer = new Lexer(this.text);
+        int type;
+        do {
+            type = scan(lexer, this.tokens);
+        } while (type != TokenType.End_of_input.ordinal());
+        this.relexed = this.tokens.size;
+        reparse(0, this.tokens.size, 0);
+    }
+
+    /**
+     * Replaces part of the source and brings the tokens, tree and diagnostics up to date.
+     * @param offset the index of the first character to replace.
+     * @param removed the number of characters to replace.
+     * @param inserted the text to put in their place.
+     * @throws IndexOutOfBoundsException if the range is not within the source.
+     */
+    void edit(int offset, int removed, String inserted) {
+        if (offset < 0 || removed < 0 || offset + removed > this.text.length()) {
+            throw new IndexOutOfBoundsException("Edit of " + removed + " characters at " + offset
+                    + " is outside a source of length " + this.text.length());
+        }
+        this.text.replace(offset, removed, inserted);
+        int delta = inserted.length() - removed;
+        int editEnd = offset + inserted.length();
+
+        // a token that ends before the edit never looked at the edited text, so the lexer can start there
+        Tokens t = this.tokens;
+        int from = lastEndingBefore(offset);
+        Lexer lexer = from < 0 ? new Lexer(this.text) : new Lexer(this.text, t.start(from), t.line(from), t.pos(from));
+        from = Math.max(from, 0);
+        Tokens scanned = new Tokens();
+        int count = 0;
+        int to = t.size;
+        int lineDelta = 0;
+        int posDelta = 0;
+        while (true) {
+            int type = scan(lexer, scanned);
+            count = scanned.size;
+            if (type == TokenType.End_of_input.ordinal()) {
+                break;
+            }
+            int last = scanned.size - 1;
+            if (type == ERROR || scanned.start(last) < editEnd) {
+                continue;
+            }
+            // past the edit the text is unchanged, so a token starting where an old one started is followed by the old tokens
+            int old = findStart(scanned.start(last) - delta, from);
+            if (old >= 0 && t.type(old) != ERROR) {
+                lineDelta = scanned.line(last) - t.line(old);
+                posDelta = scanned.pos(last) - t.pos(old);
+                count = last;
+                to = old;
+                break;
+            }
+        }
+        this.relexed = count + (to < t.size ? 1 : 0);
+
+        t.moveGap(from);
+        t.remove(to - from);
+        t.shift(delta, lineDelta, posDelta);
+        t.addAll(scanned, count);
+        reparse(from, from + count, count - (to - from));
+    }
+
+    /**
+     * Scans one token into a table.
+     * @return the ordinal of the token type, or ERROR if the lexer reported an error.
+     */
+    private static int scan(Lexer lexer, Tokens out) {
+        try {
+            Token token = lexer.getToken();
+            out.add(token.tokentype.ordinal(), lexer.tokenStart(), lexer.offset(), token.line, token.pos, token.value);
+            return token.tokentype.ordinal();
+        } catch (CompileException e) {
+            out.add(ERROR, lexer.tokenStart(), lexer.offset(), e.getLine(), e.getPos(), e.getReason());
+            return ERROR;
+        }
+    }
+
+    /**
+     * Returns the index of the last token that ends before a source index, or -1 if there is none.
+     */
+    private int lastEndingBefore(int offset) {
+        int lo = 0;
+        int hi = this.tokens.size - 1;
+        int found = -1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (this.tokens.end(mid) < offset) {
+                found = mid;
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Returns the index of the token that starts at a source index, looking from a given token on, or
+     * -1 if no token starts there.
+     */
+    private int findStart(int start, int from) {
+        int lo = from;
+        int hi = this.tokens.size - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (this.tokens.start(mid) < start) {
+                lo = mid + 1;
+            } else if (this.tokens.start(mid) > start) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Parses the statements touched by a change to the token table.
+     * @param changed the index of the first token that was replaced.
+     * @param kept the index of the first token after the replaced ones that was kept from before.
+     * @param tokenDelta how far the kept tokens have moved in the table.
+     */
+    private void reparse(int changed, int kept, int tokenDelta) {
+        Statements all = this.statements;
+        int start = lastStatementBefore(changed);
+        Parser parser;
+        Cursor cursor;
+        PersistentMap<String, TokenType> symbols;
+        if (start < 0) {
+            start = 0;
+            cursor = new Cursor(0);
+            parser = newParser(cursor);
+            parser.start();
+            this.prelude = new ArrayList<>(parser.getDiagnostics());
+            symbols = PersistentMap.empty();
+        } else {
+            cursor = new Cursor(all.first(start));
+            parser = newParser(cursor);
+            symbols = symbolsBefore(start);
+            parser.seed(symbols);
+            parser.start();
+        }
+        // from here on the old statements are read with their first tokens where the kept tokens now are
+        all.moveGap(start);
+        all.tailFirst += tokenDelta;
+        int failingBefore = failingBefore(start);
+
+        List<Statement> fresh = new ArrayList<>();
+        int next = start;
+        int resume = all.size;
+        while (!parser.atEnd()) {
+            int first = cursor.current();
+            if (first >= kept) {
+                while (next < all.size && all.first(next) < first) {
+                    next++;
+                }
+                if (next < all.size && all.first(next) == first && symbols.sameAs(symbolsBefore(next))) {
+                    resume = next;
+                    break;
+                }
+            }
+            Statement statement = statement(parser, cursor, first, symbols);
+            fresh.add(statement);
+            symbols = statement.symbols;
+        }
+        this.reparsed = fresh.size();
+
+        Parser.Node sequence = start == 0 ? null : all.get(start - 1).sequence;
+        List<Statement> failed = new ArrayList<>();
+        for (Statement statement : fresh) {
+            sequence = Parser.Node.make_node(Parser.NodeType.nd_Sequence, sequence, statement.node);
+            statement.sequence = sequence;
+            statement.failingBefore = failingBefore + failed.size();
+            if (statement.diagnostics.length > 0) {
+                failed.add(statement);
+            }
+        }
+        List<Statement> replaced = this.failing.subList(failingBefore, failingBefore(resume));
+        all.tailFailing += failed.size() - replaced.size();
+        replaced.clear();
+        replaced.addAll(failed);
+        if (resume < all.size) {
+            all.get(resume).sequence.left = sequence;
+        }
+
+        all.remove(resume - start);
+        for (Statement statement : fresh) {
+            all.add(statement);
+        }
+    }
+
+    /**
+     * Returns the number of statements with errors before a statement, or in all if the index is the
+     * number of statements.
+     */
+    private int failingBefore(int statement) {
+        return statement < this.statements.size ? this.statements.failingBefore(statement) : this.failing.size();
+    }
+
+    /**
+     * Returns the symbol table as it stands before a statement.
+     */
+    private PersistentMap<String, TokenType> symbolsBefore(int statement) {
+        return statement == 0 ? PersistentMap.empty() : this.statements.get(statement - 1).symbols;
+    }
+
+    private Parser newParser(Cursor cursor) {
+        Parser parser = new Parser(cursor);
+        parser.setRecovery(true);
+        parser.setEcho(false);
+        return parser;
+    }
+
+    /**
+     * Returns the index of the last statement whose first token comes before a token index, or -1 if
+     * there is none.
+     */
+    private int lastStatementBefore(int token) {
+        int lo = 0;
+        int hi = this.statements.size - 1;
+        int found = -1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (this.statements.first(mid) < token) {
+                found = mid;
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Parses one top-level statement and records what it assigns and the errors found in it.
+     */
+    private Statement statement(Parser parser, Cursor cursor, int first, PersistentMap<String, TokenType> before) {
+        int errors = parser.getDiagnostics().size();
+        int definitions = parser.getDefinitions().size();
+        Parser.Node node = parser.statement();
+        int last = cursor.current();
+
+        PersistentMap<String, TokenType> symbols = before;
+        for (String name : parser.getDefinitions().subList(definitions, parser.getDefinitions().size())) {
+            symbols = symbols.put(name, parser.typeOf(name));
+        }
+
+        List<Diagnostic> found = parser.getDiagnostics().subList(errors, parser.getDiagnostics().size());
+        Diagnostic[] diagnostics = found.toArray(new Diagnostic[0]);
+        int[] anchors = new int[diagnostics.length];
+        for (int i = 0; i < diagnostics.length; i++) {
+            anchors[i] = -1;
+            for (int j = first; j <= last; j++) {
+                if (this.tokens.line(j) == diagnostics[i].line && this.tokens.pos(j) == diagnostics[i].pos) {
+                    anchors[i] = j - first;
+                    break;
+                }
+            }
+        }
+        return new Statement(first, node, symbols, diagnostics, anchors);
+    }
+
+    /**
+     * Returns the tree of the current source, shaped as Parser.parse() would build it. The chain of
+     * Sequence nodes is kept up to date by each edit, which builds nodes for the statements it parsed
+     * and relinks the first statement it kept, so the tree is shared with earlier and later calls and
+     * changes with the source.
+     * @return the root node, or null for a source without statements.
+     */
+    Parser.Node tree() {
+        return this.statements.size == 0 ? null : this.statements.get(this.statements.size - 1).sequence;
+    }
+
+    /**
+     * Returns the errors in the current source, in the order a full parse would report them. Only
+     * the statements with errors are visited.
+     * @return the diagnostics.
+     */
+    List<Diagnostic> getDiagnostics() {
+        List<Diagnostic> all = new ArrayList<>(this.prelude);
+        for (Statement s : this.failing) {
+            int first = this.statements.first(s);
+            for (int i = 0; i < s.diagnostics.length; i++) {
+                Diagnostic d = s.diagnostics[i];
+                if (s.anchors[i] >= 0) {
+                    int token = first + s.anchors[i];
+                    if (this.tokens.line(token) != d.line || this.tokens.pos(token) != d.pos) {
+                        d = d.moveTo(this.tokens.line(token), this.tokens.pos(token));
+                        s.diagnostics[i] = d;
+                    }
+                }
+                all.add(d);
+            }
+        }
+        return all;
+    }
+
+    /**
+     * Returns the current source.
+     */
+    String text() {
+        return this.text.toString();
+    }
+
+    /**
+     * Returns the number of tokens in the current source, including End_of_input and an entry for
+     * each lexer error.
+     */
+    int tokenCount() {
+        return this.tokens.size;
+    }
+
+    /**
+     * Returns the number of tokens scanned by the last edit, or by the constructor if there was none.
+     */
+    int relexed() {
+        return this.relexed;
+    }
+
+    /**
+     * Returns the number of top-level statements parsed by the last edit, or by the constructor if
+     * there was none.
+     */
+    int reparsed() {
+        return this.reparsed;
+    }
+}
@@ -0,0 +1,145 @@
+import org.junit.jupiter.api.Test;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IncrementalParserTest {
+
+    /**
+     * Parses the current text of an incremental parser from scratch and checks that the tree and the
+     * diagnostics are the same
+     */
+    private static void assertSameAsFullParse(IncrementalParser incremental) {
+        Parser parser = new Parser(new Lexer(incremental.text()));
+        parser.setRecovery(true);
+        parser.setEcho(false);
+        Parser.Node tree = parser.parse();
+        assertEquals(parser.printAST(tree, new StringBuilder()), parser.printAST(incremental.tree(), new StringBuilder()),
+                "tree of:\n" + incremental.text());
+        assertEquals(describe(parser.getDiagnostics()), describe(incremental.getDiagnostics()),
+                "diagnostics of:\n" + incremental.text());
+    }
+
+    private static List<String> describe(List<Diagnostic> diagnostics) {
+        List<String> result = new ArrayList<>();
+        for (Diagnostic d : diagnostics) {
+            result.add(d.line + ":" + d.pos + " " + d.message);
+        }
+        return result;
+    }
+
+    /**
+     * Test to see if an edit inside one statement only rescans and reparses that statement
+     */
+    @Test
+    void localEditTest() throws IOException {
+        String prime = Files.readString(Path.of("src/main/resources/prime.c"));
+        StringBuilder source = new StringBuilder();
+        for (int i = 0; i < 50; i++) {
+            source.append(prime);
+        }
+        IncrementalParser parser = new IncrementalParser(source);
+        int offset = source.indexOf("n = 1;", source.length() / 2) + 4;
+        parser.edit(offset, 1, "7");
+        assertSameAsFullParse(parser);
+        assertTrue(parser.relexed() <= 3, "relexed " + parser.relexed());
+        assertEquals(1, parser.reparsed());
+    }
+
+    /**
+     * Test to see if the statement before an edit is reparsed when the edit adds an else to it
+     */
+    @Test
+    void elseTest() {
+        IncrementalParser parser = new IncrementalParser("x = 1;\nif (x) x = 2;\ny = 3;\nprint(x, y);\n");
+        parser.edit(20, 0, " else x = 4;");
+        assertSameAsFullParse(parser);
+        assertEquals(Parser.NodeType.nd_Assign, parser.tree().left.left.right.right.right.nt);
+    }
+
+    /**
+     * Test to see if errors after an edit move with the text and errors in it are replaced
+     */
+    @Test
+    void diagnosticsTest() {
+        IncrementalParser parser = new IncrementalParser("x = 1;\ny = ;\nz = x;\nw = @;\n");
+        assertEquals(2, parser.getDiagnostics().size());
+
+        parser.edit(0, 0, "a = 0;\nb = 0;\n");
+        assertSameAsFullParse(parser);
+        assertEquals(4, parser.getDiagnostics().get(0).line);
+        assertEquals("unrecognized character: (64) '@' in line 6, pos 5", parser.getDiagnostics().get(1).message);
+
+        parser.edit(parser.text().indexOf("y = ;") + 4, 0, "2");
+        assertSameAsFullParse(parser);
+        assertEquals(1, parser.getDiagnostics().size());
+    }
+
+    /**
+     * Test to see if an edit that changes the symbol table reparses the statements that use it
+     */
+    @Test
+    void symbolTableTest() {
+        IncrementalParser parser = new IncrementalParser("q = 1;\nx = q;\nprint(q);\n");
+        parser.edit(0, 1, "r");
+        assertSameAsFullParse(parser);
+        assertEquals(2, parser.getDiagnostics().size());
+        parser.edit(0, 1, "q");
+        assertSameAsFullParse(parser);
+        assertTrue(parser.getDiagnostics().isEmpty());
+    }
+
+    /**
+     * Test to see if the result matches a full parse after many random edits, including ones that
+     * open comments and strings or break statements
+     */
+    @Test
+    void randomEditTest() throws IOException {
+        String[] snippets = {";", "}", "{", "x", "1", " ", "\n", "else ", "if (x) ", "while (n < 3) ", "/*", "*/",
+                "//", "\"", "'a'", "@", "print(x, \"\\n\");", "x = x + 1;", "n = 2;", "&&", "<="};
+        Random random = new Random(17);
+        String prime = Files.readString(Path.of("src/main/resources/prime.c"));
+        IncrementalParser parser = new IncrementalParser("x = 0;\n" + prime);
+        assertSameAsFullParse(parser);
+        for (int i = 0; i < 500; i++) {
+            int length = parser.text().length();
+            int offset = random.nextInt(length + 1);
+            int removed = random.nextInt(3) == 0 ? random.nextInt(Math.min(8, length - offset) + 1) : 0;
+            String inserted = random.nextInt(4) == 0 ? "" : snippets[random.nextInt(snippets.length)];
+            parser.edit(offset, removed, inserted);
+            assertSameAsFullParse(parser);
+        }
+    }
+
+    /**
+     * Test to see if an edit keeps the Sequence nodes of the statements it did not reparse and only
+     * relinks the first one after it
+     */
+    @Test
+    void sequenceTest() {
+        IncrementalParser parser = new IncrementalParser("a = 1;\nb = 2;\nc = 3;\nd = 4;\n");
+        Parser.Node root = parser.tree();
+        Parser.Node first = root.left.left.left;
+        Parser.Node third = root.left;
+        parser.edit(parser.text().indexOf("2"), 1, "5");
+        assertSame(root, parser.tree());
+        assertSame(third, parser.tree().left);
+        assertSame(first, parser.tree().left.left.left);
+        assertEquals("5", parser.tree().left.left.right.right.value);
+        assertSameAsFullParse(parser);
+    }
+
+    /**
+     * Test to see if an edit outside the source is rejected
+     */
+    @Test
+    void rangeTest() {
+        IncrementalParser parser = new IncrementalParser("x = 1;\n");
+        assertThrows(IndexOutOfBoundsException.class, () -> parser.edit(5, 3, ""));
+    }
+}
@@ -0,0 +1,402 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runs an AST from Parser.parse() directly, without generating bytecode. Before running, the tree is
+ * converted to a tree of executable nodes in which every identifier has been resolved to an index
+ * into an int[] of variables, so executing the program never looks a name up and never boxes.
+ */
+class Interpreter {
+    private final Map<String, Integer> slots;
+    private final List<String> variables;
+    private final Map<String, Integer> stringIndexes;
+    private final List<String> strings;
+    private final LoopFactory loops;
+    private final Stmt program;
+    private Writer out;
+
+    /**
+     * Prepares an AST for execution.
+     * @param tree the root node returned by Parser.parse().
+     */
+    Interpreter(Parser.Node tree) {
+        this(tree, (node, cond, body) -> new While(cond, body));
+    }
+
+    /**
+     * Prepares an AST for execution, with while loops run by statements from a factory.
+     * @param tree the root node returned by Parser.parse().
+     * @param loops creates the statement for each while loop as the tree is converted.
+     */
+    Interpreter(Parser.Node tree, LoopFactory loops) {
+        this.slots = new HashMap<>();
+        this.variables = new ArrayList<>();
+        this.stringIndexes = new HashMap<>();
+        this.strings = new ArrayList<>();
+        this.loops = loops;
+        this.program = statement(tree);
+    }
+
+    /**
+     * Returns the names of the variables, in slot order.
+     */
+    List<String> variables() {
+        return this.variables;
+    }
+
+    /**
+     * Returns the string pool, indexed by the values that string literals evaluate to.
+     */
+    List<String> strings() {
+        return this.strings;
+    }
+
+    /**
+     * Returns where the running program writes to.
+     */
+    Writer output() {
+        return this.out;
+    }
+
+    /**
+     * Runs the program.
+     * @param out where print and putc write to.
+     * @return the final values of the variables, indexed by slot.
+     * @throws IOException if writing the output fails.
+     */
+    int[] run(Writer out) throws IOException {
+        this.out = out;
+        int[] vars = new int[this.variables.size()];
+        this.program.exec(vars);
+        return vars;
+    }
+
+    /** An expression, evaluated to an int over the variable slots. */
+    abstract static class Expr {
+        abstract int eval(int[] vars);
+    }
+
+    /** A statement, executed for its effect on the variable slots and the output. */
+    abstract static class Stmt {
+        abstract void exec(int[] vars) throws IOException;
+    }
+
+    /** Creates the statement that runs a while loop. */
+    interface LoopFactory {
+        /**
+         * @param node the nd_While node.
+         * @param cond the converted condition.
+         * @param body the converted body.
+         * @return the loop statement.
+         */
+        Stmt loop(Parser.Node node, Expr cond, Stmt body);
+    }
+
+    /**
+     * Converts a statement node, flattening Sequence chains into arrays.
+     */
+    Stmt statement(Parser.Node node) {
+        if (node == null) {
+            return new Block(new Stmt[0]);
+        }
+        switch (node.nt) {
+            case nd_Sequence:
+                List<Parser.Node> nodes = new ArrayList<>();
+                Parser.Node n = node;
+                while (n != null && n.nt == Parser.NodeType.nd_Sequence) {
+                    if (n.right != null) {
+                        nodes.add(n.right);
+                    }
+                    n = n.left;
+                }
+                if (n != null) {
+                    nodes.add(n);
+                }
+                Stmt[] body = new Stmt[nodes.size()];
+                for (int i = 0; i < body.length; i++) {
+                    body[i] = statement(nodes.get(body.length - 1 - i));
+                }
+                return body.length == 1 ? body[0] : new Block(body);
+            case nd_Assign:
+                return new Assign(slot(node.left.value), expression(node.right));
+            case nd_If:
+                return new If(expression(node.left), statement(node.right.left),
+                        node.right.right == null ? null : statement(node.right.right));
+            case nd_While:
+                return this.loops.loop(node, expression(node.left), statement(node.right));
+            case nd_Prts:
+                if (node.left.nt == Parser.NodeType.nd_String) {
+                    return new PrintString(Bytecode.unescape(node.left.value));
+                }
+                return new PrintPooled(expression(node.left));
+            case nd_Prti:
+                return new PrintInt(expression(node.left));
+            case nd_Prtc:
+                return new PrintChar(expression(node.left));
+            default:
+                Parser.error(-1, -1, "Cannot execute " + node.nt.name() + " as a statement");
+                return null;
+        }
+    }
+
+    /**
+     * Converts an expression node.
+     */
+    Expr expression(Parser.Node node) {
+        switch (node.nt) {
+            case nd_Integer:
+                return new Const(CodeGenerator.integer(node.value));
+            case nd_String:
+                return new Const(string(node.value));
+            case nd_Ident:
+                return new Var(slot(node.value));
+            case nd_Negate:
+                return new Negate(expression(node.left));
+            case nd_Not:
+                return new Not(expression(node.left));
+            default:
+                Expr l = expression(node.left);
+                Expr r = expression(node.right);
+                switch (node.nt) {
+                    case nd_Mul: return new Mul(l, r);
+                    case nd_Div: return new Div(l, r);
+                    case nd_Mod: return new Mod(l, r);
+                    case nd_Add: return new Add(l, r);
+                    case nd_Sub: return new Sub(l, r);
+                    case nd_Lss: return new Lss(l, r);
+                    case nd_Leq: return new Leq(l, r);
+                    case nd_Gtr: return new Gtr(l, r);
+                    case nd_Geq: return new Geq(l, r);
+                    case nd_Eql: return new Eql(l, r);
+                    case nd_Neq: return new Neq(l, r);
+                    case nd_And: return new And(l, r);
+                    case nd_Or: return new Or(l, r);
+                    default:
+                        Parser.error(-1, -1, "Cannot evaluate " + node.nt.name());
+                        return null;
+                }
+        }
+    }
+
+    /**
+     * Returns the slot of a variable, assigning the next free one on first use.
+     */
+    int slot(String name) {
+        Integer slot = this.slots.get(name);
+        if (slot == null) {
+            slot = this.variables.size();
+            this.slots.put(name, slot);
+            this.variables.add(name);
+        }
+        return slot;
+    }
+
+    /**
+     * Returns the string pool index of a literal, adding it on first use.
+     */
+    int string(String literal) {
+        Integer index = this.stringIndexes.get(literal);
+        if (index == null) {
+            index = this.strings.size();
+            this.stringIndexes.put(literal, index);
+            this.strings.add(Bytecode.unescape(literal));
+        }
+        return index;
+    }
+
+    private static final class Block extends Stmt {
+        private final Stmt[] body;
+        Block(Stmt[] body) { this.body = body; }
+        void exec(int[] vars) throws IOException {
+            for (Stmt s : this.body) {
+                s.exec(vars);
+            }
+        }
+    }
+
+    private static final class Assign extends Stmt {
+        private final int slot;
+        private final Expr value;
+        Assign(int slot, Expr value) { this.slot = slot; this.value = value; }
+        void exec(int[] vars) { vars[this.slot] = this.value.eval(vars); }
+    }
+
+    private static final class If extends Stmt {
+        private final Expr cond;
+        private final Stmt then;
+        private final Stmt otherwise;
+        If(Expr cond, Stmt then, Stmt otherwise) { this.cond = cond; this.then = then; this.otherwise = otherwise; }
+        void exec(int[] vars) throws IOException {
+            if (this.cond.eval(vars) != 0) {
+                this.then.exec(vars);
+            } else if (this.otherwise != null) {
+                this.otherwise.exec(vars);
+            }
+        }
+    }
+
+    private static final class While extends Stmt {
+        private final Expr cond;
+        private final Stmt body;
+        While(Expr cond, Stmt body) { this.cond = cond; this.body = body; }
+        void exec(int[] vars) throws IOException {
+            while (this.cond.eval(vars) != 0) {
+                this.body.exec(vars);
+            }
+        }
+    }
+
+    private final class PrintString extends Stmt {
+        private final String text;
+        PrintString(String text) { this.text = text; }
+        void exec(int[] vars) throws IOException { out.write(this.text); }
+    }
+
+    private final class PrintPooled extends Stmt {
+        private final Expr index;
+        PrintPooled(Expr index) { this.index = index; }
+        void exec(int[] vars) throws IOException { out.write(strings.get(this.index.eval(vars))); }
+    }
+
+    private final class PrintInt extends Stmt {
+        private final Expr value;
+        PrintInt(Expr value) { this.value = value; }
+        void exec(int[] vars) throws IOException { out.write(Integer.toString(this.value.eval(vars))); }
+    }
+
+    private final class PrintChar extends Stmt {
+        private final Expr value;
+        PrintChar(Expr value) { this.value = value; }
+        void exec(int[] vars) throws IOException { out.write(this.value.eval(vars)); }
+    }
+
+    private static final class Const extends Expr {
+        private final int value;
+        Const(int value) { this.value = value; }
+        int eval(int[] vars) { return this.value; }
+    }
+
+    private static final class Var extends Expr {
+        private final int slot;
+        Var(int slot) { this.slot = slot; }
+        int eval(int[] vars) { return vars[this.slot]; }
+    }
+
+    private static final class Negate extends Expr {
+        private final Expr e;
+        Negate(Expr e) { this.e = e; }
+        int eval(int[] vars) { return -this.e.eval(vars); }
+    }
+
+    private static final class Not extends Expr {
+        private final Expr e;
+        Not(Expr e) { this.e = e; }
+        int eval(int[] vars) { return this.e.eval(vars) == 0 ? 1 : 0; }
+    }
+
+    private abstract static class Binary extends Expr {
+        final Expr l;
+        final Expr r;
+        Binary(Expr l, Expr r) { this.l = l; this.r = r; }
+    }
+
+    private static final class Mul extends Binary {
+        Mul(Expr l, Expr r) { super(l, r); }
+        int eval(int[] vars) { return this.l.eval(vars) * this.r.eval(vars); }
+    }
+
+    private static final class Div extends Binary {
+        Div(Expr l, Expr r) { super(l, r); }
+        int eval(int[] vars) { return this.l.eval(vars) / this.r.eval(vars); }
+    }
+
+    private static final class Mod extends Binary {
+        Mod(Expr l, Expr r) { super(l, r); }
+        int eval(int[] vars) { return this.l.eval(vars) % this.r.eval(vars); }
+    }
+
+    private static final class Add extends Binary {
+        Add(Expr l, Expr r) { super(l, r); }
+        int eval(int[] vars) { return this.l.eval(vars) + this.r.eval(vars); }
+    }
+
+    private static final class Sub extends Binary {
+        Sub(Expr l, Expr r) { super(l, r); }
+        int eval(int[] vars) { return this.l.eval(vars) - this.r.eval(vars); }
+    }
+
+    private static final class Lss extends Binary {
+        Lss(Expr l, Expr r) { super(l, r); }
+        int eval(int[] vars) { return this.l.eval(vars) < this.r.eval(vars) ? 1 : 0; }
+    }
+
+    private static final class Leq extends Binary {
+        Leq(Expr l, Expr r) { super(l, r); }
+        int eval(int[] vars) { return this.l.eval(vars) <= this.r.eval(vars) ? 1 : 0; }
+    }
+
+    private static final class Gtr extends Binary {
+        Gtr(Expr l, Expr r) { super(l, r); }
+        int eval(int[] vars) { return this.l.eval(vars) > this.r.eval(vars) ? 1 : 0; }
+    }
+
+    private static final class Geq extends Binary {
+        Geq(Expr l, Expr r) { super(l, r); }
+        int eval(int[] vars) { return this.l.eval(vars) >= this.r.eval(vars) ? 1 : 0; }
+    }
+
+    private static final class Eql extends Binary {
+        Eql(Expr l, Expr r) { super(l, r); }
+        int eval(int[] vars) { return this.l.eval(vars) == this.r.eval(vars) ? 1 : 0; }
+    }
+
+    private static final class Neq extends Binary {
+        Neq(Expr l, Expr r) { super(l, r); }
+        int eval(int[] vars) { return this.l.eval(vars) != this.r.eval(vars) ? 1 : 0; }
+    }
+
+    /** Both operands are always evaluated, as in the bytecode's and instruction. */
+    private static final class And extends Binary {
+        And(Expr l, Expr r) { super(l, r); }
+        int eval(int[] vars) {
+            int a = this.l.eval(vars);
+            int b = this.r.eval(vars);
+            return a != 0 && b != 0 ? 1 : 0;
+        }
+    }
+
+    private static final class Or extends Binary {
+        Or(Expr l, Expr r) { super(l, r); }
+        int eval(int[] vars) {
+            int a = this.l.eval(vars);
+            int b = this.r.eval(vars);
+            return a != 0 || b != 0 ? 1 : 0;
+        }
+    }
+
+    /**
+     * Parses each source file given on the command line and interprets it.
+     * @param args the source files.
+     */
+    public static void main(String[] args) {
+        Writer out = new BufferedWriter(new OutputStreamWriter(System.out), 1 << 16);
+        try {
+            for (String file : args) {
+                new Interpreter(new Parser(Lexer.fromFile(file)).parse()).run(out);
+            }
+            out.flush();
+        } catch (IOException e) {
+            System.out.println("Exception: " + e.getMessage());
+            System.exit(1);
+        } catch (CompileException e) {
+            System.out.println(e.getMessage());
+            System.exit(1);
+        }
+    }
+}
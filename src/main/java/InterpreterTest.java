@@ -0,0 +1,55 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InterpreterTest {
+
+    private static String run(Lexer lexer) throws IOException {
+        StringWriter out = new StringWriter();
+        new Interpreter(new Parser(lexer).parse()).run(out);
+        return out.toString();
+    }
+
+    /**
+     * Test to see if every program in resources prints the same as it does on the bytecode machine
+     * @throws IOException
+     */
+    @Test
+    void matchesVirtualMachineTest() throws IOException {
+        String[] programs = {"prime.c", "fizzbuzz.c", "99bottles.c", "count.c", "hello.t", "loop.py"};
+        for (String program : programs) {
+            String file = "src/main/resources/" + program;
+            StringWriter expected = new StringWriter();
+            new VirtualMachine(CodeGenerator.generate(new Parser(Lexer.fromFile(file)).parse()), expected).run();
+            assertEquals(expected.toString(), run(Lexer.fromFile(file)), program);
+        }
+    }
+
+    /**
+     * Test to see if arithmetic and comparisons evaluate correctly, and an expression in print is a character
+     * @throws IOException
+     */
+    @Test
+    void expressionTest() throws IOException {
+        String source = "a = 7; b = 0 - 2;\n"
+                + "q = a / b; r = a % b; m = a * b - 1; c = (a > b) + (a <= b) * 10;\n"
+                + "n = !a; o = !(a == 7) || 1; x = a != 7 && 1; t = 64 + 1;\n"
+                + "print(q, \" \", r, \" \", m, \" \", c, \" \", n, \" \", o, \" \", x, \" \", (t + 1), \"\\n\");\n";
+        assertEquals("-3 1 -15 1 0 1 0 B\n", run(new Lexer(source)));
+    }
+
+    /**
+     * Test to see if variables are given slots in the order they first appear
+     * @throws IOException
+     */
+    @Test
+    void slotTest() throws IOException {
+        Interpreter interpreter = new Interpreter(new Parser(new Lexer("i = 0; s = 0; while (i < 10) { s = s + i; i = i + 1; }")).parse());
+        assertEquals(List.of("i", "s"), interpreter.variables());
+        assertArrayEquals(new int[] {10, 45}, interpreter.run(new StringWriter()));
+    }
+}
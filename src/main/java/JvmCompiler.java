@@ -0,0 +1,862 @@
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compiles an AST from Parser.parse() into a JVM class and runs it, so that HotSpot's JIT compiles
+ * the user program itself rather than the Interpreter's tree walk. The class has a single static
+ * method,
+ *
+ *     static void run(int[] vars, Writer out, String[] strings)
+ *
+ * in which every variable is an int local, While and If are plain branches, and print appends to a
+ * StringBuilder that is written to out in large chunks. The variables are read from vars at the start
+ * and copied back at the end.
+ *
+ * The class file is written by hand, at version 49 so that no StackMapTable is needed, and is loaded
+ * as a hidden class in this package, so it can call the package-private helpers below. A program
+ * without a loop finishes too quickly to repay generating a class, and HotSpot never compiles a method
+ * longer than MAX_CODE bytes, so those programs are run by the Interpreter instead.
+ */
+class JvmCompiler {
+    /** HotSpot's HugeMethodLimit: longer methods are only ever interpreted. */
+    static final int MAX_CODE = 8000;
+    /** The number of buffered characters at which print writes them out. */
+    static final int BUFFER = 1 << 13;
+
+    private static final String CLASS_NAME = "MiniProgram";
+    private static final String RUN_DESCRIPTOR = "([ILjava/io/Writer;[Ljava/lang/String;)V";
+    private static final String BUFFER_CLASS = "java/lang/StringBuilder";
+    private static final int FIRST_VARIABLE = 4;
+
+    private final Parser.Node tree;
+    private final Map<String, Integer> slots;
+    private final List<String> variables;
+    private final Map<String, Integer> stringIndexes;
+    private final List<String> strings;
+    private final List<Integer> homes;
+    private final Interpreter host;
+    private final byte[] classBytes;
+    private MethodHandle entry;
+    private Interpreter interpreter;
+
+    /**
+     * Prepares an AST for execution, compiling it to a class if it has a loop.
+     * @param tree the root node returned by Parser.parse().
+     */
+    JvmCompiler(Parser.Node tree) {
+        this(tree, false);
+    }
+
+    /**
+     * Prepares an AST for execution.
+     * @param tree the root node returned by Parser.parse().
+     * @param eager true to compile a program even if it has no loop.
+     */
+    JvmCompiler(Parser.Node tree, boolean eager) {
+        this.tree = tree;
+        this.slots = new HashMap<>();
+        this.variables = new ArrayList<>();
+        this.stringIndexes = new HashMap<>();
+        this.strings = new ArrayList<>();
+        this.homes = new ArrayList<>();
+        this.host = null;
+        collect(tree);
+        this.classBytes = eager || hasLoop(tree) ? generate() : null;
+    }
+
+    /**
+     * Compiles one statement of a program being run by an Interpreter, whose variables and strings
+     * it shares.
+     */
+    private JvmCompiler(Parser.Node statement, Interpreter host) {
+        this.tree = statement;
+        this.slots = new HashMap<>();
+        this.variables = new ArrayList<>();
+        this.stringIndexes = new HashMap<>();
+        this.strings = null;
+        this.homes = new ArrayList<>();
+        this.host = host;
+        collect(statement);
+        this.classBytes = generate();
+    }
+
+    /**
+     * Compiles one statement of a program that an Interpreter is running, so that it can be run in
+     * the middle of the program. The returned method takes the Interpreter's variable slots, its
+     * output and its string pool; it reads the variables the statement uses from the slots, runs
+     * the statement with them in locals and writes them back.
+     * @param statement a statement node of the tree the Interpreter was created with.
+     * @param host the Interpreter.
+     * @return the method, of type (int[], Writer, String[])void, or null if it would be too long
+     * for HotSpot to compile.
+     */
+    static MethodHandle compileStatement(Parser.Node statement, Interpreter host) {
+        JvmCompiler compiler = new JvmCompiler(statement, host);
+        return compiler.classBytes == null ? null : compiler.entry();
+    }
+
+    /**
+     * Returns the names of the variables, in slot order.
+     */
+    List<String> variables() {
+        return this.variables;
+    }
+
+    /**
+     * Tells whether the program runs as a generated class rather than on the Interpreter.
+     */
+    boolean compiled() {
+        return this.classBytes != null;
+    }
+
+    /**
+     * Returns the generated class file, or null if the program is interpreted.
+     */
+    byte[] classBytes() {
+        return this.classBytes;
+    }
+
+    /**
+     * Runs the program.
+     * @param out where print and putc write to.
+     * @return the final values of the variables, indexed by slot.
+     * @throws IOException if writing the output fails.
+     */
+    int[] run(Writer out) throws IOException {
+        if (this.classBytes == null) {
+            if (this.interpreter == null) {
+                this.interpreter = new Interpreter(this.tree);
+            }
+            return this.interpreter.run(out);
+        }
+        int[] vars = new int[this.variables.size()];
+        String[] pool = this.strings.toArray(new String[0]);
+        try {
+            entry().invokeExact(vars, out, pool);
+        } catch (IOException | RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+        return vars;
+    }
+
+    /**
+     * Loads the generated class on first use and returns its run method.
+     */
+    private MethodHandle entry() {
+        if (this.entry == null) {
+            try {
+                MethodHandles.Lookup lookup = MethodHandles.lookup().defineHiddenClass(this.classBytes, true);
+                this.entry = lookup.findStatic(lookup.lookupClass(), "run",
+                        MethodType.methodType(void.class, int[].class, Writer.class, String[].class));
+            } catch (IllegalAccessException | NoSuchMethodException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        return this.entry;
+    }
+
+    /** Called by generated code to create its output buffer. */
+    static StringBuilder buffer() {
+        return new StringBuilder(BUFFER + 64);
+    }
+
+    /** Called by generated code after each print. */
+    static void drain(StringBuilder sb, Writer out) throws IOException {
+        if (sb.length() >= BUFFER) {
+            flush(sb, out);
+        }
+    }
+
+    /** Called by generated code when the program ends or throws. */
+    static void flush(StringBuilder sb, Writer out) throws IOException {
+        String text = sb.toString();
+        sb.setLength(0);
+        out.write(text);
+    }
+
+    /**
+     * Returns whether a tree contains a while loop, walking it with a stack since Sequence chains
+     * are as deep as the program is long.
+     */
+    private static boolean hasLoop(Parser.Node tree) {
+        ArrayList<Parser.Node> stack = new ArrayList<>();
+        stack.add(tree);
+        while (!stack.isEmpty()) {
+            Parser.Node node = stack.remove(stack.size() - 1);
+            if (node == null || node.nt.isLeaf()) {
+                continue;
+            }
+            if (node.nt == Parser.NodeType.nd_While) {
+                return true;
+            }
+            stack.add(node.right);
+            stack.add(node.left);
+        }
+        return false;
+    }
+
+    /**
+     * Assigns variable slots and string pool indexes in the order the Interpreter does, so both
+     * engines return the same variables and give strings the same values.
+     */
+    private void collect(Parser.Node node) {
+        for (Parser.Node statement : sequence(node)) {
+            switch (statement.nt) {
+                case nd_Sequence:
+                    collect(statement);
+                    break;
+                case nd_Assign:
+                    slot(statement.left.value);
+                    collectExpression(statement.right);
+                    break;
+                case nd_If:
+                    collectExpression(statement.left);
+                    collect(statement.right.left);
+                    collect(statement.right.right);
+                    break;
+                case nd_While:
+                    collectExpression(statement.left);
+                    collect(statement.right);
+                    break;
+                case nd_Prts:
+                    if (statement.left.nt != Parser.NodeType.nd_String) {
+                        collectExpression(statement.left);
+                    }
+                    break;
+                case nd_Prti:
+                case nd_Prtc:
+                    collectExpression(statement.left);
+                    break;
+                default:
+                    Parser.error(-1, -1, "Cannot execute " + statement.nt.name() + " as a statement");
+            }
+        }
+    }
+
+    private void collectExpression(Parser.Node node) {
+        switch (node.nt) {
+            case nd_Integer:
+                CodeGenerator.integer(node.value);
+                break;
+            case nd_String:
+                string(node.value);
+                break;
+            case nd_Ident:
+                slot(node.value);
+                break;
+            case nd_Negate:
+            case nd_Not:
+                collectExpression(node.left);
+                break;
+            default:
+                collectExpression(node.left);
+                collectExpression(node.right);
+        }
+    }
+
+    /**
+     * Flattens a chain of Sequence nodes into its statements, in order.
+     */
+    private static List<Parser.Node> sequence(Parser.Node node) {
+        List<Parser.Node> nodes = new ArrayList<>();
+        Parser.Node n = node;
+        while (n != null && n.nt == Parser.NodeType.nd_Sequence) {
+            if (n.right != null) {
+                nodes.add(n.right);
+            }
+            n = n.left;
+        }
+        if (n != null) {
+            nodes.add(n);
+        }
+        List<Parser.Node> ordered = new ArrayList<>(nodes.size());
+        for (int i = nodes.size() - 1; i >= 0; i--) {
+            ordered.add(nodes.get(i));
+        }
+        return ordered;
+    }
+
+    /**
+     * Returns the local of a variable, assigning the next one on first use. Its slot in the int[]
+     * passed to run is its local's number, or its slot in the host Interpreter.
+     */
+    private int slot(String name) {
+        Integer slot = this.slots.get(name);
+        if (slot == null) {
+            slot = this.variables.size();
+            this.slots.put(name, slot);
+            this.variables.add(name);
+            this.homes.add(this.host == null ? slot : this.host.slot(name));
+        }
+        return slot;
+    }
+
+    private int string(String literal) {
+        if (this.host != null) {
+            return this.host.string(literal);
+        }
+        Integer index = this.stringIndexes.get(literal);
+        if (index == null) {
+            index = this.strings.size();
+            this.stringIndexes.put(literal, index);
+            this.strings.add(Bytecode.unescape(literal));
+        }
+        return index;
+    }
+
+    /**
+     * Writes the class file.
+     * @return the class file, or null if the method would be longer than MAX_CODE.
+     */
+    private byte[] generate() {
+        ConstantPool pool = new ConstantPool();
+        Code code = new Code(pool);
+        code.invoke(INVOKESTATIC, "JvmCompiler", "buffer", "()Ljava/lang/StringBuilder;", 1);
+        code.op(ASTORE_3, -1);
+        for (int i = 0; i < this.variables.size(); i++) {
+            code.op(ALOAD_0, 1);
+            code.push(this.homes.get(i));
+            code.op(IALOAD, -1);
+            code.local(ISTORE, FIRST_VARIABLE + i, -1);
+        }
+        int start = code.length;
+        code.statement(this.tree);
+        int end = code.length;
+        code.op(ALOAD_3, 1);
+        code.op(ALOAD_1, 1);
+        code.invoke(INVOKESTATIC, "JvmCompiler", "flush", "(Ljava/lang/StringBuilder;Ljava/io/Writer;)V", -2);
+        for (int i = 0; i < this.variables.size(); i++) {
+            code.op(ALOAD_0, 1);
+            code.push(this.homes.get(i));
+            code.local(ILOAD, FIRST_VARIABLE + i, 1);
+            code.op(IASTORE, -3);
+        }
+        code.op(RETURN, 0);
+        // if the program throws, write what it printed before passing the exception on
+        int handler = code.length;
+        code.stack = 1;
+        code.op(ALOAD_3, 1);
+        code.op(ALOAD_1, 1);
+        code.invoke(INVOKESTATIC, "JvmCompiler", "flush", "(Ljava/lang/StringBuilder;Ljava/io/Writer;)V", -2);
+        code.op(ATHROW, -1);
+        if (code.length > MAX_CODE) {
+            return null;
+        }
+
+        int thisClass = pool.classRef(CLASS_NAME);
+        int superClass = pool.classRef("java/lang/Object");
+        int name = pool.utf8("run");
+        int descriptor = pool.utf8(RUN_DESCRIPTOR);
+        int codeName = pool.utf8("Code");
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(code.length + 1024);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);
+            out.writeShort(49);
+            pool.write(out);
+            out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(0);
+            out.writeShort(0);
+            out.writeShort(1);
+            out.writeShort(ACC_PUBLIC | ACC_STATIC);
+            out.writeShort(name);
+            out.writeShort(descriptor);
+            out.writeShort(1);
+            out.writeShort(codeName);
+            boolean handled = end > start;
+            out.writeInt(2 + 2 + 4 + code.length + 2 + (handled ? 8 : 0) + 2);
+            out.writeShort(code.maxStack);
+            out.writeShort(FIRST_VARIABLE + this.variables.size());
+            out.writeInt(code.length);
+            out.write(code.bytes, 0, code.length);
+            out.writeShort(handled ? 1 : 0);
+            if (handled) {
+                out.writeShort(start);
+                out.writeShort(end);
+                out.writeShort(handler);
+                out.writeShort(0);
+            }
+            out.writeShort(0);
+            out.writeShort(0);
+            out.flush();
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static final int ACC_PUBLIC = 0x0001;
+    private static final int ACC_STATIC = 0x0008;
+    private static final int ACC_FINAL = 0x0010;
+    private static final int ACC_SUPER = 0x0020;
+
+    private static final int ICONST_0 = 0x03;
+    private static final int BIPUSH = 0x10;
+    private static final int SIPUSH = 0x11;
+    private static final int LDC = 0x12;
+    private static final int LDC_W = 0x13;
+    private static final int ILOAD = 0x15;
+    private static final int ALOAD_0 = 0x2a;
+    private static final int ALOAD_1 = 0x2b;
+    private static final int ALOAD_2 = 0x2c;
+    private static final int ALOAD_3 = 0x2d;
+    private static final int IALOAD = 0x2e;
+    private static final int AALOAD = 0x32;
+    private static final int ISTORE = 0x36;
+    private static final int ASTORE_3 = 0x4e;
+    private static final int IASTORE = 0x4f;
+    private static final int POP = 0x57;
+    private static final int IADD = 0x60;
+    private static final int ISUB = 0x64;
+    private static final int IMUL = 0x68;
+    private static final int IDIV = 0x6c;
+    private static final int IREM = 0x70;
+    private static final int INEG = 0x74;
+    private static final int IAND = 0x7e;
+    private static final int IOR = 0x80;
+    private static final int I2C = 0x92;
+    private static final int IFEQ = 0x99;
+    private static final int IFNE = 0x9a;
+    private static final int IF_ICMPEQ = 0x9f;
+    private static final int IF_ICMPNE = 0xa0;
+    private static final int IF_ICMPLT = 0xa1;
+    private static final int IF_ICMPGE = 0xa2;
+    private static final int IF_ICMPGT = 0xa3;
+    private static final int IF_ICMPLE = 0xa4;
+    private static final int GOTO = 0xa7;
+    private static final int RETURN = 0xb1;
+    private static final int INVOKEVIRTUAL = 0xb6;
+    private static final int INVOKESTATIC = 0xb8;
+    private static final int ATHROW = 0xbf;
+    private static final int WIDE = 0xc4;
+
+    /**
+     * The constant pool of the generated class. Each constant is added once.
+     */
+    private static final class ConstantPool {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private final DataOutputStream out = new DataOutputStream(this.bytes);
+        private final Map<String, Integer> indexes = new HashMap<>();
+        private int count = 1;
+
+        private int add(String key, int tag, int a, int b, String text, int value) {
+            Integer index = this.indexes.get(key);
+            if (index != null) {
+                return index;
+            }
+            try {
+                this.out.writeByte(tag);
+                switch (tag) {
+                    case 1: this.out.writeUTF(text); break;
+                    case 3: this.out.writeInt(value); break;
+                    case 7: case 8: this.out.writeShort(a); break;
+                    default: this.out.writeShort(a); this.out.writeShort(b);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            this.indexes.put(key, this.count);
+            return this.count++;
+        }
+
+        int utf8(String text) {
+            return add("U" + text, 1, 0, 0, text, 0);
+        }
+
+        int integer(int value) {
+            return add("I" + value, 3, 0, 0, null, value);
+        }
+
+        int classRef(String name) {
+            return add("C" + name, 7, utf8(name), 0, null, 0);
+        }
+
+        int string(String text) {
+            return add("S" + text, 8, utf8(text), 0, null, 0);
+        }
+
+        int methodRef(String owner, String name, String descriptor) {
+            int nameAndType = add("N" + name + " " + descriptor, 12, utf8(name), utf8(descriptor), null, 0);
+            return add("M" + owner + "." + name + descriptor, 10, classRef(owner), nameAndType, null, 0);
+        }
+
+        void write(DataOutputStream to) throws IOException {
+            to.writeShort(this.count);
+            this.bytes.writeTo(to);
+        }
+    }
+
+    /** A branch target whose offset may not be known yet. */
+    private static final class Label {
+        int position = -1;
+        final List<int[]> jumps = new ArrayList<>();
+    }
+
+    /**
+     * The code of the run method, with the depth of the operand stack tracked as it is written.
+     */
+    private final class Code {
+        private final ConstantPool pool;
+        byte[] bytes = new byte[1024];
+        int length;
+        int stack;
+        int maxStack;
+
+        Code(ConstantPool pool) {
+            this.pool = pool;
+        }
+
+        private void u1(int b) {
+            if (this.length == this.bytes.length) {
+                this.bytes = Arrays.copyOf(this.bytes, this.length * 2);
+            }
+            this.bytes[this.length++] = (byte) b;
+        }
+
+        private void u2(int s) {
+            u1(s >> 8);
+            u1(s);
+        }
+
+        private void adjust(int delta) {
+            this.stack += delta;
+            this.maxStack = Math.max(this.maxStack, this.stack);
+        }
+
+        void op(int opcode, int delta) {
+            u1(opcode);
+            adjust(delta);
+        }
+
+        void push(int value) {
+            if (value >= -1 && value <= 5) {
+                u1(ICONST_0 + value);
+            } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+                u1(BIPUSH);
+                u1(value);
+            } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+                u1(SIPUSH);
+                u2(value);
+            } else {
+                constant(this.pool.integer(value));
+                return;
+            }
+            adjust(1);
+        }
+
+        private void constant(int index) {
+            if (index < 256) {
+                u1(LDC);
+                u1(index);
+            } else {
+                u1(LDC_W);
+                u2(index);
+            }
+            adjust(1);
+        }
+
+        void local(int opcode, int index, int delta) {
+            if (index > 255) {
+                u1(WIDE);
+                u1(opcode);
+                u2(index);
+            } else {
+                u1(opcode);
+                u1(index);
+            }
+            adjust(delta);
+        }
+
+        void invoke(int opcode, String owner, String name, String descriptor, int delta) {
+            u1(opcode);
+            u2(this.pool.methodRef(owner, name, descriptor));
+            adjust(delta);
+        }
+
+        void jump(int opcode, Label target, int delta) {
+            int at = this.length;
+            u1(opcode);
+            if (target.position >= 0) {
+                u2(target.position - at);
+            } else {
+                target.jumps.add(new int[] {at, this.length});
+                u2(0);
+            }
+            adjust(delta);
+        }
+
+        void place(Label label) {
+            label.position = this.length;
+            for (int[] jump : label.jumps) {
+                int offset = label.position - jump[0];
+                this.bytes[jump[1]] = (byte) (offset >> 8);
+                this.bytes[jump[1] + 1] = (byte) offset;
+            }
+        }
+
+        void statement(Parser.Node node) {
+            for (Parser.Node s : sequence(node)) {
+                switch (s.nt) {
+                    case nd_Sequence:
+                        statement(s);
+                        break;
+                    case nd_Assign:
+                        value(s.right);
+                        local(ISTORE, FIRST_VARIABLE + slot(s.left.value), -1);
+                        break;
+                    case nd_If: {
+                        Label otherwise = new Label();
+                        branch(s.left, otherwise, false);
+                        statement(s.right.left);
+                        if (s.right.right == null) {
+                            place(otherwise);
+                        } else {
+                            Label end = new Label();
+                            jump(GOTO, end, 0);
+                            place(otherwise);
+                            statement(s.right.right);
+                            place(end);
+                        }
+                        break;
+                    }
+                    case nd_While: {
+                        Label body = new Label();
+                        Label test = new Label();
+                        jump(GOTO, test, 0);
+                        place(body);
+                        statement(s.right);
+                        place(test);
+                        branch(s.left, body, true);
+                        break;
+                    }
+                    case nd_Prts:
+                        op(ALOAD_3, 1);
+                        if (s.left.nt == Parser.NodeType.nd_String) {
+                            constant(this.pool.string(Bytecode.unescape(s.left.value)));
+                        } else {
+                            op(ALOAD_2, 1);
+                            value(s.left);
+                            op(AALOAD, -1);
+                        }
+                        print("(Ljava/lang/String;)");
+                        break;
+                    case nd_Prti:
+                        op(ALOAD_3, 1);
+                        value(s.left);
+                        print("(I)");
+                        break;
+                    case nd_Prtc:
+                        op(ALOAD_3, 1);
+                        value(s.left);
+                        op(I2C, 0);
+                        print("(C)");
+                        break;
+                    default:
+                        Parser.error(-1, -1, "Cannot execute " + s.nt.name() + " as a statement");
+                }
+            }
+        }
+
+        /**
+         * Appends the value on the stack to the buffer below it and writes the buffer out if full.
+         */
+        private void print(String parameters) {
+            invoke(INVOKEVIRTUAL, BUFFER_CLASS, "append", parameters + "L" + BUFFER_CLASS + ";", -1);
+            op(POP, -1);
+            op(ALOAD_3, 1);
+            op(ALOAD_1, 1);
+            invoke(INVOKESTATIC, "JvmCompiler", "drain", "(Ljava/lang/StringBuilder;Ljava/io/Writer;)V", -2);
+        }
+
+        /**
+         * Pushes the value of an expression.
+         */
+        void value(Parser.Node node) {
+            switch (node.nt) {
+                case nd_Integer:
+                    push(CodeGenerator.integer(node.value));
+                    return;
+                case nd_String:
+                    push(string(node.value));
+                    return;
+                case nd_Ident:
+                    local(ILOAD, FIRST_VARIABLE + slot(node.value), 1);
+                    return;
+                case nd_Negate:
+                    value(node.left);
+                    op(INEG, 0);
+                    return;
+                case nd_Not:
+                    value(node.left);
+                    bool(IFNE, 1);
+                    return;
+                case nd_And:
+                case nd_Or:
+                    if (ConstantFolder.cannotTrap(node.right)) {
+                        Label no = new Label();
+                        branch(node, no, false);
+                        materialize(no);
+                    } else {
+                        // both operands are evaluated, as in the Interpreter
+                        truth(node.left);
+                        truth(node.right);
+                        op(node.nt == Parser.NodeType.nd_And ? IAND : IOR, -1);
+                    }
+                    return;
+                default:
+                    break;
+            }
+            int compare = comparison(node.nt);
+            value(node.left);
+            value(node.right);
+            if (compare != 0) {
+                bool(negate(compare), 2);
+                return;
+            }
+            switch (node.nt) {
+                case nd_Mul: op(IMUL, -1); break;
+                case nd_Div: op(IDIV, -1); break;
+                case nd_Mod: op(IREM, -1); break;
+                case nd_Add: op(IADD, -1); break;
+                case nd_Sub: op(ISUB, -1); break;
+                default:
+                    Parser.error(-1, -1, "Cannot evaluate " + node.nt.name());
+            }
+        }
+
+        /**
+         * Pushes 1 if an expression is not zero and 0 if it is.
+         */
+        private void truth(Parser.Node node) {
+            value(node);
+            if (comparison(node.nt) == 0 && node.nt != Parser.NodeType.nd_Not
+                    && node.nt != Parser.NodeType.nd_And && node.nt != Parser.NodeType.nd_Or) {
+                bool(IFEQ, 1);
+            }
+        }
+
+        /**
+         * Replaces the operands of a conditional branch with 1 if it is not taken and 0 if it is.
+         */
+        private void bool(int branchIfFalse, int operands) {
+            Label no = new Label();
+            jump(branchIfFalse, no, -operands);
+            materialize(no);
+        }
+
+        /**
+         * Pushes 1 on the path falling through and 0 at the label.
+         */
+        private void materialize(Label no) {
+            Label end = new Label();
+            push(1);
+            jump(GOTO, end, 0);
+            place(no);
+            this.stack--;
+            push(0);
+            place(end);
+        }
+
+        /**
+         * Jumps to a label if a condition has a given truth, without pushing its value where it can
+         * branch on the comparison directly.
+         */
+        void branch(Parser.Node node, Label target, boolean when) {
+            int compare = comparison(node.nt);
+            if (compare != 0) {
+                value(node.left);
+                value(node.right);
+                jump(when ? compare : negate(compare), target, -2);
+                return;
+            }
+            Integer constant = ConstantFolder.constant(node);
+            if (constant != null) {
+                if ((constant != 0) == when) {
+                    jump(GOTO, target, 0);
+                }
+                return;
+            }
+            boolean and = node.nt == Parser.NodeType.nd_And;
+            if (node.nt == Parser.NodeType.nd_Not) {
+                branch(node.left, target, !when);
+            } else if ((and || node.nt == Parser.NodeType.nd_Or) && ConstantFolder.cannotTrap(node.right)) {
+                // an And that is false or an Or that is true is decided by its left operand alone
+                if (when != and) {
+                    branch(node.left, target, when);
+                    branch(node.right, target, when);
+                } else {
+                    Label skip = new Label();
+                    branch(node.left, skip, !when);
+                    branch(node.right, target, when);
+                    place(skip);
+                }
+            } else {
+                value(node);
+                jump(when ? IFNE : IFEQ, target, -1);
+            }
+        }
+    }
+
+    /**
+     * Returns the if_icmp opcode that jumps when a comparison is true, or 0 for other nodes.
+     */
+    private static int comparison(Parser.NodeType nt) {
+        switch (nt) {
+            case nd_Lss: return IF_ICMPLT;
+            case nd_Leq: return IF_ICMPLE;
+            case nd_Gtr: return IF_ICMPGT;
+            case nd_Geq: return IF_ICMPGE;
+            case nd_Eql: return IF_ICMPEQ;
+            case nd_Neq: return IF_ICMPNE;
+            default: return 0;
+        }
+    }
+
+    /**
+     * Returns the conditional branch that jumps exactly when the given one does not. Opcodes come in
+     * pairs from ifeq and from if_icmpeq: eq and ne, lt and ge, gt and le.
+     */
+    private static int negate(int opcode) {
+        int base = opcode >= IF_ICMPEQ ? IF_ICMPEQ : IFEQ;
+        return base + ((opcode - base) ^ 1);
+    }
+
+    /**
+     * Parses each source file given on the command line and runs it, compiled to a class when it
+     * has a loop.
+     * @param args the source files.
+     */
+    public static void main(String[] args) {
+        Writer out = new BufferedWriter(new OutputStreamWriter(System.out), 1 << 16);
+        try {
+            for (String file : args) {
+                new JvmCompiler(new Parser(Lexer.fromFile(file)).parse()).run(out);
+            }
+            out.flush();
+        } catch (IOException e) {
+            System.out.println("Exception: " + e.getMessage());
+            System.exit(1);
+        } catch (CompileException e) {
+            System.out.println(e.getMessage());
+            System.exit(1);
+        }
+    }
+}
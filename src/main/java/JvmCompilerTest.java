@@ -0,0 +1,130 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JvmCompilerTest {
+
+    private static String run(Lexer lexer) throws IOException {
+        StringWriter out = new StringWriter();
+        JvmCompiler compiler = new JvmCompiler(new Parser(lexer).parse(), true);
+        assertTrue(compiler.compiled());
+        compiler.run(out);
+        return out.toString();
+    }
+
+    /**
+     * Test to see if every program in resources prints the same as it does on the Interpreter
+     * @throws IOException
+     */
+    @Test
+    void matchesInterpreterTest() throws IOException {
+        String[] programs = {"prime.c", "fizzbuzz.c", "99bottles.c", "count.c", "hello.t", "loop.py"};
+        for (String program : programs) {
+            String file = "src/main/resources/" + program;
+            StringWriter expected = new StringWriter();
+            new Interpreter(new Parser(Lexer.fromFile(file)).parse()).run(expected);
+            assertEquals(expected.toString(), run(Lexer.fromFile(file)), program);
+        }
+    }
+
+    /**
+     * Test to see if arithmetic, comparisons and logic evaluate as on the Interpreter, in values and in conditions
+     * @throws IOException
+     */
+    @Test
+    void expressionTest() throws IOException {
+        String source = "a = 7; b = 0 - 2; z = 0;\n"
+                + "q = a / b; r = a % b; m = a * b - 1; c = (a > b) + (a <= b) * 10;\n"
+                + "n = !a; o = !(a == 7) || 1; x = a != 7 && 1; t = 64 + 1; big = 100000 * 3;\n"
+                + "print(q, \" \", r, \" \", m, \" \", c, \" \", n, \" \", o, \" \", x, \" \", (t + 1), \" \", big, \"\\n\");\n"
+                + "if (a > 0 && b < 0) print(\"and\\n\"); else print(\"nand\\n\");\n"
+                + "if (z || !(a >= 8)) print(\"or\\n\");\n"
+                + "if (!(z || a < 0)) print(\"nor\\n\");\n"
+                + "if (a && 5) print(\"values\\n\");\n"
+                + "if (0) print(\"never\\n\"); else if (1) print(\"always\\n\");\n"
+                + "w = a * (b && z) + (a || z) * 2; print(w, \"\\n\");\n";
+        String expected = "-3 1 -15 1 0 1 0 B 300000\nand\nor\nnor\nvalues\nalways\n2\n";
+        assertEquals(expected, run(new Lexer(source)));
+        StringWriter interpreted = new StringWriter();
+        new Interpreter(new Parser(new Lexer(source)).parse()).run(interpreted);
+        assertEquals(expected, interpreted.toString());
+    }
+
+    /**
+     * Test to see if the variables come back in the Interpreter's slot order
+     * @throws IOException
+     */
+    @Test
+    void slotTest() throws IOException {
+        String source = "i = 0; s = 0; while (i < 10) { s = s + i; i = i + 1; }";
+        JvmCompiler compiler = new JvmCompiler(new Parser(new Lexer(source)).parse());
+        assertTrue(compiler.compiled());
+        assertEquals(List.of("i", "s"), compiler.variables());
+        assertArrayEquals(new int[] {10, 45}, compiler.run(new StringWriter()));
+        assertArrayEquals(new int[] {10, 45}, compiler.run(new StringWriter()));
+    }
+
+    /**
+     * Test to see if a program without a loop is left to the Interpreter
+     * @throws IOException
+     */
+    @Test
+    void fallbackTest() throws IOException {
+        JvmCompiler compiler = new JvmCompiler(new Parser(new Lexer("x = 6 * 7; print(x, \"\\n\");")).parse());
+        assertFalse(compiler.compiled());
+        assertNull(compiler.classBytes());
+        StringWriter out = new StringWriter();
+        assertArrayEquals(new int[] {42}, compiler.run(out));
+        assertEquals("42\n", out.toString());
+    }
+
+    /**
+     * Test to see if a very long program, with or without a loop at its end, is prepared without overflowing the stack
+     * @throws IOException
+     */
+    @Test
+    void largeTest() throws IOException {
+        StringBuilder source = new StringBuilder("x = 0;\n");
+        for (int i = 0; i < 200000; i++) {
+            source.append("x = x + 1;\n");
+        }
+        JvmCompiler straight = new JvmCompiler(new Parser(new Lexer(source.toString())).parse());
+        assertFalse(straight.compiled());
+        assertArrayEquals(new int[] {200000}, straight.run(new StringWriter()));
+
+        source.append("while (x > 5) x = x - 1;\n");
+        JvmCompiler looping = new JvmCompiler(new Parser(new Lexer(source.toString())).parse());
+        assertArrayEquals(new int[] {5}, looping.run(new StringWriter()));
+    }
+
+    /**
+     * Test to see if output printed before a division by zero is written before the exception is thrown
+     * @throws IOException
+     */
+    @Test
+    void trapTest() throws IOException {
+        String source = "i = 3; while (i > 0) { print(i, \"\\n\"); i = i - 1; } x = 1 / i;";
+        JvmCompiler compiler = new JvmCompiler(new Parser(new Lexer(source)).parse());
+        StringWriter out = new StringWriter();
+        assertThrows(ArithmeticException.class, () -> compiler.run(out));
+        assertEquals("3\n2\n1\n", out.toString());
+    }
+
+    /**
+     * Test to see if output longer than the buffer is written in order and in full
+     * @throws IOException
+     */
+    @Test
+    void bufferTest() throws IOException {
+        String source = "i = 0; while (i < 5000) { print(i, \",\"); i = i + 1; }";
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            expected.append(i).append(',');
+        }
+        assertEquals(expected.toString(), run(new Lexer(source)));
+    }
+}
@@ -1,73 +1,39 @@
-import java.io.File;
-import java.io.FileNotFoundException;
 import java.io.FileWriter;
 import java.io.IOException;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Scanner;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
-public class Lexer {
+public class Lexer implements TokenSource {
     private int line;
     private int pos;
     private int position;
     private char chr;
-    private String s;
+    private CharSequence s;
+    private int length;
 
-    Map<String, TokenType> keywords = new HashMap<>();
-
-    static class Token {
-        public TokenType tokentype;
-        public String value;
-        public int line;
-        public int pos;
-
-        Token(TokenType token, String value, int line, int pos) {
-            this.tokentype = token;
-            this.value = value;
-            this.line = line;
-            this.pos = pos;
-        }
-
-        @Override
-        public String toString() {
-            String result = String.format("%-5d %-5d %-15s", this.line, this.pos, this.tokentype);
-            switch (this.tokentype) {
-                case Integer:
-                    result += String.format("%-4s", value);
-                    break;
-                case Identifier:
-                    result += String.format("%s", value);
-                    break;
-                case String:
-                    result += String.format("\"%s\"", value);
-                    break;
-            }
-            return result;
-        }
-    }
-
-    static enum TokenType {
-        End_of_input, Op_multiply, Op_divide, Op_mod, Op_add, Op_subtract,
-        Op_negate, Op_not, Op_less, Op_lessequal, Op_greater, Op_greaterequal,
-        Op_equal, Op_notequal, Op_assign, Op_and, Op_or, Keyword_if,
-        Keyword_else, Keyword_while, Keyword_print, Keyword_putc, LeftParen, RightParen,
-        LeftBrace, RightBrace, Semicolon, Comma, Identifier, Integer, String
-    }
+    private static final int NO_VALUE = -1;
+    private static final int CHAR_VALUE = -2;
+    private int tokenLine;
+    private int tokenPos;
+    private int tokenStart;
+    private int valueStart;
+    private int valueEnd;
+    private int charValue;
+    private boolean tableDriven;
 
     /**
-     * Reports an error and terminates the program.
+     * Reports an error by throwing a CompileException.
      *
      * @param line the line number where the error occurred
      * @param pos the position within the line where the error occurred
      * @param msg the error message
      */
     static void error(int line, int pos, String msg) {
-        if (line > 0 && pos > 0) {
-            System.out.printf("%s in line %d, pos %d\n", msg, line, pos);
-        } else {
-            System.out.println(msg);
-        }
-        System.exit(1);
+        throw new CompileException(line, pos, msg);
     }
 
     /**
@@ -76,16 +42,64 @@ public class Lexer {
      * @param source the source code to tokenize
      */
     Lexer(String source) {
+        this((CharSequence) source);
+    }
+
+    /**
+     * Constructs a new Lexer instance over any character sequence, such as a memory-mapped file.
+     *
+     * @param source the source code to tokenize
+     */
+    Lexer(CharSequence source) {
         this.line = 1;
         this.pos = 1;
         this.position = 0;
         this.s = source;
-        this.chr = this.s.charAt(0);
-        this.keywords.put("if", TokenType.Keyword_if);
-        this.keywords.put("else", TokenType.Keyword_else);
-        this.keywords.put("print", TokenType.Keyword_print);
-        this.keywords.put("putc", TokenType.Keyword_putc);
-        this.keywords.put("while", TokenType.Keyword_while);
+        this.length = source.length();
+        if (this.length > 0 && source.charAt(this.length - 1) != '\n') {
+            this.length++; // read a missing final newline as if it were there, as line-based reading did
+        }
+        this.chr = this.length > 0 ? charAt(0) : '\u0000';
+        this.tableDriven = false;
+    }
+
+    /**
+     * Constructs a Lexer that starts in the middle of a source, at the first character of a token
+     * found by an earlier scan of the same text. Scanning from there gives the same tokens as
+     * scanning from the start would.
+     *
+     * @param source the source code to tokenize
+     * @param offset the index of the first character of the token
+     * @param line the line number of the token
+     * @param pos the position of the token in the line
+     */
+    Lexer(CharSequence source, int offset, int line, int pos) {
+        this(source);
+        this.position = offset;
+        this.line = line;
+        this.pos = pos;
+        this.chr = offset < this.length ? charAt(offset) : '\u0000';
+    }
+
+    /**
+     * Chooses between the hand-written scanner and the table-driven one in ScanTable. Both
+     * produce the same tokens.
+     *
+     * @param tableDriven true to scan with the character class table and keyword DFA
+     */
+    void setTableDriven(boolean tableDriven) {
+        this.tableDriven = tableDriven;
+    }
+
+    /**
+     * Constructs a new Lexer that reads directly from a memory-mapped source file.
+     *
+     * @param file the path of the source file
+     * @return a Lexer over the mapped file
+     * @throws IOException if the file cannot be mapped
+     */
+    static Lexer fromFile(String file) throws IOException {
+        return new Lexer(MappedSource.map(file));
     }
 
     /**
@@ -94,29 +108,25 @@ public class Lexer {
      * @param expect the character expected to follow the current one
      * @param ifyes the TokenType to return if the expectation is met
      * @param ifno the TokenType to return if the expectation is not met
-     * @param line the current line number
-     * @param pos the current position in line
-     * @return a new Token
+     * @return the type of the scanned token
      */
-    Token follow(char expect, TokenType ifyes, TokenType ifno, int line, int pos) {
+    TokenType follow(char expect, TokenType ifyes, TokenType ifno) {
         if (getNextChar() == expect) {
             getNextChar();
-            return new Token(ifyes, "", line, pos);
+            return ifyes;
         }
         if (ifno == TokenType.End_of_input) {
-            error(line, pos, String.format("follow: unrecognized character: (%d) '%c'", (int) this.chr, this.chr));
+            error(this.tokenLine, this.tokenPos, String.format("follow: unrecognized character: (%d) '%c'", (int) this.chr, this.chr));
         }
-        return new Token(ifno, "", line, pos);
+        return ifno;
     }
 
     /**
      * Handles character literals, accounting for escape sequences.
      *
-     * @param line the current line number
-     * @param pos the current position in line
-     * @return a Token representing the character literal
+     * @return the type of the scanned token, an Integer holding the character code
      */
-    Token char_lit(int line, int pos) { // handle character literals
+    TokenType char_lit() { // handle character literals
         char c = getNextChar(); // skip opening quote
         int n;
         if (c == '\\') {
@@ -136,169 +146,349 @@ public class Lexer {
         } else {
             n = (int) c;
         }
-        return new Token(TokenType.Integer, String.valueOf(n), line, pos);
+        this.valueStart = CHAR_VALUE;
+        this.charValue = n;
+        return TokenType.Integer;
     }
 
     /**
      * Handles string literals.
      *
      * @param start the starting quote character
-     * @param line the current line number
-     * @param pos the current position in line
-     * @return a Token representing the string literal
+     * @return the type of the scanned token, with the value set to the text between the quotes
      */
-    Token string_lit(char start, int line, int pos) { // handle string literals
-        StringBuilder result = new StringBuilder();
+    TokenType string_lit(char start) { // handle string literals
+        int first = this.position + 1;
         while (getNextChar() != start) {
             if (this.chr == '\u0000') {
-                error(line, pos, "Unterminated string literal");
+                error(this.tokenLine, this.tokenPos, "Unterminated string literal");
             }
-            result.append(this.chr);
         }
+        this.valueStart = first;
+        this.valueEnd = this.position;
         getNextChar();
-        return new Token(TokenType.String, result.toString(), line, pos);
+        return TokenType.String;
     }
 
     /**
      * Determines if the '/' character starts a division operator, a line comment, or a block comment.
      *
-     * @param line the current line number
-     * @param pos the current position in line
-     * @return a Token based on the analysis
+     * @return the type of the scanned token
      */
-    Token div_or_comment(int line, int pos) { // handle division or comments
+    TokenType div_or_comment() { // handle division or comments
         char currentChar = this.chr;
         char nextChar = getNextChar();
         if (currentChar == '/') {
-            //return new Token(TokenType.Op_divide, "", line, pos);
             if (nextChar == '/') { // Line comment
                 while (getNextChar() != '\n') {
                     if (this.chr == '\u0000') {
-                        return new Token(TokenType.End_of_input, "", line, pos);
+                        return TokenType.End_of_input;
                     }
                 }
                 getNextChar();
-                return getToken();
+                return scan();
             } else if (nextChar == '*') { // Block comment
                 while (true) {
                     currentChar = getNextChar();
                     if (currentChar == '\u0000') {
-                        error(line, pos, "Unterminated block comment");
+                        error(this.tokenLine, this.tokenPos, "Unterminated block comment");
                     } else if (currentChar == '*') {
                         if (getNextChar() == '/') {
                             getNextChar();
-                            return getToken();
+                            return scan();
                         }
                     }
                 }
             } else {
-                return new Token(TokenType.Op_divide, "", line, pos);
+                return TokenType.Op_divide;
             }
         }
-        error(line, pos, "Incorrectly entered this method");
-        return new Token(TokenType.End_of_input, "", line, pos);
+        error(this.tokenLine, this.tokenPos, "Incorrectly entered this method");
+        return TokenType.End_of_input;
     }
 
     /**
      * Handles the identification of tokens that could be either identifiers or integers.
+     * Keywords are matched against the source directly, so no text is built for them.
      *
-     * @param line the current line number
-     * @param pos the current position in line
-     * @return a Token representing either an identifier or an integer
+     * @return the type of the scanned token
      */
-    Token identifier_or_integer(int line, int pos) { // handle identifiers and integers
-        StringBuilder text = new StringBuilder();
+    TokenType identifier_or_integer() { // handle identifiers and integers
+        int start = this.position;
         boolean isInteger = true;
         while (Character.isLetterOrDigit(this.chr) || this.chr == '_') {
-            text.append(this.chr);
             if (!Character.isDigit(this.chr)) {
                 isInteger = false;
             }
             getNextChar();
         }
+        int end = this.position;
+        if (start == end) {
+            unrecognized();
+        }
         if (isInteger) {
-            return new Token(TokenType.Integer, text.toString(), line, pos);
+            this.valueStart = start;
+            this.valueEnd = end;
+            return TokenType.Integer;
         }
-        switch (text.toString()) {
-            case "if":
-                return new Token(TokenType.Keyword_if, "", line, pos);
-            case "else":
-                return new Token(TokenType.Keyword_else, "", line, pos);
-            case "print":
-                return new Token(TokenType.Keyword_print, "" , line, pos);
-            case "putc":
-                return new Token(TokenType.Keyword_putc, "", line, pos);
-            case "while":
-                return new Token(TokenType.Keyword_while, "", line, pos);
-            default:
-                return new Token(TokenType.Identifier, text.toString(), line, pos);
+        switch (end - start) {
+            case 2:
+                if (matches("if", start)) return TokenType.Keyword_if;
+                break;
+            case 4:
+                if (matches("else", start)) return TokenType.Keyword_else;
+                if (matches("putc", start)) return TokenType.Keyword_putc;
+                break;
+            case 5:
+                if (matches("print", start)) return TokenType.Keyword_print;
+                if (matches("while", start)) return TokenType.Keyword_while;
+                break;
         }
+        this.valueStart = start;
+        this.valueEnd = end;
+        return TokenType.Identifier;
     }
 
-    Token getToken() {
-        int line, pos;
+    /**
+     * Reports a character that cannot start any token. The character is skipped first, so that a
+     * caller recovering from the error continues after it.
+     */
+    private void unrecognized() {
+        char c = this.chr;
+        getNextChar();
+        error(this.tokenLine, this.tokenPos, String.format("unrecognized character: (%d) '%c'", (int) c, c));
+    }
+
+    /**
+     * Checks whether the source holds a given word at an index.
+     *
+     * @param word the word to compare against
+     * @param start the index in the source where the word would begin
+     * @return true if every character matches
+     */
+    private boolean matches(String word, int start) {
+        for (int i = 0; i < word.length(); i++) {
+            if (this.s.charAt(start + i) != word.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Scans the next token without allocating it. The token's line and position are left in
+     * tokenLine and tokenPos, and its value can be read with value() or valueIndex().
+     *
+     * @return the type of the scanned token
+     */
+    TokenType scan() {
+        if (this.tableDriven) {
+            return scanTable();
+        }
         while (Character.isWhitespace(this.chr)) {
             getNextChar();
         }
-        line = this.line;
-        pos = this.pos;
-
-        // switch statement on character for all forms of tokens with return to follow.... one example left for you
+        this.tokenLine = this.line;
+        this.tokenPos = this.pos;
+        this.tokenStart = this.position;
+        this.valueStart = NO_VALUE;
 
         switch (this.chr) {
             case '\u0000':
-                return new Token(TokenType.End_of_input, "", this.line, this.pos);
+                return TokenType.End_of_input;
             case '*':
                 getNextChar();
-                return new Token(TokenType.Op_multiply, "", line, pos);
+                return TokenType.Op_multiply;
             case '%':
                 getNextChar();
-                return new Token(TokenType.Op_mod, "", line, pos);
+                return TokenType.Op_mod;
             case '+':
                 getNextChar();
-                return new Token(TokenType.Op_add, "", line, pos);
+                return TokenType.Op_add;
             case '-':
                 getNextChar();
-                return new Token(TokenType.Op_subtract, "", line, pos);
+                return TokenType.Op_subtract;
             case '<':
-                return follow('=', TokenType.Op_lessequal, TokenType.Op_less, line, pos);
+                return follow('=', TokenType.Op_lessequal, TokenType.Op_less);
             case '>':
-                return follow('=', TokenType.Op_greaterequal, TokenType.Op_greater, line, pos);
+                return follow('=', TokenType.Op_greaterequal, TokenType.Op_greater);
             case '=':
-                return follow('=', TokenType.Op_equal, TokenType.Op_assign, line, pos);
+                return follow('=', TokenType.Op_equal, TokenType.Op_assign);
             case '!':
-                return follow('=', TokenType.Op_notequal, TokenType.Op_not, line, pos);
+                return follow('=', TokenType.Op_notequal, TokenType.Op_not);
             case '&':
-                return follow('&', TokenType.Op_and, TokenType.End_of_input, line, pos);
+                return follow('&', TokenType.Op_and, TokenType.End_of_input);
             case '|':
-                return follow('|', TokenType.Op_or, TokenType.End_of_input, line, pos);
+                return follow('|', TokenType.Op_or, TokenType.End_of_input);
             case '(':
                 getNextChar();
-                return new Token(TokenType.LeftParen, "", line, pos);
+                return TokenType.LeftParen;
             case ')':
                 getNextChar();
-                return new Token(TokenType.RightParen, "", line, pos);
+                return TokenType.RightParen;
             case '{':
                 getNextChar();
-                return new Token(TokenType.LeftBrace, "", line, pos);
+                return TokenType.LeftBrace;
             case '}':
                 getNextChar();
-                return new Token(TokenType.RightBrace, "", line, pos);
+                return TokenType.RightBrace;
             case ';':
                 getNextChar();
-                return new Token(TokenType.Semicolon, "", line, pos);
+                return TokenType.Semicolon;
             case ',':
                 getNextChar();
-                return new Token(TokenType.Comma, "", line, pos);
+                return TokenType.Comma;
             case '/':
-                return div_or_comment(line, pos);
+                return div_or_comment();
             case '\'':
-                return char_lit(line, pos);
+                return char_lit();
             case '\"':
-                return string_lit('"', line, pos);
+                return string_lit('"');
+            default:
+                return identifier_or_integer();
+        }
+    }
+
+    /**
+     * Scans the next token using the precomputed tables in ScanTable instead of the switch in
+     * scan(). Characters outside ASCII are handed to the hand-written methods.
+     *
+     * @return the type of the scanned token
+     */
+    TokenType scanTable() {
+        char c = this.chr;
+        while (c < 128 ? ScanTable.CLASS[c] == ScanTable.SPACE : Character.isWhitespace(c)) {
+            c = getNextChar();
+        }
+        this.tokenLine = this.line;
+        this.tokenPos = this.pos;
+        this.tokenStart = this.position;
+        this.valueStart = NO_VALUE;
+        if (c >= 128) {
+            return identifier_or_integer();
+        }
+
+        switch (ScanTable.CLASS[c]) {
+            case ScanTable.END:
+                return TokenType.End_of_input;
+            case ScanTable.SINGLE:
+                getNextChar();
+                return ScanTable.SINGLE_TYPE[c];
+            case ScanTable.FOLLOW:
+                return follow(ScanTable.FOLLOW_EXPECT[c], ScanTable.FOLLOW_YES[c], ScanTable.FOLLOW_NO[c]);
+            case ScanTable.SLASH:
+                return div_or_comment();
+            case ScanTable.QUOTE:
+                return char_lit();
+            case ScanTable.DOUBLE_QUOTE:
+                return string_lit('"');
             default:
-                return identifier_or_integer(line, pos);
+                return word();
+        }
+    }
+
+    /**
+     * Runs the keyword DFA over an integer, identifier or keyword. Keywords are recognized by the
+     * state the DFA stops in, so no text is built.
+     *
+     * @return the type of the scanned token
+     */
+    TokenType word() {
+        int start = this.position;
+        int state = ScanTable.START;
+        int[][] next = ScanTable.NEXT;
+        char c = this.chr;
+        while (c < 128) {
+            int to = next[state][c];
+            if (to < 0) {
+                break;
+            }
+            state = to;
+            c = getNextChar();
+        }
+        // non-ASCII letters and digits continue the word the way the hand-written scanner does
+        while (c >= 128 && (Character.isLetterOrDigit(c) || c == '_')) {
+            boolean digits = state == ScanTable.START || state == ScanTable.INTEGER;
+            state = digits && Character.isDigit(c) ? ScanTable.INTEGER : ScanTable.IDENTIFIER;
+            c = getNextChar();
+            while (c < 128 && ScanTable.CLASS[c] == ScanTable.WORD) {
+                if (c < '0' || c > '9') {
+                    state = ScanTable.IDENTIFIER;
+                }
+                c = getNextChar();
+            }
+        }
+        if (state == ScanTable.START) {
+            unrecognized();
+        }
+        TokenType type = ScanTable.ACCEPT[state];
+        if (type == TokenType.Integer || type == TokenType.Identifier) {
+            this.valueStart = start;
+            this.valueEnd = this.position;
+        }
+        return type;
+    }
+
+    /**
+     * Returns the value of the most recently scanned token as a new String.
+     *
+     * @return the token value, or "" for tokens without one
+     */
+    String value() {
+        if (this.valueStart == NO_VALUE) {
+            return "";
+        }
+        if (this.valueStart == CHAR_VALUE) {
+            return String.valueOf(this.charValue);
         }
+        return this.s.subSequence(this.valueStart, this.valueEnd).toString();
+    }
+
+    /**
+     * Interns the value of the most recently scanned token, only creating a String the first time
+     * a lexeme is seen.
+     *
+     * @param symbols the pool to intern into
+     * @return the index of the value in the pool
+     */
+    int valueIndex(SymbolPool symbols) {
+        if (this.valueStart == NO_VALUE) {
+            return SymbolPool.EMPTY;
+        }
+        if (this.valueStart == CHAR_VALUE) {
+            return symbols.intern(String.valueOf(this.charValue));
+        }
+        return symbols.intern(this.s, this.valueStart, this.valueEnd);
+    }
+
+    /**
+     * Returns the index in the source of the first character of the most recently scanned token.
+     */
+    int tokenStart() {
+        return this.tokenStart;
+    }
+
+    /**
+     * Returns the index in the source of the next character to scan, which after a token is the
+     * index just past its last character.
+     */
+    int offset() {
+        return this.position;
+    }
+
+    Token getToken() {
+        TokenType type = scan();
+        return new Token(type, value(), this.tokenLine, this.tokenPos);
+    }
+
+    /**
+     * Pulls the next token from the source, allowing the Lexer to feed the Parser directly.
+     *
+     * @return the next token
+     */
+    @Override
+    public Token next() {
+        return getToken();
     }
 
     /**
@@ -309,11 +499,11 @@ public class Lexer {
     char getNextChar() {
         this.pos++;
         this.position++;
-        if (this.position >= this.s.length()) {
+        if (this.position >= this.length) {
             this.chr = '\u0000';
             return this.chr;
         }
-        this.chr = this.s.charAt(this.position);
+        this.chr = charAt(this.position);
         if (this.chr == '\n') {
             this.line++;
             this.pos = 0;
@@ -321,20 +511,55 @@ public class Lexer {
         return this.chr;
     }
 
+    /**
+     * Returns the source character at an index, supplying the final newline if the source lacks one.
+     *
+     * @param index the index into the source
+     * @return the character at that index
+     */
+    private char charAt(int index) {
+        return index < this.s.length() ? this.s.charAt(index) : '\n';
+    }
+
     /**
      * Processes the source string and returns a string of all tokens generated by the lexer.
      *
      * @return a string representation of all tokens
      */
     String printTokens() {
+        return tokenize(new TokenBuffer()).toString();
+    }
+
+    /**
+     * Scans the whole source into a packed token buffer, interning values in the buffer's symbol
+     * pool instead of allocating a Token and a String for each token.
+     *
+     * @param buffer the buffer to append to
+     * @return the buffer
+     */
+    TokenBuffer tokenize(TokenBuffer buffer) {
+        TokenType type;
+        do {
+            type = scan();
+            buffer.add(type, this.tokenLine, this.tokenPos, valueIndex(buffer.symbols()));
+        } while (type != TokenType.End_of_input);
+        return buffer;
+    }
+
+    /**
+     * Processes the source string and collects every token, including the final End_of_input,
+     * so that it can be handed to the Parser without going through the .lex text format.
+     *
+     * @return the list of tokens
+     */
+    List<Token> tokenize() {
+        List<Token> tokens = new ArrayList<>();
         Token t;
-        StringBuilder sb = new StringBuilder();
-        while ((t = getToken()).tokentype != TokenType.End_of_input) {
-            sb.append(t);
-            sb.append("\n");
-        }
-        sb.append(t);
-        return sb.toString();
+        do {
+            t = getToken();
+            tokens.add(t);
+        } while (t.tokentype != TokenType.End_of_input);
+        return tokens;
     }
 
     /**
@@ -356,11 +581,18 @@ public class Lexer {
 
     /**
      * Main method to read a source file, tokenize it using Lexer, and write the output to a file.
+     * Pass --table to scan with the table-driven engine, --cache DIR to load unchanged sources from a
+     * CompileCache in DIR, and --stats or --stats-json to print the time, counts and allocation of
+     * each phase. The cache holds whole compilations, so a source it does not have is also parsed, in
+     * a parse phase of its own, and stored if it parses.
      *
      * @param args command-line arguments
      */
     public static void main(String[] args) {
+        boolean tableDriven = Arrays.asList(args).contains("--table");
+        int cacheArg = Arrays.asList(args).indexOf("--cache");
         try {
+            CompileCache cache = cacheArg >= 0 ? new CompileCache(Path.of(args[cacheArg + 1]), CompileCache.DEFAULT_MAX_BYTES) : null;
             String[] files = new String[8];
             files[0] = "src/main/resources/fizzbuzz.c";
             files[1] = "src/main/resources/99bottles.c";
@@ -381,19 +613,55 @@ public class Lexer {
             outputFiles[6] = "src/main/resources/test1.lex";
             outputFiles[7] = "src/main/resources/test2.lex";
 
+            CompileStats stats = CompileStats.forArgs(args);
             for (int i = 0; i < outputFiles.length; i++) {
-                Scanner s = new Scanner(new File(files[i]));
-                String source = "";
                 String result;
-                while (s.hasNext()) {
-                    source += s.nextLine() + "\n";
+                TokenBuffer tokens = null;
+                byte[] source = null;
+                try (CompileStats.Span span = stats.start(files[i], CompileStats.Phase.LEX)) {
+                    if (cache != null) {
+                        source = Files.readAllBytes(Path.of(files[i]));
+                        CompileCache.Entry entry = cache.get(source);
+                        if (entry != null) {
+                            tokens = entry.tokens;
+                            source = null;
+                        }
+                    }
+                    if (tokens == null) {
+                        Lexer l = source != null ? new Lexer(new MappedSource(ByteBuffer.wrap(source))) : fromFile(files[i]);
+                        l.setTableDriven(tableDriven);
+                        tokens = l.tokenize(new TokenBuffer());
+                    }
+                    result = tokens.toString();
+                    span.tokens(tokens.size()).bytesRead(Files.size(Path.of(files[i])));
+                }
+                if (source != null) {
+                    // a miss: the cache only holds whole compilations, so parse the tokens to store them
+                    try (CompileStats.Span span = stats.start(files[i], CompileStats.Phase.PARSE)) {
+                        Parser parser = new Parser(tokens.cursor());
+                        parser.setEcho(false);
+                        Parser.Node tree = parser.parse();
+                        cache.put(source, tokens, tree);
+                        span.tokens(tokens.size());
+                    } catch (CompileException e) {
+                        // only sources that compile are stored; the tokens are still written
+                    }
+                }
+                try (CompileStats.Span span = stats.start(files[i], CompileStats.Phase.WRITE)) {
+                    outputToFile(result, outputFiles[i]);
+                    span.bytesWritten(result.length());
                 }
-                Lexer l = new Lexer(source);
-                result = l.printTokens();
-                outputToFile(result, outputFiles[i]);
             }
-        } catch (FileNotFoundException e) {
-            error(-1, -1, "Exception: " + e.getMessage());
+            if (cache != null) {
+                System.out.println(cache);
+            }
+            stats.print();
+        } catch (IOException e) {
+            System.out.println("Exception: " + e.getMessage());
+            System.exit(1);
+        } catch (CompileException e) {
+            System.out.println(e.getMessage());
+            System.exit(1);
         }
     }
 }
\ No newline at end of file
@@ -1,8 +1,15 @@
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Scanner;
 
@@ -46,4 +53,90 @@ class LexerTest {
         }
         assertTrue(match, errorMessage);
     }
-}
\ No newline at end of file
+
+    /**
+     * Test to see if lexing a memory-mapped file gives the same tokens as lexing the file as a string
+     * @throws IOException
+     */
+    @Test
+    void fromFileTest() throws IOException {
+        String file = "src/main/resources/prime.c";
+        String source = new String(Files.readAllBytes(Paths.get(file)));
+        assertEquals(new Lexer(source).printTokens(), Lexer.fromFile(file).printTokens());
+    }
+
+    /**
+     * Test to see if a UTF-8 string literal is read as its characters, keeps the columns after it, and
+     * comes back unchanged out of the .par text and the binary token and AST files
+     * @throws IOException
+     */
+    @Test
+    void utf8Test() throws IOException {
+        String source = "print(\"caf\u00e9 \u2713\\n\"); x = 1;\n";
+        Path file = Files.createTempFile("utf8", ".c");
+        try {
+            Files.write(file, source.getBytes(StandardCharsets.UTF_8));
+            assertEquals(new Lexer(source).printTokens(), Lexer.fromFile(file.toString()).printTokens());
+            List<Token> tokens = Lexer.fromFile(file.toString()).tokenize();
+            assertEquals("caf\u00e9 \u2713\\n", tokens.get(2).value);
+            assertEquals(20, tokens.get(5).pos);
+
+            TokenBuffer buffer = Lexer.fromFile(file.toString()).tokenize(new TokenBuffer());
+            ByteArrayOutputStream tok = new ByteArrayOutputStream();
+            TokenFile.write(buffer, tok);
+            assertEquals(buffer.toString(), TokenFile.read(new ByteArrayInputStream(tok.toByteArray())).toString());
+
+            Parser.Node tree = new Parser(Lexer.fromFile(file.toString())).parse();
+            ByteArrayOutputStream par = new ByteArrayOutputStream();
+            AstWriter.write(tree, par);
+            StringBuilder expected = new StringBuilder();
+            new AstWriter(expected).write(tree);
+            assertEquals(expected.toString(), par.toString(StandardCharsets.UTF_8));
+            assertTrue(expected.toString().contains("\"caf\u00e9 \u2713\\n\""));
+
+            ByteArrayOutputStream ast = new ByteArrayOutputStream();
+            AstFile.write(tree, ast);
+            StringBuilder read = new StringBuilder();
+            new AstWriter(read).write(AstFile.read(new ByteArrayInputStream(ast.toByteArray())));
+            assertEquals(expected.toString(), read.toString());
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    /**
+     * Test to see if the packed token buffer holds the same tokens as the object tokens and interns values
+     * @throws IOException
+     */
+    @Test
+    void tokenBufferTest() throws IOException {
+        String file = "src/main/resources/prime.c";
+        List<Token> tokens = Lexer.fromFile(file).tokenize();
+        TokenBuffer buffer = Lexer.fromFile(file).tokenize(new TokenBuffer());
+
+        assertEquals(tokens.size(), buffer.size());
+        for (int i = 0; i < tokens.size(); i++) {
+            assertEquals(tokens.get(i).toString(), Token.format(buffer.type(i), buffer.value(i), buffer.line(i), buffer.pos(i)));
+        }
+        assertEquals(buffer.valueIndex(0), buffer.valueIndex(77)); // both "count"
+        assertEquals(SymbolPool.EMPTY, buffer.valueIndex(1));
+    }
+
+    /**
+     * Test to see if the table-driven scanner produces the same tokens as the hand-written one
+     * @throws IOException
+     */
+    @Test
+    void tableDrivenTest() throws IOException {
+        String[] files = {"src/main/resources/prime.c", "src/main/resources/fizzbuzz.c",
+                "src/main/resources/99bottles.c", "src/main/resources/hello.t"};
+        for (String file : files) {
+            Lexer table = Lexer.fromFile(file);
+            table.setTableDriven(true);
+            assertEquals(Lexer.fromFile(file).printTokens(), table.printTokens(), file);
+        }
+        Lexer table = new Lexer("iff if els else whiles while print1 putc 42 x_1 a<=b a!=b a&&b");
+        table.setTableDriven(true);
+        assertEquals(new Lexer("iff if els else whiles while print1 putc 42 x_1 a<=b a!=b a&&b").printTokens(), table.printTokens());
+    }
+}
@@ -0,0 +1,526 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Rewrites the body and condition of each while loop so that each iteration does less work. Loops
+ * are optimized innermost first, and three rewrites are applied to each:
+ *
+ * x / y * y != x, which tests that y does not divide x, becomes x % y != 0, and likewise for ==.
+ * The two are equal for every x and y, and both divide by zero when y is zero.
+ *
+ * An expression whose variables are not assigned anywhere in the loop is hoisted: it is assigned to
+ * a new variable just before the loop, and read from there. An expression that may divide by zero is
+ * only hoisted out of the condition, which is evaluated before anything else in the loop whether or
+ * not the body runs, so the program still stops at the same point with the same output.
+ *
+ * A product i * c, where c is a literal or a variable the loop does not assign and i is an induction
+ * variable, one that is assigned once per iteration by i = i + d or i = i - d, is strength reduced:
+ * a new variable is set to i * c before the loop and moved by d * c right after i is, and the product
+ * is replaced by a read of it. Since int arithmetic wraps, the two stay equal even on overflow. Every
+ * iteration then pays for one addition instead of the multiplications, so a product is only reduced
+ * where it is computed at least MIN_REDUCED_USES times per iteration.
+ *
+ * The new variables are named _inv and _ind followed by a number, skipping names the program already
+ * uses. The tree is rewritten in place, and each change is described in changes().
+ */
+class LoopOptimizer {
+    /** The number of times a product must be computed per iteration for strength reduction to pay. */
+    static final int MIN_REDUCED_USES = 2;
+
+    private final List<String> changes;
+    private final Set<String> names;
+    private final Set<String> temporaries;
+    private int counter;
+
+    LoopOptimizer() {
+        this.changes = new ArrayList<>();
+        this.names = new HashSet<>();
+        this.temporaries = new HashSet<>();
+    }
+
+    /**
+     * Optimizes the loops of a tree.
+     * @param tree the root node returned by Parser.parse().
+     * @return the root of the optimized tree.
+     */
+    Parser.Node optimize(Parser.Node tree) {
+        AstWalker.preorder(tree, node -> {
+            if (node != null && node.nt == Parser.NodeType.nd_Ident) {
+                this.names.add(node.value);
+            }
+        });
+        return statement(tree);
+    }
+
+    /**
+     * Returns a description of each change made so far, in the order they were made.
+     */
+    List<String> changes() {
+        return this.changes;
+    }
+
+    private Parser.Node statement(Parser.Node node) {
+        if (node == null) {
+            return null;
+        }
+        switch (node.nt) {
+            case nd_Sequence:
+                return sequence(node, this::statement);
+            case nd_If:
+                node.right.left = statement(node.right.left);
+                node.right.right = statement(node.right.right);
+                return node;
+            case nd_While:
+                node.right = statement(node.right);
+                return loop(node);
+            default:
+                return node;
+        }
+    }
+
+    /**
+     * Optimizes one loop whose inner loops have already been optimized.
+     * @return the loop, or a Sequence of the statements hoisted out of it followed by the loop.
+     */
+    private Parser.Node loop(Parser.Node loop) {
+        String where = " in " + DeadCodeEliminator.describe(loop);
+        Set<String> assigned = new HashSet<>();
+        Map<String, Integer> assignments = new HashMap<>();
+        AstWalker.preorder(loop.right, node -> {
+            if (node != null && node.nt == Parser.NodeType.nd_Assign) {
+                assigned.add(node.left.value);
+                assignments.merge(node.left.value, 1, Integer::sum);
+            }
+        });
+        List<Parser.Node> preheader = new ArrayList<>();
+
+        // what an inner loop hoisted may be invariant here as well
+        loop.right = sequence(loop.right, new Rewrite() {
+            public Parser.Node apply(Parser.Node statement) {
+                if (statement.nt == Parser.NodeType.nd_Sequence) {
+                    return sequence(statement, this);
+                }
+                if (statement.nt == Parser.NodeType.nd_If) {
+                    statement.right.left = statement.right.left == null ? null : apply(statement.right.left);
+                    statement.right.right = statement.right.right == null ? null : apply(statement.right.right);
+                    return statement;
+                }
+                if (statement.nt == Parser.NodeType.nd_Assign && temporaries.contains(statement.left.value)
+                        && assignments.get(statement.left.value) == 1 && invariant(statement.right, assigned)
+                        && ConstantFolder.cannotTrap(statement.right)) {
+                    preheader.add(statement);
+                    assigned.remove(statement.left.value);
+                    changes.add("hoisted: " + DeadCodeEliminator.describe(statement) + where);
+                    return null;
+                }
+                return statement;
+            }
+        });
+
+        loop.left = remainders(loop.left, where);
+        expressions(loop.right, expression -> remainders(expression, where));
+
+        Map<String, Parser.Node> hoisted = new LinkedHashMap<>();
+        loop.left = hoist(loop.left, assigned, true, hoisted, preheader, where);
+        expressions(loop.right, expression -> hoist(expression, assigned, false, hoisted, preheader, where));
+
+        reduce(loop, assigned, assignments, preheader, where);
+
+        if (preheader.isEmpty()) {
+            return loop;
+        }
+        Parser.Node result = null;
+        for (Parser.Node statement : preheader) {
+            result = Parser.Node.make_node(Parser.NodeType.nd_Sequence, result, statement);
+        }
+        return Parser.Node.make_node(Parser.NodeType.nd_Sequence, result, loop);
+    }
+
+    /**
+     * Replaces x / y * y != x with x % y != 0, and the same with ==, throughout an expression.
+     */
+    private Parser.Node remainders(Parser.Node node, String where) {
+        if (node == null || node.nt.isLeaf()) {
+            return node;
+        }
+        node.left = remainders(node.left, where);
+        node.right = remainders(node.right, where);
+        if (node.nt != Parser.NodeType.nd_Neq && node.nt != Parser.NodeType.nd_Eql) {
+            return node;
+        }
+        Parser.Node product = node.left;
+        Parser.Node x = node.right;
+        Parser.Node quotient = quotient(product, x);
+        if (quotient == null) {
+            product = node.right;
+            x = node.left;
+            quotient = quotient(product, x);
+        }
+        if (quotient == null) {
+            return node;
+        }
+        Parser.Node rewritten = Parser.Node.make_node(node.nt,
+                Parser.Node.make_node(Parser.NodeType.nd_Mod, quotient.left, quotient.right),
+                Parser.Node.make_leaf(Parser.NodeType.nd_Integer, "0"));
+        this.changes.add("reduced: " + DeadCodeEliminator.expression(node, false) + " to "
+                + DeadCodeEliminator.expression(rewritten, false) + where);
+        return rewritten;
+    }
+
+    /**
+     * Returns the x / y of a product x / y * y or y * (x / y), or null if it is not one.
+     */
+    private static Parser.Node quotient(Parser.Node product, Parser.Node x) {
+        if (product.nt != Parser.NodeType.nd_Mul) {
+            return null;
+        }
+        for (int side = 0; side < 2; side++) {
+            Parser.Node quotient = side == 0 ? product.left : product.right;
+            Parser.Node y = side == 0 ? product.right : product.left;
+            if (quotient.nt == Parser.NodeType.nd_Div && same(quotient.left, x) && same(quotient.right, y)) {
+                return quotient;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Replaces the largest invariant parts of an expression with reads of new variables, which the
+     * preheader assigns. An expression that appears more than once is hoisted once.
+     * @param trapping whether an expression that may divide by zero can be hoisted.
+     */
+    private Parser.Node hoist(Parser.Node node, Set<String> assigned, boolean trapping, Map<String, Parser.Node> hoisted,
+                              List<Parser.Node> preheader, String where) {
+        if (node == null || node.nt.isLeaf()) {
+            return node;
+        }
+        if (invariant(node, assigned) && reads(node) && (trapping || ConstantFolder.cannotTrap(node))) {
+            String key = key(node);
+            Parser.Node temporary = hoisted.get(key);
+            if (temporary == null) {
+                temporary = Parser.Node.make_leaf(Parser.NodeType.nd_Ident, temporary("_inv"));
+                hoisted.put(key, temporary);
+                Parser.Node assign = Parser.Node.make_node(Parser.NodeType.nd_Assign, temporary, node);
+                preheader.add(assign);
+                this.changes.add("hoisted: " + DeadCodeEliminator.describe(assign) + where);
+            }
+            return Parser.Node.make_leaf(Parser.NodeType.nd_Ident, temporary.value);
+        }
+        node.left = hoist(node.left, assigned, trapping, hoisted, preheader, where);
+        node.right = hoist(node.right, assigned, trapping, hoisted, preheader, where);
+        return node;
+    }
+
+    /**
+     * Strength reduces the products of induction variables and invariant factors in a loop.
+     */
+    private void reduce(Parser.Node loop, Set<String> assigned, Map<String, Integer> assignments,
+                        List<Parser.Node> preheader, String where) {
+        // the statements that run exactly once per iteration, and the induction variables they step
+        Map<String, Parser.Node> steps = new HashMap<>();
+        for (Parser.Node statement : statements(loop.right)) {
+            if (statement.nt == Parser.NodeType.nd_Assign && assignments.get(statement.left.value) == 1
+                    && step(statement, assigned) != null) {
+                steps.put(statement.left.value, statement);
+            }
+        }
+        if (steps.isEmpty()) {
+            return;
+        }
+
+        // the products of each induction variable and factor, counted by where they are computed
+        Map<String, List<Parser.Node>> products = new LinkedHashMap<>();
+        Map<String, Parser.Node> updates = new HashMap<>();
+        List<Parser.Node> roots = new ArrayList<>();
+        roots.add(loop.left);
+        expressions(loop.right, expression -> {
+            roots.add(expression);
+            return expression;
+        });
+        for (Parser.Node root : roots) {
+            AstWalker.preorder(root, node -> {
+                if (node != null && node.nt == Parser.NodeType.nd_Mul) {
+                    Parser.Node variable = induction(node, steps, assigned);
+                    if (variable != null) {
+                        // i * c and c * i are the same product
+                        String key = variable.value + " * " + key(variable == node.left ? node.right : node.left);
+                        products.computeIfAbsent(key, k -> new ArrayList<>()).add(node);
+                    }
+                }
+            });
+        }
+
+        for (List<Parser.Node> uses : products.values()) {
+            Parser.Node product = uses.get(0);
+            Parser.Node variable = induction(product, steps, assigned);
+            Parser.Node factor = variable == product.left ? product.right : product.left;
+            Parser.Node increment = steps.get(variable.value);
+            Parser.Node delta = step(increment, assigned);
+            if (uses.size() < MIN_REDUCED_USES) {
+                continue;
+            }
+            Parser.Node amount = amount(delta, factor, preheader, where);
+            if (amount == null) {
+                continue;
+            }
+            String name = temporary("_ind");
+            String text = DeadCodeEliminator.expression(product, false);
+            preheader.add(Parser.Node.make_node(Parser.NodeType.nd_Assign, Parser.Node.make_leaf(Parser.NodeType.nd_Ident, name),
+                    Parser.Node.make_node(Parser.NodeType.nd_Mul, copy(product.left), copy(product.right))));
+            for (Parser.Node use : uses) {
+                use.nt = Parser.NodeType.nd_Ident;
+                use.value = name;
+                use.left = null;
+                use.right = null;
+            }
+            Parser.NodeType direction = increment.right.nt == Parser.NodeType.nd_Sub ? Parser.NodeType.nd_Sub : Parser.NodeType.nd_Add;
+            Parser.Node update = Parser.Node.make_node(Parser.NodeType.nd_Assign, Parser.Node.make_leaf(Parser.NodeType.nd_Ident, name),
+                    Parser.Node.make_node(direction, Parser.Node.make_leaf(Parser.NodeType.nd_Ident, name), amount));
+            Parser.Node previous = updates.get(variable.value);
+            updates.put(variable.value, Parser.Node.make_node(Parser.NodeType.nd_Sequence,
+                    previous == null ? Parser.Node.make_node(Parser.NodeType.nd_Sequence, null, increment) : previous, update));
+            this.changes.add("reduced: " + text + " to " + name + ", stepped by " + DeadCodeEliminator.describe(update) + where);
+        }
+
+        if (updates.isEmpty()) {
+            return;
+        }
+        Map<Parser.Node, Parser.Node> replacements = new HashMap<>();
+        for (Map.Entry<String, Parser.Node> update : updates.entrySet()) {
+            replacements.put(steps.get(update.getKey()), update.getValue());
+        }
+        loop.right = sequence(loop.right, new Rewrite() {
+            public Parser.Node apply(Parser.Node statement) {
+                if (statement.nt == Parser.NodeType.nd_Sequence) {
+                    return sequence(statement, this);
+                }
+                return replacements.getOrDefault(statement, statement);
+            }
+        });
+    }
+
+    /**
+     * Returns how far the product of an induction variable and a factor moves per step, as a literal,
+     * an invariant variable, or a new variable that the preheader assigns, or null if that would take
+     * a literal that does not fit in an int.
+     */
+    private Parser.Node amount(Parser.Node delta, Parser.Node factor, List<Parser.Node> preheader, String where) {
+        Integer d = ConstantFolder.constant(delta);
+        Integer c = ConstantFolder.constant(factor);
+        if (d != null && c != null) {
+            int amount = d * c;
+            return amount < 0 ? null : Parser.Node.make_leaf(Parser.NodeType.nd_Integer, Integer.toString(amount));
+        }
+        if (d != null && d == 1) {
+            return copy(factor);
+        }
+        if (c != null && c == 1) {
+            return copy(delta);
+        }
+        Parser.Node assign = Parser.Node.make_node(Parser.NodeType.nd_Assign,
+                Parser.Node.make_leaf(Parser.NodeType.nd_Ident, temporary("_inv")),
+                Parser.Node.make_node(Parser.NodeType.nd_Mul, copy(delta), copy(factor)));
+        preheader.add(assign);
+        this.changes.add("hoisted: " + DeadCodeEliminator.describe(assign) + where);
+        return Parser.Node.make_leaf(Parser.NodeType.nd_Ident, assign.left.value);
+    }
+
+    /**
+     * Returns the d of an assignment i = i + d, i = d + i or i = i - d whose d is a literal or an
+     * invariant variable, or null if the assignment is not one of those.
+     */
+    private static Parser.Node step(Parser.Node assign, Set<String> assigned) {
+        Parser.Node value = assign.right;
+        if (value.nt != Parser.NodeType.nd_Add && value.nt != Parser.NodeType.nd_Sub) {
+            return null;
+        }
+        String variable = assign.left.value;
+        Parser.Node delta;
+        if (isVariable(value.left, variable)) {
+            delta = value.right;
+        } else if (value.nt == Parser.NodeType.nd_Add && isVariable(value.right, variable)) {
+            delta = value.left;
+        } else {
+            return null;
+        }
+        return factor(delta, assigned) ? delta : null;
+    }
+
+    /**
+     * Returns the induction variable of a product of one and an invariant factor, or null if the
+     * product is not one.
+     */
+    private static Parser.Node induction(Parser.Node product, Map<String, Parser.Node> steps, Set<String> assigned) {
+        if (product.left.nt == Parser.NodeType.nd_Ident && steps.containsKey(product.left.value) && factor(product.right, assigned)) {
+            return product.left;
+        }
+        if (product.right.nt == Parser.NodeType.nd_Ident && steps.containsKey(product.right.value) && factor(product.left, assigned)) {
+            return product.right;
+        }
+        return null;
+    }
+
+    private static boolean factor(Parser.Node node, Set<String> assigned) {
+        return ConstantFolder.constant(node) != null
+                || node.nt == Parser.NodeType.nd_Ident && !assigned.contains(node.value);
+    }
+
+    private static boolean isVariable(Parser.Node node, String name) {
+        return node.nt == Parser.NodeType.nd_Ident && node.value.equals(name);
+    }
+
+    /**
+     * Returns whether an expression reads no variable that is assigned in the loop.
+     */
+    private static boolean invariant(Parser.Node node, Set<String> assigned) {
+        if (node == null) {
+            return true;
+        }
+        if (node.nt == Parser.NodeType.nd_Ident) {
+            return !assigned.contains(node.value);
+        }
+        return invariant(node.left, assigned) && invariant(node.right, assigned);
+    }
+
+    /**
+     * Returns whether an expression reads a variable, since one that does not is the ConstantFolder's.
+     */
+    private static boolean reads(Parser.Node node) {
+        if (node == null) {
+            return false;
+        }
+        return node.nt == Parser.NodeType.nd_Ident || reads(node.left) || reads(node.right);
+    }
+
+    private static boolean same(Parser.Node a, Parser.Node b) {
+        if (a == null || b == null) {
+            return a == b;
+        }
+        if (a.nt != b.nt || !a.value.equals(b.value)) {
+            return false;
+        }
+        return same(a.left, b.left) && same(a.right, b.right);
+    }
+
+    /**
+     * Returns a string that is equal for two expressions exactly when they are the same.
+     */
+    private static String key(Parser.Node node) {
+        if (node == null) {
+            return "";
+        }
+        if (node.nt.isLeaf()) {
+            return node.nt + ":" + node.value;
+        }
+        return "(" + node.nt + " " + key(node.left) + " " + key(node.right) + ")";
+    }
+
+    private static Parser.Node copy(Parser.Node node) {
+        if (node == null) {
+            return null;
+        }
+        Parser.Node copy = Parser.Node.make_node(node.nt, copy(node.left), copy(node.right));
+        copy.value = node.value;
+        return copy;
+    }
+
+    private String temporary(String prefix) {
+        String name;
+        do {
+            name = prefix + this.counter++;
+        } while (this.names.contains(name));
+        this.names.add(name);
+        this.temporaries.add(name);
+        return name;
+    }
+
+    /** What to do with one statement or expression: the node to put in its place, or null to remove it. */
+    private interface Rewrite {
+        Parser.Node apply(Parser.Node node);
+    }
+
+    /**
+     * Applies a rewrite to each statement of a Sequence chain, unlinking the statements it removes.
+     * Like ConstantFolder, the chain is walked with a list instead of recursing once per statement.
+     */
+    private static Parser.Node sequence(Parser.Node node, Rewrite rewrite) {
+        List<Parser.Node> chain = new ArrayList<>();
+        Parser.Node n = node;
+        while (n != null && n.nt == Parser.NodeType.nd_Sequence) {
+            chain.add(n);
+            n = n.left;
+        }
+        Parser.Node left = n == null ? null : rewrite.apply(n);
+        for (int i = chain.size() - 1; i >= 0; i--) {
+            Parser.Node sequence = chain.get(i);
+            sequence.right = sequence.right == null ? null : rewrite.apply(sequence.right);
+            if (sequence.right == null) {
+                continue;
+            }
+            sequence.left = left;
+            left = sequence;
+        }
+        return left;
+    }
+
+    /**
+     * Applies a rewrite to every expression in a statement: the values assigned and printed, and the
+     * conditions of If and While statements, including those nested in it.
+     */
+    private static void expressions(Parser.Node node, Rewrite rewrite) {
+        if (node == null) {
+            return;
+        }
+        switch (node.nt) {
+            case nd_Sequence:
+                for (Parser.Node statement : statements(node)) {
+                    expressions(statement, rewrite);
+                }
+                return;
+            case nd_If:
+                node.left = rewrite.apply(node.left);
+                expressions(node.right.left, rewrite);
+                expressions(node.right.right, rewrite);
+                return;
+            case nd_While:
+                node.left = rewrite.apply(node.left);
+                expressions(node.right, rewrite);
+                return;
+            case nd_Assign:
+                node.right = rewrite.apply(node.right);
+                return;
+            default:
+                if (node.left != null && node.left.nt != Parser.NodeType.nd_String) {
+                    node.left = rewrite.apply(node.left);
+                }
+        }
+    }
+
+    /**
+     * Returns the statements of a Sequence chain that run every time it does, in order, including
+     * those of the Sequences nested in it, without changing it.
+     */
+    private static List<Parser.Node> statements(Parser.Node node) {
+        List<Parser.Node> statements = new ArrayList<>();
+        List<Parser.Node> stack = new ArrayList<>();
+        stack.add(node);
+        while (!stack.isEmpty()) {
+            Parser.Node n = stack.remove(stack.size() - 1);
+            if (n == null) {
+                continue;
+            }
+            if (n.nt == Parser.NodeType.nd_Sequence) {
+                stack.add(n.right);
+                stack.add(n.left);
+            } else {
+                statements.add(n);
+            }
+        }
+        return statements;
+    }
+}
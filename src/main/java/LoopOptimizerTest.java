@@ -0,0 +1,125 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LoopOptimizerTest {
+
+    private static String run(Parser.Node tree) throws IOException {
+        StringWriter out = new StringWriter();
+        new Interpreter(tree).run(out);
+        return out.toString();
+    }
+
+    private static Parser.Node parse(String source) {
+        Parser parser = new Parser(new Lexer(source));
+        parser.setEcho(false);
+        return parser.parse();
+    }
+
+    /**
+     * Test to see if the divisibility test of prime.c becomes a remainder
+     * @throws IOException
+     */
+    @Test
+    void remainderTest() throws IOException {
+        String source = "n = 91; k = 3; p = 1; while ((k * k <= n) && (p)) { p = n / k * k != n; k = k + 2; } print(k, \" \", p);";
+        LoopOptimizer optimizer = new LoopOptimizer();
+        Parser.Node tree = optimizer.optimize(parse(source));
+        assertEquals(List.of("reduced: ((n / k) * k) != n to (n % k) != 0 in while (((k * k) <= n) && p)"), optimizer.changes());
+        assertEquals("9 0", run(tree));
+    }
+
+    /**
+     * Test to see if invariant expressions are hoisted once each, and an inner loop's invariant all the way out
+     * @throws IOException
+     */
+    @Test
+    void hoistTest() throws IOException {
+        String source = "a = 2; b = 3; i = 0; s = 0;\n"
+                + "while (i < a * b) { s = s + (a + b) * i + a * b; j = 0; while (j < 2) { s = s + (a - b); j = j + 1; } i = i + 1; }\n"
+                + "print(s);";
+        LoopOptimizer optimizer = new LoopOptimizer();
+        Parser.Node tree = optimizer.optimize(parse(source));
+        assertEquals(List.of("hoisted: _inv0 = a - b; in while (j < 2)",
+                "hoisted: _inv0 = a - b; in while (i < (a * b))",
+                "hoisted: _inv1 = a * b; in while (i < (a * b))",
+                "hoisted: _inv2 = a + b; in while (i < (a * b))"), optimizer.changes());
+        assertEquals(run(parse(source)), run(tree));
+        assertEquals(List.of("a", "b", "i", "s", "_inv0", "_inv1", "_inv2", "j"), new Interpreter(tree).variables());
+    }
+
+    /**
+     * Test to see if an expression that may divide by zero is hoisted out of a condition, but not out of a body that may not run
+     * @throws IOException
+     */
+    @Test
+    void trapTest() throws IOException {
+        String source = "z = 0; i = 5; while (i < 3) { x = 10 / z; i = i + 1; } print(\"ran\");";
+        LoopOptimizer optimizer = new LoopOptimizer();
+        Parser.Node tree = optimizer.optimize(parse(source));
+        assertEquals(List.of(), optimizer.changes());
+        assertEquals("ran", run(tree));
+
+        optimizer = new LoopOptimizer();
+        Parser.Node trapping = optimizer.optimize(parse("z = 0; i = 0; print(\"a\"); while (i < 10 / z) i = i + 1;"));
+        assertEquals(List.of("hoisted: _inv0 = 10 / z; in while (i < (10 / z))"), optimizer.changes());
+        StringWriter out = new StringWriter();
+        assertThrows(ArithmeticException.class, () -> new Interpreter(trapping).run(out));
+        assertEquals("a", out.toString());
+    }
+
+    /**
+     * Test to see if a product of an induction variable computed twice an iteration becomes an addition, and one computed once does not
+     * @throws IOException
+     */
+    @Test
+    void reductionTest() throws IOException {
+        String source = "m = 3; s = 0; t = 0; i = 20; k = 0;\n"
+                + "while (i > 0) { s = s + i * 4; if (4 * i > 40) t = t + 1; i = i - 2; s = s + k * m; k = k + 1; }\n"
+                + "print(s, \" \", t);";
+        LoopOptimizer optimizer = new LoopOptimizer();
+        Parser.Node tree = optimizer.optimize(parse(source));
+        assertEquals(List.of("reduced: i * 4 to _ind0, stepped by _ind0 = _ind0 - 8; in while (i > 0)"), optimizer.changes());
+        assertEquals(run(parse(source)), run(tree));
+
+        source = "m = 3; s = 0; i = 0; d = 5; while (i < 100) { s = s + i * m - m * i / 2; i = i + d; } print(s);";
+        optimizer = new LoopOptimizer();
+        tree = optimizer.optimize(parse(source));
+        assertEquals(List.of("hoisted: _inv0 = d * m; in while (i < 100)",
+                "reduced: i * m to _ind1, stepped by _ind1 = _ind1 + _inv0; in while (i < 100)"), optimizer.changes());
+        assertEquals(run(parse(source)), run(tree));
+    }
+
+    /**
+     * Test to see if new variables never take the name of one the program uses
+     */
+    @Test
+    void namesTest() {
+        LoopOptimizer optimizer = new LoopOptimizer();
+        optimizer.optimize(parse("_inv0 = 1; i = 0; while (i < _inv0 + 1) i = i + 1;"));
+        assertEquals(List.of("hoisted: _inv1 = _inv0 + 1; in while (i < (_inv0 + 1))"), optimizer.changes());
+    }
+
+    /**
+     * Test to see if the programs in resources print the same after optimization, interpreted and compiled
+     * @throws IOException
+     */
+    @Test
+    void resourcesTest() throws IOException {
+        String[] programs = {"prime.c", "fizzbuzz.c", "99bottles.c", "count.c", "hello.t", "loop.py", "test1.c"};
+        for (String program : programs) {
+            String file = "src/main/resources/" + program;
+            String expected = run(new Parser(Lexer.fromFile(file)).parse());
+            Parser.Node tree = new LoopOptimizer().optimize(new Parser(Lexer.fromFile(file)).parse());
+            assertEquals(expected, run(tree), program);
+            assertEquals(List.of(), ControlFlowGraph.build(tree).verify(), program);
+            StringWriter out = new StringWriter();
+            new JvmCompiler(tree, true).run(out);
+            assertEquals(expected, out.toString(), program);
+        }
+    }
+}
@@ -0,0 +1,97 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A read-only CharSequence view over a byte buffer. Sources are nearly always plain ASCII, so a
+ * buffer without any other byte is read one char per byte, which avoids building the whole file as a
+ * String. A buffer with a byte of 0x80 or above, such as the UTF-8 é of a "café" literal, is decoded
+ * as UTF-8 once, when the view is made, and read from the decoded text, so each character counts as
+ * one column as it did when sources were read through a Scanner.
+ */
+class MappedSource implements CharSequence {
+    private final ByteBuffer buffer;
+    // the source decoded as UTF-8, or null if it is plain ASCII and read from the buffer
+    private final String decoded;
+
+    /**
+     * Creates a view over the bytes of a source.
+     *
+     * @param buffer the source in UTF-8, from index 0 to its limit
+     */
+    MappedSource(ByteBuffer buffer) {
+        this.buffer = buffer;
+        this.decoded = isAscii(buffer) ? null : StandardCharsets.UTF_8.decode(buffer.slice(0, buffer.limit())).toString();
+    }
+
+    private MappedSource(ByteBuffer buffer, int start, int end) {
+        this.buffer = buffer.slice(start, end - start);
+        this.decoded = null;
+    }
+
+    /**
+     * Tells whether every byte of a buffer is below 0x80, looking at eight bytes at a time.
+     */
+    private static boolean isAscii(ByteBuffer buffer) {
+        int limit = buffer.limit();
+        int i = 0;
+        for (; i + 8 <= limit; i += 8) {
+            if ((buffer.getLong(i) & 0x8080808080808080L) != 0) {
+                return false;
+            }
+        }
+        for (; i < limit; i++) {
+            if (buffer.get(i) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Maps a source file into memory.
+     *
+     * @param file the path of the file to map
+     * @return a CharSequence backed by the mapped file
+     * @throws IOException if the file cannot be opened or is too large to index with an int
+     */
+    static MappedSource map(String file) throws IOException {
+        try (FileChannel channel = FileChannel.open(Path.of(file), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("File too large to map: " + file);
+            }
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            return new MappedSource(mapped);
+        }
+    }
+
+    @Override
+    public int length() {
+        return this.decoded != null ? this.decoded.length() : this.buffer.limit();
+    }
+
+    @Override
+    public char charAt(int index) {
+        return this.decoded != null ? this.decoded.charAt(index) : (char) this.buffer.get(index);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return this.decoded != null ? this.decoded.substring(start, end) : new MappedSource(this.buffer, start, end);
+    }
+
+    @Override
+    public String toString() {
+        if (this.decoded != null) {
+            return this.decoded;
+        }
+        byte[] bytes = new byte[this.buffer.limit()];
+        this.buffer.get(0, bytes);
+        return new String(bytes, StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,34 @@
+/**
+ * The instructions of the stack machine that CodeGenerator targets. Each instruction is one byte,
+ * followed by a four byte little-endian operand for the instructions that take one. The byte is the
+ * ordinal, and VirtualMachine switches on it directly, so the order of the constants matters.
+ */
+enum Opcode {
+    FETCH("fetch", true), STORE("store", true), PUSH("push", true),
+    ADD("add", false), SUB("sub", false), MUL("mul", false), DIV("div", false), MOD("mod", false),
+    LT("lt", false), GT("gt", false), LE("le", false), GE("ge", false), EQ("eq", false), NE("ne", false),
+    AND("and", false), OR("or", false), NEG("neg", false), NOT("not", false),
+    JMP("jmp", true), JZ("jz", true),
+    PRTC("prtc", false), PRTS("prts", false), PRTI("prti", false),
+    HALT("halt", false);
+
+    static final Opcode[] VALUES = values();
+
+    private final String name;
+    private final boolean operand;
+
+    Opcode(String name, boolean operand) {
+        this.name = name;
+        this.operand = operand;
+    }
+
+    boolean hasOperand() { return this.operand; }
+
+    /**
+     * Returns the size of the instruction in bytes.
+     */
+    int size() { return this.operand ? 5 : 1; }
+
+    @Override
+    public String toString() { return this.name; }
+}
@@ -1,19 +1,24 @@
-import java.io.File;
-import java.io.FileNotFoundException;
 import java.io.FileWriter;
 import java.io.IOException;
-import java.util.Scanner;
-import java.util.StringTokenizer;
-import java.util.List;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
-import java.util.Map;
+import java.util.Arrays;
+import java.util.List;
 import java.util.HashMap;
 
 class Parser {
-    private List<Token> source;
+    private TokenSource source;
     private Token token;
-    private int position;
     private HashMap<String, TokenType> symbolTable;
+    private PersistentMap<String, TokenType> seeded;
+    private List<String> definitions;
+    private boolean echo;
+    private boolean recover;
+    private boolean compact;
+    private int depth;
+    private List<Diagnostic> diagnostics;
 
     static class Node {
         public NodeType nt;
@@ -43,73 +48,6 @@ class Parser {
         }
     }
 
-    static class Token {
-        public TokenType tokentype;
-        public String value;
-        public int line;
-        public int pos;
-
-        Token(TokenType token, String value, int line, int pos) {
-            this.tokentype = token; this.value = value; this.line = line; this.pos = pos;
-        }
-        @Override
-        public String toString() {
-            return String.format("%5d  %5d %-15s %s", this.line, this.pos, this.tokentype, this.value);
-        }
-    }
-
-    static enum TokenType {
-        End_of_input(false, false, false, -1, NodeType.nd_None),
-        Op_multiply(false, true, false, 13, NodeType.nd_Mul),
-        Op_divide(false, true, false, 13, NodeType.nd_Div),
-        Op_mod(false, true, false, 13, NodeType.nd_Mod),
-        Op_add(false, true, false, 12, NodeType.nd_Add),
-        Op_subtract(false, true, false, 12, NodeType.nd_Sub),
-        Op_negate(false, false, true, 14, NodeType.nd_Negate),
-        Op_not(false, false, true, 14, NodeType.nd_Not),
-        Op_less(false, true, false, 10, NodeType.nd_Lss),
-        Op_lessequal(false, true, false, 10, NodeType.nd_Leq),
-        Op_greater(false, true, false, 10, NodeType.nd_Gtr),
-        Op_greaterequal(false, true, false, 10, NodeType.nd_Geq),
-        Op_equal(false, true, true, 9, NodeType.nd_Eql),
-        Op_notequal(false, true, false, 9, NodeType.nd_Neq),
-        Op_assign(false, false, false, -1, NodeType.nd_Assign),
-        Op_and(false, true, false, 5, NodeType.nd_And),
-        Op_or(false, true, false, 4, NodeType.nd_Or),
-        Keyword_if(false, false, false, -1, NodeType.nd_If),
-        Keyword_else(false, false, false, -1, NodeType.nd_None),
-        Keyword_while(false, false, false, -1, NodeType.nd_While),
-        Keyword_print(false, false, false, -1, NodeType.nd_None),
-        Keyword_putc(false, false, false, -1, NodeType.nd_None),
-        LeftParen(false, false, false, -1, NodeType.nd_None),
-        RightParen(false, false, false, -1, NodeType.nd_None),
-        LeftBrace(false, false, false, -1, NodeType.nd_None),
-        RightBrace(false, false, false, -1, NodeType.nd_None),
-        Semicolon(false, false, false, -1, NodeType.nd_None),
-        Comma(false, false, false, -1, NodeType.nd_None),
-        Identifier(false, false, false, -1, NodeType.nd_Ident),
-        Integer(false, false, false, -1, NodeType.nd_Integer),
-        String(false, false, false, -1, NodeType.nd_String);
-
-        private final int precedence;
-        private final boolean right_assoc;
-        private final boolean is_binary;
-        private final boolean is_unary;
-        private final NodeType node_type;
-
-        TokenType(boolean right_assoc, boolean is_binary, boolean is_unary, int precedence, NodeType node) {
-            this.right_assoc = right_assoc;
-            this.is_binary = is_binary;
-            this.is_unary = is_unary;
-            this.precedence = precedence;
-            this.node_type = node;
-        }
-        boolean isRightAssoc() { return this.right_assoc; }
-        boolean isBinary() { return this.is_binary; }
-        boolean isUnary() { return this.is_unary; }
-        int getPrecedence() { return this.precedence; }
-        NodeType getNodeType() { return this.node_type; }
-    }
     static enum NodeType {
         nd_None(""), nd_Ident("Identifier"), nd_String("String"), nd_Integer("Integer"), nd_Sequence("Sequence"), nd_If("If"),
         nd_Prtc("Prtc"), nd_Prts("Prts"), nd_Prti("Prti"), nd_While("While"),
@@ -125,35 +63,145 @@ class Parser {
 
         @Override
         public String toString() { return this.name; }
+
+        /**
+         * Tells whether nodes of this type hold a value instead of children.
+         * @return true for Identifier, String and Integer.
+         */
+        boolean isLeaf() {
+            return this == nd_Ident || this == nd_String || this == nd_Integer;
+        }
     }
 
     /**
-     * Prints an error message to the standard output and terminates the program.
+     * Reports an error by throwing a CompileException, so that a caller compiling many files can
+     * carry on with the next one.
      * @param line the line number where the error occurred.
      * @param pos the position in the line where the error occurred.
      * @param msg the error message.
      */
     static void error(int line, int pos, String msg) {
-        if (line > 0 && pos > 0) {
-            System.out.printf("%s in line %d, pos %d\n", msg, line, pos);
-        } else {
-            System.out.println(msg);
-        }
-        System.exit(1);
+        throw new CompileException(line, pos, msg);
     }
     Parser(List<Token> source) {
+        this(TokenSource.of(source));
+    }
+
+    /**
+     * Creates a parser that pulls its tokens lazily, for example straight from a Lexer.
+     * @param source the token stream to parse.
+     */
+    Parser(TokenSource source) {
         this.source = source;
         this.token = null;
-        this.position = 0;
         symbolTable = new HashMap<>();
+        this.seeded = PersistentMap.empty();
+        this.definitions = new ArrayList<>();
+        this.echo = true;
+        this.recover = false;
+        this.compact = false;
+        this.depth = 0;
+        this.diagnostics = new ArrayList<>();
     }
 
-    /**f
-     * Retrieves the next token from the source list.
+    /**
+     * Turns error recovery on or off. Without it the first error is thrown as a CompileException.
+     * With it every error is collected in getDiagnostics() and parsing resumes after the next
+     * ';' or at the next '}', so a whole file is checked in one pass.
+     * @param recover true to collect errors and keep parsing.
+     */
+    void setRecovery(boolean recover) {
+        this.recover = recover;
+    }
+
+    /**
+     * Returns the errors collected while parsing with recovery on.
+     * @return the diagnostics, in the order they were found.
+     */
+    List<Diagnostic> getDiagnostics() {
+        return this.diagnostics;
+    }
+
+    /**
+     * Tells whether any error was collected.
+     * @return true if there are diagnostics.
+     */
+    boolean hasErrors() {
+        return !this.diagnostics.isEmpty();
+    }
+
+    /**
+     * Turns compact sequences on or off. By default a list of statements becomes a left-leaning chain
+     * of Sequence nodes, one per statement, which is the shape the .par files record. With compact
+     * sequences on it becomes a balanced tree of Sequence nodes instead, so the depth of the tree grows
+     * with the logarithm of the statement count and recursive passes cannot run out of stack.
+     * @param compact true to build balanced sequences.
+     */
+    void setCompactSequences(boolean compact) {
+        this.compact = compact;
+    }
+
+    /**
+     * Turns the console copy of the AST written by printAST on or off.
+     * @param echo true to print each node to System.out as well.
+     */
+    void setEcho(boolean echo) {
+        this.echo = echo;
+    }
+
+    /**
+     * Enters a variable in the symbol table, as an assignment does.
+     * @param name the name of the variable.
+     * @param type the type of the value assigned to it.
+     */
+    void define(String name, TokenType type) {
+        symbolTable.put(name, type);
+        this.definitions.add(name);
+    }
+
+    /**
+     * Starts the symbol table from the variables assigned before the tokens this parser reads, as if
+     * define() had been called for each. The map is only read, so one kept for an earlier statement
+     * can be handed over without copying it, and its names are not added to getDefinitions().
+     * @param symbols the variables and their types.
+     */
+    void seed(PersistentMap<String, TokenType> symbols) {
+        this.seeded = symbols;
+    }
+
+    /**
+     * Tells whether a variable has been assigned, here or before the seeded symbols.
+     * @param name the name of the variable.
+     * @return true if it is in the symbol table.
+     */
+    private boolean isDefined(String name) {
+        return symbolTable.containsKey(name) || this.seeded.containsKey(name);
+    }
+
+    /**
+     * Returns the type of a variable.
+     * @param name the name of the variable.
+     * @return its type, or null if it has not been assigned.
+     */
+    TokenType typeOf(String name) {
+        return symbolTable.containsKey(name) ? symbolTable.get(name) : this.seeded.get(name);
+    }
+
+    /**
+     * Returns the names passed to define() so far, in order, with a name listed again each time it
+     * is assigned.
+     * @return the list of names.
+     */
+    List<String> getDefinitions() {
+        return this.definitions;
+    }
+
+    /**
+     * Retrieves the next token from the token source.
      * @return the next token.
      */
     Token getNextToken() {
-        this.token = this.source.get(this.position++);
+        this.token = this.source.next();
         return this.token;
     }
 
@@ -183,7 +231,7 @@ class Parser {
             node = Node.make_leaf(NodeType.nd_Integer, this.token.value);
             getNextToken();
         } else if (this.token.tokentype == TokenType.Identifier) {
-            if (!symbolTable.containsKey(this.token.value)) {
+            if (!isDefined(this.token.value)) {
                 error(this.token.line, this.token.pos, "Identifier not found in symbol table.");
             }
             node = Node.make_leaf(NodeType.nd_Ident, this.token.value);
@@ -236,7 +284,7 @@ class Parser {
                 getNextToken();
                 expect("Assign", TokenType.Op_assign);
                 Node node = Node.make_node(NodeType.nd_Assign, leftNode, expr(0));
-                symbolTable.put(name, findType(node.right));
+                define(name, findType(node.right));
                 expect("Semicolon", TokenType.Semicolon);
                 return node;
             case TokenType.Keyword_while:
@@ -259,25 +307,78 @@ class Parser {
             case TokenType.Keyword_putc:
                 return Node.make_node(NodeType.nd_Prtc, paren_expr(), null);
             case TokenType.LeftBrace:
-                Node temp = null;
+                List<Node> block = new ArrayList<>();
                 getNextToken();
-                while (this.token.tokentype != TokenType.RightBrace) {
-                    temp = Node.make_node(NodeType.nd_Sequence, temp, stmt());
+                this.depth++;
+                try {
+                    while (this.token.tokentype != TokenType.RightBrace) {
+                        if (this.recover && this.token.tokentype == TokenType.End_of_input) {
+                            error(this.token.line, this.token.pos, "Expecting '}', found: End_of_input");
+                        }
+                        block.add(statement());
+                    }
+                } finally {
+                    this.depth--;
                 }
                 getNextToken();
-                return temp;
+                return sequence(block);
             default:
                 error(this.token.line, this.token.pos, "Expecting statement, found: " + this.token + ".");
                 return null;
         }
     }
 
+    /**
+     * Parses a statement, recording the error and skipping to a synchronizing token instead of
+     * throwing when recovery is on.
+     * @return the node representing the parsed statement, or null if it had an error.
+     */
+    Node statement() {
+        if (!this.recover) {
+            return stmt();
+        }
+        try {
+            return stmt();
+        } catch (CompileException e) {
+            this.diagnostics.add(Diagnostic.of(e));
+            synchronize();
+            return null;
+        }
+    }
+
+    /**
+     * Skips tokens up to and including the next ';'. A '}' closing the current block is left for
+     * the block to consume; one at the top level is skipped.
+     */
+    void synchronize() {
+        while (true) {
+            try {
+                switch (this.token.tokentype) {
+                    case End_of_input:
+                        return;
+                    case Semicolon:
+                        getNextToken();
+                        return;
+                    case RightBrace:
+                        if (this.depth == 0) {
+                            getNextToken();
+                        }
+                        return;
+                    default:
+                        getNextToken();
+                }
+            } catch (CompileException e) {
+                this.diagnostics.add(Diagnostic.of(e));
+            }
+        }
+    }
+
     /**
      * Handles the parsing of print statements.
      * @return the node representing the print sequence.
      */
     Node printNode() {
-        Node node = null;
+        List<Node> items = new ArrayList<>();
         Node temp = null;
         getNextToken();
         expect("LeftParen", TokenType.LeftParen);
@@ -289,10 +390,10 @@ class Parser {
                 temp = Node.make_node(NodeType.nd_Prti, Node.make_leaf(NodeType.nd_Integer, this.token.value));
                 getNextToken();
             } else if (this.token.tokentype == TokenType.Identifier) {
-                if (!symbolTable.containsKey(this.token.value)) {
+                if (!isDefined(this.token.value)) {
                     error(this.token.line, this.token.pos, "Identifier not found in symbol table.");
                 }
-                TokenType type = symbolTable.get(this.token.value);
+                TokenType type = typeOf(this.token.value);
                 if (type == TokenType.Integer) {
                     temp = Node.make_node(NodeType.nd_Prti, Node.make_leaf(NodeType.nd_Ident, this.token.value));
                     getNextToken();
@@ -305,14 +406,14 @@ class Parser {
             } else {
                 temp = Node.make_node(NodeType.nd_Prtc, expr(0));
             }
-            node = Node.make_node(NodeType.nd_Sequence, node, temp);
+            items.add(temp);
             if (this.token.tokentype == TokenType.Comma) {
                 getNextToken();
             }
         }
         getNextToken();
         expect("Semicolon", TokenType.Semicolon);
-        return node;
+        return sequence(items);
     }
 
     /**
@@ -321,23 +422,25 @@ class Parser {
      * @return token type of identifier.
      */
     TokenType findType(Node node) {
-        switch (node.nt) {
-            case nd_Integer:
-                return TokenType.Integer;
-            case nd_String:
-                return TokenType.String;
-            case nd_Ident:
-                return symbolTable.get(node.value);
-            default:
-                if (node.left != null) {
-                    return findType(node.left);
-                } else if (node.right != null) {
-                    return findType(node.right);
-                } else {
-                    error(this.token.line, this.token.pos, "Identifier not correctly assigned type.");
-                    return null;
-                }
-
+        // follow the leftmost path down to a leaf; a loop, since long expressions lean left
+        while (true) {
+            switch (node.nt) {
+                case nd_Integer:
+                    return TokenType.Integer;
+                case nd_String:
+                    return TokenType.String;
+                case nd_Ident:
+                    return typeOf(node.value);
+                default:
+                    if (node.left != null) {
+                        node = node.left;
+                    } else if (node.right != null) {
+                        node = node.right;
+                    } else {
+                        error(this.token.line, this.token.pos, "Identifier not correctly assigned type.");
+                        return null;
+                    }
+            }
         }
     }
 
@@ -346,41 +449,85 @@ class Parser {
      * @return the root node of the AST.
      */
     Node parse() {
-        Node t = null;
-        getNextToken();
-        while (this.token.tokentype != TokenType.End_of_input) {
-            t = Node.make_node(NodeType.nd_Sequence, t, stmt());
+        List<Node> statements = new ArrayList<>();
+        start();
+        while (!atEnd()) {
+            statements.add(statement());
         }
-        return t;
+        return sequence(statements);
     }
 
     /**
-     * Converts the AST into a string representation and outputs it to the console.
+     * Reads the first token, skipping over lexer errors when recovery is on.
+     */
+    void start() {
+        while (true) {
+            try {
+                getNextToken();
+                return;
+            } catch (CompileException e) {
+                if (!this.recover) {
+                    throw e;
+                }
+                this.diagnostics.add(Diagnostic.of(e));
+            }
+        }
+    }
+
+    /**
+     * Tells whether the whole input has been parsed.
+     * @return true if the current token is End_of_input.
+     */
+    boolean atEnd() {
+        return this.token.tokentype == TokenType.End_of_input;
+    }
+
+    /**
+     * Joins statements into Sequence nodes, as a left-leaning chain or, with compact sequences on, as
+     * a balanced tree built bottom-up by pairing neighbours. Both shapes run the statements in order.
+     * @param statements the statements, any of which may be null.
+     * @return the root Sequence node, or null if there are no statements.
+     */
+    Node sequence(List<Node> statements) {
+        if (!this.compact || statements.size() < 2) {
+            Node t = null;
+            for (Node statement : statements) {
+                t = Node.make_node(NodeType.nd_Sequence, t, statement);
+            }
+            return t;
+        }
+        List<Node> level = statements;
+        while (level.size() > 1) {
+            List<Node> next = new ArrayList<>((level.size() + 1) / 2);
+            for (int i = 0; i + 1 < level.size(); i += 2) {
+                next.add(Node.make_node(NodeType.nd_Sequence, level.get(i), level.get(i + 1)));
+            }
+            if (level.size() % 2 == 1) {
+                next.add(level.get(level.size() - 1));
+            }
+            level = next;
+        }
+        return level.get(0);
+    }
+
+    /**
+     * Converts the AST into a string representation and outputs it to the console unless echo is
+     * off. The text is produced by AstWriter; use it directly to stream a large tree to a file.
      * @param t the root node of the AST.
      * @param sb the StringBuilder to append the string representation.
      * @return the string representation of the AST.
      */
     String printAST(Node t, StringBuilder sb) {
-        symbolTable.clear();
-        int i = 0;
-        if (t == null) {
-            sb.append(";");
-            sb.append("\n");
-            System.out.println(";");
-        } else {
-            sb.append(t.nt);
-            System.out.printf("%-14s", t.nt);
-            if (t.nt == NodeType.nd_Ident || t.nt == NodeType.nd_Integer || t.nt == NodeType.nd_String) {
-                sb.append(" " + t.value);
-                sb.append("\n");
-                System.out.println(" " + t.value);
-            } else {
-                sb.append("\n");
-                System.out.println();
-                printAST(t.left, sb);
-                printAST(t.right, sb);
-            }
-
+        AstWriter writer = new AstWriter(sb);
+        StringBuilder console = this.echo ? new StringBuilder() : null;
+        writer.setEcho(console);
+        try {
+            writer.write(t);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        if (console != null) {
+            System.out.print(console);
         }
         return sb.toString();
     }
@@ -401,107 +548,179 @@ class Parser {
     }
 
     /**
-     * The main method that sets up and runs the parser.
+     * The main method that sets up and runs the parser. Each source file is parsed while it is being
+     * lexed; pass --dump-lex to also write the token stream to the .lex debug file, and --packed to
+     * lex into a TokenBuffer first and parse from that. Pass --fold to run the ConstantFolder over each
+     * tree before it is written, --dce to remove its dead stores and unreachable statements with the
+     * DeadCodeEliminator, --loops to hoist invariants and strength reduce products out of its loops
+     * with the LoopOptimizer, and --echo to print each tree to the console as well. Pass --binary to
+     * also write each AST to a binary .ast file, and with --packed each token stream to a .tok file,
+     * and --ssa to write each ControlFlowGraph in SSA form to a .ssa file.
+     * Pass --cache DIR to load unchanged sources from a CompileCache in DIR, and --stats or
+     * --stats-json to print the time, counts and allocation of each phase.
      * @param args command line arguments.
      */
     public static void main(String[] args) {
-        if (1==1) {
-            try {
-                Map<String, TokenType> str_to_tokens = new HashMap<>();
-
-                str_to_tokens.put("End_of_input", TokenType.End_of_input);
-                str_to_tokens.put("Op_multiply", TokenType.Op_multiply);
-                str_to_tokens.put("Op_divide", TokenType.Op_divide);
-                str_to_tokens.put("Op_mod", TokenType.Op_mod);
-                str_to_tokens.put("Op_add", TokenType.Op_add);
-                str_to_tokens.put("Op_subtract", TokenType.Op_subtract);
-                str_to_tokens.put("Op_negate", TokenType.Op_negate);
-                str_to_tokens.put("Op_not", TokenType.Op_not);
-                str_to_tokens.put("Op_less", TokenType.Op_less);
-                str_to_tokens.put("Op_lessequal", TokenType.Op_lessequal);
-                str_to_tokens.put("Op_greater", TokenType.Op_greater);
-                str_to_tokens.put("Op_greaterequal", TokenType.Op_greaterequal);
-                str_to_tokens.put("Op_equal", TokenType.Op_equal);
-                str_to_tokens.put("Op_notequal", TokenType.Op_notequal);
-                str_to_tokens.put("Op_assign", TokenType.Op_assign);
-                str_to_tokens.put("Op_and", TokenType.Op_and);
-                str_to_tokens.put("Op_or", TokenType.Op_or);
-                str_to_tokens.put("Keyword_if", TokenType.Keyword_if);
-                str_to_tokens.put("Keyword_else", TokenType.Keyword_else);
-                str_to_tokens.put("Keyword_while", TokenType.Keyword_while);
-                str_to_tokens.put("Keyword_print", TokenType.Keyword_print);
-                str_to_tokens.put("Keyword_putc", TokenType.Keyword_putc);
-                str_to_tokens.put("LeftParen", TokenType.LeftParen);
-                str_to_tokens.put("RightParen", TokenType.RightParen);
-                str_to_tokens.put("LeftBrace", TokenType.LeftBrace);
-                str_to_tokens.put("RightBrace", TokenType.RightBrace);
-                str_to_tokens.put("Semicolon", TokenType.Semicolon);
-                str_to_tokens.put("Comma", TokenType.Comma);
-                str_to_tokens.put("Identifier", TokenType.Identifier);
-                str_to_tokens.put("Integer", TokenType.Integer);
-                str_to_tokens.put("String", TokenType.String);
-
-                String[] files = new String[8];
-                files[0] = "src/main/resources/fizzbuzz.lex";
-                files[1] = "src/main/resources/99bottles.lex";
-                files[2] = "src/main/resources/count.lex";
-                files[3] = "src/main/resources/hello.lex";
-                files[4] = "src/main/resources/loop.lex";
-                files[5] = "src/main/resources/prime.lex";
-                files[6] = "src/main/resources/test1.lex";
-                files[7] = "src/main/resources/test2.lex";
-
-                String[] outputFiles = new String[8];
-                outputFiles[0] = "src/main/resources/fizzbuzz.par";
-                outputFiles[1] = "src/main/resources/99bottles.par";
-                outputFiles[2] = "src/main/resources/count.par";
-                outputFiles[3] = "src/main/resources/hello.par";
-                outputFiles[4] = "src/main/resources/loop.par";
-                outputFiles[5] = "src/main/resources/prime.par";
-                outputFiles[6] = "src/main/resources/test1.par";
-                outputFiles[7] = "src/main/resources/test2.par";
-
-                for (int i = 0; i < files.length; i++) {
-                    String value, token;
-                    String result = " ";
-                    StringBuilder sb = new StringBuilder();
-                    int line, pos;
-                    Token t;
-                    boolean found;
-                    List<Token> list = new ArrayList<>();
-
-                    Scanner s = new Scanner(new File(files[i]));
-                    String source = " ";
-                    while (s.hasNext()) {
-                        String str = s.nextLine();
-                        StringTokenizer st = new StringTokenizer(str);
-                        line = Integer.parseInt(st.nextToken());
-                        pos = Integer.parseInt(st.nextToken());
-                        token = st.nextToken();
-                        value = "";
-                        while (st.hasMoreTokens()) {
-                            value += st.nextToken() + " ";
+        boolean dumpLex = Arrays.asList(args).contains("--dump-lex");
+        boolean packed = Arrays.asList(args).contains("--packed");
+        boolean fold = Arrays.asList(args).contains("--fold");
+        boolean dce = Arrays.asList(args).contains("--dce");
+        boolean loops = Arrays.asList(args).contains("--loops");
+        boolean echo = Arrays.asList(args).contains("--echo");
+        boolean binary = Arrays.asList(args).contains("--binary");
+        boolean ssa = Arrays.asList(args).contains("--ssa");
+        int cacheArg = Arrays.asList(args).indexOf("--cache");
+        try {
+            CompileCache cache = cacheArg >= 0 ? new CompileCache(Path.of(args[cacheArg + 1]), CompileCache.DEFAULT_MAX_BYTES) : null;
+            String[] files = new String[8];
+            files[0] = "src/main/resources/fizzbuzz.c";
+            files[1] = "src/main/resources/99bottles.c";
+            files[2] = "src/main/resources/count.c";
+            files[3] = "src/main/resources/hello.t";
+            files[4] = "src/main/resources/loop.py";
+            files[5] = "src/main/resources/prime.c";
+            files[6] = "src/main/resources/test1.c";
+            files[7] = "src/main/resources/test2.c";
+
+            String[] lexFiles = new String[8];
+            lexFiles[0] = "src/main/resources/fizzbuzz.lex";
+            lexFiles[1] = "src/main/resources/99bottles.lex";
+            lexFiles[2] = "src/main/resources/count.lex";
+            lexFiles[3] = "src/main/resources/hello.lex";
+            lexFiles[4] = "src/main/resources/loop.lex";
+            lexFiles[5] = "src/main/resources/prime.lex";
+            lexFiles[6] = "src/main/resources/test1.lex";
+            lexFiles[7] = "src/main/resources/test2.lex";
+
+            String[] outputFiles = new String[8];
+            outputFiles[0] = "src/main/resources/fizzbuzz.par";
+            outputFiles[1] = "src/main/resources/99bottles.par";
+            outputFiles[2] = "src/main/resources/count.par";
+            outputFiles[3] = "src/main/resources/hello.par";
+            outputFiles[4] = "src/main/resources/loop.par";
+            outputFiles[5] = "src/main/resources/prime.par";
+            outputFiles[6] = "src/main/resources/test1.par";
+            outputFiles[7] = "src/main/resources/test2.par";
+
+            CompileStats stats = CompileStats.forArgs(args);
+            for (int i = 0; i < files.length; i++) {
+                Parser p = null;
+                Node tree = null;
+                TokenBuffer tokens = null;
+                long size = Files.size(Path.of(files[i]));
+                if (cache != null) {
+                    // a hit skips lexing and parsing; the parser is only kept for printAST
+                    try (CompileStats.Span span = stats.start(files[i], CompileStats.Phase.PARSE)) {
+                        CompileCache.Entry entry = cache.compile(Path.of(files[i]));
+                        tokens = entry.tokens;
+                        tree = entry.tree;
+                        p = new Parser(tokens.cursor());
+                        span.tokens(tokens.size()).bytesRead(size);
+                        if (stats.enabled()) {
+                            span.nodes(AstWalker.count(tree));
+                        }
+                    }
+                } else if (packed) {
+                    try (CompileStats.Span span = stats.start(files[i], CompileStats.Phase.LEX)) {
+                        tokens = Lexer.fromFile(files[i]).tokenize(new TokenBuffer());
+                        span.tokens(tokens.size()).bytesRead(size);
+                    }
+                }
+                if (dumpLex || binary && tokens != null) {
+                    try (CompileStats.Span span = stats.start(files[i], CompileStats.Phase.WRITE)) {
+                        long written = 0;
+                        if (dumpLex) {
+                            String lex = tokens != null ? tokens.toString() : Lexer.fromFile(files[i]).printTokens();
+                            Lexer.outputToFile(lex, lexFiles[i]);
+                            written += lex.length();
+                        }
+                        if (binary && tokens != null) {
+                            String tok = lexFiles[i].replace(".lex", ".tok");
+                            TokenFile.writeFile(tokens, tok);
+                            written += Files.size(Path.of(tok));
+                        }
+                        span.bytesWritten(written);
+                    }
+                }
+                if (tree == null) {
+                    // streamed from the Lexer, the parse phase includes lexing
+                    try (CompileStats.Span span = stats.start(files[i], CompileStats.Phase.PARSE)) {
+                        int[] count = {0};
+                        p = new Parser(tokens != null ? tokens.cursor() : CompileStats.counting(Lexer.fromFile(files[i]), count));
+                        tree = p.parse();
+                        span.tokens(tokens != null ? tokens.size() : count[0]).bytesRead(tokens != null ? 0 : size);
+                        if (stats.enabled()) {
+                            span.nodes(AstWalker.count(tree));
                         }
-                        found = false;
-                        if (str_to_tokens.containsKey(token)) {
-                            found = true;
-                            list.add(new Token(str_to_tokens.get(token), value, line, pos));
+                    }
+                }
+                if (fold) {
+                    try (CompileStats.Span span = stats.start(files[i], CompileStats.Phase.FOLD)) {
+                        ConstantFolder folder = new ConstantFolder();
+                        tree = folder.fold(tree);
+                        System.out.println(files[i] + ": " + folder.eliminated() + " nodes eliminated");
+                        if (stats.enabled()) {
+                            span.nodes(AstWalker.count(tree));
+                        }
+                    }
+                }
+                if (dce) {
+                    try (CompileStats.Span span = stats.start(files[i], CompileStats.Phase.DCE)) {
+                        DeadCodeEliminator eliminator = new DeadCodeEliminator();
+                        tree = eliminator.eliminate(tree);
+                        for (String removed : eliminator.removed()) {
+                            System.out.println(files[i] + ": " + removed);
+                        }
+                        System.out.println(files[i] + ": " + eliminator.eliminated() + " nodes eliminated");
+                        if (stats.enabled()) {
+                            span.nodes(AstWalker.count(tree));
+                        }
+                    }
+                }
+                if (loops) {
+                    try (CompileStats.Span span = stats.start(files[i], CompileStats.Phase.LOOPS)) {
+                        LoopOptimizer optimizer = new LoopOptimizer();
+                        tree = optimizer.optimize(tree);
+                        for (String change : optimizer.changes()) {
+                            System.out.println(files[i] + ": " + change);
                         }
-                        if (found == false) {
-                            throw new Exception("Token not found: '" + token + "'");
+                        if (stats.enabled()) {
+                            span.nodes(AstWalker.count(tree));
                         }
                     }
-                    Parser p = new Parser(list);
-                    result = p.printAST(p.parse(), sb);
-                    outputToFile(result, outputFiles[i]);
                 }
-            } catch (FileNotFoundException e) {
-                error(-1, -1, "Exception: " + e.getMessage());
-            } catch (Exception e) {
-                error(-1, -1, "Exception: " + e.getMessage());
+                if (echo) {
+                    try (CompileStats.Span span = stats.start(files[i], CompileStats.Phase.PRINT)) {
+                        span.bytesWritten(p.printAST(tree, new StringBuilder()).length());
+                    }
+                }
+                try (CompileStats.Span span = stats.start(files[i], CompileStats.Phase.WRITE)) {
+                    AstWriter.writeFile(tree, outputFiles[i]);
+                    long written = Files.size(Path.of(outputFiles[i]));
+                    if (binary) {
+                        String ast = outputFiles[i].replace(".par", ".ast");
+                        AstFile.writeFile(tree, ast);
+                        written += Files.size(Path.of(ast));
+                    }
+                    if (ssa) {
+                        String graph = outputFiles[i].replace(".par", ".ssa");
+                        ControlFlowGraph.writeFile(tree, graph);
+                        written += Files.size(Path.of(graph));
+                    }
+                    span.bytesWritten(written);
+                }
+                System.out.println("Successfully wrote to the file: " + outputFiles[i]);
             }
-        } else {
-            error(-1, -1, "No args");
+            if (cache != null) {
+                System.out.println(cache);
+            }
+            stats.print();
+        } catch (IOException e) {
+            System.out.println("Exception: " + e.getMessage());
+            System.exit(1);
+        } catch (CompileException e) {
+            System.out.println(e.getMessage());
+            System.exit(1);
         }
     }
-}
\ No newline at end of file
+}
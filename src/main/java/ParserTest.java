@@ -49,10 +49,10 @@ class ParserTest {
      */
     @Test
     void contstuctorTest() {
-        List<Parser.Token> tokens = new ArrayList<>();
-        tokens.add(new Parser.Token(Parser.TokenType.String, "Hello", 1, 1));
-        tokens.add(new Parser.Token(Parser.TokenType.Integer, "5", 1, 5));
-        tokens.add(new Parser.Token(Parser.TokenType.String, "There", 1, 6));
+        List<Token> tokens = new ArrayList<>();
+        tokens.add(new Token(TokenType.String, "Hello", 1, 1));
+        tokens.add(new Token(TokenType.Integer, "5", 1, 5));
+        tokens.add(new Token(TokenType.String, "There", 1, 6));
         Parser parser = new Parser(tokens);
 
         assertEquals(tokens.get(0), parser.getNextToken());
@@ -65,12 +65,12 @@ class ParserTest {
      */
     @Test
     void parseTest() {
-        List<Parser.Token> tokens = new ArrayList<>();
-        tokens.add(new Parser.Token(Parser.TokenType.Identifier, "Hello", 1, 1));
-        tokens.add(new Parser.Token(Parser.TokenType.Op_assign, null, 1, 5));
-        tokens.add(new Parser.Token(Parser.TokenType.Integer, "5", 1, 7));
-        tokens.add(new Parser.Token(Parser.TokenType.Semicolon, null, 1, 8));
-        tokens.add(new Parser.Token(Parser.TokenType.End_of_input, null, 2, 1));
+        List<Token> tokens = new ArrayList<>();
+        tokens.add(new Token(TokenType.Identifier, "Hello", 1, 1));
+        tokens.add(new Token(TokenType.Op_assign, null, 1, 5));
+        tokens.add(new Token(TokenType.Integer, "5", 1, 7));
+        tokens.add(new Token(TokenType.Semicolon, null, 1, 8));
+        tokens.add(new Token(TokenType.End_of_input, null, 2, 1));
         Parser parser = new Parser(tokens);
 
         Parser.Node node = new Parser.Node(Parser.NodeType.nd_Ident, null, null, "Hello");
@@ -86,4 +86,82 @@ class ParserTest {
         assertEquals(node4.right.right.nt, output.right.right.nt);
         assertEquals(node4.right.right.value, output.right.right.value);
     }
-}
\ No newline at end of file
+
+    /**
+     * Test to see if the parser can pull its tokens straight from the lexer
+     */
+    @Test
+    void streamingParseTest() {
+        Parser parser = new Parser(new Lexer("Hello = 5;\n"));
+        Parser.Node output = parser.parse();
+
+        assertEquals(Parser.NodeType.nd_Sequence, output.nt);
+        assertEquals(Parser.NodeType.nd_Assign, output.right.nt);
+        assertEquals("Hello", output.right.left.value);
+        assertEquals("5", output.right.right.value);
+    }
+
+    /**
+     * Test to see if the parser reports every error in one pass when recovery is on
+     */
+    @Test
+    void recoveryTest() {
+        String source = "x = 1;\ny = ;\nwhile (x < 3) {\n  x = x + ;\n  z = 2;\n}\nprint(q);\nw = x;\n";
+        Parser parser = new Parser(new Lexer(source));
+        parser.setRecovery(true);
+        parser.parse();
+
+        List<Diagnostic> diagnostics = parser.getDiagnostics();
+        assertEquals(3, diagnostics.size());
+        assertEquals(2, diagnostics.get(0).line);
+        assertEquals(4, diagnostics.get(1).line);
+        assertEquals(7, diagnostics.get(2).line);
+        assertEquals("Identifier not found in symbol table. in line 7, pos 7", diagnostics.get(2).message);
+    }
+
+    /**
+     * Test to see if an error is thrown when recovery is off
+     */
+    @Test
+    void errorTest() {
+        Parser parser = new Parser(new Lexer("x = @;\n"));
+        CompileException e = assertThrows(CompileException.class, parser::parse);
+        assertEquals(1, e.getLine());
+        assertEquals(5, e.getPos());
+    }
+
+    /**
+     * Test to see if printAST handles a program with 100000 statements without running out of stack
+     */
+    @Test
+    void deepSequenceTest() {
+        StringBuilder source = new StringBuilder("x = 0;\n");
+        for (int i = 0; i < 100000; i++) {
+            source.append("x = x + 1;\n");
+        }
+        Parser parser = new Parser(new Lexer(source.toString()));
+        parser.setEcho(false);
+        String ast = parser.printAST(parser.parse(), new StringBuilder());
+        assertTrue(ast.startsWith("Sequence\nSequence\n"));
+        assertEquals(5 + 100000 * 6, ast.split("\n").length);
+    }
+
+    /**
+     * Test to see if compact sequences are balanced and run the statements in the same order
+     * @throws IOException
+     */
+    @Test
+    void compactSequenceTest() throws IOException {
+        Parser parser = new Parser(new Lexer("a = 1; b = 2; c = 3; d = 4; e = 5; print(a, b, c, \"\\n\");"));
+        parser.setCompactSequences(true);
+        Parser.Node tree = parser.parse();
+        assertEquals(Parser.NodeType.nd_Sequence, tree.nt);
+        assertEquals(Parser.NodeType.nd_Sequence, tree.left.left.nt);
+        assertEquals(Parser.NodeType.nd_Assign, tree.left.left.left.nt);
+        assertEquals(Parser.NodeType.nd_Assign, tree.right.left.nt);
+
+        java.io.StringWriter out = new java.io.StringWriter();
+        new Interpreter(tree).run(out);
+        assertEquals("123\n", out.toString());
+    }
+}
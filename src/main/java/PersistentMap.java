@@ -0,0 +1,239 @@
+import java.util.Objects;
+
+/**
+ * An immutable hash map. put() returns a new map that shares everything but the path to the changed
+ * key with the old one, so keeping every version of a growing map costs a few small arrays per
+ * change. The map is a hash array mapped trie: each level takes five bits of the hash, and a branch
+ * keeps only the children it has, found through a bitmap. Its shape depends only on its keys, so two
+ * versions grown from a common one are compared by walking just the parts they do not share. Null
+ * values are allowed; keys may not be removed.
+ */
+final class PersistentMap<K, V> {
+    private static final PersistentMap<?, ?> EMPTY = new PersistentMap<>(null);
+
+    // a Leaf, a Branch or a Collision, or null for the empty map
+    private final Object root;
+
+    private PersistentMap(Object root) {
+        this.root = root;
+    }
+
+    private static final class Leaf {
+        final int hash;
+        final Object key;
+        final Object value;
+
+        Leaf(int hash, Object key, Object value) {
+            this.hash = hash;
+            this.key = key;
+            this.value = value;
+        }
+    }
+
+    private static final class Branch {
+        final int bitmap;
+        final Object[] children;
+
+        Branch(int bitmap, Object[] children) {
+            this.bitmap = bitmap;
+            this.children = children;
+        }
+    }
+
+    /** Keys whose hashes are equal in all 32 bits. */
+    private static final class Collision {
+        final int hash;
+        final Leaf[] leaves;
+
+        Collision(int hash, Leaf[] leaves) {
+            this.hash = hash;
+            this.leaves = leaves;
+        }
+    }
+
+    /**
+     * Returns the map without keys.
+     */
+    @SuppressWarnings("unchecked")
+    static <K, V> PersistentMap<K, V> empty() {
+        return (PersistentMap<K, V>) EMPTY;
+    }
+
+    /**
+     * Returns whether the map has a key, whatever its value.
+     */
+    boolean containsKey(Object key) {
+        return find(key) != null;
+    }
+
+    /**
+     * Returns the value of a key, or null if the map does not have it.
+     */
+    @SuppressWarnings("unchecked")
+    V get(Object key) {
+        Leaf leaf = find(key);
+        return leaf == null ? null : (V) leaf.value;
+    }
+
+    /**
+     * Returns a map with a key set to a value, which is this map if the key already has that value.
+     */
+    PersistentMap<K, V> put(K key, V value) {
+        Object root = put(this.root, new Leaf(hash(key), key, value), 0);
+        return root == this.root ? this : new PersistentMap<>(root);
+    }
+
+    /**
+     * Returns whether two maps have the same keys with the same values.
+     */
+    boolean sameAs(PersistentMap<K, V> other) {
+        return same(this.root, other.root);
+    }
+
+    private static int hash(Object key) {
+        int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    private Leaf find(Object key) {
+        int hash = hash(key);
+        Object node = this.root;
+        for (int shift = 0; ; shift += 5) {
+            if (node instanceof Leaf) {
+                Leaf leaf = (Leaf) node;
+                return leaf.hash == hash && leaf.key.equals(key) ? leaf : null;
+            }
+            if (node instanceof Collision) {
+                Collision collision = (Collision) node;
+                if (collision.hash == hash) {
+                    for (Leaf leaf : collision.leaves) {
+                        if (leaf.key.equals(key)) {
+                            return leaf;
+                        }
+                    }
+                }
+                return null;
+            }
+            if (node == null) {
+                return null;
+            }
+            Branch branch = (Branch) node;
+            int bit = 1 << ((hash >>> shift) & 31);
+            if ((branch.bitmap & bit) == 0) {
+                return null;
+            }
+            node = branch.children[Integer.bitCount(branch.bitmap & (bit - 1))];
+        }
+    }
+
+    private static Object put(Object node, Leaf leaf, int shift) {
+        if (node == null) {
+            return leaf;
+        }
+        if (node instanceof Leaf) {
+            Leaf old = (Leaf) node;
+            if (old.hash != leaf.hash) {
+                return merge(old, old.hash, leaf, leaf.hash, shift);
+            }
+            if (old.key.equals(leaf.key)) {
+                return Objects.equals(old.value, leaf.value) ? old : leaf;
+            }
+            return new Collision(leaf.hash, new Leaf[] {old, leaf});
+        }
+        if (node instanceof Collision) {
+            Collision collision = (Collision) node;
+            if (collision.hash != leaf.hash) {
+                return merge(collision, collision.hash, leaf, leaf.hash, shift);
+            }
+            Leaf[] leaves = collision.leaves;
+            for (int i = 0; i < leaves.length; i++) {
+                if (leaves[i].key.equals(leaf.key)) {
+                    if (Objects.equals(leaves[i].value, leaf.value)) {
+                        return collision;
+                    }
+                    leaves = leaves.clone();
+                    leaves[i] = leaf;
+                    return new Collision(leaf.hash, leaves);
+                }
+            }
+            leaves = java.util.Arrays.copyOf(leaves, leaves.length + 1);
+            leaves[leaves.length - 1] = leaf;
+            return new Collision(leaf.hash, leaves);
+        }
+        Branch branch = (Branch) node;
+        int bit = 1 << ((leaf.hash >>> shift) & 31);
+        int index = Integer.bitCount(branch.bitmap & (bit - 1));
+        if ((branch.bitmap & bit) != 0) {
+            Object child = branch.children[index];
+            Object changed = put(child, leaf, shift + 5);
+            if (changed == child) {
+                return branch;
+            }
+            Object[] children = branch.children.clone();
+            children[index] = changed;
+            return new Branch(branch.bitmap, children);
+        }
+        Object[] children = new Object[branch.children.length + 1];
+        System.arraycopy(branch.children, 0, children, 0, index);
+        children[index] = leaf;
+        System.arraycopy(branch.children, index, children, index + 1, branch.children.length - index);
+        return new Branch(branch.bitmap | bit, children);
+    }
+
+    /**
+     * Makes the branches that tell apart two nodes whose hashes differ, from a given level down.
+     */
+    private static Object merge(Object a, int hashA, Object b, int hashB, int shift) {
+        int indexA = (hashA >>> shift) & 31;
+        int indexB = (hashB >>> shift) & 31;
+        if (indexA == indexB) {
+            return new Branch(1 << indexA, new Object[] {merge(a, hashA, b, hashB, shift + 5)});
+        }
+        return new Branch((1 << indexA) | (1 << indexB), indexA < indexB ? new Object[] {a, b} : new Object[] {b, a});
+    }
+
+    private static boolean same(Object a, Object b) {
+        if (a == b) {
+            return true;
+        }
+        if (a instanceof Leaf && b instanceof Leaf) {
+            Leaf x = (Leaf) a;
+            Leaf y = (Leaf) b;
+            return x.hash == y.hash && x.key.equals(y.key) && Objects.equals(x.value, y.value);
+        }
+        if (a instanceof Branch && b instanceof Branch) {
+            Branch x = (Branch) a;
+            Branch y = (Branch) b;
+            if (x.bitmap != y.bitmap) {
+                return false;
+            }
+            for (int i = 0; i < x.children.length; i++) {
+                if (!same(x.children[i], y.children[i])) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        if (a instanceof Collision && b instanceof Collision) {
+            Collision x = (Collision) a;
+            Collision y = (Collision) b;
+            if (x.hash != y.hash || x.leaves.length != y.leaves.length) {
+                return false;
+            }
+            for (Leaf leaf : x.leaves) {
+                boolean found = false;
+                for (Leaf other : y.leaves) {
+                    if (same(leaf, other)) {
+                        found = true;
+                        break;
+                    }
+                }
+                if (!found) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+}
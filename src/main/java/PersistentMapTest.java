@@ -0,0 +1,67 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PersistentMapTest {
+
+    /**
+     * Test to see if put leaves the old map as it was and a null value still counts as a key
+     */
+    @Test
+    void putTest() {
+        PersistentMap<String, TokenType> empty = PersistentMap.empty();
+        PersistentMap<String, TokenType> x = empty.put("x", TokenType.Integer);
+        PersistentMap<String, TokenType> y = x.put("x", TokenType.String).put("y", null);
+        assertFalse(empty.containsKey("x"));
+        assertEquals(TokenType.Integer, x.get("x"));
+        assertFalse(x.containsKey("y"));
+        assertEquals(TokenType.String, y.get("x"));
+        assertTrue(y.containsKey("y"));
+        assertNull(y.get("y"));
+        assertSame(x, x.put("x", TokenType.Integer));
+    }
+
+    /**
+     * Test to see if keys with equal hash codes are told apart
+     */
+    @Test
+    void collisionTest() {
+        assertEquals("Aa".hashCode(), "BB".hashCode());
+        PersistentMap<String, String> map = PersistentMap.<String, String>empty().put("Aa", "a").put("BB", "b");
+        assertEquals("a", map.get("Aa"));
+        assertEquals("b", map.get("BB"));
+        assertEquals("c", map.put("BB", "c").get("BB"));
+        assertEquals("b", map.get("BB"));
+        assertTrue(map.sameAs(PersistentMap.<String, String>empty().put("BB", "b").put("Aa", "a")));
+        assertFalse(map.sameAs(map.put("Aa", "c")));
+    }
+
+    /**
+     * Test to see if many keys, put in different orders, give the same lookups as a HashMap and
+     * maps that compare the same
+     */
+    @Test
+    void randomTest() {
+        Random random = new Random(5);
+        HashMap<Integer, Integer> expected = new HashMap<>();
+        PersistentMap<Integer, Integer> map = PersistentMap.empty();
+        for (int i = 0; i < 20000; i++) {
+            int key = random.nextInt(5000) * 31;
+            expected.put(key, i);
+            map = map.put(key, i);
+        }
+        PersistentMap<Integer, Integer> copy = PersistentMap.empty();
+        for (int key = 5000 * 31; key >= 0; key--) {
+            assertEquals(expected.get(key), map.get(key));
+            assertEquals(expected.containsKey(key), map.containsKey(key));
+            if (expected.containsKey(key)) {
+                copy = copy.put(key, expected.get(key));
+            }
+        }
+        assertTrue(map.sameAs(copy));
+        assertFalse(map.sameAs(copy.put(-1, 0)));
+    }
+}
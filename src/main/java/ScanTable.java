@@ -0,0 +1,120 @@
+import java.util.Arrays;
+
+/**
+ * Precomputed tables for the Lexer's table-driven scanning engine: a character class for every
+ * ASCII character, the token types of the one and two character operators, and a DFA that
+ * recognizes integers, identifiers and keywords one character at a time.
+ */
+final class ScanTable {
+    static final byte OTHER = 0;
+    static final byte SPACE = 1;
+    static final byte END = 2;
+    static final byte SINGLE = 3;
+    static final byte FOLLOW = 4;
+    static final byte SLASH = 5;
+    static final byte QUOTE = 6;
+    static final byte DOUBLE_QUOTE = 7;
+    static final byte WORD = 8;
+
+    /** Character class of each ASCII character. */
+    static final byte[] CLASS = new byte[128];
+    /** Token type of each single character token. */
+    static final TokenType[] SINGLE_TYPE = new TokenType[128];
+    /** For the operators that may be followed by a second character: that character, and the types for both cases. */
+    static final char[] FOLLOW_EXPECT = new char[128];
+    static final TokenType[] FOLLOW_YES = new TokenType[128];
+    static final TokenType[] FOLLOW_NO = new TokenType[128];
+
+    static final int START = 0;
+    static final int INTEGER = 1;
+    static final int IDENTIFIER = 2;
+    /** DFA transitions indexed by state then ASCII character, -1 where the word ends. */
+    static final int[][] NEXT;
+    /** Token type of a word that ends in each state. */
+    static final TokenType[] ACCEPT;
+
+    private static final String[] KEYWORDS = {"if", "else", "while", "print", "putc"};
+    private static final TokenType[] KEYWORD_TYPES = {
+        TokenType.Keyword_if, TokenType.Keyword_else, TokenType.Keyword_while,
+        TokenType.Keyword_print, TokenType.Keyword_putc
+    };
+
+    private ScanTable() {
+    }
+
+    static {
+        for (char c = 0; c < 128; c++) {
+            if (Character.isWhitespace(c)) {
+                CLASS[c] = SPACE;
+            } else if (Character.isLetterOrDigit(c) || c == '_') {
+                CLASS[c] = WORD;
+            }
+        }
+        CLASS['\u0000'] = END;
+        CLASS['/'] = SLASH;
+        CLASS['\''] = QUOTE;
+        CLASS['"'] = DOUBLE_QUOTE;
+        single('*', TokenType.Op_multiply);
+        single('%', TokenType.Op_mod);
+        single('+', TokenType.Op_add);
+        single('-', TokenType.Op_subtract);
+        single('(', TokenType.LeftParen);
+        single(')', TokenType.RightParen);
+        single('{', TokenType.LeftBrace);
+        single('}', TokenType.RightBrace);
+        single(';', TokenType.Semicolon);
+        single(',', TokenType.Comma);
+        follow('<', '=', TokenType.Op_lessequal, TokenType.Op_less);
+        follow('>', '=', TokenType.Op_greaterequal, TokenType.Op_greater);
+        follow('=', '=', TokenType.Op_equal, TokenType.Op_assign);
+        follow('!', '=', TokenType.Op_notequal, TokenType.Op_not);
+        follow('&', '&', TokenType.Op_and, TokenType.End_of_input);
+        follow('|', '|', TokenType.Op_or, TokenType.End_of_input);
+
+        int states = 3;
+        for (String keyword : KEYWORDS) {
+            states += keyword.length();
+        }
+        int[][] next = new int[states][128];
+        TokenType[] accept = new TokenType[states];
+        accept[INTEGER] = TokenType.Integer;
+        accept[IDENTIFIER] = TokenType.Identifier;
+        for (int c = 0; c < 128; c++) {
+            boolean word = CLASS[c] == WORD;
+            boolean digit = c >= '0' && c <= '9';
+            next[START][c] = !word ? -1 : digit ? INTEGER : IDENTIFIER;
+            next[INTEGER][c] = !word ? -1 : digit ? INTEGER : IDENTIFIER;
+            next[IDENTIFIER][c] = word ? IDENTIFIER : -1;
+        }
+        // Build a trie of the keywords on top of the START state; any other word character
+        // leaving a trie state falls back to IDENTIFIER.
+        int used = 3;
+        for (int k = 0; k < KEYWORDS.length; k++) {
+            int state = START;
+            for (char c : KEYWORDS[k].toCharArray()) {
+                if (next[state][c] == IDENTIFIER || next[state][c] == INTEGER) {
+                    int fresh = used++;
+                    System.arraycopy(next[IDENTIFIER], 0, next[fresh], 0, 128);
+                    accept[fresh] = TokenType.Identifier;
+                    next[state][c] = fresh;
+                }
+                state = next[state][c];
+            }
+            accept[state] = KEYWORD_TYPES[k];
+        }
+        NEXT = Arrays.copyOf(next, used);
+        ACCEPT = Arrays.copyOf(accept, used);
+    }
+
+    private static void single(char c, TokenType type) {
+        CLASS[c] = SINGLE;
+        SINGLE_TYPE[c] = type;
+    }
+
+    private static void follow(char c, char expect, TokenType ifyes, TokenType ifno) {
+        CLASS[c] = FOLLOW;
+        FOLLOW_EXPECT[c] = expect;
+        FOLLOW_YES[c] = ifyes;
+        FOLLOW_NO[c] = ifno;
+    }
+}
@@ -0,0 +1,122 @@
+import java.util.Arrays;
+
+/**
+ * Interns token values so that each distinct lexeme is stored once and referred to by index.
+ * Lookups hash the characters in place, so a lexeme that has been seen before costs no allocation.
+ */
+class SymbolPool {
+    static final int EMPTY = 0;
+
+    private String[] symbols;
+    private int[] table;
+    private int size;
+
+    SymbolPool() {
+        this.symbols = new String[64];
+        this.table = new int[128];
+        Arrays.fill(this.table, -1);
+        this.size = 0;
+        intern("");
+    }
+
+    /**
+     * Returns the String stored at an index.
+     *
+     * @param index the index returned by intern
+     * @return the interned String
+     */
+    String get(int index) {
+        return this.symbols[index];
+    }
+
+    /**
+     * Returns the number of distinct values in the pool.
+     *
+     * @return the pool size
+     */
+    int size() {
+        return this.size;
+    }
+
+    /**
+     * Interns a whole String.
+     *
+     * @param value the value to intern
+     * @return the index of the value
+     */
+    int intern(String value) {
+        return intern(value, 0, value.length());
+    }
+
+    /**
+     * Interns the characters between start and end of a sequence.
+     *
+     * @param source the sequence holding the value
+     * @param start the index of the first character
+     * @param end the index after the last character
+     * @return the index of the value
+     */
+    int intern(CharSequence source, int start, int end) {
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + source.charAt(i);
+        }
+        int mask = this.table.length - 1;
+        int slot = mix(hash) & mask;
+        while (this.table[slot] != -1) {
+            int index = this.table[slot];
+            if (equal(this.symbols[index], source, start, end)) {
+                return index;
+            }
+            slot = (slot + 1) & mask;
+        }
+        if (this.size == this.symbols.length) {
+            this.symbols = Arrays.copyOf(this.symbols, this.size * 2);
+        }
+        int index = this.size++;
+        this.symbols[index] = source.subSequence(start, end).toString();
+        this.table[slot] = index;
+        if (this.size * 2 > this.table.length) {
+            rehash();
+        }
+        return index;
+    }
+
+    /**
+     * Compares a stored symbol with a range of characters.
+     */
+    private static boolean equal(String symbol, CharSequence source, int start, int end) {
+        if (symbol.length() != end - start) {
+            return false;
+        }
+        for (int i = 0; i < symbol.length(); i++) {
+            if (symbol.charAt(i) != source.charAt(start + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Spreads the bits of a String hash code so that linear probing stays short.
+     */
+    private static int mix(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * Doubles the hash table and reinserts every symbol.
+     */
+    private void rehash() {
+        this.table = new int[this.table.length * 2];
+        Arrays.fill(this.table, -1);
+        int mask = this.table.length - 1;
+        for (int i = 0; i < this.size; i++) {
+            int slot = mix(this.symbols[i].hashCode()) & mask;
+            while (this.table[slot] != -1) {
+                slot = (slot + 1) & mask;
+            }
+            this.table[slot] = i;
+        }
+    }
+}
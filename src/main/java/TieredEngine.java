@@ -0,0 +1,303 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.invoke.MethodHandle;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runs a program on the Interpreter and compiles the loops that turn out to be hot. Each while loop
+ * counts how often it is entered and how many times it goes round. When a loop has gone round
+ * threshold times it is compiled by JvmCompiler, and the iteration in progress continues in the
+ * compiled code at the loop header: the Interpreter keeps every variable in its int[] of slots, so
+ * the compiled loop takes its state from there and puts it back when the loop ends. Later entries to
+ * the loop run the compiled code from the start. Short programs never pay for compiling, and long
+ * ones only compile what they spend their time in.
+ */
+class TieredEngine extends Interpreter {
+    /** The number of iterations after which a loop is compiled, unless another is given. */
+    static final int DEFAULT_THRESHOLD = 1000;
+
+    private final Loops loops;
+    private int numbered;
+
+    /**
+     * What is known about one while loop.
+     */
+    static class Profile {
+        /** The loop's position among the program's loops, in source order, from 1. */
+        public final int number;
+        /** The number of the innermost loop around it, or 0. */
+        public final int parent;
+        /** The times the loop statement was executed. */
+        long entries;
+        /** The iterations run by the Interpreter. */
+        long iterations;
+        /** The iterations run when it was compiled, or -1 while it is interpreted. */
+        long promotedAfter = -1;
+        /** When it was compiled, in nanoseconds since the program started. */
+        long promotedAt;
+        /** The entries that ran compiled code from the start. */
+        long compiledEntries;
+        /** True if it was hot but too long to compile. */
+        boolean tooLarge;
+
+        Profile(int number, int parent) {
+            this.number = number;
+            this.parent = parent;
+        }
+
+        boolean promoted() {
+            return this.promotedAfter >= 0;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            sb.append("loop ").append(this.number);
+            if (this.parent != 0) {
+                sb.append(" (in loop ").append(this.parent).append(')');
+            }
+            sb.append(": ").append(this.entries).append(" entries, ").append(this.iterations).append(" interpreted iterations");
+            if (promoted()) {
+                sb.append(String.format(", compiled after %d iterations at %.3f ms, %d compiled entries",
+                        this.promotedAfter, this.promotedAt / 1e6, this.compiledEntries));
+            } else if (this.tooLarge) {
+                sb.append(", too large to compile");
+            }
+            return sb.toString();
+        }
+    }
+
+    /**
+     * Prepares an AST for execution with the default threshold.
+     * @param tree the root node returned by Parser.parse().
+     */
+    TieredEngine(Parser.Node tree) {
+        this(tree, DEFAULT_THRESHOLD);
+    }
+
+    /**
+     * Prepares an AST for execution.
+     * @param tree the root node returned by Parser.parse().
+     * @param threshold the number of iterations after which a loop is compiled.
+     */
+    TieredEngine(Parser.Node tree, int threshold) {
+        this(tree, new Loops(threshold));
+    }
+
+    private TieredEngine(Parser.Node tree, Loops loops) {
+        super(tree, loops);
+        this.loops = loops;
+        Map<Parser.Node, Loop> byNode = new IdentityHashMap<>();
+        for (Loop loop : loops.created) {
+            byNode.put(loop.node, loop);
+        }
+        number(tree, byNode);
+    }
+
+    @Override
+    int[] run(Writer out) throws IOException {
+        this.loops.engine = this;
+        this.loops.pool = strings().toArray(new String[0]);
+        this.loops.started = System.nanoTime();
+        return super.run(out);
+    }
+
+    /**
+     * Numbers the loops in source order and links each to the loop around it. The loops were
+     * created innermost first, as the tree was converted bottom up. The tree is walked with a stack
+     * of nodes and the loops around them, since Sequence chains are as deep as the program is long.
+     */
+    private void number(Parser.Node tree, Map<Parser.Node, Loop> byNode) {
+        ArrayList<Parser.Node> nodes = new ArrayList<>();
+        ArrayList<Loop> parents = new ArrayList<>();
+        nodes.add(tree);
+        parents.add(null);
+        while (!nodes.isEmpty()) {
+            Parser.Node node = nodes.remove(nodes.size() - 1);
+            Loop parent = parents.remove(parents.size() - 1);
+            if (node == null || node.nt.isLeaf()) {
+                continue;
+            }
+            if (node.nt == Parser.NodeType.nd_While) {
+                Loop loop = byNode.get(node);
+                loop.number = ++this.numbered;
+                loop.parent = parent;
+                parent = loop;
+            }
+            nodes.add(node.right);
+            parents.add(parent);
+            nodes.add(node.left);
+            parents.add(parent);
+        }
+    }
+
+    /**
+     * Returns the profile of every loop, in source order.
+     */
+    List<Profile> profiles() {
+        List<Profile> profiles = new ArrayList<>();
+        for (Loop loop : this.loops.created) {
+            profiles.add(loop.profile());
+        }
+        profiles.sort((a, b) -> Integer.compare(a.number, b.number));
+        return profiles;
+    }
+
+    /**
+     * Formats the profiles one loop per line.
+     */
+    String report() {
+        StringBuilder sb = new StringBuilder();
+        for (Profile profile : profiles()) {
+            sb.append(profile).append(System.lineSeparator());
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Creates the Loop statements while Interpreter converts the tree, and holds what they share
+     * once the program runs.
+     */
+    private static final class Loops implements LoopFactory {
+        private final int threshold;
+        private final List<Loop> created;
+        private TieredEngine engine;
+        private String[] pool;
+        private long started;
+
+        Loops(int threshold) {
+            this.threshold = threshold;
+            this.created = new ArrayList<>();
+        }
+
+        @Override
+        public Stmt loop(Parser.Node node, Expr cond, Stmt body) {
+            Loop loop = new Loop(this, node, cond, body);
+            this.created.add(loop);
+            return loop;
+        }
+    }
+
+    /**
+     * A while loop that counts its iterations and replaces itself with compiled code when hot.
+     */
+    private static final class Loop extends Stmt {
+        private final Loops loops;
+        private final Parser.Node node;
+        private final Expr cond;
+        private final Stmt body;
+        private int number;
+        private Loop parent;
+        private long entries;
+        private long iterations;
+        private long promotedAfter = -1;
+        private long promotedAt;
+        private long compiledEntries;
+        private boolean tooLarge;
+        private MethodHandle compiled;
+
+        Loop(Loops loops, Parser.Node node, Expr cond, Stmt body) {
+            this.loops = loops;
+            this.node = node;
+            this.cond = cond;
+            this.body = body;
+        }
+
+        void exec(int[] vars) throws IOException {
+            this.entries++;
+            if (this.compiled != null) {
+                this.compiledEntries++;
+                runCompiled(vars);
+                return;
+            }
+            while (this.cond.eval(vars) != 0) {
+                this.body.exec(vars);
+                if (++this.iterations >= this.loops.threshold && !this.tooLarge && promote()) {
+                    // on-stack replacement: the compiled loop starts at its header with the same slots
+                    runCompiled(vars);
+                    return;
+                }
+            }
+        }
+
+        private boolean promote() {
+            this.compiled = JvmCompiler.compileStatement(this.node, this.loops.engine);
+            if (this.compiled == null) {
+                this.tooLarge = true;
+                return false;
+            }
+            this.promotedAfter = this.iterations;
+            this.promotedAt = System.nanoTime() - this.loops.started;
+            return true;
+        }
+
+        private void runCompiled(int[] vars) throws IOException {
+            Writer out = this.loops.engine.output();
+            try {
+                this.compiled.invokeExact(vars, out, this.loops.pool);
+            } catch (IOException | RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        Profile profile() {
+            Profile profile = new Profile(this.number, this.parent == null ? 0 : this.parent.number);
+            profile.entries = this.entries;
+            profile.iterations = this.iterations;
+            profile.promotedAfter = this.promotedAfter;
+            profile.promotedAt = this.promotedAt;
+            profile.compiledEntries = this.compiledEntries;
+            profile.tooLarge = this.tooLarge;
+            return profile;
+        }
+    }
+
+    /**
+     * Parses each source file given on the command line and runs it. --threshold N sets the number
+     * of iterations after which a loop is compiled, and --profile prints the loop profiles to
+     * System.err after each program.
+     * @param args options and source files.
+     */
+    public static void main(String[] args) {
+        int threshold = DEFAULT_THRESHOLD;
+        boolean profile = false;
+        List<String> files = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--threshold":
+                    threshold = Integer.parseInt(args[++i]);
+                    break;
+                case "--profile":
+                    profile = true;
+                    break;
+                default:
+                    files.add(args[i]);
+            }
+        }
+        Writer out = new BufferedWriter(new OutputStreamWriter(System.out), 1 << 16);
+        try {
+            for (String file : files) {
+                TieredEngine engine = new TieredEngine(new Parser(Lexer.fromFile(file)).parse(), threshold);
+                engine.run(out);
+                if (profile) {
+                    out.flush();
+                    System.err.print(file + ":" + System.lineSeparator() + engine.report());
+                }
+            }
+            out.flush();
+        } catch (IOException e) {
+            System.out.println("Exception: " + e.getMessage());
+            System.exit(1);
+        } catch (CompileException e) {
+            System.out.println(e.getMessage());
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,118 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TieredEngineTest {
+
+    private static TieredEngine engine(String source, int threshold) {
+        return new TieredEngine(new Parser(new Lexer(source)).parse(), threshold);
+    }
+
+    /**
+     * Test to see if every program in resources prints the same as it does on the Interpreter, whatever the threshold
+     * @throws IOException
+     */
+    @Test
+    void matchesInterpreterTest() throws IOException {
+        String[] programs = {"prime.c", "fizzbuzz.c", "99bottles.c", "count.c", "hello.t", "loop.py"};
+        for (String program : programs) {
+            String file = "src/main/resources/" + program;
+            StringWriter expected = new StringWriter();
+            int[] vars = new Interpreter(new Parser(Lexer.fromFile(file)).parse()).run(expected);
+            for (int threshold : new int[] {1, 7, Integer.MAX_VALUE}) {
+                StringWriter out = new StringWriter();
+                TieredEngine engine = new TieredEngine(new Parser(Lexer.fromFile(file)).parse(), threshold);
+                assertArrayEquals(vars, engine.run(out), program);
+                assertEquals(expected.toString(), out.toString(), program);
+            }
+        }
+    }
+
+    /**
+     * Test to see if a loop is compiled in the middle of running and finishes with the right variables
+     * @throws IOException
+     */
+    @Test
+    void promotionTest() throws IOException {
+        TieredEngine engine = engine("i = 0; s = 0; while (i < 100) { s = s + i; i = i + 1; } print(s, \"\\n\");", 10);
+        StringWriter out = new StringWriter();
+        assertArrayEquals(new int[] {100, 4950}, engine.run(out));
+        assertEquals("4950\n", out.toString());
+        List<TieredEngine.Profile> profiles = engine.profiles();
+        assertEquals(1, profiles.size());
+        TieredEngine.Profile loop = profiles.get(0);
+        assertTrue(loop.promoted());
+        assertEquals(10, loop.promotedAfter);
+        assertEquals(10, loop.iterations);
+        assertEquals(1, loop.entries);
+        assertEquals(0, loop.compiledEntries);
+    }
+
+    /**
+     * Test to see if nested loops are numbered in source order, and an inner loop entered again runs compiled
+     * @throws IOException
+     */
+    @Test
+    void nestedTest() throws IOException {
+        String source = "i = 0; while (i < 20) { j = 0; while (j < 5) { j = j + 1; } i = i + 1; }\n"
+                + "k = 0; while (k < 3) k = k + 1;";
+        TieredEngine engine = engine(source, 50);
+        assertArrayEquals(new int[] {20, 5, 3}, engine.run(new StringWriter()));
+        List<TieredEngine.Profile> profiles = engine.profiles();
+        assertEquals(3, profiles.size());
+
+        TieredEngine.Profile outer = profiles.get(0);
+        assertEquals(0, outer.parent);
+        assertFalse(outer.promoted());
+        assertEquals(20, outer.iterations);
+
+        TieredEngine.Profile inner = profiles.get(1);
+        assertEquals(1, inner.parent);
+        assertEquals(20, inner.entries);
+        assertTrue(inner.promoted());
+        assertEquals(50, inner.promotedAfter);
+        assertEquals(10, inner.compiledEntries);
+
+        TieredEngine.Profile last = profiles.get(2);
+        assertEquals(0, last.parent);
+        assertFalse(last.promoted());
+        assertEquals(3, last.iterations);
+        assertTrue(engine.report().startsWith("loop 1: 1 entries, 20 interpreted iterations"));
+        assertTrue(engine.report().contains("loop 2 (in loop 1): 20 entries, 50 interpreted iterations, compiled after 50 iterations"));
+    }
+
+    /**
+     * Test to see if output printed by the Interpreter and by compiled loops comes out in order
+     * @throws IOException
+     */
+    @Test
+    void outputOrderTest() throws IOException {
+        String source = "i = 0; while (i < 6) { print(i); j = 0; while (j < 3) { print((97 + j)); j = j + 1; } i = i + 1; }";
+        StringWriter out = new StringWriter();
+        engine(source, 4).run(out);
+        assertEquals("0abc1abc2abc3abc4abc5abc", out.toString());
+    }
+
+    /**
+     * Test to see if a very long program is prepared and run without overflowing the stack
+     * @throws IOException
+     */
+    @Test
+    void largeTest() throws IOException {
+        StringBuilder source = new StringBuilder("x = 0; i = 0; while (i < 3) i = i + 1;\n");
+        for (int i = 0; i < 200000; i++) {
+            source.append("x = x + 1;\n");
+        }
+        source.append("while (x > 5) x = x - 1;\n");
+        TieredEngine engine = engine(source.toString(), 10);
+        assertArrayEquals(new int[] {5, 3}, engine.run(new StringWriter()));
+        List<TieredEngine.Profile> profiles = engine.profiles();
+        assertEquals(2, profiles.size());
+        assertEquals(3, profiles.get(0).iterations);
+        assertTrue(profiles.get(1).promoted());
+    }
+}
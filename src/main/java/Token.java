@@ -0,0 +1,51 @@
+/**
+ * A single token as produced by the Lexer and consumed by the Parser.
+ */
+class Token {
+    public TokenType tokentype;
+    public String value;
+    public int line;
+    public int pos;
+
+    Token(TokenType token, String value, int line, int pos) {
+        this.tokentype = token;
+        this.value = value;
+        this.line = line;
+        this.pos = pos;
+    }
+
+    /**
+     * Formats the token in the .lex debug dump format.
+     *
+     * @return the token as a line of the .lex file
+     */
+    @Override
+    public String toString() {
+        return format(this.tokentype, this.value, this.line, this.pos);
+    }
+
+    /**
+     * Formats a token's parts in the .lex debug dump format, for callers that do not hold a Token.
+     *
+     * @param tokentype the token type
+     * @param value the token value
+     * @param line the line number of the token
+     * @param pos the position of the token in the line
+     * @return the token as a line of the .lex file
+     */
+    static String format(TokenType tokentype, String value, int line, int pos) {
+        String result = String.format("%-5d %-5d %-15s", line, pos, tokentype);
+        switch (tokentype) {
+            case Integer:
+                result += String.format("%-4s", value);
+                break;
+            case Identifier:
+                result += String.format("%s", value);
+                break;
+            case String:
+                result += String.format("\"%s\"", value);
+                break;
+        }
+        return result;
+    }
+}
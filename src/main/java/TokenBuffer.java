@@ -0,0 +1,106 @@
+import java.util.Arrays;
+
+/**
+ * A compact token stream: parallel int arrays for the type, line, position and value of each
+ * token, with values interned in a SymbolPool. Filling it allocates no per-token objects.
+ */
+class TokenBuffer {
+    private static final TokenType[] TYPES = TokenType.values();
+
+    private int[] types;
+    private int[] lines;
+    private int[] positions;
+    private int[] values;
+    private int size;
+    private final SymbolPool symbols;
+
+    TokenBuffer() {
+        this(new SymbolPool());
+    }
+
+    /**
+     * Creates an empty buffer that interns into an existing pool, so that several buffers can
+     * share their identifiers.
+     *
+     * @param symbols the pool to intern values into
+     */
+    TokenBuffer(SymbolPool symbols) {
+        this.types = new int[256];
+        this.lines = new int[256];
+        this.positions = new int[256];
+        this.values = new int[256];
+        this.size = 0;
+        this.symbols = symbols;
+    }
+
+    /**
+     * Appends a token.
+     *
+     * @param type the token type
+     * @param line the line number of the token
+     * @param pos the position of the token in the line
+     * @param value the index of the token value in the symbol pool
+     */
+    void add(TokenType type, int line, int pos, int value) {
+        if (this.size == this.types.length) {
+            int capacity = this.size * 2;
+            this.types = Arrays.copyOf(this.types, capacity);
+            this.lines = Arrays.copyOf(this.lines, capacity);
+            this.positions = Arrays.copyOf(this.positions, capacity);
+            this.values = Arrays.copyOf(this.values, capacity);
+        }
+        this.types[this.size] = type.ordinal();
+        this.lines[this.size] = line;
+        this.positions[this.size] = pos;
+        this.values[this.size] = value;
+        this.size++;
+    }
+
+    int size() { return this.size; }
+    TokenType type(int i) { return TYPES[this.types[i]]; }
+    int line(int i) { return this.lines[i]; }
+    int pos(int i) { return this.positions[i]; }
+    int valueIndex(int i) { return this.values[i]; }
+    String value(int i) { return this.symbols.get(this.values[i]); }
+    SymbolPool symbols() { return this.symbols; }
+
+    /**
+     * Creates a token source over the buffer for the Parser. The source hands out the same Token
+     * object every time, updated in place, since the Parser only looks at the current token.
+     *
+     * @return a token source reading the buffer from the start
+     */
+    TokenSource cursor() {
+        return new TokenSource() {
+            private final Token token = new Token(TokenType.End_of_input, "", 0, 0);
+            private int position = 0;
+
+            @Override
+            public Token next() {
+                int i = this.position++;
+                this.token.tokentype = type(i);
+                this.token.value = value(i);
+                this.token.line = line(i);
+                this.token.pos = pos(i);
+                return this.token;
+            }
+        };
+    }
+
+    /**
+     * Formats every token in the .lex debug dump format.
+     *
+     * @return one line per token
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < this.size; i++) {
+            if (i > 0) {
+                sb.append("\n");
+            }
+            sb.append(Token.format(type(i), value(i), line(i), pos(i)));
+        }
+        return sb.toString();
+    }
+}
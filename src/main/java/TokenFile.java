@@ -0,0 +1,84 @@
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * A binary form of the .lex token stream. After the header comes the string table of token values
+ * and the token count, then for each token its type, the line as a difference from the previous
+ * token's line, the position in the line and the index of its value, all as varints. Values are
+ * stored once however often they appear, and string literals keep their exact spacing.
+ */
+class TokenFile {
+    static final String MAGIC = "MCTK";
+    static final int VERSION = 2;
+    private static final TokenType[] TYPES = TokenType.values();
+
+    private TokenFile() {
+    }
+
+    /**
+     * Writes a token buffer.
+     * @param tokens the tokens, for example from Lexer.tokenize(TokenBuffer).
+     * @param out the stream; it is flushed but not closed.
+     * @throws IOException if writing fails.
+     */
+    static void write(TokenBuffer tokens, OutputStream out) throws IOException {
+        BinaryFormat.Output output = new BinaryFormat.Output(out);
+        output.writeHeader(MAGIC, VERSION);
+        output.writeStrings(tokens.symbols());
+        output.writeVarint(tokens.size());
+        int line = 0;
+        for (int i = 0; i < tokens.size(); i++) {
+            output.writeVarint(tokens.type(i).ordinal());
+            output.writeSignedVarint(tokens.line(i) - line);
+            output.writeVarint(tokens.pos(i));
+            output.writeVarint(tokens.valueIndex(i));
+            line = tokens.line(i);
+        }
+        output.flush();
+    }
+
+    /**
+     * Reads a token buffer written by write. The stream is read through a buffer, so it may be read
+     * past the end of the tokens.
+     * @param in the stream, positioned at the header.
+     * @return the tokens, with their values in a new SymbolPool.
+     * @throws IOException if reading fails or the data is not a token file of this version.
+     */
+    static TokenBuffer read(InputStream in) throws IOException {
+        BinaryFormat.Input input = new BinaryFormat.Input(in);
+        input.readHeader(MAGIC, VERSION);
+        SymbolPool symbols = input.readStrings();
+        TokenBuffer tokens = new TokenBuffer(symbols);
+        int count = input.readVarint();
+        int line = 0;
+        for (int i = 0; i < count; i++) {
+            int type = input.readVarint();
+            if (type >= TYPES.length) {
+                throw new IOException("Bad token type " + type + " in token " + i);
+            }
+            line += input.readSignedVarint();
+            int pos = input.readVarint();
+            int value = input.readVarint();
+            if (value >= symbols.size()) {
+                throw new IOException("Bad value index " + value + " in token " + i);
+            }
+            tokens.add(TYPES[type], line, pos, value);
+        }
+        return tokens;
+    }
+
+    static void writeFile(TokenBuffer tokens, String file) throws IOException {
+        try (OutputStream out = new FileOutputStream(file)) {
+            write(tokens, out);
+        }
+    }
+
+    static TokenBuffer readFile(String file) throws IOException {
+        try (InputStream in = new FileInputStream(file)) {
+            return read(in);
+        }
+    }
+}
@@ -0,0 +1,60 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TokenFileTest {
+
+    private static byte[] write(TokenBuffer tokens) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        TokenFile.write(tokens, out);
+        return out.toByteArray();
+    }
+
+    /**
+     * Test to see if a token stream survives a round trip, is smaller than the .lex text and can still be parsed
+     * @throws IOException
+     */
+    @Test
+    void roundTripTest() throws IOException {
+        TokenBuffer tokens = Lexer.fromFile("src/main/resources/99bottles.c").tokenize(new TokenBuffer());
+        byte[] bytes = write(tokens);
+        TokenBuffer copy = TokenFile.read(new ByteArrayInputStream(bytes));
+        assertEquals(tokens.toString(), copy.toString());
+        assertTrue(bytes.length * 4 < tokens.toString().length());
+
+        Parser expected = new Parser(tokens.cursor());
+        Parser actual = new Parser(copy.cursor());
+        expected.setEcho(false);
+        actual.setEcho(false);
+        assertEquals(expected.printAST(expected.parse(), new StringBuilder()), actual.printAST(actual.parse(), new StringBuilder()));
+    }
+
+    /**
+     * Test to see if string literals keep their spacing
+     * @throws IOException
+     */
+    @Test
+    void spacingTest() throws IOException {
+        TokenBuffer tokens = new Lexer("print(\"a   b  \");").tokenize(new TokenBuffer());
+        TokenBuffer copy = TokenFile.read(new ByteArrayInputStream(write(tokens)));
+        assertEquals("a   b  ", copy.value(2));
+    }
+
+    /**
+     * Test to see if another kind of file or another version is rejected
+     * @throws IOException
+     */
+    @Test
+    void headerTest() throws IOException {
+        byte[] bytes = write(new Lexer("x = 1;").tokenize(new TokenBuffer()));
+        bytes[4] = (byte) (TokenFile.VERSION + 1);
+        byte[] newer = bytes;
+        IOException e = assertThrows(IOException.class, () -> TokenFile.read(new ByteArrayInputStream(newer)));
+        assertEquals("Unsupported MCTK version 3, expected 2", e.getMessage());
+        assertThrows(IOException.class, () -> TokenFile.read(new ByteArrayInputStream("x = 1;".getBytes())));
+    }
+}
@@ -0,0 +1,33 @@
+import java.util.List;
+
+/**
+ * A pull-based stream of tokens. The Parser asks for one token at a time, so a source backed by
+ * the Lexer lets parsing start before lexing has finished and never holds the whole token stream.
+ */
+interface TokenSource {
+
+    /**
+     * Returns the next token in the stream. Once End_of_input has been reached the behaviour of
+     * further calls is up to the implementation.
+     *
+     * @return the next token
+     */
+    Token next();
+
+    /**
+     * Wraps an already materialized list of tokens.
+     *
+     * @param tokens the tokens to hand out in order
+     * @return a source over the list
+     */
+    static TokenSource of(List<Token> tokens) {
+        return new TokenSource() {
+            private int position = 0;
+
+            @Override
+            public Token next() {
+                return tokens.get(this.position++);
+            }
+        };
+    }
+}
@@ -0,0 +1,324 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Arrays;
+
+/**
+ * Runs the bytecode produced by CodeGenerator. The operand stack and the data segment are plain int
+ * arrays and the loop dispatches with a switch on the opcode, so nothing is boxed while a program
+ * runs. Output goes to a Writer, which should be buffered.
+ */
+class VirtualMachine {
+    /** Offsets added to a binary opcode by decode() when its right operand is fused into it. */
+    static final int FETCHED = 32;
+    static final int IMMEDIATE = 64;
+
+    private final Bytecode program;
+    private final Writer out;
+    private final int[] data;
+    private final char[] digits;
+
+    /**
+     * Creates a machine for a program.
+     * @param program the compiled program.
+     * @param out where prts, prti and prtc write to.
+     */
+    VirtualMachine(Bytecode program, Writer out) {
+        this.program = program;
+        this.out = out;
+        this.data = new int[program.variables.length];
+        this.digits = new char[11];
+    }
+
+    /**
+     * Returns the data segment, indexed by the slots in Bytecode.variables.
+     */
+    int[] data() {
+        return this.data;
+    }
+
+    /**
+     * Runs the program until it halts. The top of the operand stack is kept in a local variable,
+     * which saves a load and a store for most instructions.
+     * @throws IOException if writing the output fails.
+     */
+    void run() throws IOException {
+        final int[] code = decode(this.program.code);
+        final String[] strings = this.program.strings;
+        final int[] data = this.data;
+        final int[] stack = new int[maxStack(this.program.code)];
+        final Writer out = this.out;
+        int sp = 0;
+        int tos = 0;
+        int pc = 0;
+        while (true) {
+            switch (code[pc++]) {
+                case 0: // fetch
+                    stack[sp++] = tos;
+                    tos = data[code[pc++]];
+                    break;
+                case 1: // store
+                    data[code[pc++]] = tos;
+                    tos = stack[--sp];
+                    break;
+                case 2: // push
+                    stack[sp++] = tos;
+                    tos = code[pc++];
+                    break;
+                case 3: // add
+                    tos = stack[--sp] + tos;
+                    break;
+                case 4: // sub
+                    tos = stack[--sp] - tos;
+                    break;
+                case 5: // mul
+                    tos = stack[--sp] * tos;
+                    break;
+                case 6: // div
+                    tos = stack[--sp] / tos;
+                    break;
+                case 7: // mod
+                    tos = stack[--sp] % tos;
+                    break;
+                case 8: // lt
+                    tos = stack[--sp] < tos ? 1 : 0;
+                    break;
+                case 9: // gt
+                    tos = stack[--sp] > tos ? 1 : 0;
+                    break;
+                case 10: // le
+                    tos = stack[--sp] <= tos ? 1 : 0;
+                    break;
+                case 11: // ge
+                    tos = stack[--sp] >= tos ? 1 : 0;
+                    break;
+                case 12: // eq
+                    tos = stack[--sp] == tos ? 1 : 0;
+                    break;
+                case 13: // ne
+                    tos = stack[--sp] != tos ? 1 : 0;
+                    break;
+                case 14: // and
+                    tos = stack[--sp] != 0 && tos != 0 ? 1 : 0;
+                    break;
+                case 15: // or
+                    tos = stack[--sp] != 0 || tos != 0 ? 1 : 0;
+                    break;
+                case 16: // neg
+                    tos = -tos;
+                    break;
+                case 17: // not
+                    tos = tos == 0 ? 1 : 0;
+                    break;
+                case 18: // jmp
+                    pc = code[pc];
+                    break;
+                case 19: // jz
+                    pc = tos == 0 ? code[pc] : pc + 1;
+                    tos = stack[--sp];
+                    break;
+                case 20: // prtc
+                    out.write(tos);
+                    tos = stack[--sp];
+                    break;
+                case 21: // prts
+                    out.write(strings[tos]);
+                    tos = stack[--sp];
+                    break;
+                case 22: // prti
+                    writeInt(tos);
+                    tos = stack[--sp];
+                    break;
+                case 23: // halt
+                    return;
+                case FETCHED + 3: // add [x]
+                    tos = tos + data[code[pc++]];
+                    break;
+                case FETCHED + 4: // sub [x]
+                    tos = tos - data[code[pc++]];
+                    break;
+                case FETCHED + 5: // mul [x]
+                    tos = tos * data[code[pc++]];
+                    break;
+                case FETCHED + 6: // div [x]
+                    tos = tos / data[code[pc++]];
+                    break;
+                case FETCHED + 7: // mod [x]
+                    tos = tos % data[code[pc++]];
+                    break;
+                case FETCHED + 8: // lt [x]
+                    tos = tos < data[code[pc++]] ? 1 : 0;
+                    break;
+                case FETCHED + 9: // gt [x]
+                    tos = tos > data[code[pc++]] ? 1 : 0;
+                    break;
+                case FETCHED + 10: // le [x]
+                    tos = tos <= data[code[pc++]] ? 1 : 0;
+                    break;
+                case FETCHED + 11: // ge [x]
+                    tos = tos >= data[code[pc++]] ? 1 : 0;
+                    break;
+                case FETCHED + 12: // eq [x]
+                    tos = tos == data[code[pc++]] ? 1 : 0;
+                    break;
+                case FETCHED + 13: // ne [x]
+                    tos = tos != data[code[pc++]] ? 1 : 0;
+                    break;
+                case IMMEDIATE + 3: // add k
+                    tos = tos + code[pc++];
+                    break;
+                case IMMEDIATE + 4: // sub k
+                    tos = tos - code[pc++];
+                    break;
+                case IMMEDIATE + 5: // mul k
+                    tos = tos * code[pc++];
+                    break;
+                case IMMEDIATE + 6: // div k
+                    tos = tos / code[pc++];
+                    break;
+                case IMMEDIATE + 7: // mod k
+                    tos = tos % code[pc++];
+                    break;
+                case IMMEDIATE + 8: // lt k
+                    tos = tos < code[pc++] ? 1 : 0;
+                    break;
+                case IMMEDIATE + 9: // gt k
+                    tos = tos > code[pc++] ? 1 : 0;
+                    break;
+                case IMMEDIATE + 10: // le k
+                    tos = tos <= code[pc++] ? 1 : 0;
+                    break;
+                case IMMEDIATE + 11: // ge k
+                    tos = tos >= code[pc++] ? 1 : 0;
+                    break;
+                case IMMEDIATE + 12: // eq k
+                    tos = tos == code[pc++] ? 1 : 0;
+                    break;
+                case IMMEDIATE + 13: // ne k
+                    tos = tos != code[pc++] ? 1 : 0;
+                    break;
+                default:
+                    throw new IllegalStateException("Bad opcode " + code[pc - 1] + " at " + (pc - 1));
+            }
+        }
+    }
+
+    /**
+     * Unpacks the bytecode into one int per opcode and per operand, so the loop never assembles
+     * operands from bytes. Jump operands become absolute indexes into the unpacked array. A fetch or
+     * push followed by an arithmetic or comparison instruction is fused into one instruction that
+     * takes its right operand from a variable (FETCHED) or the code (IMMEDIATE), unless something
+     * jumps between the two.
+     * @param bytes the instruction bytes.
+     * @return the unpacked code.
+     */
+    static int[] decode(byte[] bytes) {
+        Bytecode program = new Bytecode(bytes, new String[0], new String[0]);
+        boolean[] target = new boolean[bytes.length + 1];
+        int pc = 0;
+        while (pc < bytes.length) {
+            Opcode op = Opcode.VALUES[bytes[pc]];
+            if (op == Opcode.JMP || op == Opcode.JZ) {
+                target[pc + 1 + program.operand(pc + 1)] = true;
+            }
+            pc += op.size();
+        }
+
+        int[] index = new int[bytes.length + 1];
+        int[] code = new int[bytes.length];
+        int size = 0;
+        pc = 0;
+        while (pc < bytes.length) {
+            Opcode op = Opcode.VALUES[bytes[pc]];
+            index[pc] = size;
+            int next = pc + op.size();
+            if ((op == Opcode.FETCH || op == Opcode.PUSH) && next < bytes.length && !target[next] && fusible(Opcode.VALUES[bytes[next]])) {
+                code[size++] = bytes[next] + (op == Opcode.FETCH ? FETCHED : IMMEDIATE);
+                code[size++] = program.operand(pc + 1);
+                index[next] = -1;
+                next += 1;
+            } else {
+                code[size++] = op.ordinal();
+                if (op.hasOperand()) {
+                    code[size++] = program.operand(pc + 1);
+                }
+            }
+            pc = next;
+        }
+        index[bytes.length] = size;
+
+        pc = 0;
+        while (pc < bytes.length) {
+            Opcode op = Opcode.VALUES[bytes[pc]];
+            if ((op == Opcode.JMP || op == Opcode.JZ) && index[pc] >= 0) {
+                code[index[pc] + 1] = index[pc + 1 + program.operand(pc + 1)];
+            }
+            pc += op.size();
+        }
+        return Arrays.copyOf(code, size);
+    }
+
+    private static boolean fusible(Opcode op) {
+        return op.ordinal() >= Opcode.ADD.ordinal() && op.ordinal() <= Opcode.NE.ordinal();
+    }
+
+    /**
+     * Writes an integer in decimal without creating a String.
+     */
+    private void writeInt(int value) throws IOException {
+        if (value == Integer.MIN_VALUE) {
+            this.out.write(Integer.toString(value));
+            return;
+        }
+        boolean negative = value < 0;
+        int v = negative ? -value : value;
+        int i = this.digits.length;
+        do {
+            this.digits[--i] = (char) ('0' + v % 10);
+            v /= 10;
+        } while (v != 0);
+        if (negative) {
+            this.digits[--i] = '-';
+        }
+        this.out.write(this.digits, i, this.digits.length - i);
+    }
+
+    /**
+     * Bounds the operand stack depth. Every statement leaves the stack empty, so the depth can never
+     * exceed the number of instructions that push, plus the slot run() spills its cached top into.
+     */
+    static int maxStack(byte[] code) {
+        int pushes = 0;
+        int pc = 0;
+        while (pc < code.length) {
+            Opcode op = Opcode.VALUES[code[pc]];
+            if (op == Opcode.FETCH || op == Opcode.PUSH) {
+                pushes++;
+            }
+            pc += op.size();
+        }
+        return pushes + 2;
+    }
+
+    /**
+     * Compiles each source file given on the command line to bytecode and runs it.
+     * @param args the source files.
+     */
+    public static void main(String[] args) {
+        Writer out = new BufferedWriter(new OutputStreamWriter(System.out), 1 << 16);
+        try {
+            for (String file : args) {
+                Bytecode program = CodeGenerator.generate(new Parser(Lexer.fromFile(file)).parse());
+                new VirtualMachine(program, out).run();
+            }
+            out.flush();
+        } catch (IOException e) {
+            System.out.println("Exception: " + e.getMessage());
+            System.exit(1);
+        } catch (CompileException e) {
+            System.out.println(e.getMessage());
+            System.exit(1);
+        }
+    }
+}
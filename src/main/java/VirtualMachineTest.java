@@ -0,0 +1,65 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VirtualMachineTest {
+
+    private static String run(Lexer lexer) throws IOException {
+        StringWriter out = new StringWriter();
+        new VirtualMachine(CodeGenerator.generate(new Parser(lexer).parse()), out).run();
+        return out.toString();
+    }
+
+    /**
+     * Test to see if prime.c prints the primes below 100
+     * @throws IOException
+     */
+    @Test
+    void primeTest() throws IOException {
+        String output = run(Lexer.fromFile("src/main/resources/prime.c"));
+        assertTrue(output.startsWith("3 is prime\n5 is prime\n7 is prime\n"));
+        assertTrue(output.endsWith("97 is prime\n101 is prime\nTotal primes found: 26\n"));
+    }
+
+    /**
+     * Test to see if fizzbuzz.c prints the expected sequence
+     * @throws IOException
+     */
+    @Test
+    void fizzbuzzTest() throws IOException {
+        String output = run(Lexer.fromFile("src/main/resources/fizzbuzz.c"));
+        assertTrue(output.startsWith("1\n2\nFizz\n4\nBuzz\nFizz\n7\n8\nFizz\nBuzz\n11\nFizz\n13\n14\nFizzBuzz\n"));
+    }
+
+    /**
+     * Test to see if arithmetic and comparisons evaluate correctly, and an expression in print is a character
+     * @throws IOException
+     */
+    @Test
+    void expressionTest() throws IOException {
+        String source = "a = 7; b = 0 - 2;\n"
+                + "q = a / b; r = a % b; m = a * b - 1; c = (a > b) + (a <= b) * 10;\n"
+                + "n = !a; o = !(a == 7) || 1; x = a != 7 && 1; t = 64 + 1;\n"
+                + "print(q, \" \", r, \" \", m, \" \", c, \" \", n, \" \", o, \" \", x, \" \", (t + 1), \"\\n\");\n";
+        assertEquals("-3 1 -15 1 0 1 0 B\n", run(new Lexer(source)));
+    }
+
+    /**
+     * Test to see if a fetch that is the target of a jump is not fused into the next instruction
+     */
+    @Test
+    void decodeTest() {
+        Bytecode code = CodeGenerator.generate(new Parser(new Lexer("x = 1; y = x + 2; while (x < 5) x = x + 1;")).parse());
+        int[] decoded = VirtualMachine.decode(code.code);
+        // push 1, store x, fetch x, add 2, store y, [fetch x], lt 5, jz, fetch x, add 1, store x, jmp, halt
+        assertArrayEquals(new int[] {
+                Opcode.PUSH.ordinal(), 1, Opcode.STORE.ordinal(), 0,
+                Opcode.FETCH.ordinal(), 0, VirtualMachine.IMMEDIATE + Opcode.ADD.ordinal(), 2, Opcode.STORE.ordinal(), 1,
+                Opcode.FETCH.ordinal(), 0, VirtualMachine.IMMEDIATE + Opcode.LT.ordinal(), 5, Opcode.JZ.ordinal(), 24,
+                Opcode.FETCH.ordinal(), 0, VirtualMachine.IMMEDIATE + Opcode.ADD.ordinal(), 1, Opcode.STORE.ordinal(), 0,
+                Opcode.JMP.ordinal(), 10, Opcode.HALT.ordinal()}, decoded);
+    }
+}